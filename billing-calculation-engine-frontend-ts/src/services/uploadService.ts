@@ -16,9 +16,37 @@ const uploadService = {
       } : undefined
     });
 
+    // the server processes the file in the background, wait for its final status
+    const accepted = response.data;
+    if (!accepted.data || accepted.data.status !== 'PROCESSING') {
+      return accepted;
+    }
+    return uploadService.waitForCompletion(accepted.data);
+  },
+
+  // Get processing progress of an upload
+  getProgress: async (uploadId: number) => {
+    const response = await apiClient.get(`/files/${uploadId}/progress`);
     return response.data;
   },
 
+  // Poll progress until the upload is COMPLETED or FAILED, then report it like the upload response
+  waitForCompletion: async (upload: any, intervalMs = 1000) => {
+    for (;;) {
+      await new Promise((resolve) => setTimeout(resolve, intervalMs));
+      const progress = await uploadService.getProgress(upload.uploadId);
+      const status = progress.data?.status;
+      if (progress.code >= 400 || status === 'COMPLETED' || status === 'FAILED') {
+        const completed = status === 'COMPLETED';
+        return {
+          code: completed ? 200 : 400,
+          msg: completed ? 'File uploaded and processed successfully' : 'File processing failed. See details in response.',
+          data: { ...upload, status, processingResult: progress.data?.processingResult ?? progress.msg }
+        };
+      }
+    }
+  },
+
   // Validate file
   validateFile: (file: File | null, allowedTypes = ['.csv', '.xls', '.xlsx']) => {
     if (!file) {
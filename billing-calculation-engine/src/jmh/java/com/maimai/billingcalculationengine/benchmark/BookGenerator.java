@@ -0,0 +1,180 @@
+package com.maimai.billingcalculationengine.benchmark;
+
+import com.maimai.billingcalculationengine.model.entity.Asset;
+import com.maimai.billingcalculationengine.model.entity.BillingTier;
+import com.maimai.billingcalculationengine.model.entity.Client;
+import com.maimai.billingcalculationengine.model.entity.Portfolio;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded generator of synthetic books, so every run and every release benchmarks the same data.
+ * A book has 10 assets per portfolio, 5 portfolios per client and three billing tiers of four bands.
+ */
+public final class BookGenerator {
+    public static final long DEFAULT_SEED = 20240331L;
+
+    static final int ASSETS_PER_PORTFOLIO = 10;
+    static final int PORTFOLIOS_PER_CLIENT = 5;
+    private static final String[] TIER_IDS = {"T001", "T002", "T003"};
+    private static final BigDecimal[] BAND_LIMITS = {
+            new BigDecimal("0.00"), new BigDecimal("1000000.00"), new BigDecimal("5000000.00"),
+            new BigDecimal("10000000.00"), new BigDecimal("9999999999999.00")
+    };
+    private static final String[] CURRENCIES = {"CAD", "USD"};
+    private static final LocalDate FIRST_DATE = LocalDate.of(2024, 1, 31);
+
+    private BookGenerator() {
+    }
+
+    public record Book(List<BillingTier> billingTiers, List<Client> clients,
+                       List<Portfolio> portfolios, List<Asset> assets) {
+    }
+
+    public static Book generate(int assetCount) {
+        return generate(assetCount, DEFAULT_SEED);
+    }
+
+    public static Book generate(int assetCount, long seed) {
+        Random random = new Random(seed);
+
+        List<BillingTier> billingTiers = new ArrayList<>();
+        for (int tier = 0; tier < TIER_IDS.length; tier++) {
+            for (int band = 0; band < BAND_LIMITS.length - 1; band++) {
+                BigDecimal min = band == 0 ? BAND_LIMITS[0] : BAND_LIMITS[band].add(new BigDecimal("0.01"));
+                billingTiers.add(BillingTier.builder()
+                        .tierId(TIER_IDS[tier])
+                        .portfolioAumMin(min)
+                        .portfolioAumMax(BAND_LIMITS[band + 1])
+                        // lower fees for bigger bands and for higher tiers
+                        .feePercentage(new BigDecimal("1.50").subtract(new BigDecimal("0.25").multiply(BigDecimal.valueOf(band)))
+                                .subtract(new BigDecimal("0.10").multiply(BigDecimal.valueOf(tier))))
+                        .build());
+            }
+        }
+
+        int portfolioCount = Math.max(1, assetCount / ASSETS_PER_PORTFOLIO);
+        int clientCount = Math.max(1, portfolioCount / PORTFOLIOS_PER_CLIENT);
+
+        List<Client> clients = new ArrayList<>(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            clients.add(Client.builder()
+                    .clientId(id("C", i))
+                    .clientName("Client " + i)
+                    .province("ON")
+                    .country("Canada")
+                    .billingTierId(TIER_IDS[random.nextInt(TIER_IDS.length)])
+                    .build());
+        }
+
+        List<Portfolio> portfolios = new ArrayList<>(portfolioCount);
+        for (int i = 0; i < portfolioCount; i++) {
+            portfolios.add(Portfolio.builder()
+                    .portfolioId(id("P", i))
+                    .clientId(clients.get(i % clientCount).getClientId())
+                    .portfolioCurrency(CURRENCIES[random.nextInt(CURRENCIES.length)])
+                    .build());
+        }
+
+        List<Asset> assets = new ArrayList<>(assetCount);
+        for (int i = 0; i < assetCount; i++) {
+            Portfolio portfolio = portfolios.get(i % portfolioCount);
+            assets.add(Asset.builder()
+                    .assetId(id("A", i))
+                    .portfolioId(portfolio.getPortfolioId())
+                    .date(FIRST_DATE.plusMonths(random.nextInt(3)))
+                    // up to 500k per asset, so portfolios spread over the lower bands
+                    .assetValue(BigDecimal.valueOf(random.nextInt(50_000_000), 2))
+                    .currency(portfolio.getPortfolioCurrency())
+                    .build());
+        }
+
+        return new Book(List.copyOf(billingTiers), List.copyOf(clients), List.copyOf(portfolios), List.copyOf(assets));
+    }
+
+    /**
+     * Writes the book as an upload workbook with the four sheets and headers the upload expects.
+     * Rows are streamed to disk, so books of a million assets do not need the whole workbook in memory.
+     */
+    public static void writeWorkbook(Book book, Path file) throws IOException {
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(1000); OutputStream out = Files.newOutputStream(file)) {
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd"));
+
+            Sheet tiers = workbook.createSheet("billing_tier");
+            header(tiers, "Tier ID", "Portfolio AUM Min ($)", "Portfolio AUM Max ($)", "Fee Percentage (%)");
+            for (BillingTier tier : book.billingTiers()) {
+                Row row = nextRow(tiers);
+                row.createCell(0).setCellValue(tier.getTierId());
+                row.createCell(1).setCellValue(tier.getPortfolioAumMin().doubleValue());
+                row.createCell(2).setCellValue(tier.getPortfolioAumMax().doubleValue());
+                row.createCell(3).setCellValue(tier.getFeePercentage().doubleValue());
+            }
+
+            Sheet clients = workbook.createSheet("client_billing");
+            header(clients, "Client ID", "Client Name", "Province", "Country", "Billing Tier ID");
+            for (Client client : book.clients()) {
+                Row row = nextRow(clients);
+                row.createCell(0).setCellValue(client.getClientId());
+                row.createCell(1).setCellValue(client.getClientName());
+                row.createCell(2).setCellValue(client.getProvince());
+                row.createCell(3).setCellValue(client.getCountry());
+                row.createCell(4).setCellValue(client.getBillingTierId());
+            }
+
+            Sheet portfolios = workbook.createSheet("portfolio");
+            header(portfolios, "Client ID", "Portfolio ID", "Portfolio Currency");
+            for (Portfolio portfolio : book.portfolios()) {
+                Row row = nextRow(portfolios);
+                row.createCell(0).setCellValue(portfolio.getClientId());
+                row.createCell(1).setCellValue(portfolio.getPortfolioId());
+                row.createCell(2).setCellValue(portfolio.getPortfolioCurrency());
+            }
+
+            Sheet assets = workbook.createSheet("assets");
+            header(assets, "Asset ID", "Portfolio ID", "Asset Value", "Currency", "Date");
+            for (Asset asset : book.assets()) {
+                Row row = nextRow(assets);
+                row.createCell(0).setCellValue(asset.getAssetId());
+                row.createCell(1).setCellValue(asset.getPortfolioId());
+                row.createCell(2).setCellValue(asset.getAssetValue().doubleValue());
+                row.createCell(3).setCellValue(asset.getCurrency());
+                Cell date = row.createCell(4);
+                date.setCellValue(asset.getDate());
+                date.setCellStyle(dateStyle);
+            }
+
+            workbook.write(out);
+            workbook.dispose();
+        }
+    }
+
+    private static void header(Sheet sheet, String... columns) {
+        Row row = sheet.createRow(0);
+        for (int i = 0; i < columns.length; i++) {
+            row.createCell(i).setCellValue(columns[i]);
+        }
+    }
+
+    // SXSSF sheets only know the rows still in the window, so the next index comes from the last row
+    private static Row nextRow(Sheet sheet) {
+        return sheet.createRow(sheet.getLastRowNum() + 1);
+    }
+
+    private static String id(String prefix, int index) {
+        return String.format("%s%07d", prefix, index);
+    }
+}
@@ -0,0 +1,129 @@
+package com.maimai.billingcalculationengine.benchmark;
+
+import com.maimai.billingcalculationengine.common.properties.CurrencyProperties;
+import com.maimai.billingcalculationengine.common.properties.HoldingsProperties;
+import com.maimai.billingcalculationengine.model.calculation.BatchCalculationResult;
+import com.maimai.billingcalculationengine.model.entity.Portfolio;
+import com.maimai.billingcalculationengine.service.BatchCalculationService;
+import com.maimai.billingcalculationengine.service.BillingTierIndex;
+import com.maimai.billingcalculationengine.service.CalculationService;
+import com.maimai.billingcalculationengine.service.FxRateIndex;
+import com.maimai.billingcalculationengine.service.HoldingsSnapshot;
+import com.maimai.billingcalculationengine.service.HoldingsStore;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fee engine hot paths over a generated book of {@code assetCount} assets.
+ * The per-portfolio benchmarks cycle through the book's portfolios, one portfolio per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CalculationBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int assetCount;
+
+    private BookGenerator.Book book;
+    private List<Portfolio> portfolios;
+    private BigDecimal[] portfolioAums;
+    private BillingTierIndex.Snapshot billingTiers;
+    private FxRateIndex.Matrix fxRates;
+    private CalculationService calculationService;
+    private BatchCalculationService batchCalculationService;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        book = BookGenerator.generate(assetCount);
+        portfolios = book.portfolios();
+
+        BillingTierIndex billingTierIndex = new BillingTierIndex();
+        ReflectionTestUtils.setField(billingTierIndex, "billingTierRepository", InMemoryRepositories.billingTierRepository(book));
+        billingTiers = billingTierIndex.current();
+
+        CurrencyProperties currencyProperties = new CurrencyProperties();
+        currencyProperties.setToUSD(0.71);
+
+        FxRateIndex fxRateIndex = new FxRateIndex();
+        ReflectionTestUtils.setField(fxRateIndex, "fxRateRepository", InMemoryRepositories.fxRateRepository());
+        ReflectionTestUtils.setField(fxRateIndex, "currencyProperties", currencyProperties);
+        fxRates = fxRateIndex.current();
+
+        calculationService = new CalculationService();
+        ReflectionTestUtils.setField(calculationService, "assetRepository", InMemoryRepositories.assetRepository(book));
+        ReflectionTestUtils.setField(calculationService, "clientRepository", InMemoryRepositories.clientRepository(book));
+        ReflectionTestUtils.setField(calculationService, "portfolioRepository", InMemoryRepositories.portfolioRepository(book));
+        ReflectionTestUtils.setField(calculationService, "billingTierIndex", billingTierIndex);
+        ReflectionTestUtils.setField(calculationService, "fxRateIndex", fxRateIndex);
+
+        HoldingsStore holdingsStore = new HoldingsStore();
+        ReflectionTestUtils.setField(holdingsStore, "holdingsRepository", InMemoryRepositories.holdingsRepository(book));
+        // no snapshot file, the store is loaded from the book
+        HoldingsProperties holdingsProperties = new HoldingsProperties();
+        holdingsProperties.setSnapshotEnabled(false);
+        HoldingsSnapshot holdingsSnapshot = new HoldingsSnapshot();
+        ReflectionTestUtils.setField(holdingsSnapshot, "holdingsProperties", holdingsProperties);
+        ReflectionTestUtils.setField(holdingsStore, "holdingsSnapshot", holdingsSnapshot);
+        holdingsStore.current();
+
+        batchCalculationService = new BatchCalculationService();
+        ReflectionTestUtils.setField(batchCalculationService, "clientRepository", InMemoryRepositories.clientRepository(book));
+        ReflectionTestUtils.setField(batchCalculationService, "portfolioRepository", InMemoryRepositories.portfolioRepository(book));
+        ReflectionTestUtils.setField(batchCalculationService, "billingTierIndex", billingTierIndex);
+        ReflectionTestUtils.setField(batchCalculationService, "fxRateIndex", fxRateIndex);
+        ReflectionTestUtils.setField(batchCalculationService, "holdingsStore", holdingsStore);
+
+        portfolioAums = portfolios.stream().map(calculationService::calculatePortfolioAum).toArray(BigDecimal[]::new);
+    }
+
+    private int nextPortfolio() {
+        int index = next;
+        next = index + 1 == portfolios.size() ? 0 : index + 1;
+        return index;
+    }
+
+    @Benchmark
+    public BigDecimal calculatePortfolioAum() {
+        return calculationService.calculatePortfolioAum(portfolios.get(nextPortfolio()));
+    }
+
+    @Benchmark
+    public BigDecimal calculatePortfolioFee() {
+        int index = nextPortfolio();
+        return calculationService.calculatePortfolioFee(portfolioAums[index], portfolios.get(index));
+    }
+
+    @Benchmark
+    public BigDecimal calculateEffectiveFeeRate() {
+        int index = nextPortfolio();
+        BigDecimal aum = portfolioAums[index];
+        return calculationService.calculateEffectiveFeeRate(calculationService.calculateFee(aum, new BigDecimal("1.25")), aum);
+    }
+
+    /**
+     * The whole book in one set-based pass, converting every USD asset to CAD.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BatchCalculationResult calculateBook() {
+        return batchCalculationService.calculate(book.clients(), book.portfolios(), book.assets(), billingTiers, fxRates);
+    }
+
+    /**
+     * The whole book scanned from the columnar holdings store, as the latest whole-book calculation runs.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BatchCalculationResult calculateBookFromHoldings() {
+        return batchCalculationService.calculateAllClients();
+    }
+}
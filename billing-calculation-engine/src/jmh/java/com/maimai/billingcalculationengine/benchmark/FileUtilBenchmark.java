@@ -0,0 +1,95 @@
+package com.maimai.billingcalculationengine.benchmark;
+
+import com.maimai.billingcalculationengine.common.excel.SheetCell;
+import com.maimai.billingcalculationengine.common.excel.SheetRow;
+import com.maimai.billingcalculationengine.common.utils.FileUtil;
+import com.maimai.billingcalculationengine.model.entity.Asset;
+import org.apache.poi.ss.usermodel.CellType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cell parsing of asset rows, the widest sheet of an upload, as the upload reads them:
+ * strings for ids and currency, a number for the value and a date-formatted number or an ISO string for the date.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileUtilBenchmark {
+    private static final int ROWS = 1024;
+    private static final short DATE_FORMAT = 14;
+
+    private SheetRow[] rows;
+    private SheetRow[] rowsWithTextDates;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Asset> assets = BookGenerator.generate(ROWS).assets();
+        rows = new SheetRow[ROWS];
+        rowsWithTextDates = new SheetRow[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            Asset asset = assets.get(i);
+            SheetCell assetId = text(" " + asset.getAssetId() + " ");
+            SheetCell portfolioId = text(asset.getPortfolioId());
+            SheetCell value = new SheetCell(CellType.NUMERIC, null, asset.getAssetValue().doubleValue(), (short) 0, "General", null);
+            SheetCell currency = text(asset.getCurrency());
+            SheetCell date = new SheetCell(CellType.NUMERIC, null, 0, DATE_FORMAT, "m/d/yy", asset.getDate().atStartOfDay());
+
+            rows[i] = new SheetRow(i + 1, new SheetCell[]{assetId, portfolioId, value, currency, date});
+            rowsWithTextDates[i] = new SheetRow(i + 1, new SheetCell[]{assetId, portfolioId, value, currency,
+                    text(asset.getDate().toString())});
+        }
+    }
+
+    private static SheetCell text(String value) {
+        return new SheetCell(CellType.STRING, value, 0, (short) 0, "General", null);
+    }
+
+    private int nextRow() {
+        int index = next;
+        next = (index + 1) & (ROWS - 1);
+        return index;
+    }
+
+    @Benchmark
+    public String getCellValueAsString() {
+        return FileUtil.getCellValueAsString(rows[nextRow()], 0);
+    }
+
+    @Benchmark
+    public BigDecimal getCellValueAsBigDecimal() {
+        return FileUtil.getCellValueAsBigDecimal(rows[nextRow()], 2);
+    }
+
+    @Benchmark
+    public LocalDate getCellValueAsDate() {
+        return FileUtil.getCellValueAsDate(rows[nextRow()], 4);
+    }
+
+    @Benchmark
+    public LocalDate getCellValueAsDate_Text() {
+        return FileUtil.getCellValueAsDate(rowsWithTextDates[nextRow()], 4);
+    }
+
+    /**
+     * Every cell of one asset row, the per-row parsing cost of the assets sheet.
+     */
+    @Benchmark
+    public void parseAssetRow(Blackhole blackhole) {
+        SheetRow row = rows[nextRow()];
+        blackhole.consume(FileUtil.getCellValueAsString(row, 0));
+        blackhole.consume(FileUtil.getCellValueAsString(row, 1));
+        blackhole.consume(FileUtil.getCellValueAsBigDecimal(row, 2));
+        blackhole.consume(FileUtil.getCellValueAsString(row, 3));
+        blackhole.consume(FileUtil.getCellValueAsDate(row, 4));
+    }
+}
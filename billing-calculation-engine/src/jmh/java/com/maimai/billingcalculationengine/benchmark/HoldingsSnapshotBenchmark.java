@@ -0,0 +1,73 @@
+package com.maimai.billingcalculationengine.benchmark;
+
+import com.maimai.billingcalculationengine.common.properties.HoldingsProperties;
+import com.maimai.billingcalculationengine.service.HoldingsSnapshot;
+import com.maimai.billingcalculationengine.service.HoldingsStore;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the holdings store at startup: building it from the latest valuation of every asset, as read from
+ * the database, against mapping its snapshot file. The valuations come from a generated book in memory, so the
+ * load score excludes the query itself and understates what a restart saves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class HoldingsSnapshotBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int assetCount;
+
+    private Path directory;
+    private HoldingsStore holdingsStore;
+    private HoldingsSnapshot holdingsSnapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BookGenerator.Book book = BookGenerator.generate(assetCount);
+        directory = Files.createTempDirectory("benchmark-holdings-");
+
+        // the store reloads from the book on every operation and leaves the snapshot alone
+        HoldingsProperties storeProperties = new HoldingsProperties();
+        storeProperties.setSnapshotEnabled(false);
+        HoldingsSnapshot disabledSnapshot = new HoldingsSnapshot();
+        ReflectionTestUtils.setField(disabledSnapshot, "holdingsProperties", storeProperties);
+        holdingsStore = new HoldingsStore();
+        ReflectionTestUtils.setField(holdingsStore, "holdingsRepository", InMemoryRepositories.holdingsRepository(book));
+        ReflectionTestUtils.setField(holdingsStore, "holdingsSnapshot", disabledSnapshot);
+
+        HoldingsProperties snapshotProperties = new HoldingsProperties();
+        snapshotProperties.setSnapshotFile(directory.resolve("holdings.snapshot").toString());
+        holdingsSnapshot = new HoldingsSnapshot();
+        ReflectionTestUtils.setField(holdingsSnapshot, "holdingsProperties", snapshotProperties);
+        ReflectionTestUtils.setField(holdingsSnapshot, "fileUploadRepository", InMemoryRepositories.fileUploadRepository());
+        HoldingsStore.Holdings holdings = holdingsStore.current();
+        holdingsSnapshot.save(() -> holdings);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        holdingsSnapshot.delete();
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public HoldingsStore.Holdings loadFromValuations() {
+        holdingsStore.invalidate();
+        return holdingsStore.current();
+    }
+
+    @Benchmark
+    public HoldingsStore.Holdings readSnapshot() {
+        return holdingsSnapshot.read().orElseThrow();
+    }
+}
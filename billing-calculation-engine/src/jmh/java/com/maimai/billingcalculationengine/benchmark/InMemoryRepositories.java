@@ -0,0 +1,121 @@
+package com.maimai.billingcalculationengine.benchmark;
+
+import com.maimai.billingcalculationengine.model.entity.Asset;
+import com.maimai.billingcalculationengine.model.entity.Client;
+import com.maimai.billingcalculationengine.model.entity.Portfolio;
+import com.maimai.billingcalculationengine.model.projection.PortfolioAum;
+import com.maimai.billingcalculationengine.repository.AssetRepository;
+import com.maimai.billingcalculationengine.repository.BillingTierRepository;
+import com.maimai.billingcalculationengine.repository.ClientRepository;
+import com.maimai.billingcalculationengine.repository.FileUploadRepository;
+import com.maimai.billingcalculationengine.repository.FxRateRepository;
+import com.maimai.billingcalculationengine.repository.HoldingsRepository;
+import com.maimai.billingcalculationengine.repository.PortfolioRepository;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Repositories answered from a generated book held in memory, so benchmarks measure the
+ * calculation and parsing code rather than a database. Only the finders the benchmarked code
+ * calls are implemented; anything else throws {@link UnsupportedOperationException}.
+ */
+final class InMemoryRepositories {
+
+    private InMemoryRepositories() {
+    }
+
+    // a generated book has one valuation per asset, so the latest as of a date is just a date filter before summing
+    static AssetRepository assetRepository(BookGenerator.Book book) {
+        Map<String, List<Asset>> assetsByPortfolioId = book.assets().stream()
+                .collect(Collectors.groupingBy(Asset::getPortfolioId));
+        return repository(AssetRepository.class, Map.of(
+                "findAll", args -> book.assets(),
+                "findAllByPortfolioId", args -> assetsByPortfolioId.getOrDefault((String) args[0], List.of()),
+                "sumLatestAumByPortfolioIdInAsOf", args -> sumAum(((Collection<String>) args[0]).stream()
+                        .flatMap(portfolioId -> assetsByPortfolioId.getOrDefault(portfolioId, List.of()).stream()), (LocalDate) args[1]),
+                "sumAllLatestAumAsOf", args -> sumAum(book.assets().stream(), (LocalDate) args[0])));
+    }
+
+    // what the aggregate queries return: one row per portfolio, currency and valuation date on or before the date
+    private static List<PortfolioAum> sumAum(Stream<Asset> assets, LocalDate asOfDate) {
+        Map<List<Object>, BigDecimal> aumByGroup = new LinkedHashMap<>();
+        assets.filter(asset -> !asset.getDate().isAfter(asOfDate))
+                .forEach(asset -> aumByGroup.merge(List.of(asset.getPortfolioId(), asset.getCurrency(), asset.getDate()),
+                        asset.getAssetValue(), BigDecimal::add));
+        return aumByGroup.entrySet().stream()
+                .map(entry -> PortfolioAum.of((String) entry.getKey().get(0), (String) entry.getKey().get(1),
+                        entry.getValue(), (LocalDate) entry.getKey().get(2)))
+                .toList();
+    }
+
+    // every asset of a generated book is a holding
+    static HoldingsRepository holdingsRepository(BookGenerator.Book book) {
+        return new HoldingsRepository() {
+            @Override
+            public void forEachLatestValuation(ValuationHandler handler) {
+                book.assets().forEach(asset -> handler.accept(asset.getPortfolioId(), asset.getAssetId(),
+                        asset.getAssetValue(), asset.getCurrency(), asset.getDate()));
+            }
+        };
+    }
+
+    static ClientRepository clientRepository(BookGenerator.Book book) {
+        Map<String, Client> clientsById = book.clients().stream()
+                .collect(Collectors.toMap(Client::getClientId, Function.identity()));
+        return repository(ClientRepository.class, Map.of(
+                "findAll", args -> book.clients(),
+                "findByClientId", args -> Optional.ofNullable(clientsById.get((String) args[0])),
+                "findAllByClientIdIn", args -> ((Collection<String>) args[0]).stream()
+                        .map(clientsById::get).filter(Objects::nonNull).toList(),
+                "streamAllClientIds", args -> Stream.<String>empty()));
+    }
+
+    static PortfolioRepository portfolioRepository(BookGenerator.Book book) {
+        return repository(PortfolioRepository.class, Map.of(
+                "findAll", args -> book.portfolios(),
+                "streamAllPortfolioIds", args -> Stream.<String>empty()));
+    }
+
+    // no upload is completed yet
+    static FileUploadRepository fileUploadRepository() {
+        return repository(FileUploadRepository.class, Map.of(
+                "findLatestUploadIdWhereStatusCompleted", args -> Optional.empty()));
+    }
+
+    static BillingTierRepository billingTierRepository(BookGenerator.Book book) {
+        return repository(BillingTierRepository.class, Map.of(
+                "findAll", args -> book.billingTiers()));
+    }
+
+    // a generated book carries no stored rates, its USD assets convert at the configured default rate
+    static FxRateRepository fxRateRepository() {
+        return repository(FxRateRepository.class, Map.of(
+                "findAll", args -> List.of()));
+    }
+
+    private static <R> R repository(Class<R> type, Map<String, Function<Object[], Object>> finders) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) -> {
+            switch (method.getName()) {
+                case "toString":
+                    return "InMemory" + type.getSimpleName();
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "equals":
+                    return self == args[0];
+                default:
+                    Function<Object[], Object> finder = finders.get(method.getName());
+                    if (finder == null) {
+                        throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName());
+                    }
+                    return finder.apply(args);
+            }
+        });
+        return type.cast(proxy);
+    }
+}
@@ -0,0 +1,124 @@
+package com.maimai.billingcalculationengine.benchmark;
+
+import com.maimai.billingcalculationengine.common.properties.UploadProperties;
+import com.maimai.billingcalculationengine.model.calculation.SnapshotRefresh;
+import com.maimai.billingcalculationengine.model.entity.*;
+import com.maimai.billingcalculationengine.repository.BulkUpsertRepository;
+import com.maimai.billingcalculationengine.service.*;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full workbook ingestion through {@link FileUploadService#uploadTransactional}: reading, parsing and
+ * validating all four sheets, referential checks and buffering. The upserts, partition creation, snapshot
+ * refresh, holdings patch and dashboard update are stubbed out, so the score excludes the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class IngestionBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int assetCount;
+
+    // false loads the whole workbook with the usermodel instead of streaming it
+    @Param({"true"})
+    private boolean streaming;
+
+    private Path workbook;
+    private ForkJoinPool uploadParsePool;
+    private FileUploadService fileUploadService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BookGenerator.Book book = BookGenerator.generate(assetCount);
+        workbook = Files.createTempFile("benchmark-book-", ".xlsx");
+        BookGenerator.writeWorkbook(book, workbook);
+
+        UploadProperties uploadProperties = new UploadProperties();
+        uploadProperties.setStreaming(streaming);
+        uploadParsePool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+        BillingTierIndex billingTierIndex = new BillingTierIndex();
+        ReflectionTestUtils.setField(billingTierIndex, "billingTierRepository", InMemoryRepositories.billingTierRepository(book));
+
+        fileUploadService = new FileUploadService();
+        ReflectionTestUtils.setField(fileUploadService, "clientRepository", InMemoryRepositories.clientRepository(book));
+        ReflectionTestUtils.setField(fileUploadService, "portfolioRepository", InMemoryRepositories.portfolioRepository(book));
+        ReflectionTestUtils.setField(fileUploadService, "bulkUpsertRepository", new DiscardingBulkUpsertRepository());
+        ReflectionTestUtils.setField(fileUploadService, "billingTierIndex", billingTierIndex);
+        ReflectionTestUtils.setField(fileUploadService, "portfolioSnapshotService", new PortfolioSnapshotService() {
+            @Override
+            public SnapshotRefresh refresh(Collection<String> billingTierIds, Collection<String> clientIds,
+                                           Collection<String> portfolioIds) {
+                return SnapshotRefresh.empty();
+            }
+        });
+        ReflectionTestUtils.setField(fileUploadService, "dashboardAggregateService", new DashboardAggregateService() {
+            @Override
+            public void applyUpload(BigDecimal aumDelta, BigDecimal feeDelta, long clientCountDelta, LocalDate uploadDate) {
+            }
+        });
+        ReflectionTestUtils.setField(fileUploadService, "assetPartitionService", new AssetPartitionService() {
+            @Override
+            public void ensureMonthlyPartitions(Collection<YearMonth> months) {
+            }
+        });
+        ReflectionTestUtils.setField(fileUploadService, "holdingsStore", new HoldingsStore() {
+            @Override
+            public void applyAfterCommit(Collection<Asset> assets) {
+            }
+        });
+        ReflectionTestUtils.setField(fileUploadService, "uploadProperties", uploadProperties);
+        ReflectionTestUtils.setField(fileUploadService, "uploadProgressRegistry", new UploadProgressRegistry());
+        ReflectionTestUtils.setField(fileUploadService, "uploadParsePool", uploadParsePool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        uploadParsePool.shutdown();
+        Files.deleteIfExists(workbook);
+    }
+
+    @Benchmark
+    public String ingestWorkbook() throws Exception {
+        return fileUploadService.uploadTransactional(workbook, FileUploadRecord.builder().fileName("benchmark.xlsx").build(),
+                UploadProgressRegistry.UploadProgress.untracked());
+    }
+
+    // counts the rows it is given and writes nothing
+    private static class DiscardingBulkUpsertRepository extends BulkUpsertRepository {
+        @Override
+        public int upsertBillingTiers(Collection<BillingTier> billingTiers, int batchSize) {
+            return billingTiers.size();
+        }
+
+        @Override
+        public int upsertClients(Collection<Client> clients, int batchSize) {
+            return clients.size();
+        }
+
+        @Override
+        public int upsertPortfolios(Collection<Portfolio> portfolios, int batchSize) {
+            return portfolios.size();
+        }
+
+        @Override
+        public int upsertAssets(Collection<Asset> assets, int batchSize) {
+            return assets.size();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.maimai.billingcalculationengine.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.maimai.billingcalculationengine.common.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop HTTP load test of a running instance, to compare request handling on platform and virtual threads.
+ * <p>
+ * Each of {@code concurrency} clients sends the next request as soon as the previous one answered, cycling through
+ * the client, portfolio and dashboard reads that block on JDBC. The comparison runs the same load against both modes
+ * of the same build and database:
+ * <pre>
+ *   VIRTUAL_THREADS_ENABLED=false java -jar target/billing-calculation-engine-*.jar
+ *   mvn -P benchmark test-compile exec:exec@load-test -Dload.args="email=... password=... concurrency=400"
+ *   VIRTUAL_THREADS_ENABLED=true java -jar target/billing-calculation-engine-*.jar   (JDK 21+)
+ *   mvn -P benchmark test-compile exec:exec@load-test -Dload.args="email=... password=... concurrency=400"
+ * </pre>
+ * With platform threads, throughput stops growing once {@code concurrency} passes Tomcat's 200 threads and the
+ * extra clients queue for a thread. With virtual threads it stops at the HikariCP pool instead, so compare at a
+ * concurrency above both, and read {@code /api/v1/metrics/prometheus} for where the server spent the time.
+ * The response cache is on by default and serves repeated reads from memory, set
+ * {@code APP_RESPONSECACHE_ENABLED=false} on the server to measure the database path.
+ * <p>
+ * Options, as {@code name=value}: base-url, email and password to log in, or token; concurrency (200),
+ * warmup-seconds (10), seconds (30), client-id (first client), paths (comma-separated, replacing the default mix).
+ */
+public final class RequestLoadTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final String token;
+    private final List<String> paths;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile boolean recording;
+    private volatile boolean running = true;
+
+    private RequestLoadTest(HttpClient httpClient, String baseUrl, String token, List<String> paths) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl;
+        this.token = token;
+        this.paths = paths;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String baseUrl = options.getOrDefault("base-url", "http://localhost:8080");
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "200"));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup-seconds", "10"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        String token = options.containsKey("token")
+                ? options.get("token")
+                : login(httpClient, baseUrl, options.get("email"), options.get("password"));
+        List<String> paths = options.containsKey("paths")
+                ? List.of(options.get("paths").split(","))
+                : defaultPaths(httpClient, baseUrl, token, options.get("client-id"));
+
+        RequestLoadTest loadTest = new RequestLoadTest(httpClient, baseUrl, token, paths);
+        System.out.printf("Load test of %s with %d clients, %d s warmup and %d s measured, paths: %s%n",
+                baseUrl, concurrency, warmupSeconds, seconds, paths);
+        loadTest.run(concurrency, warmupSeconds, seconds);
+    }
+
+    private void run(int concurrency, int warmupSeconds, int seconds) throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(concurrency);
+        for (int client = 0; client < concurrency; client++) {
+            int offset = client;
+            Thread thread = new Thread(() -> {
+                try {
+                    runClient(offset);
+                } finally {
+                    finished.countDown();
+                }
+            }, "load-client-" + client);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        TimeUnit.SECONDS.sleep(warmupSeconds);
+        recording = true;
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(seconds);
+        recording = false;
+        long elapsedNanos = System.nanoTime() - start;
+        running = false;
+        finished.await(30, TimeUnit.SECONDS);
+
+        long requests = latencies.getCount();
+        System.out.printf("requests: %d, errors: %d, throughput: %.1f req/s%n",
+                requests, errors.get(), requests * 1e9 / elapsedNanos);
+        System.out.printf("latency ms - p50: %.2f, p95: %.2f, p99: %.2f, max: %.2f%n",
+                millis(latencies.percentileNanos(0.5)), millis(latencies.percentileNanos(0.95)),
+                millis(latencies.percentileNanos(0.99)), millis(latencies.getMaxNanos()));
+    }
+
+    // one closed-loop client, starting at its own place in the path cycle
+    private void runClient(int offset) {
+        int next = offset % paths.size();
+        while (running) {
+            String path = paths.get(next);
+            next = next + 1 == paths.size() ? 0 : next + 1;
+            long start = System.nanoTime();
+            boolean ok;
+            try {
+                HttpResponse<Void> response = httpClient.send(request(baseUrl + path, token).GET().build(),
+                        HttpResponse.BodyHandlers.discarding());
+                ok = response.statusCode() == 200;
+            } catch (IOException e) {
+                ok = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!recording) continue;
+            if (ok) {
+                latencies.record(System.nanoTime() - start);
+            } else {
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    private static String login(HttpClient httpClient, String baseUrl, String email, String password) throws Exception {
+        if (email == null || password == null) {
+            throw new IllegalArgumentException("Pass token, or email and password to log in");
+        }
+        String body = OBJECT_MAPPER.writeValueAsString(Map.of("email", email, "password", password));
+        HttpResponse<String> response = httpClient.send(request(baseUrl + "/api/v1/auth/login", null)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        JsonNode token = OBJECT_MAPPER.readTree(response.body()).path("data").path("token");
+        if (token.isMissingNode() || token.isNull()) {
+            throw new IllegalStateException("Login failed: " + response.body());
+        }
+        return token.asText();
+    }
+
+    // the client-facing reads: a page of clients, one client, its portfolios and the dashboard
+    private static List<String> defaultPaths(HttpClient httpClient, String baseUrl, String token, String clientId)
+            throws Exception {
+        if (clientId == null) {
+            HttpResponse<String> response = httpClient.send(request(baseUrl + "/api/v1/clients/page?size=1", token)
+                    .GET().build(), HttpResponse.BodyHandlers.ofString());
+            JsonNode clients = OBJECT_MAPPER.readTree(response.body()).path("data").path("clients");
+            if (clients.isEmpty()) throw new IllegalStateException("No clients to load test, upload a book first");
+            clientId = clients.get(0).path("clientId").asText();
+        }
+        return List.of(
+                "/api/v1/clients/page?size=50",
+                "/api/v1/clients/" + clientId,
+                "/api/v1/portfolios/client/" + clientId,
+                "/api/v1/dashboard/summary");
+    }
+
+    private static HttpRequest.Builder request(String url, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(30));
+        return token == null ? builder : builder.header("Authorization", "Bearer " + token);
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String option = arg.startsWith("--") ? arg.substring(2) : arg;
+            int separator = option.indexOf('=');
+            if (separator <= 0) throw new IllegalArgumentException("Expected name=value but got " + arg);
+            options.put(option.substring(0, separator), option.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
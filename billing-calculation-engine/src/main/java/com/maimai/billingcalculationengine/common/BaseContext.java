@@ -1,17 +1,74 @@
 package com.maimai.billingcalculationengine.common;
 
-public class BaseContext {
-    public static ThreadLocal<Long> threadLocal = new ThreadLocal<>();
+import java.util.concurrent.Callable;
+
+/**
+ * Id of the user the current request or job runs for.
+ * <p>
+ * Bound by JwtTokenInterceptor for the duration of a request and removed when it completes, so a pooled
+ * thread never carries it into the next request. It is never inherited by new threads: work handed to another
+ * thread is wrapped with {@link #wrap}, which binds the submitter's id for the task and restores the worker's
+ * own binding afterwards. That keeps it one plain thread-local slot per thread, as cheap on virtual threads,
+ * which are created per task, as on pooled platform threads.
+ */
+public final class BaseContext {
+    private static final ThreadLocal<Long> CURRENT_ID = new ThreadLocal<>();
+
+    private BaseContext() {
+    }
 
     public static void setCurrentId(Long id) {
-        threadLocal.set(id);
+        CURRENT_ID.set(id);
     }
 
     public static Long getCurrentId() {
-        return threadLocal.get();
+        return CURRENT_ID.get();
     }
 
     public static void removeCurrentId() {
-        threadLocal.remove();
+        CURRENT_ID.remove();
+    }
+
+    /**
+     * @param task The task to run on another thread
+     * @return The task running as the current user, wherever it runs
+     */
+    public static Runnable wrap(Runnable task) {
+        Long userId = getCurrentId();
+        return () -> {
+            Long previous = bind(userId);
+            try {
+                task.run();
+            } finally {
+                bind(previous);
+            }
+        };
+    }
+
+    /**
+     * @param task The task to run on another thread
+     * @return The task running as the current user, wherever it runs
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        Long userId = getCurrentId();
+        return () -> {
+            Long previous = bind(userId);
+            try {
+                return task.call();
+            } finally {
+                bind(previous);
+            }
+        };
+    }
+
+    // binds an id, or removes the binding for null, and returns the one it replaced
+    private static Long bind(Long userId) {
+        Long previous = CURRENT_ID.get();
+        if (userId == null) {
+            CURRENT_ID.remove();
+        } else {
+            CURRENT_ID.set(userId);
+        }
+        return previous;
     }
 }
@@ -2,6 +2,8 @@ package com.maimai.billingcalculationengine.common.aspect;
 
 import com.maimai.billingcalculationengine.common.annotations.TrackExecution;
 import com.maimai.billingcalculationengine.common.enums.Layer;
+import com.maimai.billingcalculationengine.common.metrics.ExecutionMetrics;
+import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
@@ -10,37 +12,49 @@ import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.stereotype.Component;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
 /**
- * Aspect for automatically filling timestamps in entities
- * Works with @TimeStamp annotation to set createTime and updateTime
+ * Aspect timing the methods annotated with @TrackExecution
+ * Records each call in the method's latency histogram, see {@link ExecutionMetrics}, and logs it at debug level
  */
 @Aspect
 @Component
 @Slf4j
 public class EnhancedLoggingAspect {
 
+    @Resource
+    private ExecutionMetrics executionMetrics;
+
     @Pointcut("@annotation(com.maimai.billingcalculationengine.common.annotations.TrackExecution)")
     public void trackExecutionPointcut() {}
 
     @Around("trackExecutionPointcut()")
     public Object logExecutionTime(ProceedingJoinPoint jp) throws Throwable {
-        MethodSignature signature = (MethodSignature) jp.getSignature();
-        TrackExecution annotation = signature.getMethod().getAnnotation(TrackExecution.class);
-        Layer layer = annotation.value();
-
-        String methodPath = jp.getSignature().getDeclaringTypeName() + "." + jp.getSignature().getName();
-
-        long startTime = System.currentTimeMillis();
-
-        log.debug("[{}] Enter: {}", layer, methodPath);
-
-        // execute method
-        Object result = jp.proceed();
-
-        long executionTime = System.currentTimeMillis() - startTime;
-
-        log.debug("[{}] Exit: {} Time taken: {}ms", layer, methodPath, executionTime);
-
-        return result;
+        Method method = ((MethodSignature) jp.getSignature()).getMethod();
+        Layer layer = method.getAnnotation(TrackExecution.class).value();
+        boolean debug = log.isDebugEnabled();
+        if (!executionMetrics.isEnabled() && !debug) return jp.proceed();
+
+        ExecutionMetrics.MethodTimer timer = executionMetrics.timer(method, layer);
+        boolean sampled = executionMetrics.sample();
+        if (debug) log.debug("[{}] Enter: {}", layer, timer.getMethod());
+
+        long startTime = sampled || debug ? System.nanoTime() : 0;
+        boolean success = false;
+        try {
+            // execute method
+            Object result = jp.proceed();
+            success = true;
+            return result;
+        } finally {
+            long executionTime = sampled || debug ? System.nanoTime() - startTime : -1;
+            if (executionMetrics.isEnabled()) timer.record(success, sampled ? executionTime : -1);
+            if (debug) {
+                log.debug("[{}] Exit: {} Time taken: {}ms{}", layer, timer.getMethod(),
+                        TimeUnit.NANOSECONDS.toMillis(executionTime), success ? "" : " (failed)");
+            }
+        }
     }
 }
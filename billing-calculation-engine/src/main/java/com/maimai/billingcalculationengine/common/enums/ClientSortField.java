@@ -0,0 +1,35 @@
+package com.maimai.billingcalculationengine.common.enums;
+
+/**
+ * Orders a client listing can be sorted by. Every order ends on the client ID, so it is total
+ * and a page can continue after the last client of the previous one.
+ */
+public enum ClientSortField {
+    CLIENT_ID("clientId", "client_id"),
+    CLIENT_NAME("clientName", "client_name");
+
+    private final String fieldName;
+    private final String columnName;
+
+    ClientSortField(String fieldName, String columnName) {
+        this.fieldName = fieldName;
+        this.columnName = columnName;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public static ClientSortField fromString(String fieldName) {
+        for (ClientSortField field : values()) {
+            if (field.fieldName.equalsIgnoreCase(fieldName)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown client sort field: " + fieldName);
+    }
+}
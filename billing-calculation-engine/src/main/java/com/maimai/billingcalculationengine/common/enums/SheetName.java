@@ -4,7 +4,8 @@ public enum SheetName {
     CLIENT_BILLING("client_billing"),
     PORTFOLIO("portfolio"),
     ASSETS("assets"),
-    BILLING_TIER("billing_tier");
+    BILLING_TIER("billing_tier"),
+    FX_RATE("fx_rate");
 
     private final String sheetName;
 
@@ -0,0 +1,22 @@
+package com.maimai.billingcalculationengine.common.enums;
+
+/**
+ * Phases of an upload timed in its profile.
+ * Parse, validate, lookup and write are timed per sheet, open, refresh and commit once per upload.
+ */
+public enum UploadPhase {
+    // opening the workbook, plus loading it and copying its rows when it is not streamed
+    OPEN,
+    // reading the rows of a sheet
+    PARSE,
+    // checking the header and turning each row into its entity
+    VALIDATE,
+    // loading the keys that referential checks need from the database
+    LOOKUP,
+    // checking references, buffering the rows and upserting them
+    WRITE,
+    // refreshing the portfolio snapshots and dashboard totals of the upload
+    REFRESH,
+    // committing the upload's transaction
+    COMMIT
+}
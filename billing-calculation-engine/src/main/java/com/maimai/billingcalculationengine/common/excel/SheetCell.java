@@ -0,0 +1,59 @@
+package com.maimai.billingcalculationengine.common.excel;
+
+import lombok.Getter;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.time.LocalDateTime;
+
+/**
+ * Immutable copy of a single spreadsheet cell.
+ * Holds only what the upload pipeline reads from a cell, so rows can be produced by either
+ * the streaming reader or a loaded workbook and outlive the workbook they came from.
+ */
+@Getter
+public class SheetCell {
+    private final CellType cellType;
+    private final String stringValue;
+    private final double numericValue;
+    private final short dataFormat;
+    private final String dataFormatString;
+    // set only for numeric cells with a date format
+    private final LocalDateTime dateTimeValue;
+
+    public SheetCell(CellType cellType, String stringValue, double numericValue,
+                     short dataFormat, String dataFormatString, LocalDateTime dateTimeValue) {
+        this.cellType = cellType;
+        this.stringValue = stringValue;
+        this.numericValue = numericValue;
+        this.dataFormat = dataFormat;
+        this.dataFormatString = dataFormatString;
+        this.dateTimeValue = dateTimeValue;
+    }
+
+    public static SheetCell of(Cell cell) {
+        CellStyle style = cell.getCellStyle();
+        short dataFormat = style == null ? 0 : style.getDataFormat();
+        String dataFormatString = style == null ? "General" : style.getDataFormatString();
+
+        switch (cell.getCellType()) {
+            case STRING:
+                return new SheetCell(CellType.STRING, cell.getStringCellValue(), 0, dataFormat, dataFormatString, null);
+            case NUMERIC:
+                LocalDateTime dateTimeValue = DateUtil.isCellDateFormatted(cell) ? cell.getLocalDateTimeCellValue() : null;
+                return new SheetCell(CellType.NUMERIC, null, cell.getNumericCellValue(), dataFormat, dataFormatString, dateTimeValue);
+            default:
+                return new SheetCell(cell.getCellType(), null, 0, dataFormat, dataFormatString, null);
+        }
+    }
+
+    public boolean isDateFormatted() {
+        return dateTimeValue != null;
+    }
+
+    public boolean isPercentageFormatted() {
+        return dataFormat == 10 || (dataFormatString != null && dataFormatString.contains("%"));
+    }
+}
@@ -0,0 +1,44 @@
+package com.maimai.billingcalculationengine.common.excel;
+
+import lombok.Getter;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+
+/**
+ * Immutable copy of a spreadsheet row, indexed by zero-based column.
+ * Missing cells are null, the same as {@link Row#getCell(int)}.
+ */
+public class SheetRow {
+    @Getter
+    private final int rowNum;
+    private final SheetCell[] cells;
+
+    public SheetRow(int rowNum, SheetCell[] cells) {
+        this.rowNum = rowNum;
+        this.cells = cells;
+    }
+
+    public static SheetRow of(Row row) {
+        int lastCellNum = Math.max(row.getLastCellNum(), 0);
+        SheetCell[] cells = new SheetCell[lastCellNum];
+        for (int i = 0; i < lastCellNum; i++) {
+            Cell cell = row.getCell(i);
+            if (cell != null) {
+                cells[i] = SheetCell.of(cell);
+            }
+        }
+        return new SheetRow(row.getRowNum(), cells);
+    }
+
+    public SheetCell getCell(int columnIndex) {
+        if (columnIndex < 0 || columnIndex >= cells.length) return null;
+        return cells[columnIndex];
+    }
+
+    /**
+     * @return One more than the index of the last cell, like {@link Row#getLastCellNum()}
+     */
+    public int getLastCellNum() {
+        return cells.length;
+    }
+}
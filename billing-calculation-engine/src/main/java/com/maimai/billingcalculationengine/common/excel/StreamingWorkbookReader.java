@@ -0,0 +1,258 @@
+package com.maimai.billingcalculationengine.common.excel;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorkbookPr;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.WorkbookDocument;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Reads .xlsx sheets row by row with POI's event (SAX) API.
+ * <p>
+ * Only the shared-strings table and cell styles are held in memory; sheet XML is parsed as a
+ * stream and each row is handed to the caller as a {@link SheetRow} before the next one is read,
+ * so heap use does not grow with the number of rows.
+ * Sheets can be read in any order, also concurrently from several threads, and sheet names are
+ * matched case-insensitively like {@code Workbook.getSheet}.
+ */
+@Slf4j
+public class StreamingWorkbookReader implements Closeable {
+    private final OPCPackage opcPackage;
+    private final ReadOnlySharedStringsTable sharedStrings;
+    // number format of each cell style, resolved once so sheet parsing never touches the styles XML
+    private final short[] styleDataFormats;
+    private final String[] styleDataFormatStrings;
+    private final boolean date1904;
+    private final Map<String, PackagePart> sheetParts = new LinkedHashMap<>();
+
+    private StreamingWorkbookReader(OPCPackage opcPackage) throws IOException, OpenXML4JException, SAXException {
+        this.opcPackage = opcPackage;
+        XSSFReader xssfReader = new XSSFReader(opcPackage);
+        this.sharedStrings = new ReadOnlySharedStringsTable(opcPackage);
+        StylesTable stylesTable = xssfReader.getStylesTable();
+        int styleCount = stylesTable == null ? 0 : stylesTable.getNumCellStyles();
+        this.styleDataFormats = new short[styleCount];
+        this.styleDataFormatStrings = new String[styleCount];
+        for (int i = 0; i < styleCount; i++) {
+            XSSFCellStyle style = stylesTable.getStyleAt(i);
+            styleDataFormats[i] = style.getDataFormat();
+            styleDataFormatStrings[i] = style.getDataFormatString();
+        }
+        this.date1904 = readDate1904(xssfReader);
+
+        XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+        while (sheets.hasNext()) {
+            sheets.next().close();
+            sheetParts.put(sheets.getSheetName().toLowerCase(Locale.ROOT), sheets.getSheetPart());
+        }
+    }
+
+    /**
+     * Opens a workbook file for streaming reads.
+     *
+     * @param file The .xlsx file on disk
+     * @return The reader, which must be closed
+     * @throws IOException if the file is not a valid .xlsx workbook
+     */
+    public static StreamingWorkbookReader open(File file) throws IOException {
+        OPCPackage opcPackage = null;
+        try {
+            opcPackage = OPCPackage.open(file, PackageAccess.READ);
+            return new StreamingWorkbookReader(opcPackage);
+        } catch (Exception e) {
+            if (opcPackage != null) {
+                opcPackage.revert();
+            }
+            throw new IOException("Invalid Excel File Format", e);
+        }
+    }
+
+    public boolean hasSheet(String sheetName) {
+        return sheetParts.containsKey(sheetName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Streams every row of a sheet, in file order, to the consumer.
+     * Safe to call concurrently for different sheets.
+     *
+     * @param sheetName The sheet name
+     * @param rowConsumer Receives each row, including rows without cells
+     * @throws IOException if the sheet cannot be read or parsed
+     */
+    public void readSheet(String sheetName, Consumer<SheetRow> rowConsumer) throws IOException {
+        PackagePart sheetPart = sheetParts.get(sheetName.toLowerCase(Locale.ROOT));
+        if (sheetPart == null) {
+            throw new IllegalArgumentException("Sheet not found: " + sheetName);
+        }
+
+        try (InputStream sheetData = sheetPart.getInputStream()) {
+            XMLReader xmlReader = XMLHelper.newXMLReader();
+            xmlReader.setContentHandler(new SheetHandler(rowConsumer));
+            xmlReader.parse(new InputSource(sheetData));
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("Failed to read sheet " + sheetName, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        // opened read-only, nothing to save
+        opcPackage.revert();
+    }
+
+    private static boolean readDate1904(XSSFReader xssfReader) {
+        try (InputStream workbookData = xssfReader.getWorkbookData()) {
+            CTWorkbookPr workbookPr = WorkbookDocument.Factory.parse(workbookData).getWorkbook().getWorkbookPr();
+            return workbookPr != null && workbookPr.getDate1904();
+        } catch (Exception e) {
+            log.warn("Could not read workbook date system, assuming 1900: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * SAX handler for one worksheet part; builds a SheetRow per {@code <row>} element.
+     */
+    private class SheetHandler extends DefaultHandler {
+        private final Consumer<SheetRow> rowConsumer;
+        private final StringBuilder text = new StringBuilder();
+
+        private int rowNum = -1;
+        private final List<SheetCell> rowCells = new ArrayList<>();
+
+        private int columnIndex;
+        private String cellType;
+        private String cellStyle;
+        private String cellValue;
+        private boolean hasFormula;
+        private boolean inValue;
+        private boolean inInlineString;
+
+        SheetHandler(Consumer<SheetRow> rowConsumer) {
+            this.rowConsumer = rowConsumer;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (elementName(localName, qName)) {
+                case "row" -> {
+                    String reference = attributes.getValue("r");
+                    rowNum = reference != null ? Integer.parseInt(reference) - 1 : rowNum + 1;
+                    rowCells.clear();
+                }
+                case "c" -> {
+                    String reference = attributes.getValue("r");
+                    columnIndex = reference != null ? new CellReference(reference).getCol() : rowCells.size();
+                    cellType = attributes.getValue("t");
+                    cellStyle = attributes.getValue("s");
+                    cellValue = null;
+                    hasFormula = false;
+                }
+                case "f" -> hasFormula = true;
+                case "v" -> {
+                    inValue = true;
+                    text.setLength(0);
+                }
+                case "is" -> {
+                    inInlineString = true;
+                    text.setLength(0);
+                }
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (elementName(localName, qName)) {
+                case "v" -> {
+                    inValue = false;
+                    cellValue = text.toString();
+                }
+                case "is" -> {
+                    inInlineString = false;
+                    cellValue = text.toString();
+                }
+                case "c" -> {
+                    while (rowCells.size() <= columnIndex) {
+                        rowCells.add(null);
+                    }
+                    rowCells.set(columnIndex, buildCell());
+                }
+                case "row" -> rowConsumer.accept(new SheetRow(rowNum, rowCells.toArray(new SheetCell[0])));
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            // inline strings may be split into several <t> runs, all of them are collected
+            if (inValue || inInlineString) {
+                text.append(ch, start, length);
+            }
+        }
+
+        private SheetCell buildCell() {
+            int styleIndex = cellStyle != null ? Integer.parseInt(cellStyle) : 0;
+            boolean hasStyle = styleIndex < styleDataFormats.length;
+            short dataFormat = hasStyle ? styleDataFormats[styleIndex] : 0;
+            String dataFormatString = hasStyle ? styleDataFormatStrings[styleIndex] : "General";
+
+            if (hasFormula) {
+                return new SheetCell(CellType.FORMULA, null, 0, dataFormat, dataFormatString, null);
+            }
+            if (cellValue == null) {
+                return new SheetCell(CellType.BLANK, null, 0, dataFormat, dataFormatString, null);
+            }
+
+            switch (cellType == null ? "n" : cellType) {
+                case "s":
+                    String sharedString = sharedStrings.getItemAt(Integer.parseInt(cellValue)).getString();
+                    return new SheetCell(CellType.STRING, sharedString, 0, dataFormat, dataFormatString, null);
+                case "inlineStr":
+                case "str":
+                    return new SheetCell(CellType.STRING, cellValue, 0, dataFormat, dataFormatString, null);
+                case "b":
+                    return new SheetCell(CellType.BOOLEAN, null, 0, dataFormat, dataFormatString, null);
+                case "e":
+                    return new SheetCell(CellType.ERROR, null, 0, dataFormat, dataFormatString, null);
+                default:
+                    double numericValue = Double.parseDouble(cellValue);
+                    LocalDateTime dateTimeValue = DateUtil.isValidExcelDate(numericValue)
+                            && DateUtil.isADateFormat(dataFormat, dataFormatString)
+                            ? DateUtil.getLocalDateTime(numericValue, date1904)
+                            : null;
+                    return new SheetCell(CellType.NUMERIC, null, numericValue, dataFormat, dataFormatString, dateTimeValue);
+            }
+        }
+
+        private String elementName(String localName, String qName) {
+            return localName == null || localName.isEmpty() ? qName : localName;
+        }
+    }
+}
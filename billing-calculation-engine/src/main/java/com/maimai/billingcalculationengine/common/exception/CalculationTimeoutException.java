@@ -0,0 +1,6 @@
+package com.maimai.billingcalculationengine.common.exception;
+
+public class CalculationTimeoutException extends BaseException {
+    public CalculationTimeoutException() {}
+    public CalculationTimeoutException(String message) {super(message);}
+}
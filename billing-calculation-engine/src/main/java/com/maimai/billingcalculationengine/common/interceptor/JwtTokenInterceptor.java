@@ -64,4 +64,10 @@ public class JwtTokenInterceptor implements HandlerInterceptor {
         }
 
     }
+
+    // the request thread may serve other requests next, with or without a token
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        BaseContext.removeCurrentId();
+    }
 }
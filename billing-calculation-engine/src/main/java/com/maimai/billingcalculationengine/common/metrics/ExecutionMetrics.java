@@ -0,0 +1,185 @@
+package com.maimai.billingcalculationengine.common.metrics;
+
+import com.maimai.billingcalculationengine.common.enums.Layer;
+import com.maimai.billingcalculationengine.common.properties.MetricsProperties;
+import jakarta.annotation.Resource;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and call counters of the methods annotated with @TrackExecution, tagged by layer and method.
+ * <p>
+ * Every call is counted, by outcome. Only a sampled fraction of the calls is timed when the sample rate is below 1,
+ * so hot paths can be tracked without reading the clock on every call; the sample is uniform, so the percentiles
+ * still estimate every call's. The metrics are written in the Prometheus text format.
+ */
+@Component
+public class ExecutionMetrics {
+    static final String CALLS = "billing_execution_calls_total";
+    static final String SECONDS = "billing_execution_seconds";
+    static final String QUANTILE_SECONDS = "billing_execution_quantile_seconds";
+    static final String MAX_SECONDS = "billing_execution_max_seconds";
+
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+    private static final double[] BUCKET_SECONDS = {0.0005, 0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+    private static final long[] BUCKET_NANOS = new long[BUCKET_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+            BUCKET_NANOS[i] = (long) (BUCKET_SECONDS[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    @Resource
+    private MetricsProperties metricsProperties;
+
+    private final ConcurrentMap<Method, MethodTimer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * @param method The annotated method
+     * @param layer The layer it was annotated with
+     * @return The method's timer, created on its first call
+     */
+    public MethodTimer timer(Method method, Layer layer) {
+        MethodTimer timer = timers.get(method);
+        if (timer != null) return timer;
+        return timers.computeIfAbsent(method, m -> new MethodTimer(layer, m.getDeclaringClass().getSimpleName() + "." + m.getName()));
+    }
+
+    /**
+     * @return Whether the next call should be timed
+     */
+    public boolean sample() {
+        if (!metricsProperties.isEnabled()) return false;
+        double sampleRate = metricsProperties.getSampleRate();
+        return sampleRate >= 1 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    public boolean isEnabled() {
+        return metricsProperties.isEnabled();
+    }
+
+    /**
+     * Writes every timer in the Prometheus text exposition format, version 0.0.4.
+     * This method:
+     * 1. Writes the call counters by outcome
+     * 2. Writes the latency histograms with fixed buckets, for quantiles over any window
+     * 3. Writes the p50, p95 and p99 since startup, and the maximum, as gauges
+     *
+     * @return The metrics text
+     */
+    public String scrape() {
+        List<MethodTimer> sorted = timers.values().stream()
+                .sorted(Comparator.comparing((MethodTimer timer) -> timer.layer).thenComparing(timer -> timer.method))
+                .toList();
+        StringBuilder out = new StringBuilder(1024 + sorted.size() * 2048);
+
+        header(out, CALLS, "counter", "Calls of @TrackExecution methods by outcome");
+        for (MethodTimer timer : sorted) {
+            sample(out, CALLS, timer.labels() + ",outcome=\"success\"", timer.successes.sum());
+            sample(out, CALLS, timer.labels() + ",outcome=\"error\"", timer.errors.sum());
+        }
+
+        header(out, SECONDS, "histogram", "Latency of the timed calls of @TrackExecution methods");
+        for (MethodTimer timer : sorted) {
+            long[] cumulative = timer.histogram.cumulativeCounts(BUCKET_NANOS);
+            for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+                sample(out, SECONDS + "_bucket", timer.labels() + ",le=\"" + format(BUCKET_SECONDS[i]) + "\"", cumulative[i]);
+            }
+            long count = timer.histogram.getCount();
+            sample(out, SECONDS + "_bucket", timer.labels() + ",le=\"+Inf\"", count);
+            sample(out, SECONDS + "_sum", timer.labels(), seconds(timer.histogram.getSumNanos()));
+            sample(out, SECONDS + "_count", timer.labels(), count);
+        }
+
+        header(out, QUANTILE_SECONDS, "gauge", "Latency quantiles of @TrackExecution methods since startup");
+        for (MethodTimer timer : sorted) {
+            for (double quantile : QUANTILES) {
+                sample(out, QUANTILE_SECONDS, timer.labels() + ",quantile=\"" + format(quantile) + "\"",
+                        seconds(timer.histogram.percentileNanos(quantile)));
+            }
+        }
+
+        header(out, MAX_SECONDS, "gauge", "Longest timed call of @TrackExecution methods since startup");
+        for (MethodTimer timer : sorted) {
+            sample(out, MAX_SECONDS, timer.labels(), seconds(timer.histogram.getMaxNanos()));
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append('{').append(labels).append("} ").append(format(value)).append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? String.format(Locale.ROOT, "%.1f", value)
+                : BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Counters and latency histogram of one method.
+     */
+    public static final class MethodTimer {
+        private final Layer layer;
+        private final String method;
+        private final String labels;
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        MethodTimer(Layer layer, String method) {
+            this.layer = layer;
+            this.method = method;
+            this.labels = "layer=\"" + layer + "\",method=\"" + method + "\"";
+        }
+
+        /**
+         * @param success Whether the call returned normally
+         * @param nanos The call's latency, negative if it was not timed
+         */
+        public void record(boolean success, long nanos) {
+            (success ? successes : errors).increment();
+            if (nanos >= 0) histogram.record(nanos);
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public long getCalls() {
+            return successes.sum() + errors.sum();
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        private String labels() {
+            return labels;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.maimai.billingcalculationengine.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds with log-linear buckets.
+ * <p>
+ * Every power of two is split into 16 equal buckets, so a recorded latency is known to within 1/16 of its
+ * value, whatever its magnitude, with a fixed 1024 counters. Percentiles are read from the bucket counts and
+ * reported as the upper bound of their bucket, so they overstate the exact percentile by at most 6.25%.
+ * Recording is a few shifts and atomic increments. Counts are cumulative since the histogram was created.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos The latency, negative latencies count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumNanos() {
+        return sum.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * @param quantile The quantile, between 0 and 1
+     * @return The upper bound of the bucket holding the quantile, at most the maximum recorded, 0 if nothing was recorded
+     */
+    public long percentileNanos(double quantile) {
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long bucketCount : snapshot) total += bucketCount;
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < snapshot.length; bucket++) {
+            seen += snapshot[bucket];
+            if (seen >= rank) return Math.min(upperBoundOf(bucket), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * @param boundsNanos Ascending upper bounds
+     * @return How many latencies fell at or below each bound, by bucket upper bound, cumulative as Prometheus buckets are
+     */
+    public long[] cumulativeCounts(long[] boundsNanos) {
+        long[] snapshot = snapshot();
+        long[] cumulative = new long[boundsNanos.length];
+        int bound = 0;
+        long seen = 0;
+        for (int bucket = 0; bucket < snapshot.length && bound < boundsNanos.length; bucket++) {
+            while (bound < boundsNanos.length && upperBoundOf(bucket) > boundsNanos[bound]) {
+                cumulative[bound++] = seen;
+            }
+            seen += snapshot[bucket];
+        }
+        while (bound < boundsNanos.length) cumulative[bound++] = seen;
+        return cumulative;
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int bucket = 0; bucket < BUCKETS; bucket++) snapshot[bucket] = counts.get(bucket);
+        return snapshot;
+    }
+
+    // values below 16 get a bucket each, above that the top 5 significant bits pick the bucket
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    // the largest value of a bucket
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        long width = 1L << shift;
+        return lowest + (width - 1) < 0 ? Long.MAX_VALUE : lowest + (width - 1);
+    }
+}
@@ -0,0 +1,16 @@
+package com.maimai.billingcalculationengine.common.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "app.asset-partition")
+@Data
+public class AssetPartitionProperties {
+    // months of valuations kept attached to the assets table, counting the current month, 0 keeps everything
+    private int retentionMonths = 0;
+
+    // when the retention job detaches the partitions older than the retention window
+    private String retentionCron = "0 30 2 * * *";
+}
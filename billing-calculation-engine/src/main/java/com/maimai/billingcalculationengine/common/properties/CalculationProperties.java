@@ -0,0 +1,22 @@
+package com.maimai.billingcalculationengine.common.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "app.calculation")
+@Data
+public class CalculationProperties {
+    // calculation tasks running at the same time across all requests, each may hold a database connection,
+    // so keep it well below spring.datasource.hikari.maximum-pool-size
+    private int maxConcurrency = 8;
+    // sum a client's portfolios in chunks on the calculation executor instead of in one query on the request thread
+    private boolean parallelEnabled = false;
+    // chunks of one request in flight at the same time, so one large client cannot take the whole executor
+    private int perRequestConcurrency = 4;
+    // portfolios summed by one chunk, a client with no more than this many is calculated on the request thread
+    private int portfoliosPerTask = 25;
+    // how long a request waits for all its chunks, then cancels the ones still running and fails
+    private long timeoutMillis = 10000;
+}
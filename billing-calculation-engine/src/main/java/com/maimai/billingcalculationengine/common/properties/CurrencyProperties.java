@@ -12,5 +12,6 @@ import java.math.BigDecimal;
 public class CurrencyProperties {
     // currency ratio converted from CAD
     // e.g. CAD : USD = 0.71
+    // default for the dates before the first uploaded CAD/USD rate, see FxRateIndex
     private double toUSD;
 }
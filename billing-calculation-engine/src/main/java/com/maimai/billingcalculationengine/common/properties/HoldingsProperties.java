@@ -0,0 +1,16 @@
+package com.maimai.billingcalculationengine.common.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "app.holdings")
+@Data
+public class HoldingsProperties {
+    // keep a snapshot file of the holdings store, so a restart maps it instead of reading every asset
+    private boolean snapshotEnabled = true;
+
+    // where the snapshot is written, relative paths resolve against the working directory
+    private String snapshotFile = "data/holdings.snapshot";
+}
@@ -0,0 +1,16 @@
+package com.maimai.billingcalculationengine.common.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "app.metrics")
+@Data
+public class MetricsProperties {
+    // record the latency of @TrackExecution methods, false leaves only the debug log
+    private boolean enabled = true;
+
+    // fraction of calls timed, 1 times every call; calls are counted either way
+    private double sampleRate = 1.0;
+}
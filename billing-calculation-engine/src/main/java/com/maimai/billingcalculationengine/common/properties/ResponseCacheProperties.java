@@ -0,0 +1,19 @@
+package com.maimai.billingcalculationengine.common.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "app.response-cache")
+@Data
+public class ResponseCacheProperties {
+    // cache the current client and portfolio responses, false recalculates every request
+    private boolean enabled = true;
+
+    // entries per cache, the least recently read entry is evicted beyond this
+    private int maximumSize = 10000;
+
+    // seconds an entry is kept after it was loaded, uploads invalidate the clients they changed before that
+    private long expireAfterWriteSeconds = 600;
+}
@@ -0,0 +1,28 @@
+package com.maimai.billingcalculationengine.common.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "app.upload")
+@Data
+public class UploadProperties {
+    // read .xlsx sheets with the SAX event reader instead of loading the whole workbook
+    private boolean streaming = true;
+
+    // rows per multi-row INSERT ... ON CONFLICT statement when writing an upload
+    private int batchSize = 500;
+
+    // uploads processed at the same time, each holds one database connection while it runs
+    private int maxConcurrentUploads = 2;
+
+    // accepted uploads waiting for a free worker, further uploads are rejected
+    private int queueCapacity = 4;
+
+    // threads parsing and validating sheets, 0 uses one per available processor
+    private int parseParallelism = 0;
+
+    // rows validated per fork-join task while a sheet is read, at most one chunk per parse thread is in flight per sheet
+    private int parseChunkSize = 2000;
+}
@@ -0,0 +1,159 @@
+package com.maimai.billingcalculationengine.common.utils;
+
+import com.maimai.billingcalculationengine.model.response.CacheMetricsResponse;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Size- and time-bounded cache with least-recently-used eviction and hit, miss and eviction counters.
+ * <p>
+ * Entries expire a fixed time after they were loaded, and the least recently read entry is evicted once
+ * the cache is full. Values are loaded outside the lock, so two readers missing the same key may both load it.
+ * A value whose load started before an invalidation is returned but not cached, so an invalidation is never
+ * undone by a load that read the data before the change. Thread-safe.
+ *
+ * @param <K> The key type
+ * @param <V> The value type, shared by every reader, so it should not be modified
+ */
+public final class BoundedCache<K, V> {
+    private final String name;
+    private final int maximumSize;
+    private final long expireAfterWriteNanos;
+    private final LongSupplier nanoTime;
+
+    // in access order, the eldest entry is the least recently read
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    // bumped by every invalidation, loads started before one are not cached
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public BoundedCache(String name, int maximumSize, long expireAfterWrite, TimeUnit unit) {
+        this(name, maximumSize, expireAfterWrite, unit, System::nanoTime);
+    }
+
+    BoundedCache(String name, int maximumSize, long expireAfterWrite, TimeUnit unit, LongSupplier nanoTime) {
+        if (maximumSize < 0 || expireAfterWrite < 0) {
+            throw new IllegalArgumentException("Cache size and expiry must not be negative");
+        }
+        this.name = name;
+        this.maximumSize = maximumSize;
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.nanoTime = nanoTime;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() <= BoundedCache.this.maximumSize) return false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value of a key, loading and caching it if it is missing or expired.
+     *
+     * @param key The key
+     * @param loader Loads the value of a missing key, an exception is passed on and nothing is cached
+     * @return The cached or loaded value
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (nanoTime.getAsLong() - entry.loadedAt < expireAfterWriteNanos) {
+                    hits.incrementAndGet();
+                    return entry.value;
+                }
+                entries.remove(key);
+                expirations.incrementAndGet();
+            }
+            misses.incrementAndGet();
+            loadGeneration = generation;
+        }
+
+        long start = nanoTime.getAsLong();
+        V value = loader.apply(key);
+        long loadedAt = nanoTime.getAsLong();
+        loadNanos.addAndGet(loadedAt - start);
+
+        synchronized (this) {
+            if (generation == loadGeneration && maximumSize > 0) {
+                entries.put(key, new Entry<>(value, loadedAt));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Removes the given keys.
+     *
+     * @param keys The keys to remove
+     */
+    public synchronized void invalidate(Collection<? extends K> keys) {
+        generation++;
+        for (K key : keys) {
+            if (entries.remove(key) != null) invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Reports the size of the cache and its counters since startup.
+     *
+     * @return The cache metrics
+     */
+    public CacheMetricsResponse getMetrics() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long requests = hitCount + missCount;
+        return CacheMetricsResponse.builder()
+                .name(name)
+                .size(size())
+                .maximumSize(maximumSize)
+                .expireAfterWriteSeconds(TimeUnit.NANOSECONDS.toSeconds(expireAfterWriteNanos))
+                .hits(hitCount)
+                .misses(missCount)
+                .hitRate(requests == 0 ? 0 : (double) hitCount / requests)
+                .averageLoadMillis(missCount == 0 ? 0 : (double) loadNanos.get() / missCount / TimeUnit.MILLISECONDS.toNanos(1))
+                .evictions(evictions.get())
+                .expirations(expirations.get())
+                .invalidations(invalidations.get())
+                .build();
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long loadedAt;
+
+        private Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
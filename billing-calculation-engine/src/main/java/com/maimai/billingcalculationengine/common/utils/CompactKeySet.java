@@ -0,0 +1,136 @@
+package com.maimai.billingcalculationengine.common.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Hash set of short string keys (client, portfolio ids) packed into one byte array.
+ * <p>
+ * Each key is stored once as a length byte followed by its UTF-8 bytes, and an open-addressing
+ * table keeps the arena offsets and hashes. A 10 character id costs about 20 bytes here, against
+ * roughly 100 bytes for a String entry in a {@code HashSet}, so the ids of a large book fit
+ * in memory and membership stays a hash lookup. Not thread-safe.
+ */
+public final class CompactKeySet {
+    private static final int MAX_KEY_BYTES = 255;
+    private static final int EMPTY = -1;
+
+    private byte[] arena;
+    private int arenaSize;
+    private int[] offsets;
+    private int[] hashes;
+    private int size;
+
+    public CompactKeySet() {
+        this(16);
+    }
+
+    public CompactKeySet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        this.offsets = new int[capacity];
+        this.hashes = new int[capacity];
+        Arrays.fill(offsets, EMPTY);
+        this.arena = new byte[Math.max(64, expectedSize * 12)];
+    }
+
+    /**
+     * @param key The key to add
+     * @return true if the key was not in the set
+     * @throws IllegalArgumentException if the key is longer than 255 bytes in UTF-8
+     */
+    public boolean add(String key) {
+        byte[] bytes = encode(key);
+        int hash = hash(bytes);
+        int slot = find(bytes, hash);
+        if (offsets[slot] != EMPTY) return false;
+
+        if (arenaSize + bytes.length + 1 > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + bytes.length + 1));
+        }
+        offsets[slot] = arenaSize;
+        hashes[slot] = hash;
+        arena[arenaSize++] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, arena, arenaSize, bytes.length);
+        arenaSize += bytes.length;
+
+        // keep the table at most half full so probe chains stay short
+        if (++size * 2 > offsets.length) {
+            resize();
+        }
+        return true;
+    }
+
+    public boolean contains(String key) {
+        if (key == null) return false;
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_KEY_BYTES) return false;
+        return offsets[find(bytes, hash(bytes))] != EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The approximate heap held by the arena and the table, in bytes
+     */
+    public long memoryBytes() {
+        return arena.length + (long) offsets.length * Integer.BYTES * 2;
+    }
+
+    private static byte[] encode(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("Key is longer than " + MAX_KEY_BYTES + " bytes: " + key);
+        }
+        return bytes;
+    }
+
+    // returns the slot holding the key, or the empty slot where it belongs
+    private int find(byte[] bytes, int hash) {
+        int mask = offsets.length - 1;
+        int slot = hash & mask;
+        while (offsets[slot] != EMPTY) {
+            if (hashes[slot] == hash && matches(offsets[slot], bytes)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean matches(int offset, byte[] bytes) {
+        int length = arena[offset] & 0xFF;
+        return length == bytes.length
+                && Arrays.equals(arena, offset + 1, offset + 1 + length, bytes, 0, length);
+    }
+
+    private void resize() {
+        int[] oldOffsets = offsets;
+        int[] oldHashes = hashes;
+        offsets = new int[oldOffsets.length * 2];
+        hashes = new int[oldHashes.length * 2];
+        Arrays.fill(offsets, EMPTY);
+
+        int mask = offsets.length - 1;
+        for (int i = 0; i < oldOffsets.length; i++) {
+            if (oldOffsets[i] == EMPTY) continue;
+            int slot = oldHashes[i] & mask;
+            while (offsets[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            offsets[slot] = oldOffsets[i];
+            hashes[slot] = oldHashes[i];
+        }
+    }
+
+    private static int hash(byte[] bytes) {
+        // FNV-1a, then spread the high bits into the low bits used for the slot index
+        int hash = 0x811C9DC5;
+        for (byte b : bytes) {
+            hash ^= b;
+            hash *= 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,12 +1,10 @@
 package com.maimai.billingcalculationengine.common.utils;
 
+import com.maimai.billingcalculationengine.common.excel.SheetCell;
+import com.maimai.billingcalculationengine.common.excel.SheetRow;
 import com.maimai.billingcalculationengine.common.exception.InvalidDataException;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
-import org.apache.poi.ss.usermodel.DateUtil;
-import org.apache.poi.ss.usermodel.Row;
-import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -15,20 +13,20 @@ import java.util.*;
 
 @Slf4j
 public class FileUtil {
-    public static String getCellValueAsString(Row row, Integer columnIndex) {
+    public static String getCellValueAsString(SheetRow row, Integer columnIndex) {
         if (columnIndex == null) return null;
 
-        Cell cell = row.getCell(columnIndex);
+        SheetCell cell = row.getCell(columnIndex);
         if (cell == null) return null;
 
         switch (cell.getCellType()) {
             case STRING:
-                return cell.getStringCellValue().trim();
+                return cell.getStringValue().trim();
             case NUMERIC:
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    return cell.getLocalDateTimeCellValue().toString();
+                if (cell.isDateFormatted()) {
+                    return cell.getDateTimeValue().toString();
                 }
-                return String.valueOf((long) cell.getNumericCellValue());
+                return String.valueOf((long) cell.getNumericValue());
             case BLANK:
                 throw new InvalidDataException("this row has a blank value");
             default:
@@ -36,17 +34,16 @@ public class FileUtil {
         }
     }
 
-    public static BigDecimal getCellValueAsBigDecimal(Row row, Integer columnIndex) {
+    public static BigDecimal getCellValueAsBigDecimal(SheetRow row, Integer columnIndex) {
         if (columnIndex == null) return BigDecimal.ZERO;
 
-        Cell cell = row.getCell(columnIndex);
+        SheetCell cell = row.getCell(columnIndex);
         if (cell == null) return BigDecimal.ZERO;
 
         if (Objects.requireNonNull(cell.getCellType()) == CellType.NUMERIC) {
-            double numericValue = cell.getNumericCellValue();
+            double numericValue = cell.getNumericValue();
             // check if the cell is formatted as a percentage
-            if (cell.getCellStyle().getDataFormat() == 10 ||
-                    cell.getCellStyle().getDataFormatString().contains("%")) {
+            if (cell.isPercentageFormatted()) {
                 // multiply 100 to get the actual percentage value
                 numericValue *= 100;
             }
@@ -57,21 +54,21 @@ public class FileUtil {
         throw new InvalidDataException("This row has a value must be number");
     }
 
-    public static LocalDate getCellValueAsDate(Row row, Integer columnIndex) {
+    public static LocalDate getCellValueAsDate(SheetRow row, Integer columnIndex) {
         if (columnIndex == null) return null;
 
-        Cell cell = row.getCell(columnIndex);
+        SheetCell cell = row.getCell(columnIndex);
         if (cell == null) return null;
 
         switch (cell.getCellType()) {
             case NUMERIC:
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    return cell.getLocalDateTimeCellValue().toLocalDate();
+                if (cell.isDateFormatted()) {
+                    return cell.getDateTimeValue().toLocalDate();
                 }
                 return null;
             case STRING:
                 try {
-                    String dateStr = cell.getStringCellValue().trim();
+                    String dateStr = cell.getStringValue().trim();
                     DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
                     return LocalDate.parse(dateStr, formatter);
                 } catch (Exception e) {
@@ -85,15 +82,15 @@ public class FileUtil {
         }
     }
 
-    public static Map<String, Integer> validateHeaders(Row headerRow, List<String> expectedColumns) {
+    public static Map<String, Integer> validateHeaders(SheetRow headerRow, List<String> expectedColumns) {
         Map<String, Integer> columnIndexMap = new HashMap<>();
 
         // get actual header values and their indexes
         List<String> actualHeaders = new ArrayList<>();
         for (int i = 0; i < headerRow.getLastCellNum(); i++) {
-            Cell cell = headerRow.getCell(i);
+            SheetCell cell = headerRow.getCell(i);
             if (cell != null) {
-                String headerValue = cell.getStringCellValue().trim().toLowerCase();
+                String headerValue = cell.getStringValue() == null ? "" : cell.getStringValue().trim().toLowerCase();
                 actualHeaders.add(headerValue);
                 columnIndexMap.put(headerValue, i);
             }
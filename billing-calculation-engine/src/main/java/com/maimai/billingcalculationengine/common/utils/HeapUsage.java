@@ -0,0 +1,48 @@
+package com.maimai.billingcalculationengine.common.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+
+/**
+ * Heap usage read from the JVM's memory pools.
+ * Peaks are per pool and JVM-wide: their sum bounds the peak of the whole heap from above, and a reset
+ * by one job also resets the peaks another job running at the same time would read.
+ */
+public final class HeapUsage {
+    private static final List<MemoryPoolMXBean> HEAP_POOLS = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .toList();
+
+    private HeapUsage() {
+    }
+
+    /**
+     * Resets the peak of every heap pool to its current usage.
+     *
+     * @return The heap in use now, in bytes
+     */
+    public static long resetPeak() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : HEAP_POOLS) {
+            pool.resetPeakUsage();
+            MemoryUsage usage = pool.getUsage();
+            if (usage != null) used += usage.getUsed();
+        }
+        return used;
+    }
+
+    /**
+     * @return The sum of the heap pools' peaks since they were last reset, in bytes
+     */
+    public static long peak() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : HEAP_POOLS) {
+            MemoryUsage usage = pool.getPeakUsage();
+            if (usage != null) peak += usage.getUsed();
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,114 @@
+package com.maimai.billingcalculationengine.common.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point arithmetic on amounts carried as a primitive long count of cents.
+ * <p>
+ * The batch AUM and fee pass adds, converts and prices an amount per asset and per portfolio; on BigDecimal
+ * every one of those steps allocates. Here an amount is a long at {@link #SCALE} and a rate (FX rate, fee rate)
+ * a long at {@link #RATE_SCALE}, so the pass allocates nothing per step, and amounts become BigDecimal
+ * only where they leave the calculation.
+ * <p>
+ * Every rounding is HALF_UP to cents and gives exactly what {@code multiply(...).setScale(2, RoundingMode.HALF_UP)}
+ * gives on BigDecimal. Sums that overflow throw {@link ArithmeticException}; a product that does not fit in
+ * 64 bits is computed with BigDecimal instead, and throws only if the rounded result does not fit either.
+ */
+public final class Money {
+    // scale of amounts, the scale of every money column
+    public static final int SCALE = 2;
+    // scale of rates multiplied into amounts, the scale of fx_rates.rate and of the fee rates
+    public static final int RATE_SCALE = 10;
+
+    private static final long RATE_ONE = 10_000_000_000L;
+    // a percentage at scale 2 of a ratio of two amounts at scale 2
+    private static final long PERCENT_ONE = 10_000L;
+
+    private Money() {
+    }
+
+    /**
+     * Converts an amount to cents. Amounts with more than 2 decimals are rounded HALF_UP,
+     * as the numeric(15, 2) columns store them.
+     *
+     * @param amount The amount
+     * @return The amount in cents
+     * @throws ArithmeticException if the amount does not fit in a long count of cents
+     */
+    public static long ofBigDecimal(BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts a rate to a long at {@link #RATE_SCALE}, rounding HALF_UP.
+     *
+     * @param rate The rate
+     * @return The scaled rate
+     * @throws ArithmeticException if the scaled rate does not fit in a long
+     */
+    public static long ofRate(BigDecimal rate) {
+        return rate.setScale(RATE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    /**
+     * @throws ArithmeticException if the sum overflows
+     */
+    public static long add(long cents, long otherCents) {
+        return Math.addExact(cents, otherCents);
+    }
+
+    /**
+     * Multiplies an amount by a rate and rounds the product HALF_UP to cents.
+     *
+     * @param cents The amount in cents
+     * @param rate The rate at {@link #RATE_SCALE}
+     * @return The product in cents
+     * @throws ArithmeticException if the rounded product does not fit in a long
+     */
+    public static long multiply(long cents, long rate) {
+        long high = Math.multiplyHigh(cents, rate);
+        long low = cents * rate;
+        // the 128-bit product fits in 64 bits when its high half only repeats the sign of the low half
+        if (high == (low >> 63)) {
+            return divideHalfUp(low, RATE_ONE);
+        }
+        return BigDecimal.valueOf(cents, SCALE).multiply(BigDecimal.valueOf(rate, RATE_SCALE))
+                .setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Expresses one amount as a percentage of another, rounded HALF_UP to 2 decimals:
+     * {@code part * 100 / whole}.
+     *
+     * @param partCents The part in cents
+     * @param wholeCents The whole in cents, not zero
+     * @return The percentage at scale 2, e.g. 125 for 1.25%
+     * @throws ArithmeticException if the whole is zero
+     */
+    public static long percentage(long partCents, long wholeCents) {
+        if (wholeCents == 0) throw new ArithmeticException("Division by zero");
+
+        long high = Math.multiplyHigh(partCents, PERCENT_ONE);
+        long low = partCents * PERCENT_ONE;
+        if (high == (low >> 63) && wholeCents > 0) {
+            return divideHalfUp(low, wholeCents);
+        }
+        return BigDecimal.valueOf(partCents).multiply(BigDecimal.valueOf(100))
+                .divide(BigDecimal.valueOf(wholeCents), SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    // divides by a positive divisor, ties round away from zero
+    private static long divideHalfUp(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = Math.abs(dividend % divisor);
+        if (remainder >= divisor - remainder) {
+            quotient += Long.signum(dividend);
+        }
+        return quotient;
+    }
+}
@@ -0,0 +1,63 @@
+package com.maimai.billingcalculationengine.config;
+
+import com.maimai.billingcalculationengine.common.BaseContext;
+import com.maimai.billingcalculationengine.common.properties.CalculationProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Thread model of request handling and the calculation fan-out.
+ * <p>
+ * With {@code spring.threads.virtual.enabled} on JDK 21 or later, Spring Boot runs every request on its own virtual
+ * thread instead of Tomcat's platform pool, and the calculation executor below starts a virtual thread per task.
+ * Requests are then no longer capped by the thread pool but by the HikariCP pool they wait on, so
+ * {@code spring.datasource.hikari.maximum-pool-size} and {@code connection-timeout} are the real limits.
+ * On JDK 17 the property is ignored and both stay on platform threads.
+ */
+@Configuration
+@Slf4j
+public class ThreadingConfig {
+
+    /**
+     * Executor for calculation tasks fanned out by a request, at most {@code app.calculation.max-concurrency} at a time.
+     * Tasks run as the submitting user, see BaseContext.
+     */
+    @Bean(name = "calculationExecutor")
+    public AsyncTaskExecutor calculationExecutor(CalculationProperties calculationProperties, Environment environment) {
+        int maxConcurrency = Math.max(1, calculationProperties.getMaxConcurrency());
+        int maximumPoolSize = environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10);
+        if (maxConcurrency >= maximumPoolSize) {
+            log.warn("Calculation concurrency {} leaves no database connection for other requests, the pool has {}",
+                    maxConcurrency, maximumPoolSize);
+        }
+
+        if (Threading.VIRTUAL.isActive(environment)) {
+            log.info("Initializing calculation executor on virtual threads, at most {} tasks at a time, database pool: {}",
+                    maxConcurrency, maximumPoolSize);
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("calculation-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(maxConcurrency);
+            executor.setTaskDecorator(BaseContext::wrap);
+            return executor;
+        }
+
+        if (environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false)) {
+            log.warn("spring.threads.virtual.enabled needs JDK 21 or later, running on Java {} with platform threads",
+                    Runtime.version().feature());
+        }
+        log.info("Initializing calculation executor with {} platform threads, database pool: {}",
+                maxConcurrency, maximumPoolSize);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxConcurrency);
+        executor.setMaxPoolSize(maxConcurrency);
+        executor.setThreadNamePrefix("calculation-");
+        executor.setTaskDecorator(BaseContext::wrap);
+        return executor;
+    }
+}
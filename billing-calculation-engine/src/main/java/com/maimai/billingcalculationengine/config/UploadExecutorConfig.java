@@ -0,0 +1,56 @@
+package com.maimai.billingcalculationengine.config;
+
+import com.maimai.billingcalculationengine.common.BaseContext;
+import com.maimai.billingcalculationengine.common.properties.UploadProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ForkJoinPool;
+
+@Configuration
+@Slf4j
+public class UploadExecutorConfig {
+
+    /**
+     * Bounded pool for background upload jobs.
+     * Runs at most {@code app.upload.max-concurrent-uploads} jobs and queues up to
+     * {@code app.upload.queue-capacity} more; anything beyond that is rejected with a TaskRejectedException.
+     */
+    @Bean(name = "uploadExecutor")
+    public ThreadPoolTaskExecutor uploadExecutor(UploadProperties uploadProperties) {
+        log.info("Initializing upload executor with {} workers and queue capacity {}",
+                uploadProperties.getMaxConcurrentUploads(), uploadProperties.getQueueCapacity());
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(uploadProperties.getMaxConcurrentUploads());
+        executor.setMaxPoolSize(uploadProperties.getMaxConcurrentUploads());
+        executor.setQueueCapacity(uploadProperties.getQueueCapacity());
+        executor.setThreadNamePrefix("upload-");
+        executor.setTaskDecorator(userContextDecorator());
+        // let running uploads finish their transaction on shutdown
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        return executor;
+    }
+
+    /**
+     * Fork-join pool that parses and validates upload sheets, shared by all running uploads.
+     * Sized by {@code app.upload.parse-parallelism}, one thread per processor when 0.
+     */
+    @Bean(name = "uploadParsePool", destroyMethod = "shutdown")
+    public ForkJoinPool uploadParsePool(UploadProperties uploadProperties) {
+        int parallelism = uploadProperties.getParseParallelism() > 0
+                ? uploadProperties.getParseParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        log.info("Initializing upload parse pool with parallelism {}", parallelism);
+        return new ForkJoinPool(parallelism);
+    }
+
+    // carries the submitting user's id into the worker thread, for created_by / updated_by
+    private static TaskDecorator userContextDecorator() {
+        return BaseContext::wrap;
+    }
+}
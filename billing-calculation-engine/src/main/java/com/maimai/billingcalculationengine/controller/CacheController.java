@@ -0,0 +1,24 @@
+package com.maimai.billingcalculationengine.controller;
+
+import com.maimai.billingcalculationengine.common.result.Result;
+import com.maimai.billingcalculationengine.model.response.CacheMetricsResponse;
+import com.maimai.billingcalculationengine.service.ResponseCache;
+import jakarta.annotation.Resource;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/cache")
+public class CacheController {
+
+    @Resource
+    private ResponseCache responseCache;
+
+    @GetMapping("/metrics")
+    public Result<List<CacheMetricsResponse>> getMetrics() {
+        return Result.success(responseCache.getMetrics(), "fetch cache metrics successful");
+    }
+}
@@ -1,15 +1,26 @@
 package com.maimai.billingcalculationengine.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.maimai.billingcalculationengine.common.enums.ClientSortField;
 import com.maimai.billingcalculationengine.common.result.Result;
 import com.maimai.billingcalculationengine.model.entity.Client;
+import com.maimai.billingcalculationengine.model.response.ClientPageResponse;
 import com.maimai.billingcalculationengine.model.response.ClientResponse;
 import com.maimai.billingcalculationengine.service.ClientService;
 import jakarta.annotation.Resource;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -20,12 +31,88 @@ public class ClientController {
     @Resource
     private ClientService clientService;
 
+    @Resource
+    private ObjectMapper objectMapper;
+
+    /**
+     * Retrieves all clients with their financial metrics.
+     *
+     * @param asOf Optional valuation date (yyyy-MM-dd), defaults to the latest valuation of every asset
+     * @return Result object containing a list of client responses
+     */
     @GetMapping()
-    public Result<List<ClientResponse>> getAllClients() {
-        List<ClientResponse> clientResponses = clientService.getAllClients();
+    public Result<List<ClientResponse>> getAllClients(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate asOf) {
+        List<ClientResponse> clientResponses = clientService.getAllClients(asOf);
 
         return Result.success(clientResponses, "Clients retrieved successfully");
     }
 
+    /**
+     * Retrieves one page of clients with their financial metrics.
+     *
+     * @param cursor The nextCursor of the previous page, omitted for the first page
+     * @param size Clients per page, at most 1000
+     * @param sort clientId or clientName, ties are ordered by client ID
+     * @param direction asc or desc
+     * @param asOf Optional valuation date (yyyy-MM-dd), defaults to the latest valuation of every asset
+     * @return Result object containing the page and the cursor of the next one
+     */
+    @GetMapping("/page")
+    public Result<ClientPageResponse> getClientPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int size,
+            @RequestParam(defaultValue = "clientId") String sort,
+            @RequestParam(defaultValue = "asc") String direction,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate asOf) {
+        ClientPageResponse clientPage = clientService.getClientPage(cursor, size, ClientSortField.fromString(sort),
+                Sort.Direction.fromString(direction), asOf);
+
+        return Result.success(clientPage, "Clients retrieved successfully");
+    }
+
+    /**
+     * Streams every client with its financial metrics as newline-delimited JSON, one client per line.
+     * Clients are written page by page as their metrics are read, so the response is never buffered whole.
+     *
+     * @param sort clientId or clientName, ties are ordered by client ID
+     * @param direction asc or desc
+     * @param asOf Optional valuation date (yyyy-MM-dd), defaults to the latest valuation of every asset
+     * @return The streamed client responses
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamClients(
+            @RequestParam(defaultValue = "clientId") String sort,
+            @RequestParam(defaultValue = "asc") String direction,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate asOf) {
+        // parsed before the response starts, so a bad parameter is still reported as an error result
+        ClientSortField sortField = ClientSortField.fromString(sort);
+        Sort.Direction sortDirection = Sort.Direction.fromString(direction);
+
+        StreamingResponseBody body = outputStream -> clientService.streamClients(sortField, sortDirection, asOf, page -> {
+            for (ClientResponse clientResponse : page) {
+                outputStream.write(objectMapper.writeValueAsBytes(clientResponse));
+                outputStream.write('\n');
+            }
+            outputStream.flush();
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Retrieves a single client with its financial metrics.
+     *
+     * @param clientId The ID of the client to retrieve
+     * @param asOf Optional valuation date (yyyy-MM-dd), defaults to the latest valuation of every asset
+     * @return Result object containing the client response
+     */
+    @GetMapping("/{clientId}")
+    public Result<ClientResponse> getClientById(@PathVariable String clientId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate asOf) {
+        ClientResponse clientResponse = clientService.getClientById(clientId, asOf);
+
+        return Result.success(clientResponse, "Client retrieved successfully");
+    }
+
 
 }
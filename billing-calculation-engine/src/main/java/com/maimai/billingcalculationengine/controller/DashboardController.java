@@ -5,10 +5,14 @@ import com.maimai.billingcalculationengine.model.response.dashboard.SummaryRespo
 import com.maimai.billingcalculationengine.model.response.dashboard.TopClientResponseByFeeResponse;
 import com.maimai.billingcalculationengine.service.DashboardService;
 import jakarta.annotation.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -19,11 +23,18 @@ public class DashboardController {
     private DashboardService dashboardService;
 
     @GetMapping("/summary")
-    public Result<SummaryResponse> getSummary() {
-        SummaryResponse summary = dashboardService.getSummary();
+    public Result<SummaryResponse> getSummary(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate asOf) {
+        SummaryResponse summary = dashboardService.getSummary(asOf);
         return Result.success(summary, "fetch summary successful");
     }
 
+    @PostMapping("/summary/rebuild")
+    public Result<SummaryResponse> rebuildSummary() {
+        SummaryResponse summary = dashboardService.rebuildSummary();
+        return Result.success(summary, "rebuild summary successful");
+    }
+
     public Result<List<TopClientResponseByFeeResponse>> getTopClientByFeeResponse() {
         return null;
     }
@@ -2,7 +2,9 @@ package com.maimai.billingcalculationengine.controller;
 
 import com.maimai.billingcalculationengine.common.result.Result;
 import com.maimai.billingcalculationengine.model.entity.FileUploadRecord;
+import com.maimai.billingcalculationengine.model.entity.UploadProfile;
 import com.maimai.billingcalculationengine.model.response.FileUploadResponse;
+import com.maimai.billingcalculationengine.model.response.UploadProgressResponse;
 import com.maimai.billingcalculationengine.service.FileUploadService;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
@@ -34,7 +36,8 @@ public class FileUploadController {
 
         // todo: handle csv
         try {
-            FileUploadRecord uploadRecord = fileUploadService.upload(file);
+            // processed in the background, poll /{uploadId}/progress for the outcome
+            FileUploadRecord uploadRecord = fileUploadService.submit(file);
 
             // Convert entity to response
             FileUploadResponse response = FileUploadResponse.builder()
@@ -46,10 +49,10 @@ public class FileUploadController {
                     .processingResult(uploadRecord.getProcessingResult())
                     .build();
 
-            if ("COMPLETED".equals(uploadRecord.getStatus())) {
-                return Result.success(response, "File uploaded and processed successfully");
+            if ("PROCESSING".equals(uploadRecord.getStatus())) {
+                return Result.success(response, "File accepted and is being processed");
             } else {
-                return Result.fail(response, 400, "File processing failed. See details in response.");
+                return Result.fail(response, 503, "File could not be queued for processing. See details in response.");
             }
         } catch (Exception e) {
             log.error("Error processing uploaded file", e);
@@ -57,6 +60,22 @@ public class FileUploadController {
         }
     }
 
+    // Get processing progress of an upload
+    @GetMapping("/{uploadId}/progress")
+    public Result<UploadProgressResponse> getUploadProgress(@PathVariable Long uploadId) {
+        return fileUploadService.getProgress(uploadId)
+                .map(progress -> Result.success(progress, "Upload progress retrieved successfully"))
+                .orElseGet(() -> Result.fail(404, "Upload not found: " + uploadId));
+    }
+
+    // Get where the time of a finished upload went, per sheet and phase
+    @GetMapping("/{uploadId}/profile")
+    public Result<UploadProfile> getUploadProfile(@PathVariable Long uploadId) {
+        return fileUploadService.getProfile(uploadId)
+                .map(profile -> Result.success(profile, "Upload profile retrieved successfully"))
+                .orElseGet(() -> Result.fail(404, "Upload profile not found: " + uploadId));
+    }
+
     // Get all document upload records
     @GetMapping
     public Result<List<FileUploadRecord>> getAllFileRecords() {
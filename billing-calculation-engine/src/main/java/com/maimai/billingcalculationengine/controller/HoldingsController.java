@@ -0,0 +1,22 @@
+package com.maimai.billingcalculationengine.controller;
+
+import com.maimai.billingcalculationengine.common.result.Result;
+import com.maimai.billingcalculationengine.model.response.HoldingsMetricsResponse;
+import com.maimai.billingcalculationengine.service.HoldingsStore;
+import jakarta.annotation.Resource;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/holdings")
+public class HoldingsController {
+
+    @Resource
+    private HoldingsStore holdingsStore;
+
+    @GetMapping("/metrics")
+    public Result<HoldingsMetricsResponse> getMetrics() {
+        return Result.success(holdingsStore.getMetrics(), "fetch holdings metrics successful");
+    }
+}
@@ -0,0 +1,26 @@
+package com.maimai.billingcalculationengine.controller;
+
+import com.maimai.billingcalculationengine.common.metrics.ExecutionMetrics;
+import jakarta.annotation.Resource;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/metrics")
+public class MetricsController {
+    static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Resource
+    private ExecutionMetrics executionMetrics;
+
+    /**
+     * Latency histograms and call counters of the tracked methods, for a Prometheus scrape.
+     *
+     * @return The metrics in the Prometheus text format
+     */
+    @GetMapping(value = "/prometheus", produces = PROMETHEUS_CONTENT_TYPE)
+    public String scrape() {
+        return executionMetrics.scrape();
+    }
+}
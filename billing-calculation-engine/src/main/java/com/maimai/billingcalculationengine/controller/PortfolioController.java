@@ -6,11 +6,14 @@ import com.maimai.billingcalculationengine.model.response.PortfolioResponse;
 import com.maimai.billingcalculationengine.service.PortfolioService;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -23,11 +26,13 @@ public class PortfolioController {
     /**
      * Retrieves all portfolios with their associated information.
      *
+     * @param asOf Optional valuation date (yyyy-MM-dd), defaults to the latest valuation of every asset
      * @return Result object containing a list of portfolio responses
      */
     @GetMapping
-    public Result<List<PortfolioResponse>> getAllPortfolios() {
-        List<PortfolioResponse> portfolioResponses = portfolioService.getAllPortfolios();
+    public Result<List<PortfolioResponse>> getAllPortfolios(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate asOf) {
+        List<PortfolioResponse> portfolioResponses = portfolioService.getAllPortfolios(asOf);
         log.info("Retrieved {} portfolios", portfolioResponses.size());
         return Result.success(portfolioResponses, "Portfolios retrieved successfully");
     }
@@ -36,11 +41,13 @@ public class PortfolioController {
      * Retrieves all portfolios associated with a specific client.
      *
      * @param clientId The ID of the client whose portfolios to retrieve
+     * @param asOf Optional valuation date (yyyy-MM-dd), defaults to the latest valuation of every asset
      * @return Result object containing a list of portfolio responses
      */
     @GetMapping("/client/{clientId}")
-    public Result<List<PortfolioResponse>> getPortfoliosByClientId(@PathVariable String clientId) {
-        List<PortfolioResponse> portfolioResponses = portfolioService.getPortfoliosByClientId(clientId);
+    public Result<List<PortfolioResponse>> getPortfoliosByClientId(@PathVariable String clientId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate asOf) {
+        List<PortfolioResponse> portfolioResponses = portfolioService.getPortfoliosByClientId(clientId, asOf);
         log.info("Retrieved {} portfolios for client with ID: {}", portfolioResponses.size(), clientId);
         return Result.success(portfolioResponses, "Client portfolios retrieved successfully");
     }
@@ -0,0 +1,53 @@
+package com.maimai.billingcalculationengine.model.calculation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of one batch calculation pass.
+ * Both maps keep the order in which clients and portfolios were loaded.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchCalculationResult {
+    private Map<String, ClientCalculation> clients;
+    private Map<String, PortfolioCalculation> portfolios;
+    private BigDecimal totalAum;
+    private BigDecimal totalFee;
+
+    public ClientCalculation getClient(String clientId) {
+        return clients.get(clientId);
+    }
+
+    /**
+     * @return The client's result, or zero AUM and fee for a client without portfolios
+     */
+    public ClientCalculation getClientOrEmpty(String clientId) {
+        ClientCalculation client = clients.get(clientId);
+        if (client != null) return client;
+        return ClientCalculation.builder()
+                .clientId(clientId)
+                .totalAum(BigDecimal.ZERO)
+                .totalFee(BigDecimal.ZERO)
+                .effectiveFeeRate(BigDecimal.ZERO)
+                .build();
+    }
+
+    public PortfolioCalculation getPortfolio(String portfolioId) {
+        return portfolios.get(portfolioId);
+    }
+
+    public List<PortfolioCalculation> getPortfoliosOfClient(String clientId) {
+        return portfolios.values().stream()
+                .filter(portfolio -> clientId.equals(portfolio.getClientId()))
+                .toList();
+    }
+}
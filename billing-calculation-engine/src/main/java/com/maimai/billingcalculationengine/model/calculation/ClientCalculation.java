@@ -0,0 +1,19 @@
+package com.maimai.billingcalculationengine.model.calculation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ClientCalculation {
+    private String clientId;
+    private BigDecimal totalAum;
+    private BigDecimal totalFee;
+    private BigDecimal effectiveFeeRate;
+}
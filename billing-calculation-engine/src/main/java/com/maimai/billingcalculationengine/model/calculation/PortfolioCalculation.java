@@ -0,0 +1,26 @@
+package com.maimai.billingcalculationengine.model.calculation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PortfolioCalculation {
+    private String portfolioId;
+    private String clientId;
+    private String portfolioCurrency;
+    // date of the latest asset row, null for a portfolio without assets
+    private LocalDate asOfDate;
+    // AUM and fee are both in CAD
+    private BigDecimal aum;
+    private BigDecimal fee;
+    // the CAD AUM converted to the portfolio currency at the latest rate, null if the currency has no rate
+    private BigDecimal aumInPortfolioCurrency;
+}
@@ -0,0 +1,27 @@
+package com.maimai.billingcalculationengine.model.calculation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Outcome of refreshing a set of portfolio snapshots.
+ * The deltas are the change of the book totals, new snapshot values minus the replaced ones.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SnapshotRefresh {
+    private int refreshedPortfolios;
+    // AUM and fee are both in CAD
+    private BigDecimal aumDelta;
+    private BigDecimal feeDelta;
+
+    public static SnapshotRefresh empty() {
+        return new SnapshotRefresh(0, BigDecimal.ZERO, BigDecimal.ZERO);
+    }
+}
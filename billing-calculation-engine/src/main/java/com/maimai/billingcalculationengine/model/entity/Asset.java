@@ -14,7 +14,9 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "assets")
+// range-partitioned by month of date, see db/migration and AssetPartitionService
+// serves the as-of lookups: one index range per portfolio, each asset's rows newest first
+@Table(name = "assets", indexes = @Index(name = "idx_assets_portfolio_asset_date", columnList = "portfolio_id, asset_id, date DESC"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -14,7 +14,8 @@ import org.springframework.data.annotation.LastModifiedDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "clients")
+// pages sorted by name seek (client_name, client_id) positions, see ClientPageRepository
+@Table(name = "clients", indexes = @Index(name = "idx_clients_name_id", columnList = "client_name, client_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
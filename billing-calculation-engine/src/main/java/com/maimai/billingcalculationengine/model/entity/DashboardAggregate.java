@@ -0,0 +1,47 @@
+package com.maimai.billingcalculationengine.model.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Running totals of the dashboard summary, kept in a single row and moved by each upload's deltas.
+ */
+@Entity
+@Table(name = "dashboard_aggregates")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DashboardAggregate {
+    public static final int SINGLETON_ID = 1;
+
+    @Id
+    @Column(name = "id")
+    private Integer id;
+
+    // AUM and fee are both in CAD
+    @Column(name = "total_aum", nullable = false, precision = 21, scale = 2)
+    private BigDecimal totalAum;
+
+    @Column(name = "total_fee", nullable = false, precision = 21, scale = 2)
+    private BigDecimal totalFee;
+
+    @Column(name = "client_count", nullable = false)
+    private Long clientCount;
+
+    @Column(name = "last_upload_date")
+    private LocalDate lastUploadDate;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
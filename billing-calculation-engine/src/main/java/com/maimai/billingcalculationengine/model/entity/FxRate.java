@@ -0,0 +1,58 @@
+package com.maimai.billingcalculationengine.model.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Entity
+// one rate per currency pair and day: 1 fromCurrency = rate toCurrency, valid from rateDate until the next rate
+@Table(name = "fx_rates")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@IdClass(FxRateKey.class)
+public class FxRate {
+
+    @Id
+    @NotBlank(message = "From currency is required")
+    @Size(max = 3, message = "Currency code must be 3 characters")
+    @Column(name = "from_currency", nullable = false, length = 3)
+    private String fromCurrency;
+
+    @Id
+    @NotBlank(message = "To currency is required")
+    @Size(max = 3, message = "Currency code must be 3 characters")
+    @Column(name = "to_currency", nullable = false, length = 3)
+    private String toCurrency;
+
+    @Id
+    @NotNull(message = "Rate date is required")
+    @Column(name = "rate_date", nullable = false)
+    private LocalDate rateDate;
+
+    @NotNull(message = "Rate is required")
+    @DecimalMin(value = "0.0", inclusive = false, message = "Rate must be greater than 0")
+    @Digits(integer = 9, fraction = 10, message = "Rate exceeds allowed numeric precision")
+    @Column(name = "rate", nullable = false, precision = 19, scale = 10)
+    private BigDecimal rate;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "created_by", length = 50)
+    private String createdBy;
+
+    @Column(name = "updated_by", length = 50)
+    private String updatedBy;
+}
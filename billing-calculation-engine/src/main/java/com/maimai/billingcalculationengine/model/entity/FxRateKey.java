@@ -0,0 +1,33 @@
+package com.maimai.billingcalculationengine.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FxRateKey implements Serializable {
+    private String fromCurrency;
+    private String toCurrency;
+    private LocalDate rateDate;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FxRateKey that = (FxRateKey) o;
+        return Objects.equals(fromCurrency, that.fromCurrency) &&
+                Objects.equals(toCurrency, that.toCurrency) &&
+                Objects.equals(rateDate, that.rateDate);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fromCurrency, toCurrency, rateDate);
+    }
+}
@@ -14,6 +14,7 @@ import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 
 import java.time.LocalDateTime;
+import java.util.Locale;
 
 @Entity
 @Table(name = "portfolios")
@@ -52,4 +53,15 @@ public class Portfolio {
 
     @Column(name = "updated_by", length = 50)
     private String updatedBy;
-}
\ No newline at end of file
+
+    /**
+     * Returns the canonical, upper case form of a portfolio ID. IDs are stored and looked up in this form,
+     * so queries compare them as is and keep using the portfolio_id indexes.
+     *
+     * @param portfolioId The portfolio ID as entered, may be null
+     * @return The upper case ID, or null for null
+     */
+    public static String canonicalId(String portfolioId) {
+        return portfolioId == null ? null : portfolioId.toUpperCase(Locale.ROOT);
+    }
+}
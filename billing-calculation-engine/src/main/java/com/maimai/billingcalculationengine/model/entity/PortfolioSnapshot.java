@@ -0,0 +1,51 @@
+package com.maimai.billingcalculationengine.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Materialized AUM and fee of one portfolio, refreshed when an upload touches the portfolio,
+ * its client or its client's billing tier. Client totals are sums over these rows.
+ */
+@Entity
+@Table(name = "portfolio_snapshots", indexes = @Index(name = "idx_portfolio_snapshots_client_id", columnList = "client_id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PortfolioSnapshot {
+
+    @Id
+    @Column(name = "portfolio_id", length = 10)
+    private String portfolioId;
+
+    @Column(name = "client_id", nullable = false, length = 10)
+    private String clientId;
+
+    @Column(name = "portfolio_currency", nullable = false, length = 3)
+    private String portfolioCurrency;
+
+    // date of the latest asset row, null for a portfolio without assets
+    @Column(name = "as_of_date")
+    private LocalDate asOfDate;
+
+    // AUM and fee are both in CAD
+    @Column(name = "aum", nullable = false, precision = 19, scale = 2)
+    private BigDecimal aum;
+
+    @Column(name = "fee", nullable = false, precision = 19, scale = 2)
+    private BigDecimal fee;
+
+    @Column(name = "effective_fee_rate", nullable = false, precision = 7, scale = 2)
+    private BigDecimal effectiveFeeRate;
+
+    @Column(name = "refreshed_at", nullable = false)
+    private LocalDateTime refreshedAt;
+}
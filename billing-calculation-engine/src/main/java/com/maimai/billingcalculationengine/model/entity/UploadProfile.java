@@ -0,0 +1,99 @@
+package com.maimai.billingcalculationengine.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Where the time of one upload went, saved when the upload finishes, whether it completed or failed.
+ * Keyed by the upload ID of its FileUploadRecord, the profile of each sheet is stored as JSON.
+ */
+@Entity
+@Table(name = "upload_profiles")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadProfile {
+
+    @Id
+    @Column(name = "upload_id")
+    private Long uploadId;
+
+    @Column(name = "status", nullable = false, length = 20)
+    private String status;
+
+    // whether the workbook was streamed instead of loaded into memory
+    @Column(name = "streaming", nullable = false)
+    private Boolean streaming;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    // from the start of processing to the final status
+    @Column(name = "elapsed_millis", nullable = false)
+    private Double elapsedMillis;
+
+    @Column(name = "open_millis", nullable = false)
+    private Double openMillis;
+
+    // portfolio snapshots and dashboard totals
+    @Column(name = "refresh_millis", nullable = false)
+    private Double refreshMillis;
+
+    // 0 if the transaction was rolled back
+    @Column(name = "commit_millis", nullable = false)
+    private Double commitMillis;
+
+    // rows processed successfully across all sheets
+    @Column(name = "total_rows", nullable = false)
+    private Long totalRows;
+
+    @Column(name = "rows_per_second", nullable = false)
+    private Long rowsPerSecond;
+
+    // peak heap while processing above the heap in use when it started, JVM-wide, see HeapUsage
+    @Column(name = "peak_heap_delta_bytes", nullable = false)
+    private Long peakHeapDeltaBytes;
+
+    // in processing order
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "sheets", columnDefinition = "jsonb")
+    private List<SheetProfile> sheets;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class SheetProfile {
+        private String sheetName;
+
+        // data rows read, without the header
+        private Long rows;
+
+        private Long processedRows;
+
+        private Long errorRows;
+
+        private Double parseMillis;
+
+        // wall time, the rows are validated in parallel ranges
+        private Double validateMillis;
+
+        private Double lookupMillis;
+
+        private Double writeMillis;
+
+        // from the start of the sheet's parse to the end of its write, including the wait for earlier sheets
+        private Double elapsedMillis;
+
+        private Long rowsPerSecond;
+    }
+}
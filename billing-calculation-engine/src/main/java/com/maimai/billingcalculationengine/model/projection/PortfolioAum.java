@@ -0,0 +1,46 @@
+package com.maimai.billingcalculationengine.model.projection;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * AUM of one portfolio in one currency on one valuation date, summed by the database and read as a projection
+ * instead of loading its assets. A portfolio has one row per currency and valuation date of its assets,
+ * so each sum can be converted to CAD at the rate of its own date.
+ */
+public interface PortfolioAum {
+    String getPortfolioId();
+
+    // currency of the assets in the sum
+    String getCurrency();
+
+    // sum of the latest valuation of each asset in the currency
+    BigDecimal getAum();
+
+    // valuation date of the assets in the sum
+    LocalDate getAsOfDate();
+
+    static PortfolioAum of(String portfolioId, String currency, BigDecimal aum, LocalDate asOfDate) {
+        return new PortfolioAum() {
+            @Override
+            public String getPortfolioId() {
+                return portfolioId;
+            }
+
+            @Override
+            public String getCurrency() {
+                return currency;
+            }
+
+            @Override
+            public BigDecimal getAum() {
+                return aum;
+            }
+
+            @Override
+            public LocalDate getAsOfDate() {
+                return asOfDate;
+            }
+        };
+    }
+}
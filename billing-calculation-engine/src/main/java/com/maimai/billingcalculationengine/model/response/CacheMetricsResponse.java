@@ -0,0 +1,44 @@
+package com.maimai.billingcalculationengine.model.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Schema(description = "Size and hit statistics of a response cache")
+public class CacheMetricsResponse {
+    @Schema(description = "Cache name")
+    private String name;
+
+    @Schema(description = "Entries cached")
+    private Integer size;
+
+    @Schema(description = "Entries kept before the least recently read is evicted")
+    private Integer maximumSize;
+
+    @Schema(description = "Seconds an entry is kept after it was loaded")
+    private Long expireAfterWriteSeconds;
+
+    @Schema(description = "Reads answered from the cache since startup")
+    private Long hits;
+
+    @Schema(description = "Reads that loaded the value since startup")
+    private Long misses;
+
+    @Schema(description = "Hits over all reads, 0 before the first read")
+    private Double hitRate;
+
+    @Schema(description = "Average milliseconds a miss took to load")
+    private Double averageLoadMillis;
+
+    @Schema(description = "Entries evicted because the cache was full")
+    private Long evictions;
+
+    @Schema(description = "Entries dropped because they expired")
+    private Long expirations;
+
+    @Schema(description = "Entries removed because an upload changed them")
+    private Long invalidations;
+}
@@ -0,0 +1,20 @@
+package com.maimai.billingcalculationengine.model.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ClientPageResponse {
+    private List<ClientResponse> clients;
+    private String sort;
+    private String direction;
+    // pass back as the cursor to read the next page, null on the last page
+    private String nextCursor;
+}
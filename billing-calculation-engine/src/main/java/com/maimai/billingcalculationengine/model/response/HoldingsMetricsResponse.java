@@ -0,0 +1,61 @@
+package com.maimai.billingcalculationengine.model.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Schema(description = "Size and scan throughput of the in-memory holdings store")
+public class HoldingsMetricsResponse {
+    @Schema(description = "Whether the holdings are loaded, sizes are only reported if they are")
+    private Boolean loaded;
+
+    @Schema(description = "Holdings held, one per asset")
+    private Integer rows;
+
+    @Schema(description = "Portfolios with holdings")
+    private Integer portfolios;
+
+    @Schema(description = "Distinct holding currencies")
+    private Integer currencies;
+
+    @Schema(description = "Estimated bytes of the portfolio, value, currency and date columns")
+    private Long columnBytes;
+
+    @Schema(description = "Estimated bytes of the asset id column and the portfolio and currency dictionaries")
+    private Long idBytes;
+
+    @Schema(description = "Estimated bytes of the whole store")
+    private Long footprintBytes;
+
+    @Schema(description = "When the holdings were last loaded")
+    private LocalDateTime loadedAt;
+
+    @Schema(description = "Where the holdings were last loaded from, DATABASE or SNAPSHOT")
+    private String loadSource;
+
+    @Schema(description = "Milliseconds the last load took")
+    private Long loadMillis;
+
+    @Schema(description = "Uploads patched into the holdings since they were loaded")
+    private Long patches;
+
+    @Schema(description = "Whole-book scans since startup")
+    private Long scans;
+
+    @Schema(description = "Holdings read by the last scan")
+    private Long lastScanRows;
+
+    @Schema(description = "Milliseconds the last scan took")
+    private Long lastScanMillis;
+
+    @Schema(description = "Holdings per second read by the last scan")
+    private Long lastScanRowsPerSecond;
+
+    @Schema(description = "Holdings per second read by all scans since startup")
+    private Long averageScanRowsPerSecond;
+}
@@ -0,0 +1,53 @@
+package com.maimai.billingcalculationengine.model.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Schema(description = "Upload job progress")
+public class UploadProgressResponse {
+    @Schema(description = "Upload record ID")
+    private Long uploadId;
+
+    @Schema(description = "Processing status (PROCESSING, COMPLETED, FAILED)")
+    private String status;
+
+    @Schema(description = "Sheet currently being written, sheets are parsed in parallel before that")
+    private String currentSheet;
+
+    @Schema(description = "Rows processed per sheet")
+    private Map<String, SheetProgress> sheets;
+
+    @Schema(description = "Rows processed across all sheets")
+    private Long totalRowsProcessed;
+
+    @Schema(description = "Rows processed per second since the job started")
+    private Long rowsPerSecond;
+
+    @Schema(description = "Milliseconds since the job started")
+    private Long elapsedMillis;
+
+    @Schema(description = "Processing result message, set once the job has finished")
+    private String processingResult;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    @Schema(description = "Progress of one sheet")
+    public static class SheetProgress {
+        @Schema(description = "Rows processed successfully so far")
+        private Long rowsProcessed;
+
+        @Schema(description = "Rows processed per second in this sheet")
+        private Long rowsPerSecond;
+
+        @Schema(description = "Whether the sheet has been fully read")
+        private Boolean finished;
+    }
+}
@@ -0,0 +1,84 @@
+package com.maimai.billingcalculationengine.repository;
+
+import com.maimai.billingcalculationengine.common.annotations.TrackExecution;
+import com.maimai.billingcalculationengine.common.enums.Layer;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Manages the monthly range partitions of the assets table, named {@code assets_yYYYYmMM}.
+ * A partition holds the valuations from the first day of its month up to the first day of the next.
+ * Detached partitions are renamed to {@code assets_archive_yYYYYmMM} and kept as plain tables.
+ * Runs on the JDBC connection of the caller's transaction.
+ */
+@Slf4j
+@Repository
+public class AssetPartitionRepository {
+    private static final String PARENT_TABLE = "assets";
+    private static final Pattern PARTITION_NAME = Pattern.compile("assets_y(\\d{4})m(\\d{2})");
+    // key of the transaction level advisory lock that serializes partition maintenance
+    private static final long PARTITION_LOCK_KEY = 0x6173736574730001L;
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Blocks until no other transaction maintains the partitions, held until the current transaction ends.
+     */
+    public void lockPartitions() {
+        jdbcTemplate.execute("SELECT pg_advisory_xact_lock(" + PARTITION_LOCK_KEY + ")");
+    }
+
+    public List<String> findPartitionNames() {
+        return jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i "
+                        + "JOIN pg_class c ON c.oid = i.inhrelid "
+                        + "JOIN pg_class p ON p.oid = i.inhparent "
+                        + "WHERE p.relname = ? AND p.relnamespace = current_schema()::regnamespace "
+                        + "ORDER BY c.relname",
+                String.class, PARENT_TABLE);
+    }
+
+    @TrackExecution(Layer.REPOSITORY)
+    public void createMonthlyPartition(YearMonth month) {
+        String sql = String.format("CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')",
+                partitionName(month), PARENT_TABLE, month.atDay(1), month.plusMonths(1).atDay(1));
+        log.info("Creating asset partition: {}", sql);
+        jdbcTemplate.execute(sql);
+    }
+
+    /**
+     * Detaches the partition of the month from the assets table and renames it to its archive name.
+     *
+     * @return The archive table name
+     */
+    @TrackExecution(Layer.REPOSITORY)
+    public String detachMonthlyPartition(YearMonth month) {
+        String partitionName = partitionName(month);
+        String archiveName = "assets_archive_" + partitionName.substring(PARENT_TABLE.length() + 1);
+        jdbcTemplate.execute(String.format("ALTER TABLE %s DETACH PARTITION %s", PARENT_TABLE, partitionName));
+        jdbcTemplate.execute(String.format("ALTER TABLE %s RENAME TO %s", partitionName, archiveName));
+        return archiveName;
+    }
+
+    public static String partitionName(YearMonth month) {
+        return String.format("%s_y%04dm%02d", PARENT_TABLE, month.getYear(), month.getMonthValue());
+    }
+
+    /**
+     * Parses the month of a partition name, empty for tables not named like a monthly partition.
+     */
+    public static Optional<YearMonth> monthOf(String partitionName) {
+        Matcher matcher = PARTITION_NAME.matcher(partitionName);
+        if (!matcher.matches()) return Optional.empty();
+        return Optional.of(YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+    }
+}
@@ -2,16 +2,56 @@ package com.maimai.billingcalculationengine.repository;
 
 import com.maimai.billingcalculationengine.model.entity.Asset;
 import com.maimai.billingcalculationengine.model.entity.AssetKey;
+import com.maimai.billingcalculationengine.model.projection.PortfolioAum;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
+/**
+ * Portfolio IDs are stored in their canonical form (see {@link com.maimai.billingcalculationengine.model.entity.Portfolio#canonicalId}),
+ * so the portfolio predicates compare the column as is and can walk idx_assets_portfolio_asset_date.
+ * Callers pass canonical IDs. The SQL of the portfolio lookups is kept in constants for the query plan test.
+ * <p>
+ * AUM is summed in the database over the latest valuation of each asset on or before an as-of date and read
+ * as {@link PortfolioAum} projections, so calculations never load asset entities.
+ * The sums are split by currency and valuation date; callers convert them to CAD with {@link
+ * com.maimai.billingcalculationengine.service.FxRateIndex}.
+ */
 public interface AssetRepository extends JpaRepository<Asset, AssetKey> {
-    List<Asset> findAll();
+    String FIND_ALL_BY_PORTFOLIO_ID = "SELECT a.* FROM assets a WHERE a.portfolio_id = :portfolioId";
 
-    @Query("SELECT a FROM Asset a WHERE UPPER(a.portfolioId) = UPPER(:portfolioId)")
+    // latest valuation of each asset on or before the date
+    String FIND_LATEST_BY_PORTFOLIO_ID_IN_AS_OF = "SELECT DISTINCT ON (a.portfolio_id, a.asset_id) a.* FROM assets a "
+            + "WHERE a.portfolio_id IN (:portfolioIds) AND a.date <= :asOfDate "
+            + "ORDER BY a.portfolio_id, a.asset_id, a.date DESC";
+
+    String FIND_ALL_LATEST_AS_OF = "SELECT DISTINCT ON (a.portfolio_id, a.asset_id) a.* FROM assets a "
+            + "WHERE a.date <= :asOfDate "
+            + "ORDER BY a.portfolio_id, a.asset_id, a.date DESC";
+
+    // one row per portfolio, currency and valuation date, so every sum converts to CAD at the rate of its date
+    // aliases are quoted, PostgreSQL would fold them to the lower case the projections do not match
+    String SUM_LATEST_AUM_BY_PORTFOLIO_ID_IN_AS_OF = "SELECT l.portfolio_id AS \"portfolioId\", l.currency AS \"currency\", "
+            + "SUM(l.asset_value) AS \"aum\", l.date AS \"asOfDate\" "
+            + "FROM (" + FIND_LATEST_BY_PORTFOLIO_ID_IN_AS_OF + ") l GROUP BY l.portfolio_id, l.currency, l.date";
+
+    @Query(value = FIND_ALL_BY_PORTFOLIO_ID, nativeQuery = true)
     List<Asset> findAllByPortfolioId(@Param("portfolioId") String portfolioId);
 
+    // portfolios whose AUM moves when rates of these upper case currencies change, read once per upload that writes rates
+    @Query(value = "SELECT DISTINCT a.portfolio_id FROM assets a WHERE UPPER(a.currency) IN (:currencies)", nativeQuery = true)
+    List<String> findPortfolioIdsByCurrencyIn(@Param("currencies") Collection<String> currencies);
+
+    @Query(value = SUM_LATEST_AUM_BY_PORTFOLIO_ID_IN_AS_OF, nativeQuery = true)
+    List<PortfolioAum> sumLatestAumByPortfolioIdInAsOf(@Param("portfolioIds") Collection<String> portfolioIds,
+                                                       @Param("asOfDate") LocalDate asOfDate);
+
+    @Query(value = "SELECT l.portfolio_id AS \"portfolioId\", l.currency AS \"currency\", "
+            + "SUM(l.asset_value) AS \"aum\", l.date AS \"asOfDate\" "
+            + "FROM (" + FIND_ALL_LATEST_AS_OF + ") l GROUP BY l.portfolio_id, l.currency, l.date", nativeQuery = true)
+    List<PortfolioAum> sumAllLatestAumAsOf(@Param("asOfDate") LocalDate asOfDate);
 }
@@ -0,0 +1,179 @@
+package com.maimai.billingcalculationengine.repository;
+
+import com.maimai.billingcalculationengine.common.annotations.TrackExecution;
+import com.maimai.billingcalculationengine.common.enums.Layer;
+import com.maimai.billingcalculationengine.model.entity.Asset;
+import com.maimai.billingcalculationengine.model.entity.BillingTier;
+import com.maimai.billingcalculationengine.model.entity.Client;
+import com.maimai.billingcalculationengine.model.entity.FxRate;
+import com.maimai.billingcalculationengine.model.entity.Portfolio;
+import com.maimai.billingcalculationengine.model.entity.PortfolioSnapshot;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes uploaded rows with multi-row {@code INSERT ... ON CONFLICT DO UPDATE} statements.
+ * <p>
+ * Each statement carries up to {@code batchSize} rows, so an upload costs one round trip per chunk
+ * instead of a lookup plus a save per row. On conflict the row keeps its {@code created_*} audit
+ * columns and the incoming {@code created_*} values are written to {@code updated_*}.
+ * Runs on the JDBC connection of the caller's transaction.
+ */
+@Slf4j
+@Repository
+public class BulkUpsertRepository {
+    // key of the transaction level advisory lock that serializes snapshot refreshes
+    private static final long SNAPSHOT_LOCK_KEY = 0x736e617073686f74L;
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Blocks until no other transaction refreshes the portfolio snapshots, held until the current transaction ends.
+     */
+    public void lockPortfolioSnapshots() {
+        jdbcTemplate.execute("SELECT pg_advisory_xact_lock(" + SNAPSHOT_LOCK_KEY + ")");
+    }
+
+    @TrackExecution(Layer.REPOSITORY)
+    public int upsertBillingTiers(Collection<BillingTier> billingTiers, int batchSize) {
+        return upsert("billing_tiers",
+                List.of("tier_id", "portfolio_aum_min", "portfolio_aum_max", "fee_percentage"),
+                List.of("tier_id", "portfolio_aum_min", "portfolio_aum_max"),
+                "fee_percentage = EXCLUDED.fee_percentage",
+                billingTiers.stream().map(tier -> new Object[]{
+                        tier.getTierId(), tier.getPortfolioAumMin(), tier.getPortfolioAumMax(), tier.getFeePercentage()
+                }).toList(),
+                batchSize);
+    }
+
+    @TrackExecution(Layer.REPOSITORY)
+    public int upsertClients(Collection<Client> clients, int batchSize) {
+        return upsert("clients",
+                List.of("client_id", "client_name", "province", "country", "billing_tier_id", "created_at", "created_by"),
+                List.of("client_id"),
+                "client_name = EXCLUDED.client_name, province = EXCLUDED.province, country = EXCLUDED.country, "
+                        + "billing_tier_id = EXCLUDED.billing_tier_id, "
+                        + "updated_at = EXCLUDED.created_at, updated_by = EXCLUDED.created_by",
+                clients.stream().map(client -> new Object[]{
+                        client.getClientId(), client.getClientName(), client.getProvince(), client.getCountry(),
+                        client.getBillingTierId(), client.getCreatedAt(), client.getCreatedBy()
+                }).toList(),
+                batchSize);
+    }
+
+    @TrackExecution(Layer.REPOSITORY)
+    public int upsertPortfolios(Collection<Portfolio> portfolios, int batchSize) {
+        return upsert("portfolios",
+                List.of("portfolio_id", "client_id", "portfolio_currency", "created_at", "created_by"),
+                List.of("portfolio_id"),
+                "client_id = EXCLUDED.client_id, portfolio_currency = EXCLUDED.portfolio_currency, "
+                        + "updated_at = EXCLUDED.created_at, updated_by = EXCLUDED.created_by",
+                portfolios.stream().map(portfolio -> new Object[]{
+                        portfolio.getPortfolioId(), portfolio.getClientId(), portfolio.getPortfolioCurrency(),
+                        portfolio.getCreatedAt(), portfolio.getCreatedBy()
+                }).toList(),
+                batchSize);
+    }
+
+    @TrackExecution(Layer.REPOSITORY)
+    public int upsertAssets(Collection<Asset> assets, int batchSize) {
+        return upsert("assets",
+                List.of("date", "portfolio_id", "asset_id", "asset_value", "currency", "created_at", "created_by"),
+                List.of("date", "portfolio_id", "asset_id"),
+                "asset_value = EXCLUDED.asset_value, currency = EXCLUDED.currency, "
+                        + "updated_at = EXCLUDED.created_at, updated_by = EXCLUDED.created_by",
+                assets.stream().map(asset -> new Object[]{
+                        asset.getDate(), asset.getPortfolioId(), asset.getAssetId(), asset.getAssetValue(),
+                        asset.getCurrency(), asset.getCreatedAt(), asset.getCreatedBy()
+                }).toList(),
+                batchSize);
+    }
+
+    @TrackExecution(Layer.REPOSITORY)
+    public int upsertFxRates(Collection<FxRate> fxRates, int batchSize) {
+        return upsert("fx_rates",
+                List.of("from_currency", "to_currency", "rate_date", "rate", "created_at", "created_by"),
+                List.of("from_currency", "to_currency", "rate_date"),
+                "rate = EXCLUDED.rate, updated_at = EXCLUDED.created_at, updated_by = EXCLUDED.created_by",
+                fxRates.stream().map(fxRate -> new Object[]{
+                        fxRate.getFromCurrency(), fxRate.getToCurrency(), fxRate.getRateDate(), fxRate.getRate(),
+                        fxRate.getCreatedAt(), fxRate.getCreatedBy()
+                }).toList(),
+                batchSize);
+    }
+
+    @TrackExecution(Layer.REPOSITORY)
+    public int upsertPortfolioSnapshots(Collection<PortfolioSnapshot> snapshots, int batchSize) {
+        return upsert("portfolio_snapshots",
+                List.of("portfolio_id", "client_id", "portfolio_currency", "as_of_date", "aum", "fee",
+                        "effective_fee_rate", "refreshed_at"),
+                List.of("portfolio_id"),
+                "client_id = EXCLUDED.client_id, portfolio_currency = EXCLUDED.portfolio_currency, "
+                        + "as_of_date = EXCLUDED.as_of_date, aum = EXCLUDED.aum, fee = EXCLUDED.fee, "
+                        + "effective_fee_rate = EXCLUDED.effective_fee_rate, refreshed_at = EXCLUDED.refreshed_at",
+                snapshots.stream().map(snapshot -> new Object[]{
+                        snapshot.getPortfolioId(), snapshot.getClientId(), snapshot.getPortfolioCurrency(),
+                        snapshot.getAsOfDate(), snapshot.getAum(), snapshot.getFee(),
+                        snapshot.getEffectiveFeeRate(), snapshot.getRefreshedAt()
+                }).toList(),
+                batchSize);
+    }
+
+    /**
+     * Upserts the rows in chunks of at most {@code batchSize} rows per statement.
+     * Rows must not repeat a conflict key within one chunk, PostgreSQL rejects that.
+     */
+    private int upsert(String table, List<String> columns, List<String> conflictColumns, String updateSet,
+                       List<Object[]> rows, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+
+        int written = 0;
+        String fullChunkSql = null;
+        for (int from = 0; from < rows.size(); from += batchSize) {
+            List<Object[]> chunk = rows.subList(from, Math.min(from + batchSize, rows.size()));
+            String sql;
+            if (chunk.size() == batchSize) {
+                // full chunks share one statement text, so the driver can reuse the prepared statement
+                if (fullChunkSql == null) {
+                    fullChunkSql = buildSql(table, columns, conflictColumns, updateSet, batchSize);
+                }
+                sql = fullChunkSql;
+            } else {
+                sql = buildSql(table, columns, conflictColumns, updateSet, chunk.size());
+            }
+
+            List<Object> args = new ArrayList<>(chunk.size() * columns.size());
+            for (Object[] row : chunk) {
+                Collections.addAll(args, row);
+            }
+            written += jdbcTemplate.update(sql, args.toArray());
+        }
+
+        log.debug("Upserted {} rows into {} with batch size {}", written, table, batchSize);
+        return written;
+    }
+
+    private static String buildSql(String table, List<String> columns, List<String> conflictColumns,
+                                   String updateSet, int rowCount) {
+        String rowPlaceholders = "(" + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+                .append(" (").append(String.join(", ", columns)).append(") VALUES ");
+        for (int i = 0; i < rowCount; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(rowPlaceholders);
+        }
+        return sql.append(" ON CONFLICT (").append(String.join(", ", conflictColumns))
+                .append(") DO UPDATE SET ").append(updateSet)
+                .toString();
+    }
+}
@@ -0,0 +1,77 @@
+package com.maimai.billingcalculationengine.repository;
+
+import com.maimai.billingcalculationengine.common.annotations.TrackExecution;
+import com.maimai.billingcalculationengine.common.enums.ClientSortField;
+import com.maimai.billingcalculationengine.common.enums.Layer;
+import com.maimai.billingcalculationengine.model.entity.Client;
+import jakarta.annotation.Resource;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads clients one page at a time with keyset pagination.
+ * <p>
+ * A page continues after the sort key and client ID of the last client of the previous page, rather than
+ * skipping an offset, so every page costs one index range scan however deep into the listing it is,
+ * and clients written between two pages neither repeat nor go missing from the pages after them.
+ */
+@Repository
+public class ClientPageRepository {
+    private static final String SELECT = "SELECT client_id, client_name, province, country, billing_tier_id FROM clients ";
+
+    private static final RowMapper<Client> CLIENT_MAPPER = (resultSet, rowNum) -> Client.builder()
+            .clientId(resultSet.getString(1))
+            .clientName(resultSet.getString(2))
+            .province(resultSet.getString(3))
+            .country(resultSet.getString(4))
+            .billingTierId(resultSet.getString(5))
+            .build();
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Reads the clients following a position in the given order.
+     *
+     * @param sort The sort field, ties are ordered by client ID
+     * @param direction The sort direction, of the field and the client ID
+     * @param afterSortValue The sort field value of the last client read, null for the first page
+     * @param afterClientId The client ID of the last client read, null for the first page
+     * @param limit The maximum number of clients to read
+     * @return The clients, in order
+     */
+    @TrackExecution(Layer.REPOSITORY)
+    public List<Client> findPage(ClientSortField sort, Sort.Direction direction, @Nullable String afterSortValue,
+                                 @Nullable String afterClientId, int limit) {
+        String comparison = direction.isAscending() ? " > " : " < ";
+        String order = direction.isAscending() ? " ASC" : " DESC";
+        List<Object> arguments = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(SELECT);
+
+        // row value comparisons, so the index on the sort columns can seek straight to the position
+        if (afterClientId != null) {
+            if (sort == ClientSortField.CLIENT_ID) {
+                sql.append("WHERE client_id").append(comparison).append("? ");
+            } else {
+                sql.append("WHERE (").append(sort.getColumnName()).append(", client_id)").append(comparison).append("(?, ?) ");
+                arguments.add(afterSortValue);
+            }
+            arguments.add(afterClientId);
+        }
+        if (sort != ClientSortField.CLIENT_ID) {
+            sql.append("ORDER BY ").append(sort.getColumnName()).append(order).append(", client_id").append(order);
+        } else {
+            sql.append("ORDER BY client_id").append(order);
+        }
+        sql.append(" LIMIT ?");
+        arguments.add(limit);
+
+        return jdbcTemplate.query(sql.toString(), CLIENT_MAPPER, arguments.toArray());
+    }
+}
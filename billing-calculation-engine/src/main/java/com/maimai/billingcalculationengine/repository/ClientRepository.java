@@ -1,10 +1,16 @@
 package com.maimai.billingcalculationengine.repository;
 
 import com.maimai.billingcalculationengine.model.entity.Client;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface ClientRepository extends JpaRepository<Client, Long> {
     List<Client> findAll();
@@ -12,4 +18,11 @@ public interface ClientRepository extends JpaRepository<Client, Long> {
     List<Client> findAllByOrderByClientIdAsc();
 
     Optional<Client> findByClientId(String clientId);
+
+    List<Client> findAllByClientIdIn(Collection<String> clientIds);
+
+    // streamed in fetch-size pages, must be consumed inside a transaction
+    @Query("SELECT c.clientId FROM Client c")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "10000"))
+    Stream<String> streamAllClientIds();
 }
@@ -0,0 +1,29 @@
+package com.maimai.billingcalculationengine.repository;
+
+import com.maimai.billingcalculationengine.model.entity.DashboardAggregate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+public interface DashboardAggregateRepository extends JpaRepository<DashboardAggregate, Integer> {
+
+    // applied in place; the delta is only right because refreshes hold the snapshot lock until they commit,
+    // see PortfolioSnapshotService#refresh
+    @Modifying
+    @Query("UPDATE DashboardAggregate a SET a.totalAum = a.totalAum + :aumDelta, a.totalFee = a.totalFee + :feeDelta, "
+            + "a.clientCount = a.clientCount + :clientCountDelta, "
+            + "a.lastUploadDate = CASE WHEN a.lastUploadDate IS NULL OR a.lastUploadDate < :uploadDate "
+            + "THEN :uploadDate ELSE a.lastUploadDate END, "
+            + "a.updatedAt = :updatedAt WHERE a.id = :id")
+    int addDelta(@Param("id") Integer id,
+                 @Param("aumDelta") BigDecimal aumDelta,
+                 @Param("feeDelta") BigDecimal feeDelta,
+                 @Param("clientCountDelta") long clientCountDelta,
+                 @Param("uploadDate") LocalDate uploadDate,
+                 @Param("updatedAt") LocalDateTime updatedAt);
+}
@@ -13,4 +13,7 @@ public interface FileUploadRepository extends JpaRepository<FileUploadRecord, Lo
 
     @Query("SELECT MAX(fur.uploadDate) FROM FileUploadRecord fur WHERE fur.status = 'COMPLETED'")
     Optional<LocalDateTime> findLatestUploadDateWhereStatusCompleted();
+
+    @Query("SELECT MAX(fur.uploadId) FROM FileUploadRecord fur WHERE fur.status = 'COMPLETED'")
+    Optional<Long> findLatestUploadIdWhereStatusCompleted();
 }
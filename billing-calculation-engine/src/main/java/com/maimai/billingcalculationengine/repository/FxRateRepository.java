@@ -0,0 +1,11 @@
+package com.maimai.billingcalculationengine.repository;
+
+import com.maimai.billingcalculationengine.model.entity.FxRate;
+import com.maimai.billingcalculationengine.model.entity.FxRateKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface FxRateRepository extends JpaRepository<FxRate, FxRateKey> {
+    List<FxRate> findAll();
+}
@@ -0,0 +1,54 @@
+package com.maimai.billingcalculationengine.repository;
+
+import com.maimai.billingcalculationengine.common.annotations.TrackExecution;
+import com.maimai.billingcalculationengine.common.enums.Layer;
+import jakarta.annotation.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+
+/**
+ * Reads the current holdings, the latest valuation of every asset, as plain column values.
+ * <p>
+ * The rows are streamed to a callback with a cursor instead of being mapped to Asset entities,
+ * so loading the whole book holds one fetch of rows in memory at a time.
+ */
+@Repository
+public class HoldingsRepository {
+    // rows per round trip, PostgreSQL only streams with a fetch size inside a transaction
+    private static final int FETCH_SIZE = 10_000;
+
+    private static final String FIND_ALL_LATEST = "SELECT DISTINCT ON (a.portfolio_id, a.asset_id) "
+            + "a.portfolio_id, a.asset_id, a.asset_value, a.currency, a.date FROM assets a "
+            + "ORDER BY a.portfolio_id, a.asset_id, a.date DESC";
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Streams the latest valuation of every asset to the handler.
+     *
+     * @param handler Receives one call per asset
+     */
+    @Transactional(readOnly = true)
+    @TrackExecution(Layer.REPOSITORY)
+    public void forEachLatestValuation(ValuationHandler handler) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(FIND_ALL_LATEST);
+            statement.setFetchSize(FETCH_SIZE);
+            return statement;
+        }, resultSet -> {
+            handler.accept(resultSet.getString(1), resultSet.getString(2), resultSet.getBigDecimal(3),
+                    resultSet.getString(4), resultSet.getObject(5, LocalDate.class));
+        });
+    }
+
+    @FunctionalInterface
+    public interface ValuationHandler {
+        void accept(String portfolioId, String assetId, BigDecimal assetValue, String currency, LocalDate date);
+    }
+}
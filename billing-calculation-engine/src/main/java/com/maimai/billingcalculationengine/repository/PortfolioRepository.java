@@ -1,11 +1,31 @@
 package com.maimai.billingcalculationengine.repository;
 
 import com.maimai.billingcalculationengine.model.entity.Portfolio;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface PortfolioRepository extends JpaRepository<Portfolio, String> {
     List<Portfolio> findAll();
     List<Portfolio> findAllByClientId(String clientId);
+    List<Portfolio> findAllByClientIdIn(Collection<String> clientIds);
+
+    @Query("SELECT p.portfolioId FROM Portfolio p WHERE p.clientId IN :clientIds")
+    List<String> findPortfolioIdsByClientIdIn(@Param("clientIds") Collection<String> clientIds);
+
+    @Query("SELECT p.portfolioId FROM Portfolio p WHERE p.clientId IN "
+            + "(SELECT c.clientId FROM Client c WHERE c.billingTierId IN :billingTierIds)")
+    List<String> findPortfolioIdsByBillingTierIdIn(@Param("billingTierIds") Collection<String> billingTierIds);
+
+    // streamed in fetch-size pages, must be consumed inside a transaction
+    @Query("SELECT p.portfolioId FROM Portfolio p")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "10000"))
+    Stream<String> streamAllPortfolioIds();
 }
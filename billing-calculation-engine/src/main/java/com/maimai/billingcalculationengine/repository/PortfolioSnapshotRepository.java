@@ -0,0 +1,27 @@
+package com.maimai.billingcalculationengine.repository;
+
+import com.maimai.billingcalculationengine.model.entity.PortfolioSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+
+public interface PortfolioSnapshotRepository extends JpaRepository<PortfolioSnapshot, String> {
+    List<PortfolioSnapshot> findAllByOrderByPortfolioIdAsc();
+
+    List<PortfolioSnapshot> findAllByClientIdInOrderByPortfolioIdAsc(Collection<String> clientIds);
+
+    @Query("SELECT COALESCE(SUM(s.aum), 0) FROM PortfolioSnapshot s")
+    BigDecimal sumAum();
+
+    @Query("SELECT COALESCE(SUM(s.fee), 0) FROM PortfolioSnapshot s")
+    BigDecimal sumFee();
+
+    // drops the snapshots of portfolios that no longer exist
+    @Modifying
+    @Query("DELETE FROM PortfolioSnapshot s WHERE s.portfolioId NOT IN (SELECT p.portfolioId FROM Portfolio p)")
+    int deleteOrphans();
+}
@@ -0,0 +1,7 @@
+package com.maimai.billingcalculationengine.repository;
+
+import com.maimai.billingcalculationengine.model.entity.UploadProfile;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface UploadProfileRepository extends JpaRepository<UploadProfile, Long> {
+}
@@ -0,0 +1,98 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.common.properties.AssetPartitionProperties;
+import com.maimai.billingcalculationengine.repository.AssetPartitionRepository;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * Keeps the monthly partitions of the assets table in step with the data.
+ * <p>
+ * Uploads create the partitions of the months they write before writing them, and the retention job
+ * detaches the months that fell out of the retention window, so the attached table, and with it
+ * what the asset queries scan, stays the size of the window however long the history gets.
+ */
+@Slf4j
+@Service
+public class AssetPartitionService {
+    @Resource
+    private AssetPartitionRepository assetPartitionRepository;
+
+    @Resource
+    private AssetPartitionProperties assetPartitionProperties;
+
+    @Resource
+    private DashboardAggregateService dashboardAggregateService;
+
+    @Resource
+    private HoldingsStore holdingsStore;
+
+    /**
+     * Creates the partitions of the given months that do not exist yet. Must run in the upload's transaction,
+     * so the partitions roll back with a failed upload.
+     *
+     * @param months The valuation months about to be written
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void ensureMonthlyPartitions(Collection<YearMonth> months) {
+        if (months.isEmpty()) return;
+
+        assetPartitionRepository.lockPartitions();
+        Set<YearMonth> existing = attachedMonths();
+        for (YearMonth month : new TreeSet<>(months)) {
+            if (!existing.contains(month)) {
+                assetPartitionRepository.createMonthlyPartition(month);
+            }
+        }
+    }
+
+    /**
+     * Detaches the partitions older than the retention window and rebuilds the snapshots and dashboard
+     * totals without them. Does nothing while {@code app.asset-partition.retention-months} is 0.
+     * <p>
+     * This method:
+     * 1. Finds the attached months before the first month of the window
+     * 2. Detaches each one and keeps it as an archive table
+     * 3. Rebuilds the snapshots and the dashboard aggregate if anything was detached
+     *
+     * @return The archive table names of the detached partitions
+     */
+    @Scheduled(cron = "${app.asset-partition.retention-cron:0 30 2 * * *}")
+    @Transactional
+    public List<String> detachExpiredPartitions() {
+        int retentionMonths = assetPartitionProperties.getRetentionMonths();
+        if (retentionMonths <= 0) return List.of();
+
+        YearMonth firstRetainedMonth = YearMonth.now().minusMonths(retentionMonths - 1L);
+        assetPartitionRepository.lockPartitions();
+        List<String> archived = new ArrayList<>();
+        for (YearMonth month : attachedMonths()) {
+            if (month.isBefore(firstRetainedMonth)) {
+                archived.add(assetPartitionRepository.detachMonthlyPartition(month));
+            }
+        }
+
+        if (!archived.isEmpty()) {
+            log.info("Detached {} asset partitions before {}: {}", archived.size(), firstRetainedMonth, archived);
+            // the latest valuation of some assets may have been detached
+            holdingsStore.invalidateAfterCommit();
+            dashboardAggregateService.rebuild();
+        }
+        return archived;
+    }
+
+    private Set<YearMonth> attachedMonths() {
+        Set<YearMonth> months = new TreeSet<>();
+        for (String partitionName : assetPartitionRepository.findPartitionNames()) {
+            AssetPartitionRepository.monthOf(partitionName).ifPresent(months::add);
+        }
+        return months;
+    }
+}
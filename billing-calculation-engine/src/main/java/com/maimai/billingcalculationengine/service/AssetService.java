@@ -3,6 +3,7 @@ package com.maimai.billingcalculationengine.service;
 import com.maimai.billingcalculationengine.common.annotations.TrackExecution;
 import com.maimai.billingcalculationengine.common.enums.Layer;
 import com.maimai.billingcalculationengine.model.entity.Asset;
+import com.maimai.billingcalculationengine.model.entity.Portfolio;
 import com.maimai.billingcalculationengine.model.response.AssetResponse;
 import com.maimai.billingcalculationengine.model.response.ClientResponse;
 import com.maimai.billingcalculationengine.repository.AssetRepository;
@@ -30,7 +31,7 @@ public class AssetService {
     }
 
     /**
-     * Retrieves assets by portfolio ID.
+     * Retrieves assets by portfolio ID, in any case.
      *
      * @param portfolioId The ID of the portfolio
      * @return List of Asset entities associated with the specified portfolio
@@ -38,7 +39,7 @@ public class AssetService {
     public List<AssetResponse> getAssetsByPortfolioId(String portfolioId) {
         log.info("Retrieving assets for portfolio ID: {}", portfolioId);
 
-        List<Asset> assets = assetRepository.findAllByPortfolioId(portfolioId);
+        List<Asset> assets = assetRepository.findAllByPortfolioId(Portfolio.canonicalId(portfolioId));
 
         List<AssetResponse> assetResponses = assets.stream()
                 .map(this::convertToResponse)
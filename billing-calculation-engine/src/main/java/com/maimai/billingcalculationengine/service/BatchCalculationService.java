@@ -0,0 +1,345 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.common.annotations.TrackExecution;
+import com.maimai.billingcalculationengine.common.enums.Layer;
+import com.maimai.billingcalculationengine.common.utils.Money;
+import com.maimai.billingcalculationengine.model.calculation.BatchCalculationResult;
+import com.maimai.billingcalculationengine.model.calculation.ClientCalculation;
+import com.maimai.billingcalculationengine.model.calculation.PortfolioCalculation;
+import com.maimai.billingcalculationengine.model.entity.Asset;
+import com.maimai.billingcalculationengine.model.entity.Client;
+import com.maimai.billingcalculationengine.model.entity.Portfolio;
+import com.maimai.billingcalculationengine.model.projection.PortfolioAum;
+import com.maimai.billingcalculationengine.repository.AssetRepository;
+import com.maimai.billingcalculationengine.repository.ClientRepository;
+import com.maimai.billingcalculationengine.repository.PortfolioRepository;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Set-based fee engine.
+ * Loads clients, portfolios and billing tiers in a few bulk reads, has the database sum the portfolio AUMs
+ * per currency, converts them to CAD with the FX rate matrix, and computes fee and effective fee rate
+ * for every client in a single in-memory pass,
+ * instead of issuing queries per client and per portfolio or loading asset entities.
+ * The pass adds and prices amounts as {@link Money} cents and only builds BigDecimals for the result,
+ * rounding exactly as {@link CalculationService#calculateFee} and {@link CalculationService#calculateEffectiveFeeRate} do.
+ */
+@Slf4j
+@Service
+public class BatchCalculationService {
+    // keeps IN lists well below the PostgreSQL bind parameter limit
+    private static final int IN_CLAUSE_CHUNK_SIZE = 1000;
+    // as-of date used when none is given, later than any valuation date, so every asset's latest row counts
+    static final LocalDate LATEST_AS_OF_DATE = LocalDate.of(9999, 12, 31);
+
+    @Resource
+    private ClientRepository clientRepository;
+
+    @Resource
+    private PortfolioRepository portfolioRepository;
+
+    @Resource
+    private AssetRepository assetRepository;
+
+    @Resource
+    private BillingTierIndex billingTierIndex;
+
+    @Resource
+    private FxRateIndex fxRateIndex;
+
+    @Resource
+    private HoldingsStore holdingsStore;
+
+    /**
+     * Calculates AUM, fee and effective fee rate for every client in the book,
+     * from the latest valuation of every asset.
+     *
+     * @return The batch result keyed by client ID and portfolio ID
+     */
+    @TrackExecution(Layer.SERVICE)
+    public BatchCalculationResult calculateAllClients() {
+        return calculateAllClients(null);
+    }
+
+    /**
+     * Calculates AUM, fee and effective fee rate for every client in the book as of a date.
+     * Each asset counts with its latest valuation on or before the date, earlier valuations are ignored.
+     * Without a date the current holdings are scanned from the {@link HoldingsStore} instead of summed by the database.
+     *
+     * @param asOfDate The valuation date, or null for the latest valuation of every asset
+     * @return The batch result keyed by client ID and portfolio ID
+     */
+    @TrackExecution(Layer.SERVICE)
+    public BatchCalculationResult calculateAllClients(LocalDate asOfDate) {
+        List<Client> clients = clientRepository.findAll();
+        List<Portfolio> portfolios = portfolioRepository.findAll();
+        if (asOfDate == null) {
+            log.info("Batch calculation for all clients from the holdings store - clients: {}, portfolios: {}",
+                    clients.size(), portfolios.size());
+            return calculateFromHoldings(clients, portfolios, billingTierIndex.current(), fxRateIndex.current());
+        }
+        List<PortfolioAum> portfolioAums = assetRepository.sumAllLatestAumAsOf(asOfDate);
+
+        log.info("Batch calculation for all clients as of {} - clients: {}, portfolios: {}",
+                asOfDate, clients.size(), portfolios.size());
+        return calculateFromAum(clients, portfolios, portfolioAums, billingTierIndex.current(), fxRateIndex.current());
+    }
+
+    /**
+     * Calculates AUM, fee and effective fee rate for the given set of clients,
+     * from the latest valuation of every asset. Unknown client IDs are ignored.
+     *
+     * @param clientIds The client IDs to calculate
+     * @return The batch result keyed by client ID and portfolio ID
+     */
+    @TrackExecution(Layer.SERVICE)
+    public BatchCalculationResult calculateClients(Collection<String> clientIds) {
+        return calculateClients(clientIds, null);
+    }
+
+    /**
+     * Calculates AUM, fee and effective fee rate for the given set of clients as of a date.
+     * Unknown client IDs are ignored.
+     *
+     * @param clientIds The client IDs to calculate
+     * @param asOfDate The valuation date, or null for the latest valuation of every asset
+     * @return The batch result keyed by client ID and portfolio ID
+     */
+    @TrackExecution(Layer.SERVICE)
+    public BatchCalculationResult calculateClients(Collection<String> clientIds, LocalDate asOfDate) {
+        List<Client> clients = findInChunks(clientIds, clientRepository::findAllByClientIdIn);
+        List<Portfolio> portfolios = findInChunks(clientIds, portfolioRepository::findAllByClientIdIn);
+        List<String> portfolioIds = portfolios.stream().map(Portfolio::getPortfolioId).toList();
+        LocalDate resolvedAsOfDate = resolveAsOfDate(asOfDate);
+        List<PortfolioAum> portfolioAums = findInChunks(portfolioIds,
+                ids -> assetRepository.sumLatestAumByPortfolioIdInAsOf(ids, resolvedAsOfDate));
+
+        log.info("Batch calculation for {} clients as of {} - portfolios: {}",
+                clients.size(), asOfDate == null ? "latest" : asOfDate, portfolios.size());
+        return calculateFromAum(clients, portfolios, portfolioAums, billingTierIndex.current(), fxRateIndex.current());
+    }
+
+    /**
+     * Calculates AUM and fee for the given portfolios only, with the given tier bands and FX rates.
+     * Each asset counts with its latest valuation. Unknown portfolio IDs are ignored.
+     * Client totals in the result cover only these portfolios.
+     *
+     * @param portfolioIds The portfolio IDs to calculate
+     * @param billingTiers The billing tier snapshot to price the portfolios with
+     * @param fxRates The FX rate matrix to convert the assets to CAD with
+     * @return The batch result keyed by client ID and portfolio ID
+     */
+    @TrackExecution(Layer.SERVICE)
+    public BatchCalculationResult calculatePortfolios(Collection<String> portfolioIds, BillingTierIndex.Snapshot billingTiers,
+                                                      FxRateIndex.Matrix fxRates) {
+        List<Portfolio> portfolios = findInChunks(portfolioIds, portfolioRepository::findAllById);
+        List<String> clientIds = portfolios.stream().map(Portfolio::getClientId).toList();
+        List<Client> clients = findInChunks(clientIds, clientRepository::findAllByClientIdIn);
+        List<String> foundPortfolioIds = portfolios.stream().map(Portfolio::getPortfolioId).toList();
+        List<PortfolioAum> portfolioAums = findInChunks(foundPortfolioIds,
+                ids -> assetRepository.sumLatestAumByPortfolioIdInAsOf(ids, LATEST_AS_OF_DATE));
+
+        log.info("Batch calculation for {} portfolios - clients: {}", portfolios.size(), clients.size());
+        return calculateFromAum(clients, portfolios, portfolioAums, billingTiers, fxRates);
+    }
+
+    /**
+     * Computes the batch result from already loaded assets, without touching the database.
+     * Converts each asset value to CAD at the rate of its valuation date, sums them per portfolio in memory
+     * and continues as {@link #calculateFromAum}. Asset values count rounded to cents, as they are stored.
+     *
+     * @param clients The clients to calculate
+     * @param portfolios The portfolios belonging to the clients
+     * @param assets The asset valuations to count, at most one per asset
+     * @param billingTiers The billing tier index snapshot
+     * @param fxRates The FX rate matrix
+     * @return The batch result keyed by client ID and portfolio ID
+     * @throws RuntimeException if a portfolio's client, applicable fee percentage or FX rate cannot be found
+     */
+    public BatchCalculationResult calculate(List<Client> clients, List<Portfolio> portfolios, List<Asset> assets,
+                                            BillingTierIndex.Snapshot billingTiers, FxRateIndex.Matrix fxRates) {
+        // sum all asset values per portfolio in CAD and keep the latest asset date
+        Map<String, PortfolioTotal> totalsByPortfolioId = new HashMap<>();
+        for (Asset asset : assets) {
+            long aum = fxRates.toBaseCurrencyCents(Money.ofBigDecimal(asset.getAssetValue()), asset.getCurrency(), asset.getDate());
+            totalsByPortfolioId.computeIfAbsent(asset.getPortfolioId(), id -> new PortfolioTotal()).add(aum, asset.getDate());
+        }
+        return calculate(clients, portfolios, totalsByPortfolioId, billingTiers, fxRates);
+    }
+
+    /**
+     * Computes the batch result from portfolio AUMs summed by the database, without touching the database.
+     * <p>
+     * This method:
+     * 1. Converts each currency and date sum to CAD at the rate of its date and adds it to its portfolio's AUM,
+     *    zero for a portfolio without sums
+     * 2. Looks up the applicable tier of the portfolio's client and applies the fee percentage
+     * 3. Converts the portfolio's AUM to its own currency at the latest rate, for the portfolio responses
+     * 4. Sums portfolio AUM and fee per client and derives the effective fee rate
+     *
+     * @param clients The clients to calculate
+     * @param portfolios The portfolios belonging to the clients
+     * @param portfolioAums The AUM sums of the portfolios that have assets, per currency and valuation date
+     * @param billingTiers The billing tier index snapshot
+     * @param fxRates The FX rate matrix
+     * @return The batch result keyed by client ID and portfolio ID
+     * @throws RuntimeException if a portfolio's client, applicable fee percentage or FX rate cannot be found
+     */
+    public BatchCalculationResult calculateFromAum(List<Client> clients, List<Portfolio> portfolios, List<PortfolioAum> portfolioAums,
+                                                   BillingTierIndex.Snapshot billingTiers, FxRateIndex.Matrix fxRates) {
+        Map<String, PortfolioTotal> totalsByPortfolioId = new HashMap<>(portfolioAums.size() * 2);
+        for (PortfolioAum portfolioAum : portfolioAums) {
+            long aum = fxRates.toBaseCurrencyCents(Money.ofBigDecimal(portfolioAum.getAum()),
+                    portfolioAum.getCurrency(), portfolioAum.getAsOfDate());
+            totalsByPortfolioId.computeIfAbsent(portfolioAum.getPortfolioId(), id -> new PortfolioTotal())
+                    .add(aum, portfolioAum.getAsOfDate());
+        }
+        return calculate(clients, portfolios, totalsByPortfolioId, billingTiers, fxRates);
+    }
+
+    // sums and converts each run of holdings as calculateFromAum does each database sum
+    private BatchCalculationResult calculateFromHoldings(List<Client> clients, List<Portfolio> portfolios,
+                                                         BillingTierIndex.Snapshot billingTiers, FxRateIndex.Matrix fxRates) {
+        Map<String, PortfolioTotal> totalsByPortfolioId = new HashMap<>(portfolios.size() * 2);
+        holdingsStore.scan((portfolioId, currency, epochDay, cents) ->
+                totalsByPortfolioId.computeIfAbsent(portfolioId, id -> new PortfolioTotal())
+                        .add(fxRates.toBaseCurrencyCents(cents, currency, epochDay), LocalDate.ofEpochDay(epochDay)));
+        return calculate(clients, portfolios, totalsByPortfolioId, billingTiers, fxRates);
+    }
+
+    private BatchCalculationResult calculate(List<Client> clients, List<Portfolio> portfolios,
+                                             Map<String, PortfolioTotal> totalsByPortfolioId,
+                                             BillingTierIndex.Snapshot billingTiers, FxRateIndex.Matrix fxRates) {
+        Map<String, Client> clientsById = clients.stream()
+                .collect(Collectors.toMap(Client::getClientId, Function.identity(), (first, second) -> first, LinkedHashMap::new));
+
+        Map<String, PortfolioCalculation> portfolioCalculations = new LinkedHashMap<>();
+        Map<String, ClientTotal> totalsByClientId = new HashMap<>();
+        PortfolioCurrencyConverter converter = new PortfolioCurrencyConverter(fxRates);
+        for (Portfolio portfolio : portfolios) {
+            String clientId = portfolio.getClientId();
+            Client client = clientsById.get(clientId);
+            if (client == null) {
+                log.error("Client not found for clientId: {}", clientId);
+                throw new RuntimeException("Client not found");
+            }
+
+            PortfolioTotal portfolioTotal = totalsByPortfolioId.get(portfolio.getPortfolioId());
+            long aum = portfolioTotal == null ? 0 : portfolioTotal.aum;
+            long feeRate = billingTiers.findFeeRate(client.getBillingTierId(), aum);
+            if (feeRate == BillingTierIndex.Snapshot.NO_FEE_RATE) {
+                log.error("Fee percentage not found for billingTierId: {}, balance: {}", client.getBillingTierId(), Money.toBigDecimal(aum));
+                throw new RuntimeException("Fee percentage not found");
+            }
+            long fee = Money.multiply(aum, feeRate);
+
+            portfolioCalculations.put(portfolio.getPortfolioId(), PortfolioCalculation.builder()
+                    .portfolioId(portfolio.getPortfolioId())
+                    .clientId(clientId)
+                    .portfolioCurrency(portfolio.getPortfolioCurrency())
+                    .asOfDate(portfolioTotal == null ? null : portfolioTotal.asOfDate)
+                    .aum(Money.toBigDecimal(aum))
+                    .fee(Money.toBigDecimal(fee))
+                    .aumInPortfolioCurrency(converter.convert(Money.toBigDecimal(aum), portfolio.getPortfolioCurrency()))
+                    .build());
+            totalsByClientId.computeIfAbsent(clientId, id -> new ClientTotal()).add(aum, fee);
+        }
+
+        Map<String, ClientCalculation> clientCalculations = new LinkedHashMap<>();
+        long totalAum = 0;
+        long totalFee = 0;
+        for (Client client : clientsById.values()) {
+            ClientTotal clientTotal = totalsByClientId.get(client.getClientId());
+            long clientAum = clientTotal == null ? 0 : clientTotal.aum;
+            long clientFee = clientTotal == null ? 0 : clientTotal.fee;
+
+            clientCalculations.put(client.getClientId(), ClientCalculation.builder()
+                    .clientId(client.getClientId())
+                    .totalAum(Money.toBigDecimal(clientAum))
+                    .totalFee(Money.toBigDecimal(clientFee))
+                    .effectiveFeeRate(clientAum > 0 ? Money.toBigDecimal(Money.percentage(clientFee, clientAum)) : BigDecimal.ZERO)
+                    .build());
+            totalAum = Money.add(totalAum, clientAum);
+            totalFee = Money.add(totalFee, clientFee);
+        }
+
+        log.info("Batch calculation complete - clients: {}, portfolios: {}, total AUM: ${} CAD, total fee: ${} CAD",
+                clientCalculations.size(), portfolioCalculations.size(), Money.toBigDecimal(totalAum), Money.toBigDecimal(totalFee));
+
+        return BatchCalculationResult.builder()
+                .clients(clientCalculations)
+                .portfolios(portfolioCalculations)
+                .totalAum(Money.toBigDecimal(totalAum))
+                .totalFee(Money.toBigDecimal(totalFee))
+                .build();
+    }
+
+    static LocalDate resolveAsOfDate(LocalDate asOfDate) {
+        return asOfDate == null ? LATEST_AS_OF_DATE : asOfDate;
+    }
+
+    static <T> List<T> findInChunks(Collection<String> ids, Function<Collection<String>, List<T>> finder) {
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<T> found = new ArrayList<>();
+        for (int from = 0; from < distinctIds.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+            int to = Math.min(from + IN_CLAUSE_CHUNK_SIZE, distinctIds.size());
+            found.addAll(finder.apply(distinctIds.subList(from, to)));
+        }
+        return found;
+    }
+
+    /**
+     * Converts portfolio AUMs from CAD to their portfolio currencies at the latest rate, rounded as
+     * {@link FxRateIndex.Matrix#convert} rounds, looking the rate of each currency up once per result.
+     * A currency without a rate converts to null instead of failing the whole result, so only the
+     * responses that show the converted AUM fail, as they did when they converted it themselves.
+     */
+    static final class PortfolioCurrencyConverter {
+        private final FxRateIndex.Matrix fxRates;
+        private final Map<String, Optional<BigDecimal>> ratesByCurrency = new HashMap<>();
+
+        PortfolioCurrencyConverter(FxRateIndex.Matrix fxRates) {
+            this.fxRates = fxRates;
+        }
+
+        BigDecimal convert(BigDecimal aum, String currency) {
+            if (currency == null) return null;
+            Optional<BigDecimal> rate = ratesByCurrency.computeIfAbsent(currency,
+                    target -> fxRates.findRate(FxRateIndex.BASE_CURRENCY, target, null));
+            return rate.map(value -> aum.multiply(value).setScale(2, RoundingMode.HALF_UP)).orElse(null);
+        }
+    }
+
+    // a portfolio's AUM in CAD cents and its latest valuation date, summed in place
+    private static final class PortfolioTotal {
+        private long aum;
+        private LocalDate asOfDate;
+
+        void add(long cents, LocalDate date) {
+            aum = Money.add(aum, cents);
+            if (asOfDate == null || (date != null && date.isAfter(asOfDate))) {
+                asOfDate = date;
+            }
+        }
+    }
+
+    // a client's AUM and fee in CAD cents, summed in place
+    private static final class ClientTotal {
+        private long aum;
+        private long fee;
+
+        void add(long aumCents, long feeCents) {
+            aum = Money.add(aum, aumCents);
+            fee = Money.add(fee, feeCents);
+        }
+    }
+}
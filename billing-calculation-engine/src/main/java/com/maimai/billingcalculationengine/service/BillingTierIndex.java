@@ -0,0 +1,266 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.common.utils.Money;
+import com.maimai.billingcalculationengine.model.entity.BillingTier;
+import com.maimai.billingcalculationengine.repository.BillingTierRepository;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory lookup index over the billing_tiers table.
+ * <p>
+ * The table is small and only changes on upload, so it is loaded once into per-tier bands
+ * sorted by portfolioAumMin and answered with a binary search instead of a query per portfolio.
+ * The loaded snapshot is immutable and swapped atomically; an upload that writes tiers
+ * invalidates it after its transaction commits.
+ */
+@Slf4j
+@Component
+public class BillingTierIndex {
+    // smallest step between two adjacent bands, AUM columns are stored with scale 2
+    private static final BigDecimal BAND_STEP = new BigDecimal("0.01");
+    private static final BigDecimal ONE_HUNDRED = BigDecimal.valueOf(100);
+
+    @Resource
+    private BillingTierRepository billingTierRepository;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+    // bumped on every invalidation so a load that raced with it is not installed
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Finds the billing tier band of the given tier ID that covers the balance.
+     *
+     * @param tierId The billing tier ID of the client
+     * @param balance The portfolio balance
+     * @return The applicable band, or empty if no band covers the balance
+     */
+    public Optional<BillingTier> findApplicableTier(String tierId, BigDecimal balance) {
+        return current().find(tierId, balance);
+    }
+
+    /**
+     * Returns the current snapshot, loading it from the database if it was invalidated.
+     *
+     * @return The immutable tier snapshot
+     */
+    public Snapshot current() {
+        Snapshot current = snapshot.get();
+        if (current != null) return current;
+
+        long loadGeneration = generation.get();
+        Snapshot loaded = Snapshot.of(billingTierRepository.findAll());
+        if (generation.get() == loadGeneration) {
+            snapshot.compareAndSet(null, loaded);
+        }
+        log.info("Loaded billing tier index - tiers: {}, bands: {}", loaded.getTierCount(), loaded.getBandCount());
+        return loaded;
+    }
+
+    /**
+     * Drops the loaded snapshot; the next lookup reloads it.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        snapshot.set(null);
+        log.info("Billing tier index invalidated");
+    }
+
+    /**
+     * Invalidates the index once the current transaction commits.
+     * Registers at most one callback per transaction, so it can be called for every tier row written.
+     * Without an active transaction the index is invalidated immediately.
+     */
+    public void invalidateAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate();
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(this)) return;
+
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(BillingTierIndex.this);
+                if (status == STATUS_COMMITTED) {
+                    invalidate();
+                }
+            }
+        });
+    }
+
+    /**
+     * Immutable, per-tier sorted bands built from a list of billing tiers.
+     */
+    public static final class Snapshot {
+        // returned by findFeeRate when no band covers the balance
+        public static final long NO_FEE_RATE = Long.MIN_VALUE;
+
+        private final Map<String, BillingTier[]> bandsByTierId;
+        private final Map<String, CentBands> centBandsByTierId;
+        private final List<String> issues;
+
+        private Snapshot(Map<String, BillingTier[]> bandsByTierId, List<String> issues) {
+            this.bandsByTierId = bandsByTierId;
+            this.issues = issues;
+            Map<String, CentBands> centBandsByTierId = new HashMap<>();
+            bandsByTierId.forEach((tierId, bands) -> centBandsByTierId.put(tierId, CentBands.of(bands)));
+            this.centBandsByTierId = centBandsByTierId;
+        }
+
+        /**
+         * Builds a snapshot and checks every tier for overlapping bands and gaps in coverage.
+         * Problems are logged and kept in {@link #getIssues()}; they do not stop the build.
+         *
+         * @param billingTiers All billing tier rows
+         * @return The snapshot
+         */
+        public static Snapshot of(Collection<BillingTier> billingTiers) {
+            Map<String, List<BillingTier>> grouped = billingTiers.stream()
+                    .collect(Collectors.groupingBy(BillingTier::getTierId));
+
+            Map<String, BillingTier[]> bandsByTierId = new HashMap<>();
+            List<String> issues = new ArrayList<>();
+            for (Map.Entry<String, List<BillingTier>> entry : grouped.entrySet()) {
+                BillingTier[] bands = entry.getValue().stream()
+                        .sorted(Comparator.comparing(BillingTier::getPortfolioAumMin)
+                                .thenComparing(BillingTier::getPortfolioAumMax))
+                        .toArray(BillingTier[]::new);
+                issues.addAll(validate(entry.getKey(), bands));
+                bandsByTierId.put(entry.getKey(), bands);
+            }
+
+            issues.forEach(issue -> log.warn("Billing tier index: {}", issue));
+            return new Snapshot(bandsByTierId, List.copyOf(issues));
+        }
+
+        private static List<String> validate(String tierId, BillingTier[] bands) {
+            List<String> issues = new ArrayList<>();
+            if (bands[0].getPortfolioAumMin().compareTo(BigDecimal.ZERO) > 0) {
+                issues.add(String.format("Tier %s does not cover balances below %s", tierId, bands[0].getPortfolioAumMin()));
+            }
+
+            for (int i = 1; i < bands.length; i++) {
+                BigDecimal previousMax = bands[i - 1].getPortfolioAumMax();
+                BigDecimal min = bands[i].getPortfolioAumMin();
+                if (min.compareTo(previousMax) <= 0) {
+                    issues.add(String.format("Tier %s has overlapping bands: [%s, %s] and [%s, %s]", tierId,
+                            bands[i - 1].getPortfolioAumMin(), previousMax, min, bands[i].getPortfolioAumMax()));
+                } else if (min.subtract(previousMax).compareTo(BAND_STEP) > 0) {
+                    issues.add(String.format("Tier %s has a gap in coverage between %s and %s", tierId, previousMax, min));
+                }
+            }
+            return issues;
+        }
+
+        /**
+         * Binary searches the tier's bands for the last band starting at or below the balance.
+         *
+         * @param tierId The billing tier ID
+         * @param balance The portfolio balance
+         * @return The band covering the balance, or empty if there is none
+         */
+        public Optional<BillingTier> find(String tierId, BigDecimal balance) {
+            BillingTier[] bands = bandsByTierId.get(tierId);
+            if (bands == null) return Optional.empty();
+
+            int low = 0;
+            int high = bands.length - 1;
+            int candidate = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (bands[mid].getPortfolioAumMin().compareTo(balance) <= 0) {
+                    candidate = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+
+            if (candidate < 0 || bands[candidate].getPortfolioAumMax().compareTo(balance) < 0) {
+                return Optional.empty();
+            }
+            return Optional.of(bands[candidate]);
+        }
+
+        /**
+         * Finds the fee rate of the band covering a balance in cents, the {@link Money} counterpart of {@link #find}.
+         *
+         * @param tierId The billing tier ID
+         * @param balanceCents The portfolio balance in cents
+         * @return The band's fee percentage divided by 100 as a rate at {@link Money#RATE_SCALE},
+         *         or {@link #NO_FEE_RATE} if no band covers the balance
+         */
+        public long findFeeRate(String tierId, long balanceCents) {
+            CentBands bands = centBandsByTierId.get(tierId);
+            if (bands == null) return NO_FEE_RATE;
+
+            int low = 0;
+            int high = bands.minCents.length - 1;
+            int candidate = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (bands.minCents[mid] <= balanceCents) {
+                    candidate = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+
+            if (candidate < 0 || bands.maxCents[candidate] < balanceCents) return NO_FEE_RATE;
+            return bands.feeRates[candidate];
+        }
+
+        public List<String> getIssues() {
+            return issues;
+        }
+
+        public int getTierCount() {
+            return bandsByTierId.size();
+        }
+
+        public int getBandCount() {
+            return bandsByTierId.values().stream().mapToInt(bands -> bands.length).sum();
+        }
+    }
+
+    // a tier's bands as Money longs, in the order of the BillingTier array
+    private static final class CentBands {
+        private final long[] minCents;
+        private final long[] maxCents;
+        private final long[] feeRates;
+
+        private CentBands(long[] minCents, long[] maxCents, long[] feeRates) {
+            this.minCents = minCents;
+            this.maxCents = maxCents;
+            this.feeRates = feeRates;
+        }
+
+        // bounds round inwards, so a balance in cents matches the same band as with BigDecimal comparisons;
+        // the fee rate is the one CalculationService.calculateFee derives from the fee percentage
+        static CentBands of(BillingTier[] bands) {
+            long[] minCents = new long[bands.length];
+            long[] maxCents = new long[bands.length];
+            long[] feeRates = new long[bands.length];
+            for (int i = 0; i < bands.length; i++) {
+                minCents[i] = bands[i].getPortfolioAumMin().setScale(Money.SCALE, RoundingMode.CEILING).unscaledValue().longValueExact();
+                maxCents[i] = bands[i].getPortfolioAumMax().setScale(Money.SCALE, RoundingMode.FLOOR).unscaledValue().longValueExact();
+                feeRates[i] = Money.ofRate(bands[i].getFeePercentage().divide(ONE_HUNDRED, Money.RATE_SCALE, RoundingMode.HALF_UP));
+            }
+            return new CentBands(minCents, maxCents, feeRates);
+        }
+    }
+}
@@ -1,22 +1,35 @@
 package com.maimai.billingcalculationengine.service;
 
-import com.maimai.billingcalculationengine.common.properties.CurrencyProperties;
-import com.maimai.billingcalculationengine.model.entity.Asset;
+import com.maimai.billingcalculationengine.common.annotations.TrackExecution;
+import com.maimai.billingcalculationengine.common.enums.Layer;
+import com.maimai.billingcalculationengine.common.exception.CalculationTimeoutException;
+import com.maimai.billingcalculationengine.common.properties.CalculationProperties;
+import com.maimai.billingcalculationengine.model.calculation.ClientCalculation;
 import com.maimai.billingcalculationengine.model.entity.BillingTier;
 import com.maimai.billingcalculationengine.model.entity.Client;
 import com.maimai.billingcalculationengine.model.entity.Portfolio;
+import com.maimai.billingcalculationengine.model.projection.PortfolioAum;
 import com.maimai.billingcalculationengine.repository.AssetRepository;
-import com.maimai.billingcalculationengine.repository.BillingTierRepository;
 import com.maimai.billingcalculationengine.repository.ClientRepository;
 import com.maimai.billingcalculationengine.repository.PortfolioRepository;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service responsible for investment management fee calculations.
@@ -32,46 +45,58 @@ public class CalculationService {
     private ClientRepository clientRepository;
 
     @Resource
-    private BillingTierRepository billingTierRepository;
+    private BillingTierIndex billingTierIndex;
 
     @Resource
-    private CurrencyProperties currencyProperties;
+    private FxRateIndex fxRateIndex;
 
     @Resource
     private PortfolioRepository portfolioRepository;
 
+    @Resource
+    private CalculationProperties calculationProperties;
+
+    @Resource(name = "calculationExecutor")
+    private AsyncTaskExecutor calculationExecutor;
 
     /**
-     * Calculates the total Assets Under Management (AUM) for a given portfolio.
-     * <p>
-     * This method:
-     * 1. Retrieves all assets associated with the portfolio
-     * 2. Converts each asset value to the portfolio's currency
-     * 3. Sums up all converted asset values to get the total portfolio balance
+     * Calculates the total Assets Under Management (AUM) for a given portfolio from the latest valuation of each asset.
      *
      * @param portfolio The portfolio entity containing ID and currency information
-     * @return The total AUM value of the portfolio in the portfolio's currency
+     * @return The total AUM value of the portfolio in CAD
      */
     public BigDecimal calculatePortfolioAum(Portfolio portfolio) {
-        BigDecimal portfolioBalance = BigDecimal.ZERO;
-        String portfolioCurrency = portfolio.getPortfolioCurrency();
-        log.info("Calculating portfolio balance for portfolioId: {}", portfolio.getPortfolioId());
+        return calculatePortfolioAum(portfolio, null);
+    }
 
-        // calculate all assets value to portfolio balance
-        List<Asset> assetsByPortfolioId = assetRepository.findAllByPortfolioId(portfolio.getPortfolioId());
-        log.info("Found {} assets for portfolioId: {}", assetsByPortfolioId.size(), portfolio.getPortfolioId());
+    /**
+     * Calculates the total Assets Under Management (AUM) for a given portfolio as of a date.
+     * <p>
+     * This method:
+     * 1. Has the database sum the latest valuation of each asset of the portfolio on or before the date,
+     *    per currency and valuation date
+     * 2. Converts each sum to CAD at the rate of its date and adds them up
+     * <p>
+     * The total stays in CAD, the currency the billing tiers and fees are in;
+     * use {@link #convertFromCadToTargetCurrency} for the portfolio's currency.
+     *
+     * @param portfolio The portfolio entity containing ID and currency information
+     * @param asOfDate The valuation date, or null for the latest valuation of every asset
+     * @return The total AUM value of the portfolio in CAD
+     */
+    @TrackExecution(Layer.SERVICE)
+    public BigDecimal calculatePortfolioAum(Portfolio portfolio, LocalDate asOfDate) {
+        log.info("Calculating portfolio balance for portfolioId: {}, as of: {}", portfolio.getPortfolioId(), asOfDate);
 
-        for (Asset asset : assetsByPortfolioId) {
-            log.info("Processing asset: id={}, currency={}, value={}",
-                    asset.getAssetId(), asset.getCurrency(), asset.getAssetValue());
-            portfolioBalance = portfolioBalance.add(asset.getAssetValue());
+        // earlier valuations of an asset are history, only its latest one counts
+        FxRateIndex.Matrix fxRates = fxRateIndex.current();
+        BigDecimal portfolioBalance = BigDecimal.ZERO;
+        for (PortfolioAum portfolioAum : assetRepository.sumLatestAumByPortfolioIdInAsOf(List.of(portfolio.getPortfolioId()),
+                BatchCalculationService.resolveAsOfDate(asOfDate))) {
+            portfolioBalance = portfolioBalance.add(
+                    fxRates.toBaseCurrency(portfolioAum.getAum(), portfolioAum.getCurrency(), portfolioAum.getAsOfDate()));
         }
 
-        // TODO: use strategic pattern + simple factory
-        BigDecimal convertedPortfolioBalance = convertFromCadToTargetCurrency(portfolioBalance, portfolioCurrency);
-        log.debug("Converted asset value: {} {} (conversion from {} to {})",
-                convertedPortfolioBalance, portfolioCurrency, portfolio.getPortfolioCurrency(), portfolioCurrency);
-
         log.info("Final calculated portfolio balance: {}", portfolioBalance);
         return portfolioBalance;
     }
@@ -90,22 +115,21 @@ public class CalculationService {
      * @return The calculated fee amount in CAD, rounded to 2 decimal places
      * @throws RuntimeException if client or fee percentage cannot be found
      */
+    @TrackExecution(Layer.SERVICE)
     public BigDecimal calculatePortfolioFee(BigDecimal balance, Portfolio portfolio) {
         String clientId = portfolio.getClientId();
         log.info("Calculating portfolio fee for clientId: {}, portfolioId: {}, balance: {}",
                 clientId, portfolio.getPortfolioId(), balance);
 
-        Optional<Client> client = clientRepository.findByClientId(clientId);
-        if (client.isEmpty()) {
-            log.error("Client not found for clientId: {}", clientId);
-            throw new RuntimeException("Client not found");
-        }
-
-        String billingTierId = client.get().getBillingTierId();
-        log.info("Retrieved billingTierId: {} for clientId: {}", billingTierId, clientId);
+        String billingTierId = findBillingTierId(clientId);
+        return calculatePortfolioFee(balance, portfolio, billingTierId);
+    }
 
+    // the fee of a portfolio whose client's billing tier ID is already known
+    private BigDecimal calculatePortfolioFee(BigDecimal balance, Portfolio portfolio, String billingTierId) {
+        String clientId = portfolio.getClientId();
         // get fee percentage
-        Optional<BillingTier> applicableTier = billingTierRepository.findByTierIdAndBalance(billingTierId, balance);
+        Optional<BillingTier> applicableTier = billingTierIndex.findApplicableTier(billingTierId, balance);
         Optional<BigDecimal> feePercentage = applicableTier.map(BillingTier::getFeePercentage);
 
         if (feePercentage.isEmpty()) {
@@ -113,66 +137,83 @@ public class CalculationService {
             throw new RuntimeException("Fee percentage not found");
         }
 
-        // convert percentage to decimal (e.g., 1.25% to 0.0125)
-        BigDecimal feeRate = feePercentage.get().divide(new BigDecimal("100"), 10, RoundingMode.HALF_UP);
-        log.debug("Fee percentage: {}%, converted to decimal rate: {}", feePercentage.get(), feeRate);
-        BigDecimal portfolioFee = balance.multiply(feeRate).setScale(2, RoundingMode.HALF_UP);
-        log.info("Calculated portfolio fee in CAD: {} (fee rate: {}) for clientId: {}, portfolioId: {}",
-                portfolioFee, feeRate, clientId, portfolio.getPortfolioId());
+        BigDecimal portfolioFee = calculateFee(balance, feePercentage.get());
+        log.info("Calculated portfolio fee in CAD: {} (fee percentage: {}%) for clientId: {}, portfolioId: {}",
+                portfolioFee, feePercentage.get(), clientId, portfolio.getPortfolioId());
 
         return portfolioFee;
     }
 
+    private String findBillingTierId(String clientId) {
+        Optional<Client> client = clientRepository.findByClientId(clientId);
+        if (client.isEmpty()) {
+            log.error("Client not found for clientId: {}", clientId);
+            throw new RuntimeException("Client not found");
+        }
+
+        String billingTierId = client.get().getBillingTierId();
+        log.info("Retrieved billingTierId: {} for clientId: {}", billingTierId, clientId);
+        return billingTierId;
+    }
+
+    /**
+     * Applies a tier fee percentage to a balance.
+     * <p>
+     * This method:
+     * 1. Converts the percentage to a decimal rate (e.g., 1.25% to 0.0125), scale 10
+     * 2. Multiplies the balance by the rate
+     * 3. Rounds the fee to 2 decimal places
+     *
+     * @param balance The balance to calculate fees on
+     * @param feePercentage The fee percentage of the applicable billing tier
+     * @return The fee amount, rounded to 2 decimal places
+     */
+    public BigDecimal calculateFee(BigDecimal balance, BigDecimal feePercentage) {
+        BigDecimal feeRate = feePercentage.divide(new BigDecimal("100"), 10, RoundingMode.HALF_UP);
+        log.debug("Fee percentage: {}%, converted to decimal rate: {}", feePercentage, feeRate);
+        return balance.multiply(feeRate).setScale(2, RoundingMode.HALF_UP);
+    }
+
     /**
      * Converts an amount from CAD to the target currency.
      * <p>
      * This method:
      * 1. Checks if conversion is needed (if target is already CAD, no conversion)
-     * 2. Uses the configured CAD to USD exchange rate to convert the amount
+     * 2. Uses the latest CAD to target currency rate of the FX rate matrix to convert the amount
      * 3. Rounds the result to 2 decimal places
      *
      * @param amount The amount in CAD to convert
      * @param currency The target currency to convert to
      * @return The converted amount in the target currency, rounded to 2 decimal places
+     * @throws RuntimeException if the FX rate matrix has no rate from CAD to the currency
      */
     public BigDecimal convertFromCadToTargetCurrency (BigDecimal amount, String currency) {
         log.debug("Converting {} CAD to {}", amount, currency);
-        BigDecimal convertedValue;
-        if (!currency.equals("CAD")) {
-            BigDecimal cadToUsdRatio= BigDecimal.valueOf(currencyProperties.getToUSD());
-            log.debug("Using conversion rate: 1 CAD = {} {}", cadToUsdRatio, currency);
-            convertedValue = amount.multiply(cadToUsdRatio).setScale(2, RoundingMode.HALF_UP);
-        } else {
-            convertedValue = amount;
+        if (FxRateIndex.BASE_CURRENCY.equalsIgnoreCase(currency)) {
             log.debug("No conversion needed, amount already in CAD");
+            return amount;
         }
 
-        return convertedValue;
+        return fxRateIndex.current().convert(amount, FxRateIndex.BASE_CURRENCY, currency, null);
     }
 
     /**
      * Calculates the total Assets Under Management (AUM) for a given client.
      * <p>
-     * This method:
-     * 1. Retrieves all portfolios associated with the client
-     * 2. Calculates AUM for each portfolio
-     * 3. Sums up all portfolio AUMs to get the total client AUM
+     * Each portfolio's AUM is converted to CAD on its own and the portfolio AUMs are added up, see
+     * {@link #sumPortfolioAum}, so the total matches {@link #calculateClientTotals} and the batch calculation to the cent.
      *
      * @param clientId The client ID for which to calculate the total AUM
      * @return The total AUM value in CAD
+     * @throws CalculationTimeoutException if the chunks do not finish within the calculation timeout
      */
+    @TrackExecution(Layer.SERVICE)
     public BigDecimal calculateClientTotalAum(String clientId) {
         log.info("Calculating total AUM for client ID: {}", clientId);
-        BigDecimal totalAum = BigDecimal.ZERO;
 
-        List<Portfolio> portfoliosByClientId = portfolioRepository.findAllByClientId(clientId);
-        log.info("Found {} portfolios for client {}", portfoliosByClientId.size(), clientId);
-
-        for (Portfolio portfolio : portfoliosByClientId) {
-            BigDecimal portfolioAum = calculatePortfolioAum(portfolio);
-            log.debug("Portfolio {} AUM: ${} CAD", portfolio.getPortfolioId(), portfolioAum);
-            totalAum = totalAum.add(portfolioAum);
-        }
+        List<String> portfolioIds = portfolioRepository.findAllByClientId(clientId).stream().map(Portfolio::getPortfolioId).toList();
+        BigDecimal totalAum = portfolioIds.isEmpty() ? BigDecimal.ZERO
+                : sumPortfolioAum(clientId, portfolioIds).values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
 
         log.info("Total AUM for client {}: ${} CAD", clientId, totalAum);
         return totalAum;
@@ -180,31 +221,159 @@ public class CalculationService {
 
     /**
      * Calculates the total management fee for a given client.
-     * <p>
-     * This method:
-     * 1. Retrieves all portfolios associated with the client
-     * 2. Calculates AUM and fee for each portfolio
-     * 3. Sums up all portfolio fees to get the total client fee
+     * Use {@link #calculateClientTotals} when the AUM is needed as well, so the assets are summed only once.
      *
      * @param clientId The client ID for which to calculate the total fee
      * @return The total fee in CAD
+     * @throws RuntimeException if the client or a fee percentage cannot be found
+     * @throws CalculationTimeoutException if the chunks do not finish within the calculation timeout
      */
+    @TrackExecution(Layer.SERVICE)
     public BigDecimal calculateClientTotalFee(String clientId) {
-        log.info("Calculating total fee for client ID: {}", clientId);
+        return calculateClientTotals(clientId).getTotalFee();
+    }
+
+    /**
+     * Calculates the total AUM, total management fee and effective fee rate of a client in one pass over its assets.
+     * <p>
+     * This method:
+     * 1. Retrieves all portfolios associated with the client and the client's billing tier ID, once
+     * 2. Has the database sum the AUM of all of them in one query, or in chunks in parallel mode,
+     *    and converts the sums to CAD
+     * 3. Calculates the fee of each portfolio in memory, in portfolio order, and sums AUM and fee up for the client
+     * 4. Derives the effective fee rate from the two totals
+     * <p>
+     * Each portfolio fee is rounded to cents on its own and the sum is never rounded, so the total is the same
+     * whether the AUM was summed in one query or in chunks, whatever order the chunks finish in.
+     * The AUM total adds the portfolio AUMs, each converted to CAD on its own, as the batch calculation does.
+     *
+     * @param clientId The client ID for which to calculate the totals
+     * @return The client's totals in CAD, zero for a client without portfolios
+     * @throws RuntimeException if the client or a fee percentage cannot be found
+     * @throws CalculationTimeoutException if the chunks do not finish within the calculation timeout
+     */
+    @TrackExecution(Layer.SERVICE)
+    public ClientCalculation calculateClientTotals(String clientId) {
+        log.info("Calculating totals for client ID: {}", clientId);
+        BigDecimal totalAum = BigDecimal.ZERO;
         BigDecimal totalFee = BigDecimal.ZERO;
 
         List<Portfolio> portfoliosByClientId = portfolioRepository.findAllByClientId(clientId);
         log.debug("Found {} portfolios for client {}", portfoliosByClientId.size(), clientId);
+        if (!portfoliosByClientId.isEmpty()) {
+            String billingTierId = findBillingTierId(clientId);
+            Map<String, BigDecimal> aumByPortfolioId =
+                    sumPortfolioAum(clientId, portfoliosByClientId.stream().map(Portfolio::getPortfolioId).toList());
+
+            for (Portfolio portfolio : portfoliosByClientId) {
+                BigDecimal portfolioAum = aumByPortfolioId.getOrDefault(portfolio.getPortfolioId(), BigDecimal.ZERO);
+                BigDecimal portfolioFee = calculatePortfolioFee(portfolioAum, portfolio, billingTierId);
+                log.debug("Portfolio {} Fee: ${} CAD", portfolio.getPortfolioId(), portfolioFee);
+                totalAum = totalAum.add(portfolioAum);
+                totalFee = totalFee.add(portfolioFee);
+            }
+        }
+
+        log.info("Totals for client {} - AUM: ${} CAD, fee: ${} CAD", clientId, totalAum, totalFee);
+        return ClientCalculation.builder()
+                .clientId(clientId)
+                .totalAum(totalAum)
+                .totalFee(totalFee)
+                .effectiveFeeRate(calculateEffectiveFeeRate(totalFee, totalAum))
+                .build();
+    }
+
+    /**
+     * Sums the AUM of each of the given portfolios in CAD. Every currency and date sum of a portfolio is converted
+     * at the rate of its date and rounded on its own, the one conversion path of the client totals.
+     *
+     * @param clientId The client the portfolios belong to, for logging
+     * @param portfolioIds The portfolio IDs to sum
+     * @return The AUM in CAD by portfolio ID, without the portfolios that have no assets
+     * @throws CalculationTimeoutException if the chunks do not finish within the calculation timeout
+     */
+    private Map<String, BigDecimal> sumPortfolioAum(String clientId, List<String> portfolioIds) {
+        FxRateIndex.Matrix fxRates = fxRateIndex.current();
+        Map<String, BigDecimal> aumByPortfolioId = new HashMap<>();
+        sumLatestAum(clientId, portfolioIds).forEach(portfolioAum -> aumByPortfolioId.merge(portfolioAum.getPortfolioId(),
+                fxRates.toBaseCurrency(portfolioAum.getAum(), portfolioAum.getCurrency(), portfolioAum.getAsOfDate()),
+                BigDecimal::add));
+        return aumByPortfolioId;
+    }
 
-        for (Portfolio portfolio : portfoliosByClientId) {
-            BigDecimal portfolioAum = calculatePortfolioAum(portfolio);
-            BigDecimal portfolioFee = calculatePortfolioFee(portfolioAum, portfolio);
-            log.debug("Portfolio {} Fee: ${} CAD", portfolio.getPortfolioId(), portfolioFee);
-            totalFee = totalFee.add(portfolioFee);
+    /**
+     * Sums the latest valuation of each asset of the given portfolios, per portfolio, currency and valuation date.
+     * <p>
+     * Without parallel mode, or when the portfolios fit one chunk, this is one query on the request thread.
+     * Otherwise this method:
+     * 1. Splits the portfolios into chunks of {@code app.calculation.portfolios-per-task}
+     * 2. Submits the chunks to the calculation executor, at most {@code per-request-concurrency} in flight,
+     *    submitting the next one as soon as one finishes
+     * 3. Returns the rows of all chunks in chunk order once they all finished
+     * <p>
+     * A request waits at most {@code timeout-millis} for its chunks. When it runs out, is interrupted or a chunk
+     * fails, the chunks still queued or running are cancelled, so the request thread is freed and the rest of the
+     * work does not take further executor slots.
+     *
+     * @param clientId The client the portfolios belong to, for logging
+     * @param portfolioIds The portfolio IDs to sum
+     * @return The AUM sums of the portfolios that have assets
+     * @throws CalculationTimeoutException if the chunks do not finish in time or the request thread is interrupted
+     */
+    private List<PortfolioAum> sumLatestAum(String clientId, List<String> portfolioIds) {
+        if (!isFannedOut(portfolioIds)) {
+            return assetRepository.sumLatestAumByPortfolioIdInAsOf(portfolioIds, BatchCalculationService.LATEST_AS_OF_DATE);
         }
 
-        log.info("Total fee for client {}: ${} CAD", clientId, totalFee);
-        return totalFee;
+        int portfoliosPerTask = Math.max(1, calculationProperties.getPortfoliosPerTask());
+        int perRequestConcurrency = Math.max(1, calculationProperties.getPerRequestConcurrency());
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < portfolioIds.size(); from += portfoliosPerTask) {
+            chunks.add(portfolioIds.subList(from, Math.min(from + portfoliosPerTask, portfolioIds.size())));
+        }
+        log.debug("Summing {} portfolios of client {} in {} chunks, {} at a time",
+                portfolioIds.size(), clientId, chunks.size(), perRequestConcurrency);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(calculationProperties.getTimeoutMillis());
+        CompletionService<List<PortfolioAum>> completionService = new ExecutorCompletionService<>(calculationExecutor);
+        List<Future<List<PortfolioAum>>> futures = new ArrayList<>(chunks.size());
+        try {
+            for (int finished = 0; finished < chunks.size(); finished++) {
+                while (futures.size() < chunks.size() && futures.size() - finished < perRequestConcurrency) {
+                    List<String> chunk = chunks.get(futures.size());
+                    futures.add(completionService.submit(() -> assetRepository.sumLatestAumByPortfolioIdInAsOf(
+                            chunk, BatchCalculationService.LATEST_AS_OF_DATE)));
+                }
+                Future<List<PortfolioAum>> completed = completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (completed == null) {
+                    log.error("Calculation of client {} timed out after {} ms, {} of {} chunks finished",
+                            clientId, calculationProperties.getTimeoutMillis(), finished, chunks.size());
+                    throw new CalculationTimeoutException("Calculation of client " + clientId + " timed out");
+                }
+                // a failed chunk fails the request right away
+                completed.get();
+            }
+
+            List<PortfolioAum> portfolioAums = new ArrayList<>();
+            for (Future<List<PortfolioAum>> future : futures) {
+                portfolioAums.addAll(future.get());
+            }
+            return portfolioAums;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CalculationTimeoutException("Calculation of client " + clientId + " was interrupted");
+        } catch (ExecutionException e) {
+            log.error("Calculation of client {} failed: {}", clientId, e.getCause().getMessage());
+            throw e.getCause() instanceof RuntimeException cause ? cause : new RuntimeException(e.getCause());
+        } finally {
+            // no-op for the finished ones
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private boolean isFannedOut(List<String> portfolioIds) {
+        return calculationProperties.isParallelEnabled()
+                && portfolioIds.size() > Math.max(1, calculationProperties.getPortfoliosPerTask());
     }
 
     /**
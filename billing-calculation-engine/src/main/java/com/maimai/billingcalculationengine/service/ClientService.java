@@ -1,24 +1,41 @@
 package com.maimai.billingcalculationengine.service;
 
 import com.maimai.billingcalculationengine.common.annotations.TrackExecution;
+import com.maimai.billingcalculationengine.common.enums.ClientSortField;
 import com.maimai.billingcalculationengine.common.enums.Layer;
+import com.maimai.billingcalculationengine.common.exception.InvalidDataException;
 import com.maimai.billingcalculationengine.common.exception.ResourceNotFoundException;
+import com.maimai.billingcalculationengine.model.calculation.BatchCalculationResult;
+import com.maimai.billingcalculationengine.model.calculation.ClientCalculation;
 import com.maimai.billingcalculationengine.model.entity.Client;
-import com.maimai.billingcalculationengine.model.entity.Portfolio;
+import com.maimai.billingcalculationengine.model.response.ClientPageResponse;
 import com.maimai.billingcalculationengine.model.response.ClientResponse;
+import com.maimai.billingcalculationengine.repository.ClientPageRepository;
 import com.maimai.billingcalculationengine.repository.ClientRepository;
 import com.maimai.billingcalculationengine.repository.PortfolioRepository;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
 import java.util.List;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class ClientService {
+    // the largest page a caller can ask for, and the page size a stream reads with
+    public static final int MAX_PAGE_SIZE = 1000;
+    static final int STREAM_PAGE_SIZE = 500;
+
+    // separates the parts of a decoded cursor, ids and names never contain it
+    private static final char CURSOR_SEPARATOR = '\u0000';
+
     @Resource
     private ClientRepository clientRepository;
 
@@ -26,7 +43,16 @@ public class ClientService {
     private PortfolioRepository portfolioRepository;
 
     @Resource
-    private CalculationService calculationService;
+    private PortfolioSnapshotService portfolioSnapshotService;
+
+    @Resource
+    private BatchCalculationService batchCalculationService;
+
+    @Resource
+    private ResponseCache responseCache;
+
+    @Resource
+    private ClientPageRepository clientPageRepository;
 
     /**
      * Retrieves all clients with their calculated financial metrics.
@@ -35,46 +61,163 @@ public class ClientService {
      */
     @TrackExecution(Layer.SERVICE)
     public List<ClientResponse> getAllClients() {
+        return getAllClients(null);
+    }
+
+    /**
+     * Retrieves all clients with their financial metrics as of a date.
+     * Without a date the metrics come from the portfolio snapshots, with one they are calculated from
+     * the latest valuation of each asset on or before the date.
+     *
+     * @param asOfDate The valuation date, or null for the current snapshots
+     * @return List of ClientResponse objects containing client information and financial metrics
+     */
+    @TrackExecution(Layer.SERVICE)
+    public List<ClientResponse> getAllClients(LocalDate asOfDate) {
         List<Client> clients = clientRepository.findAllByOrderByClientIdAsc();
+        BatchCalculationResult calculationResult = asOfDate == null
+                ? portfolioSnapshotService.findAll()
+                : batchCalculationService.calculateAllClients(asOfDate);
         List<ClientResponse> clientResponses = clients.stream()
-                .map(this::convertToResponse)
+                .map(client -> convertToResponse(client, calculationResult.getClientOrEmpty(client.getClientId())))
                 .collect(Collectors.toList());
 
         return clientResponses;
     }
 
+    /**
+     * Retrieves one page of clients with their financial metrics, in a stable order.
+     * This method:
+     * 1. Reads the clients after the cursor position with a keyset query, one more than asked for
+     * 2. Reads the metrics of only those clients, from the snapshots or as of the date
+     * 3. Returns a cursor to the last client if there are more clients after the page
+     *
+     * @param cursor The nextCursor of the previous page, or null for the first page
+     * @param size The number of clients per page, 1 to {@link #MAX_PAGE_SIZE}
+     * @param sort The sort field, ties are ordered by client ID
+     * @param direction The sort direction
+     * @param asOfDate The valuation date, or null for the current snapshots
+     * @return The page and the cursor of the next one
+     * @throws InvalidDataException if the size is out of range or the cursor is not one of this sort
+     */
+    @TrackExecution(Layer.SERVICE)
+    public ClientPageResponse getClientPage(String cursor, int size, ClientSortField sort, Sort.Direction direction,
+                                            LocalDate asOfDate) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new InvalidDataException("Page size must be between 1 and " + MAX_PAGE_SIZE + ", got " + size);
+        }
+        String[] after = decodeCursor(cursor, sort);
+        List<Client> clients = clientPageRepository.findPage(sort, direction, after[0], after[1], size + 1);
+        boolean hasMore = clients.size() > size;
+        List<Client> page = hasMore ? clients.subList(0, size) : clients;
+
+        return ClientPageResponse.builder()
+                .clients(calculatePage(page, asOfDate))
+                .sort(sort.getFieldName())
+                .direction(direction.name().toLowerCase())
+                .nextCursor(hasMore ? encodeCursor(page.get(page.size() - 1), sort) : null)
+                .build();
+    }
+
+    /**
+     * Passes every client with its financial metrics to the consumer, one page at a time, so memory use
+     * does not grow with the number of clients. Each page is read with its own queries, no transaction
+     * is held open while the consumer writes.
+     *
+     * @param sort The sort field, ties are ordered by client ID
+     * @param direction The sort direction
+     * @param asOfDate The valuation date, or null for the current snapshots
+     * @param consumer Receives the pages in order
+     * @throws IOException if the consumer fails, the remaining pages are not read
+     */
+    public void streamClients(ClientSortField sort, Sort.Direction direction, LocalDate asOfDate,
+                              PageConsumer consumer) throws IOException {
+        String afterSortValue = null;
+        String afterClientId = null;
+        int streamed = 0;
+        while (true) {
+            List<Client> page = clientPageRepository.findPage(sort, direction, afterSortValue, afterClientId, STREAM_PAGE_SIZE);
+            if (page.isEmpty()) break;
+
+            consumer.accept(calculatePage(page, asOfDate));
+            streamed += page.size();
+            if (page.size() < STREAM_PAGE_SIZE) break;
+            Client last = page.get(page.size() - 1);
+            afterSortValue = sortValue(last, sort);
+            afterClientId = last.getClientId();
+        }
+        log.info("Streamed {} clients sorted by {} {}", streamed, sort.getFieldName(), direction);
+    }
+
+    private List<ClientResponse> calculatePage(List<Client> page, LocalDate asOfDate) {
+        if (page.isEmpty()) return List.of();
+        List<String> clientIds = page.stream().map(Client::getClientId).toList();
+        BatchCalculationResult calculationResult = asOfDate == null
+                ? portfolioSnapshotService.findByClientIds(clientIds)
+                : batchCalculationService.calculateClients(clientIds, asOfDate);
+        return page.stream()
+                .map(client -> convertToResponse(client, calculationResult.getClientOrEmpty(client.getClientId())))
+                .collect(Collectors.toList());
+    }
+
+    // the sort field and the last client's position, so a cursor cannot continue a listing in another order
+    private static String encodeCursor(Client last, ClientSortField sort) {
+        String position = sort.getFieldName() + CURSOR_SEPARATOR + sortValue(last, sort) + CURSOR_SEPARATOR + last.getClientId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // the sort value and client ID to continue after, both null without a cursor
+    private static String[] decodeCursor(String cursor, ClientSortField sort) {
+        if (cursor == null || cursor.isEmpty()) return new String[2];
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                    .split(String.valueOf(CURSOR_SEPARATOR), -1);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidDataException("Invalid cursor: " + cursor);
+        }
+        if (parts.length != 3 || !parts[0].equals(sort.getFieldName())) {
+            throw new InvalidDataException("Cursor does not continue a listing sorted by " + sort.getFieldName());
+        }
+        return new String[]{parts[1], parts[2]};
+    }
+
+    private static String sortValue(Client client, ClientSortField sort) {
+        return sort == ClientSortField.CLIENT_NAME ? client.getClientName() : client.getClientId();
+    }
+
+    @FunctionalInterface
+    public interface PageConsumer {
+        void accept(List<ClientResponse> page) throws IOException;
+    }
+
     public Integer getTotalNumberOfClients() {
         return (int) clientRepository.count();
     }
 
     public BigDecimal getTotalAumOfClient() {
-        List<Client> allClients = clientRepository.findAll();
-        return allClients.stream()
-                .map(client -> calculationService.calculateClientTotalAum(client.getClientId()))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return portfolioSnapshotService.getTotalAum();
     }
 
     public BigDecimal getTotalFeeOfClient() {
-        List<Client> allClients = clientRepository.findAll();
-        return allClients.stream()
-                .map(client -> calculationService.calculateClientTotalFee(client.getClientId()))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return portfolioSnapshotService.getTotalFee();
     }
 
     /**
      * Converts a Client entity to a ClientResponse DTO with calculated fee information.
      *
      * @param client The Client entity to convert
+     * @param calculation The client's totals
      * @return A ClientResponse with all calculated financial metrics
      */
-    private ClientResponse convertToResponse(Client client) {
-        log.info("Converting client to response - ID: {}, Name: {}", client.getClientId(), client.getClientName());
+    private ClientResponse convertToResponse(Client client, ClientCalculation calculation) {
+        log.debug("Converting client to response - ID: {}, Name: {}", client.getClientId(), client.getClientName());
 
-        BigDecimal totalAum = calculationService.calculateClientTotalAum(client.getClientId());
-        BigDecimal totalFee = calculationService.calculateClientTotalFee(client.getClientId());
-        BigDecimal effectiveFeeRate = calculationService.calculateEffectiveFeeRate(totalFee, totalAum);
+        BigDecimal totalAum = calculation.getTotalAum();
+        BigDecimal totalFee = calculation.getTotalFee();
+        BigDecimal effectiveFeeRate = calculation.getEffectiveFeeRate();
 
-        log.info("Client {} conversion complete - Total AUM: ${} CAD, Total Fee: ${} CAD, Effective Rate: {}%",
+        log.debug("Client {} conversion complete - Total AUM: ${} CAD, Total Fee: ${} CAD, Effective Rate: {}%",
                 client.getClientId(), totalAum, totalFee, effectiveFeeRate);
 
         return ClientResponse.builder()
@@ -97,7 +240,27 @@ public class ClientService {
      * @throws ResourceNotFoundException if client not found
      */
     public ClientResponse getClientById(String clientId) {
-        log.info("Retrieving client with ID: {}", clientId);
+        return getClientById(clientId, null);
+    }
+
+    /**
+     * Retrieves a single client by ID with its financial metrics as of a date.
+     * Current metrics are served from the {@link ResponseCache} until an upload changes the client.
+     *
+     * @param clientId The ID of the client to retrieve
+     * @param asOfDate The valuation date, or null for the current snapshots
+     * @return ClientResponse containing client information and financial metrics
+     * @throws ResourceNotFoundException if client not found
+     */
+    public ClientResponse getClientById(String clientId, LocalDate asOfDate) {
+        if (asOfDate == null) {
+            return responseCache.getClient(clientId, id -> loadClient(id, null));
+        }
+        return loadClient(clientId, asOfDate);
+    }
+
+    private ClientResponse loadClient(String clientId, LocalDate asOfDate) {
+        log.info("Retrieving client with ID: {}, as of: {}", clientId, asOfDate);
 
         Client client = clientRepository.findByClientId(clientId)
                 .orElseThrow(() -> {
@@ -105,7 +268,10 @@ public class ClientService {
                     return new ResourceNotFoundException("Client not found with ID: " + clientId);
                 });
 
-        ClientResponse response = convertToResponse(client);
+        BatchCalculationResult calculationResult = asOfDate == null
+                ? portfolioSnapshotService.findByClientIds(List.of(clientId))
+                : batchCalculationService.calculateClients(List.of(clientId), asOfDate);
+        ClientResponse response = convertToResponse(client, calculationResult.getClientOrEmpty(clientId));
         log.info("Successfully retrieved client: {}", clientId);
 
         return response;
@@ -0,0 +1,118 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.common.annotations.TrackExecution;
+import com.maimai.billingcalculationengine.common.enums.Layer;
+import com.maimai.billingcalculationengine.model.entity.DashboardAggregate;
+import com.maimai.billingcalculationengine.repository.ClientRepository;
+import com.maimai.billingcalculationengine.repository.DashboardAggregateRepository;
+import com.maimai.billingcalculationengine.repository.FileUploadRepository;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Keeps the dashboard totals in the single dashboard_aggregates row.
+ * <p>
+ * Every upload moves the row by the AUM and fee deltas of the snapshots it refreshed and the number
+ * of clients it added, in its own transaction, so the summary is one primary key read.
+ * {@link #rebuild()} recomputes everything from the source tables for reconciliation.
+ */
+@Slf4j
+@Service
+public class DashboardAggregateService {
+    @Resource
+    private DashboardAggregateRepository dashboardAggregateRepository;
+
+    @Resource
+    private PortfolioSnapshotService portfolioSnapshotService;
+
+    @Resource
+    private ClientRepository clientRepository;
+
+    @Resource
+    private FileUploadRepository fileUploadRepository;
+
+    /**
+     * Creates the aggregate row on the first start after it was introduced,
+     * once the portfolio snapshots are in place.
+     */
+    @Order(1)
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (dashboardAggregateRepository.existsById(DashboardAggregate.SINGLETON_ID)) return;
+
+        log.info("Dashboard aggregate is missing, computing it from the portfolio snapshots");
+        dashboardAggregateRepository.save(computeFromSnapshots());
+    }
+
+    /**
+     * Returns the running totals, or computes them from the snapshots if the row does not exist yet.
+     *
+     * @return The dashboard totals
+     */
+    public DashboardAggregate getCurrent() {
+        return dashboardAggregateRepository.findById(DashboardAggregate.SINGLETON_ID)
+                .orElseGet(this::computeFromSnapshots);
+    }
+
+    /**
+     * Moves the totals by the changes of one upload. Must run in the upload's transaction.
+     * If the row does not exist yet it is computed from the snapshots, which already hold this upload.
+     *
+     * @param aumDelta The change of the total AUM in CAD
+     * @param feeDelta The change of the total fee in CAD
+     * @param clientCountDelta The number of clients the upload added
+     * @param uploadDate The date of the upload
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void applyUpload(BigDecimal aumDelta, BigDecimal feeDelta, long clientCountDelta, LocalDate uploadDate) {
+        int updated = dashboardAggregateRepository.addDelta(DashboardAggregate.SINGLETON_ID,
+                aumDelta, feeDelta, clientCountDelta, uploadDate, LocalDateTime.now());
+        if (updated == 0) {
+            DashboardAggregate aggregate = computeFromSnapshots();
+            aggregate.setLastUploadDate(uploadDate);
+            dashboardAggregateRepository.save(aggregate);
+        }
+        log.info("Applied upload to dashboard aggregate - AUM delta: ${} CAD, fee delta: ${} CAD, new clients: {}",
+                aumDelta, feeDelta, clientCountDelta);
+    }
+
+    /**
+     * Rebuilds every portfolio snapshot and recomputes the totals from them.
+     *
+     * @return The rebuilt totals
+     */
+    @Transactional(rollbackFor = Exception.class)
+    @TrackExecution(Layer.SERVICE)
+    public DashboardAggregate rebuild() {
+        portfolioSnapshotService.rebuildAll();
+        DashboardAggregate aggregate = dashboardAggregateRepository.save(computeFromSnapshots());
+        log.info("Rebuilt dashboard aggregate - total AUM: ${} CAD, total fee: ${} CAD, clients: {}",
+                aggregate.getTotalAum(), aggregate.getTotalFee(), aggregate.getClientCount());
+        return aggregate;
+    }
+
+    private DashboardAggregate computeFromSnapshots() {
+        LocalDate lastUploadDate = fileUploadRepository.findLatestUploadDateWhereStatusCompleted()
+                .map(LocalDateTime::toLocalDate)
+                .orElse(null);
+
+        return DashboardAggregate.builder()
+                .id(DashboardAggregate.SINGLETON_ID)
+                .totalAum(portfolioSnapshotService.getTotalAum())
+                .totalFee(portfolioSnapshotService.getTotalFee())
+                .clientCount(clientRepository.count())
+                .lastUploadDate(lastUploadDate)
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
+}
@@ -1,40 +1,63 @@
 package com.maimai.billingcalculationengine.service;
 
+import com.maimai.billingcalculationengine.model.calculation.BatchCalculationResult;
+import com.maimai.billingcalculationengine.model.entity.DashboardAggregate;
 import com.maimai.billingcalculationengine.model.response.dashboard.SummaryResponse;
 import jakarta.annotation.Resource;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
 
 @Service
 public class DashboardService {
 
     @Resource
-    private FileUploadService fileUploadService;
+    private DashboardAggregateService dashboardAggregateService;
 
     @Resource
-    private ClientService clientService;
-
+    private BatchCalculationService batchCalculationService;
 
     public SummaryResponse getSummary() {
-        // total aum for all client
-        BigDecimal totalAumOfClient = clientService.getTotalAumOfClient();
-
-        // total fee for all client
-        BigDecimal totalFeeOfClient = clientService.getTotalFeeOfClient();
+        // total aum, total fee, client number and last completed upload date, maintained by each upload
+        return toResponse(dashboardAggregateService.getCurrent());
+    }
 
-        // total client number
-        Integer totalNumberOfClients = clientService.getTotalNumberOfClients();
+    /**
+     * Calculates the dashboard totals as of a date, from the latest valuation of each asset on or before it.
+     * The update date stays the date of the last completed upload.
+     *
+     * @param asOfDate The valuation date, or null for the maintained current totals
+     * @return The summary as of the date
+     */
+    public SummaryResponse getSummary(LocalDate asOfDate) {
+        if (asOfDate == null) {
+            return getSummary();
+        }
+
+        BatchCalculationResult calculationResult = batchCalculationService.calculateAllClients(asOfDate);
+        return SummaryResponse.builder()
+                .totalClient(calculationResult.getClients().size())
+                .totalAum(calculationResult.getTotalAum())
+                .totalFee(calculationResult.getTotalFee())
+                .updateDate(dashboardAggregateService.getCurrent().getLastUploadDate())
+                .build();
+    }
 
-        // get created date from file upload record
-        LocalDate lastUploadDateWithCompleted = fileUploadService.getLastUploadDateWithCompleted();
+    /**
+     * Recomputes the dashboard totals from the source tables, for reconciliation.
+     *
+     * @return The rebuilt summary
+     */
+    public SummaryResponse rebuildSummary() {
+        return toResponse(dashboardAggregateService.rebuild());
+    }
 
+    private SummaryResponse toResponse(DashboardAggregate aggregate) {
         return SummaryResponse.builder()
-                .totalClient(totalNumberOfClients)
-                .totalAum(totalAumOfClient)
-                .totalFee(totalFeeOfClient)
-                .updateDate(lastUploadDateWithCompleted)
+                .totalClient(Math.toIntExact(aggregate.getClientCount()))
+                .totalAum(aggregate.getTotalAum())
+                .totalFee(aggregate.getTotalFee())
+                .updateDate(aggregate.getLastUploadDate())
                 .build();
     }
 }
@@ -1,30 +1,51 @@
 package com.maimai.billingcalculationengine.service;
 
+import com.maimai.billingcalculationengine.common.annotations.TrackExecution;
+import com.maimai.billingcalculationengine.common.enums.Layer;
 import com.maimai.billingcalculationengine.common.enums.SheetName;
+import com.maimai.billingcalculationengine.common.enums.UploadPhase;
+import com.maimai.billingcalculationengine.common.excel.SheetRow;
+import com.maimai.billingcalculationengine.common.excel.StreamingWorkbookReader;
 import com.maimai.billingcalculationengine.common.exception.*;
+import com.maimai.billingcalculationengine.common.properties.UploadProperties;
+import com.maimai.billingcalculationengine.common.utils.CompactKeySet;
 import com.maimai.billingcalculationengine.common.utils.FileUtil;
 import com.maimai.billingcalculationengine.common.utils.JwtUtil;
+import com.maimai.billingcalculationengine.model.calculation.SnapshotRefresh;
 import com.maimai.billingcalculationengine.model.entity.*;
+import com.maimai.billingcalculationengine.model.response.UploadProgressResponse;
 import com.maimai.billingcalculationengine.repository.*;
 import jakarta.annotation.Resource;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.catalina.core.ApplicationContext;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -38,17 +59,56 @@ public class FileUploadService {
     @Resource
     private PortfolioRepository portfolioRepository;
 
+    @Resource
+    private BulkUpsertRepository bulkUpsertRepository;
+
+    @Resource
+    private BillingTierIndex billingTierIndex;
+
+    @Resource
+    private FxRateIndex fxRateIndex;
+
+    @Resource
+    private HoldingsStore holdingsStore;
+
+    @Resource
+    private ResponseCache responseCache;
+
     @Resource
     private AssetRepository assetRepository;
 
     @Resource
-    private BillingTierRepository billingTierRepository;
+    private UploadProfileRepository uploadProfileRepository;
+
+    @Resource
+    private PortfolioSnapshotService portfolioSnapshotService;
+
+    @Resource
+    private DashboardAggregateService dashboardAggregateService;
+
+    @Resource
+    private AssetPartitionService assetPartitionService;
+
+    @Resource
+    private UploadProperties uploadProperties;
+
+    @Resource(name = "uploadExecutor")
+    private TaskExecutor uploadExecutor;
+
+    @Resource
+    private UploadProgressRegistry uploadProgressRegistry;
+
+    @Resource(name = "uploadParsePool")
+    private ForkJoinPool uploadParsePool;
 
     @Autowired
     private FileUploadService self;
 
     private static final Map<String, List<String>> EXPECTED_SHEETS_AND_COLUMNS = new HashMap<>();
 
+    // sheets a workbook may leave out without a note in the result summary
+    private static final Set<String> OPTIONAL_SHEETS = Set.of("fx_rate");
+
     // a validationError class to track information about each error
     // it only used in this class so no need to create in other place
     @Data
@@ -76,6 +136,10 @@ public class FileUploadService {
         EXPECTED_SHEETS_AND_COLUMNS.put("billing_tier", Arrays.asList(
                 "tier id", "portfolio aum min ($)", "portfolio aum max ($)", "fee percentage (%)"
         ));
+
+        EXPECTED_SHEETS_AND_COLUMNS.put("fx_rate", Arrays.asList(
+                "from currency", "to currency", "date", "rate"
+        ));
     }
 
     public List<FileUploadRecord> getAllFileRecords() {
@@ -91,13 +155,86 @@ public class FileUploadService {
         return null;
     }
 
+    /**
+     * Accepts a file upload and processes it in the background on the upload executor.
+     * This method:
+     * 1. Saves the upload record with status PROCESSING
+     * 2. Copies the file to a temp file, the multipart content is gone once the request ends
+     * 3. Queues the job; the worker sets the record to COMPLETED or FAILED when it finishes
+     * @param file The Excel file to process
+     * @return The saved record with status PROCESSING, or FAILED if it could not be queued
+     */
+    @TrackExecution(Layer.SERVICE)
+    public FileUploadRecord submit(MultipartFile file) {
+        FileUploadRecord savedRecord = createUploadRecord(file);
+
+        Path tempFile;
+        try {
+            tempFile = copyToTempFile(file);
+        } catch (IOException e) {
+            log.error("Error storing upload file: {}", e.getMessage(), e);
+            return saveResult(savedRecord, "FAILED", "Error: " + e.getMessage());
+        }
+
+        UploadProgressRegistry.UploadProgress progress = uploadProgressRegistry.register(savedRecord.getUploadId());
+        try {
+            uploadExecutor.execute(() -> process(savedRecord, tempFile, progress));
+            log.info("Queued upload {} for background processing", savedRecord.getUploadId());
+            return savedRecord;
+        } catch (TaskRejectedException e) {
+            log.warn("Upload {} rejected, too many uploads in progress", savedRecord.getUploadId());
+            uploadProgressRegistry.remove(savedRecord.getUploadId());
+            deleteTempFile(tempFile);
+            return saveResult(savedRecord, "FAILED", "Error: Too many uploads in progress, please try again later");
+        }
+    }
+
     /**
      * Public method to handle file uploads and track errors
      * This method is non-transactional to ensure the upload record is always saved
      * @param file The Excel file to process
      * @return The FileUploadRecord with the processing status
      */
+    @TrackExecution(Layer.SERVICE)
     public FileUploadRecord upload(MultipartFile file) {
+        FileUploadRecord savedRecord = createUploadRecord(file);
+        try {
+            return process(savedRecord, copyToTempFile(file), UploadProgressRegistry.UploadProgress.untracked());
+        } catch (IOException e) {
+            log.error("Error storing upload file: {}", e.getMessage(), e);
+            return saveResult(savedRecord, "FAILED", "Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reports the progress of an upload: live counters while it runs on this instance,
+     * otherwise the status and result saved on its record.
+     * @param uploadId The upload record ID
+     * @return The progress, or empty if there is no such upload
+     */
+    public Optional<UploadProgressResponse> getProgress(Long uploadId) {
+        Optional<UploadProgressRegistry.UploadProgress> running = uploadProgressRegistry.find(uploadId);
+        if (running.isPresent()) {
+            return Optional.of(running.get().toResponse());
+        }
+
+        return fileUploadRepository.findById(uploadId)
+                .map(uploadRecord -> UploadProgressResponse.builder()
+                        .uploadId(uploadRecord.getUploadId())
+                        .status(uploadRecord.getStatus())
+                        .processingResult(uploadRecord.getProcessingResult())
+                        .build());
+    }
+
+    /**
+     * @param uploadId The upload record ID
+     * @return Where the time of the upload went, or empty if it has not finished or there is no such upload
+     */
+    public Optional<UploadProfile> getProfile(Long uploadId) {
+        return uploadProfileRepository.findById(uploadId);
+    }
+
+    private FileUploadRecord createUploadRecord(MultipartFile file) {
         String originalFilename = file.getOriginalFilename();
         log.info("Processing upload file: {}", originalFilename);
 
@@ -112,19 +249,69 @@ public class FileUploadService {
                 .build();
         FileUploadRecord savedRecord = fileUploadRepository.save(uploadRecord);
         log.info("Saved record, id: {}", savedRecord.getUploadId());
+        return savedRecord;
+    }
 
+    // runs the transactional processing and records the outcome and profile, then releases the temp file and progress entry
+    private FileUploadRecord process(FileUploadRecord savedRecord, Path file, UploadProgressRegistry.UploadProgress progress) {
+        progress.startProcessing();
         try {
             // the transactional method to process the file
-            String resultSummary = self.uploadTransactional(file, savedRecord);
-
-            savedRecord.setStatus("COMPLETED");
-            savedRecord.setProcessingResult(resultSummary);
-            return fileUploadRepository.save(savedRecord);
+            String resultSummary = self.uploadTransactional(file, savedRecord, progress);
+            progress.finishCommit();
+            FileUploadRecord completedRecord = saveResult(savedRecord, "COMPLETED", resultSummary);
+            saveProfile(savedRecord, progress);
+            // a snapshot is tagged with the latest completed upload, so it is taken once the record says so
+            holdingsStore.saveSnapshot();
+            return completedRecord;
         } catch (Exception e) {
             log.error("Error processing file: {}", e.getMessage(), e);
-            savedRecord.setStatus("FAILED");
-            savedRecord.setProcessingResult("Error: " + e.getMessage());
-            return fileUploadRepository.save(savedRecord);
+            FileUploadRecord failedRecord = saveResult(savedRecord, "FAILED", "Error: " + e.getMessage());
+            saveProfile(savedRecord, progress);
+            return failedRecord;
+        } finally {
+            deleteTempFile(file);
+            // removed only after the final status is saved, so polling never sees a gap
+            uploadProgressRegistry.remove(savedRecord.getUploadId());
+        }
+    }
+
+    private FileUploadRecord saveResult(FileUploadRecord savedRecord, String status, String processingResult) {
+        savedRecord.setStatus(status);
+        savedRecord.setProcessingResult(processingResult);
+        return fileUploadRepository.save(savedRecord);
+    }
+
+    // a profile that cannot be saved is logged, it never fails the upload
+    private void saveProfile(FileUploadRecord uploadRecord, UploadProgressRegistry.UploadProgress progress) {
+        try {
+            UploadProfile profile = progress.toProfile(uploadRecord.getUploadId(), uploadRecord.getStatus(),
+                    uploadProperties.isStreaming());
+            uploadProfileRepository.save(profile);
+            log.info("Upload {} profile - elapsed: {} ms, open: {} ms, refresh: {} ms, commit: {} ms, rows: {} ({} rows/sec), peak heap delta: {} bytes",
+                    profile.getUploadId(), profile.getElapsedMillis(), profile.getOpenMillis(), profile.getRefreshMillis(),
+                    profile.getCommitMillis(), profile.getTotalRows(), profile.getRowsPerSecond(), profile.getPeakHeapDeltaBytes());
+        } catch (RuntimeException e) {
+            log.error("Could not save profile of upload {}: {}", uploadRecord.getUploadId(), e.getMessage(), e);
+        }
+    }
+
+    private static Path copyToTempFile(MultipartFile file) throws IOException {
+        Path tempFile = Files.createTempFile("billing-upload-", ".xlsx");
+        try (InputStream inputStream = file.getInputStream()) {
+            Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            return tempFile;
+        } catch (IOException e) {
+            deleteTempFile(tempFile);
+            throw e;
+        }
+    }
+
+    private static void deleteTempFile(Path tempFile) {
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            log.warn("Could not delete temp upload file {}: {}", tempFile, e.getMessage());
         }
     }
 
@@ -132,56 +319,60 @@ public class FileUploadService {
      * This is the actual transactional method that will be rolled back on exceptions
      * @param file The Excel file to process
      * @param uploadRecord The record tracking this upload
+     * @param progress Receives rows processed per sheet while the file is processed
      * @return The processing result summary
      * @throws Exception If any validation or processing error occurs
      */
     @Transactional(rollbackFor = Exception.class)
-    public String uploadTransactional(MultipartFile file, FileUploadRecord uploadRecord) throws Exception {
+    @TrackExecution(Layer.SERVICE)
+    public String uploadTransactional(Path file, FileUploadRecord uploadRecord,
+                                      UploadProgressRegistry.UploadProgress progress) throws Exception {
         log.info("Starting transactional processing for file: {}", uploadRecord.getFileName());
 
         // order for processing sheets
         List<String> processingOrder = Arrays.asList(
+                "fx_rate",        // FX rates depend on nothing, optional
                 "billing_tier",   // First process billing tiers
                 "client_billing", // Then clients
                 "portfolio",      // Then portfolios
                 "assets"          // Finally assets
         );
 
-        Workbook workbook;
-        try {
-            workbook = new XSSFWorkbook(file.getInputStream());
-        } catch (IOException e) {
-            throw new IOException("Invalid Excel File Format", e);
-        }
-
         Map<String, Integer> processingStats = new HashMap<>();
         StringBuilder resultSummary = new StringBuilder();
         List<ValidationError> validationErrors = new ArrayList<>();
 
-        // process sheets in the specified order
-        for (String sheetName : processingOrder) {
-            Sheet sheet = workbook.getSheet(sheetName);
-            if (sheet == null) {
-                log.warn("Sheet {} not found", sheetName);
-                resultSummary.append("Sheet not found: ").append(sheetName).append("\n");
-                continue;
-            }
+        long startNanos = System.nanoTime();
+        UploadBatch batch = new UploadBatch(String.valueOf(JwtUtil.getCurrentUserId()), uploadProperties.getBatchSize(), progress);
 
-            log.info("Processing sheet {}", sheetName);
-            Map<String, Object> sheetResult = processSheet(sheet);
+        // parse and validate all sheets in parallel, then commit them one by one in processing order
+        List<ParsedSheet<?>> parsedSheets = uploadProperties.isStreaming()
+                ? parseStreaming(file, processingOrder, resultSummary, progress)
+                : parseWorkbook(file, processingOrder, resultSummary, progress);
+        List<Map<String, Object>> sheetResults = new ArrayList<>();
+        for (ParsedSheet<?> parsedSheet : parsedSheets) {
+            sheetResults.add(commitSheet(parsedSheet, batch));
+        }
+
+        int totalRowsProcessed = 0;
+        for (Map<String, Object> sheetResult : sheetResults) {
+            String sheetName = (String) sheetResult.get("sheetName");
             int rowProcessed = (int) sheetResult.get("processedRows");
             List<ValidationError> sheetErrors = (List<ValidationError>) sheetResult.get("errors");
 
             // collect errors from each sheet to processing stats map
             validationErrors.addAll(sheetErrors);
             processingStats.put(sheetName, rowProcessed);
+            totalRowsProcessed += rowProcessed;
             resultSummary.append("Processed ").append(rowProcessed)
-                    .append(" rows from '").append(sheetName).append("'. \n");
+                    .append(" rows from '").append(sheetName).append("' (")
+                    .append(sheetResult.get("rowsPerSecond")).append(" rows/sec). \n");
         }
 
-        resultSummary.append("Finished processing sheets, total sheets: ").append(processingStats.size());
-
-        workbook.close();
+        resultSummary.append("Finished processing sheets, total sheets: ").append(processingStats.size())
+                .append(", total rows: ").append(totalRowsProcessed)
+                .append(" (").append(UploadProgressRegistry.rowsPerSecond(totalRowsProcessed, System.nanoTime() - startNanos))
+                .append(" rows/sec)");
 
         // if there are errors, throw an exception to trigger rollback
         if (!validationErrors.isEmpty()) {
@@ -202,110 +393,576 @@ public class FileUploadService {
             throw new InvalidDataException(errorMessage);
         }
 
+        // recalculate the snapshots of what this upload wrote and move the dashboard totals, in the same transaction
+        long refreshStart = System.nanoTime();
+        SnapshotRefresh snapshotRefresh = portfolioSnapshotService.refresh(
+                batch.writtenBillingTierIds, batch.writtenClientIds, batch.writtenPortfolioIds);
+        LocalDateTime uploadDate = uploadRecord.getUploadDate() != null ? uploadRecord.getUploadDate() : batch.uploadedAt;
+        dashboardAggregateService.applyUpload(snapshotRefresh.getAumDelta(), snapshotRefresh.getFeeDelta(),
+                batch.newClientCount, uploadDate.toLocalDate());
+        progress.addPhase(UploadPhase.REFRESH, System.nanoTime() - refreshStart);
+        resultSummary.append(". \nRefreshed ").append(snapshotRefresh.getRefreshedPortfolios()).append(" portfolio snapshots");
+
+        // the transaction commits once this method returns
+        progress.startCommit();
+
         // return the summary of processing results
         return resultSummary.toString();
     }
 
-    protected Map<String, Object> processSheet(Sheet sheet) {
-        String sheetName = sheet.getSheetName();
-        Row headerRow = sheet.getRow(0);
-        // a list to store each sheet's error
-        List<ValidationError> validationErrors = new ArrayList<>();
+    /**
+     * Opens the workbook with the SAX event reader and parses the sheets in parallel.
+     * The package is read from the file on disk without buffering it in the heap.
+     */
+    private List<ParsedSheet<?>> parseStreaming(Path file, List<String> processingOrder, StringBuilder resultSummary,
+                                                UploadProgressRegistry.UploadProgress progress) throws IOException {
+        long openStart = System.nanoTime();
+        try (StreamingWorkbookReader reader = StreamingWorkbookReader.open(file.toFile())) {
+            progress.addPhase(UploadPhase.OPEN, System.nanoTime() - openStart);
+            Map<String, RowSource> sources = new LinkedHashMap<>();
+            for (String sheetName : processingOrder) {
+                if (!reader.hasSheet(sheetName)) {
+                    if (!OPTIONAL_SHEETS.contains(sheetName)) {
+                        log.warn("Sheet {} not found", sheetName);
+                        resultSummary.append("Sheet not found: ").append(sheetName).append("\n");
+                    }
+                    continue;
+                }
+                sources.put(sheetName, rowConsumer -> reader.readSheet(sheetName, rowConsumer));
+            }
+            // the reader stays open until every sheet task has finished
+            return parseInParallel(sources, progress);
+        }
+    }
 
-        if (headerRow == null) {
-            // record the error then stop the rest of the operation
-            log.warn("Header row not found in sheet: {}", sheetName);
-            validationErrors.add(new ValidationError(sheetName, 0,  "Header row not found"));
+    /**
+     * Loads the whole workbook into memory, detaches its rows and parses the sheets in parallel.
+     */
+    private List<ParsedSheet<?>> parseWorkbook(Path file, List<String> processingOrder, StringBuilder resultSummary,
+                                               UploadProgressRegistry.UploadProgress progress) throws IOException {
+        long openStart = System.nanoTime();
+        Workbook workbook;
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            workbook = new XSSFWorkbook(inputStream);
+        } catch (IOException e) {
+            throw new IOException("Invalid Excel File Format", e);
+        }
 
-            Map<String, Object> result = new HashMap<>();
-            result.put("processedRows", 0);
-            result.put("errors", validationErrors);
-            return result;
+        Map<String, RowSource> sources = new LinkedHashMap<>();
+        try (workbook) {
+            for (String sheetName : processingOrder) {
+                Sheet sheet = workbook.getSheet(sheetName);
+                if (sheet == null) {
+                    if (!OPTIONAL_SHEETS.contains(sheetName)) {
+                        log.warn("Sheet {} not found", sheetName);
+                        resultSummary.append("Sheet not found: ").append(sheetName).append("\n");
+                    }
+                    continue;
+                }
+
+                // the usermodel is not thread-safe, so rows are copied out on this thread
+                List<SheetRow> rows = new ArrayList<>();
+                for (Row row : sheet) {
+                    rows.add(SheetRow.of(row));
+                }
+                sources.put(sheetName, rows::forEach);
+            }
         }
+        progress.addPhase(UploadPhase.OPEN, System.nanoTime() - openStart);
+        return parseInParallel(sources, progress);
+    }
 
-        List<String> expectedColumns = EXPECTED_SHEETS_AND_COLUMNS.get(sheetName);
-        Map<String, Integer> columnIndexMap = FileUtil.validateHeaders(headerRow, expectedColumns);
-        if (columnIndexMap == null) {
-            // record the error then stop the operation
-            validationErrors.add(new ValidationError(sheetName, 0,
-                    "Invalid headers. Expected: " + String.join(", ", expectedColumns)));
+    /**
+     * Runs one parse task per sheet on the upload parse pool and returns the results in the given order.
+     * Waits for every task before returning, so no task is still reading when the source is closed.
+     */
+    private List<ParsedSheet<?>> parseInParallel(Map<String, RowSource> sources,
+                                                 UploadProgressRegistry.UploadProgress progress) throws IOException {
+        List<ForkJoinTask<ParsedSheet<?>>> tasks = new ArrayList<>();
+        for (Map.Entry<String, RowSource> source : sources.entrySet()) {
+            String sheetName = source.getKey();
+            UploadProgressRegistry.SheetProgress sheetProgress = progress.startSheet(sheetName);
+            log.info("Parsing sheet {}", sheetName);
+            tasks.add(uploadParsePool.submit(() -> parseSheet(sheetName, source.getValue(), sheetProgress)));
+        }
 
-            Map<String, Object> result = new HashMap<>();
-            result.put("processedRows", 0);
-            result.put("errors", validationErrors);
-            return result;
+        List<ParsedSheet<?>> parsedSheets = new ArrayList<>();
+        Exception failure = null;
+        for (ForkJoinTask<ParsedSheet<?>> task : tasks) {
+            try {
+                parsedSheets.add(task.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = failure == null ? e : failure;
+            } catch (ExecutionException e) {
+                failure = failure == null ? (Exception) e.getCause() : failure;
+            }
         }
 
-        int rowCount = 0;
-        int successCount = 0;
-        int totalRows = sheet.getLastRowNum();
+        if (failure instanceof IOException ioException) throw ioException;
+        if (failure instanceof RuntimeException runtimeException) throw runtimeException;
+        if (failure != null) throw new IOException("Failed to parse upload", failure);
+        return parsedSheets;
+    }
 
-        // handle each row in sheet
-        for (int i = 1; i <= totalRows; i++) {
-            Row dataRow = sheet.getRow(i);
-            if (dataRow == null) continue;
+    /**
+     * Streams one sheet and validates its data rows in chunks of {@code parse-chunk-size} while it is read.
+     * At most one chunk per parse thread is validated at a time; reading waits for the oldest one beyond that,
+     * so the raw rows held per sheet stay bounded whatever the size of the sheet.
+     * The first row must be the header; if it is missing or invalid, the data rows are not validated.
+     */
+    private ParsedSheet<?> parseSheet(String sheetName, RowSource source,
+                                      UploadProgressRegistry.SheetProgress sheetProgress) throws IOException {
+        long parseStart = System.nanoTime();
+        SheetName sheetEnum = SheetName.fromString(sheetName);
+        ParsedSheet<?> parsedSheet = new ParsedSheet<>(sheetName, sheetEnum, rowParser(sheetEnum), sheetProgress,
+                uploadParsePool, Math.max(1, uploadProperties.getParseChunkSize()));
+        try {
+            source.forEach(parsedSheet::accept);
+            parsedSheet.finish();
+        } finally {
+            // reading waits for validation only when too many chunks are in flight, that wait counts as validation
+            sheetProgress.addPhase(UploadPhase.PARSE, System.nanoTime() - parseStart - parsedSheet.validateWaitNanos);
+            sheetProgress.addPhase(UploadPhase.VALIDATE, parsedSheet.validateWaitNanos);
+        }
+        sheetProgress.setRowsRead(parsedSheet.rowsRead);
+        return parsedSheet;
+    }
 
-            rowCount++;
+    /**
+     * Buffers the parsed rows of one sheet into the upload batch and writes them.
+     * Runs on the transaction's thread, sheet by sheet in dependency order, because the
+     * referential checks of a sheet depend on the keys committed by the sheets before it.
+     */
+    private Map<String, Object> commitSheet(ParsedSheet<?> parsedSheet, UploadBatch batch) {
+        String sheetName = parsedSheet.sheetName;
+        batch.progress.setCurrentSheet(sheetName);
+        long commitStart = System.nanoTime();
+        long lookupNanosBefore = batch.lookupNanos;
+
+        // a list to store each sheet's error
+        List<ValidationError> validationErrors = new ArrayList<>(parsedSheet.errors);
+        int successCount = 0;
+        for (ParsedRow<?> parsedRow : parsedSheet.rows) {
+            int i = parsedRow.rowNum;
             try {
-                processDataRow(dataRow, sheetName, columnIndexMap);
+                commitRow(parsedSheet.sheetEnum, parsedRow, batch);
                 successCount++;
+                parsedSheet.progress.rowProcessed();
             } catch (InvalidDataException e) {
-                // extract the error information for better reporting
-                String errorMsg = e.getMessage();
-
-                // track each validation error with row and column details
-                validationErrors.add(new ValidationError(sheetName, i+1, errorMsg));
-                log.error("Validation error in row {} of sheet {}: {}", i+1, sheetName, errorMsg);
-            } catch (Exception e) {
-                log.error("Error processing row {} in sheet {}: {}", i+1, sheetName, e.getMessage(), e);
+                validationErrors.add(new ValidationError(sheetName, i+1, e.getMessage()));
+                log.error("Validation error in row {} of sheet {}: {}", i+1, sheetName, e.getMessage());
             }
         }
+        validationErrors.sort(Comparator.comparingInt(ValidationError::getRowNum));
+
+        // an upload with errors is rolled back anyway, so its buffered rows are never written
+        if (!validationErrors.isEmpty()) {
+            batch.failed = true;
+        }
+        batch.flush(parsedSheet.sheetEnum);
+        parsedSheet.progress.finish();
+
+        // the lookups run inside the row checks and the flush, the rest of the time is the write
+        long lookupNanos = batch.lookupNanos - lookupNanosBefore;
+        parsedSheet.progress.addPhase(UploadPhase.LOOKUP, lookupNanos);
+        parsedSheet.progress.addPhase(UploadPhase.WRITE, System.nanoTime() - commitStart - lookupNanos);
+        parsedSheet.progress.setErrorRows(validationErrors.size());
 
-        log.info("Processed {}/{} rows successfully in sheet: {} (Total rows: {})",
-                successCount, rowCount, sheetName, totalRows);
+        long rowsPerSecond = UploadProgressRegistry.rowsPerSecond(successCount, parsedSheet.progress.elapsedNanos());
+        log.info("Processed {}/{} rows successfully in sheet: {} (Total rows: {}, {} rows/sec)",
+                successCount, parsedSheet.rowCount, sheetName, parsedSheet.totalRows, rowsPerSecond);
 
         Map<String, Object> result = new HashMap<>();
+        result.put("sheetName", sheetName);
         result.put("processedRows", successCount);
+        result.put("rowsPerSecond", rowsPerSecond);
         result.put("errors", validationErrors);
         return result;
     }
 
-    private void processDataRow(Row dataRow, String sheetName, Map<String, Integer> columnIndexMap) {
-        SheetName sheetEnum;
-        try {
-            sheetEnum = SheetName.fromString(sheetName); // Convert string to enum
-        } catch (IllegalArgumentException e) {
-            log.warn("Unknown sheet name: {}", sheetName);
-            throw new InvalidDataException("Unknown sheet name: " + sheetName);
+    // source of the rows of one sheet, in row order
+    @FunctionalInterface
+    private interface RowSource {
+        void forEach(Consumer<SheetRow> rowConsumer) throws IOException;
+    }
+
+    // turns one data row into its entity, throws InvalidDataException if a value is invalid
+    @FunctionalInterface
+    private interface RowParser<T> {
+        T parse(SheetRow row, Map<String, Integer> columnIndexMap);
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class ParsedRow<T> {
+        private int rowNum;
+        private T entity;
+    }
+
+    /**
+     * Typed rows of one sheet that passed cell validation, in row order, plus the errors of the rows that did not.
+     */
+    private static class ParsedSheet<T> {
+        private final String sheetName;
+        private final SheetName sheetEnum;
+        private final RowParser<T> rowParser;
+        private final UploadProgressRegistry.SheetProgress progress;
+        private final List<ValidationError> errors = new ArrayList<>();
+        private final List<ParsedRow<T>> rows = new ArrayList<>();
+        private final ForkJoinPool parsePool;
+        private final int chunkSize;
+        private int rowCount;
+        private int totalRows;
+        // chunks submitted and not yet collected, oldest first
+        private final Deque<ForkJoinTask<Object[]>> chunksInFlight = new ArrayDeque<>();
+        private List<SheetRow> chunk;
+        private Map<String, Integer> columnIndexMap;
+        private boolean headerRead;
+        private int rowsRead;
+        private long validateWaitNanos;
+
+        ParsedSheet(String sheetName, SheetName sheetEnum, RowParser<T> rowParser,
+                    UploadProgressRegistry.SheetProgress progress, ForkJoinPool parsePool, int chunkSize) {
+            this.sheetName = sheetName;
+            this.sheetEnum = sheetEnum;
+            this.rowParser = rowParser;
+            this.progress = progress;
+            this.parsePool = parsePool;
+            this.chunkSize = chunkSize;
+            this.chunk = new ArrayList<>(chunkSize);
+        }
+
+        /**
+         * Takes the next row of the sheet, in row order: checks the header, then collects the data rows into chunks.
+         */
+        void accept(SheetRow row) {
+            if (!headerRead) {
+                headerRead = true;
+                readHeader(row);
+                return;
+            }
+            rowsRead++;
+            // without a valid header the data rows are only counted
+            if (columnIndexMap == null) return;
+
+            chunk.add(row);
+            rowCount++;
+            totalRows = row.getRowNum();
+            if (chunk.size() == chunkSize) submitChunk();
+        }
+
+        /**
+         * Validates the last partial chunk and collects every chunk still in flight, in row order.
+         */
+        void finish() {
+            if (!headerRead) {
+                log.warn("Header row not found in sheet: {}", sheetName);
+                errors.add(new ValidationError(sheetName, 0, "Header row not found"));
+            }
+            if (!chunk.isEmpty()) submitChunk();
+            while (!chunksInFlight.isEmpty()) collectOldestChunk();
+        }
+
+        private void readHeader(SheetRow row) {
+            if (row.getRowNum() != 0) {
+                // record the error then stop the rest of the operation
+                log.warn("Header row not found in sheet: {}", sheetName);
+                errors.add(new ValidationError(sheetName, 0, "Header row not found"));
+                return;
+            }
+
+            List<String> expectedColumns = EXPECTED_SHEETS_AND_COLUMNS.get(sheetName);
+            columnIndexMap = FileUtil.validateHeaders(row, expectedColumns);
+            if (columnIndexMap == null) {
+                // record the error then stop the operation
+                errors.add(new ValidationError(sheetName, 0,
+                        "Invalid headers. Expected: " + String.join(", ", expectedColumns)));
+            }
+        }
+
+        private void submitChunk() {
+            if (chunksInFlight.size() >= parsePool.getParallelism()) collectOldestChunk();
+            List<SheetRow> dataRows = chunk;
+            chunk = new ArrayList<>(chunkSize);
+            chunksInFlight.add(parsePool.submit(() -> parseChunk(dataRows)));
+        }
+
+        // joining on a parse thread runs the chunk itself if no other thread took it yet
+        private void collectOldestChunk() {
+            long waitStart = System.nanoTime();
+            Object[] results = chunksInFlight.poll().join();
+            validateWaitNanos += System.nanoTime() - waitStart;
+
+            for (Object result : results) {
+                if (result instanceof ParsedRow<?> parsedRow) {
+                    rows.add((ParsedRow<T>) parsedRow);
+                } else if (result instanceof ValidationError error) {
+                    errors.add(error);
+                }
+            }
+        }
+
+        // each chunk writes only its own results, so they need no locking
+        private Object[] parseChunk(List<SheetRow> dataRows) {
+            Object[] results = new Object[dataRows.size()];
+            for (int index = 0; index < results.length; index++) {
+                results[index] = parseRow(dataRows.get(index));
+            }
+            return results;
+        }
+
+        private Object parseRow(SheetRow row) {
+            int i = row.getRowNum();
+            try {
+                return new ParsedRow<>(i, rowParser.parse(row, columnIndexMap));
+            } catch (InvalidDataException e) {
+                // track each validation error with row and column details
+                log.error("Validation error in row {} of sheet {}: {}", i+1, sheetName, e.getMessage());
+                return new ValidationError(sheetName, i+1, e.getMessage());
+            } catch (Exception e) {
+                log.error("Error processing row {} in sheet {}: {}", i+1, sheetName, e.getMessage(), e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Validated rows of one upload, waiting to be written with {@link BulkUpsertRepository}.
+     * Rows are keyed by primary key, so a key repeated in the file keeps its last row,
+     * the same outcome as saving row by row.
+     */
+    private class UploadBatch {
+        private final String userId;
+        private final LocalDateTime uploadedAt = LocalDateTime.now();
+        private final int batchSize;
+        private final UploadProgressRegistry.UploadProgress progress;
+        private boolean failed;
+
+        private final Map<BillingTierKey, BillingTier> billingTiers = new LinkedHashMap<>();
+        private final Map<String, Client> clients = new LinkedHashMap<>();
+        private final Map<String, Portfolio> portfolios = new LinkedHashMap<>();
+        private final Map<AssetKey, Asset> assets = new LinkedHashMap<>();
+        private final Map<FxRateKey, FxRate> fxRates = new LinkedHashMap<>();
+
+        // keys written so far, the portfolio snapshots that depend on them are refreshed at the end
+        private final Set<String> writtenBillingTierIds = new HashSet<>();
+        private final Set<String> writtenClientIds = new HashSet<>();
+        private final Set<String> writtenPortfolioIds = new HashSet<>();
+        private long newClientCount;
+
+        // time spent loading keys from the database, for the profile
+        private long lookupNanos;
+
+        // valuation months whose asset partition exists, checked once per month and upload
+        private final Set<YearMonth> partitionedMonths = new HashSet<>();
+
+        // parent ids known to exist: loaded from the database once, then extended by this upload
+        private CompactKeySet knownClientIds;
+        private CompactKeySet knownPortfolioIds;
+
+        UploadBatch(String userId, int batchSize, UploadProgressRegistry.UploadProgress progress) {
+            this.userId = userId;
+            this.batchSize = batchSize;
+            this.progress = progress;
+        }
+
+        CompactKeySet clientIds() {
+            if (knownClientIds == null) {
+                long start = System.nanoTime();
+                try (Stream<String> ids = clientRepository.streamAllClientIds()) {
+                    knownClientIds = loadKeySet(ids, "client");
+                }
+                lookupNanos += System.nanoTime() - start;
+            }
+            return knownClientIds;
+        }
+
+        CompactKeySet portfolioIds() {
+            if (knownPortfolioIds == null) {
+                long start = System.nanoTime();
+                try (Stream<String> ids = portfolioRepository.streamAllPortfolioIds()) {
+                    knownPortfolioIds = loadKeySet(ids, "portfolio");
+                }
+                lookupNanos += System.nanoTime() - start;
+            }
+            return knownPortfolioIds;
         }
 
+        private CompactKeySet loadKeySet(Stream<String> ids, String keyName) {
+            CompactKeySet keySet = new CompactKeySet();
+            ids.forEach(keySet::add);
+            log.info("Loaded {} existing {} ids for referential checks ({} bytes)",
+                    keySet.size(), keyName, keySet.memoryBytes());
+            return keySet;
+        }
+
+        void flush(SheetName sheet) {
+            if (failed) {
+                billingTiers.clear();
+                clients.clear();
+                portfolios.clear();
+                assets.clear();
+                fxRates.clear();
+                return;
+            }
+
+            switch (sheet) {
+                case FX_RATE:
+                    if (!fxRates.isEmpty()) {
+                        bulkUpsertRepository.upsertFxRates(List.copyOf(fxRates.values()), batchSize);
+                        // the cached matrix is stale once this upload commits, and so is the AUM of every
+                        // portfolio holding assets in a currency whose rates changed
+                        fxRateIndex.invalidateAfterCommit();
+                        // portfolio responses convert their AUM to the portfolio currency at the latest rates, any of them may change
+                        responseCache.invalidateAllAfterCommit();
+                        Set<String> currencies = new HashSet<>();
+                        fxRates.keySet().forEach(fxRateKey -> {
+                            currencies.add(fxRateKey.getFromCurrency());
+                            currencies.add(fxRateKey.getToCurrency());
+                        });
+                        currencies.remove(FxRateIndex.BASE_CURRENCY);
+                        if (!currencies.isEmpty()) {
+                            long start = System.nanoTime();
+                            writtenPortfolioIds.addAll(assetRepository.findPortfolioIdsByCurrencyIn(currencies));
+                            lookupNanos += System.nanoTime() - start;
+                        }
+                    }
+                    fxRates.clear();
+                    break;
+                case BILLING_TIER:
+                    if (!billingTiers.isEmpty()) {
+                        bulkUpsertRepository.upsertBillingTiers(List.copyOf(billingTiers.values()), batchSize);
+                        // cached tier bands are stale once this upload commits
+                        billingTierIndex.invalidateAfterCommit();
+                        billingTiers.values().forEach(billingTier -> writtenBillingTierIds.add(billingTier.getTierId()));
+                    }
+                    billingTiers.clear();
+                    break;
+                case CLIENT_BILLING:
+                    bulkUpsertRepository.upsertClients(List.copyOf(clients.values()), batchSize);
+                    writtenClientIds.addAll(clients.keySet());
+                    clients.clear();
+                    break;
+                case PORTFOLIO:
+                    bulkUpsertRepository.upsertPortfolios(List.copyOf(portfolios.values()), batchSize);
+                    writtenPortfolioIds.addAll(portfolios.keySet());
+                    portfolios.clear();
+                    break;
+                case ASSETS:
+                    Set<YearMonth> newMonths = new HashSet<>();
+                    assets.keySet().forEach(assetKey -> {
+                        YearMonth month = YearMonth.from(assetKey.getDate());
+                        if (!partitionedMonths.contains(month)) newMonths.add(month);
+                    });
+                    if (!newMonths.isEmpty()) {
+                        assetPartitionService.ensureMonthlyPartitions(newMonths);
+                        partitionedMonths.addAll(newMonths);
+                    }
+                    bulkUpsertRepository.upsertAssets(List.copyOf(assets.values()), batchSize);
+                    holdingsStore.applyAfterCommit(assets.values());
+                    assets.keySet().forEach(assetKey -> writtenPortfolioIds.add(assetKey.getPortfolioId()));
+                    assets.clear();
+                    break;
+            }
+        }
+    }
+
+    private RowParser<?> rowParser(SheetName sheetEnum) {
         // sheet selection
         switch (sheetEnum) {
             case BILLING_TIER:
-                processBillingTierRow(dataRow, columnIndexMap);
-                break;
+                return this::parseBillingTierRow;
             case CLIENT_BILLING:
-                processClientRow(dataRow, columnIndexMap);
-                break;
+                return this::parseClientRow;
             case PORTFOLIO:
-                processPortfolioRow(dataRow, columnIndexMap);
-                break;
+                return this::parsePortfolioRow;
             case ASSETS:
-                processAssetRow(dataRow, columnIndexMap);
+                return this::parseAssetRow;
+            case FX_RATE:
+                return this::parseFxRateRow;
+            default:
+                log.warn("Unknown sheet name: {}", sheetEnum);
+                throw new InvalidDataException("Unknown sheet name: " + sheetEnum);
+        }
+    }
+
+    /**
+     * Checks a parsed row against the keys known so far and buffers it for writing.
+     * This method:
+     * 1. Checks that the parent client or portfolio exists in the database or earlier in this upload
+     * 2. Stamps the audit columns of the upload
+     * 3. Buffers the entity by primary key and records new parent keys for later sheets
+     */
+    private void commitRow(SheetName sheetEnum, ParsedRow<?> parsedRow, UploadBatch batch) {
+        int rowNum = parsedRow.getRowNum();
+        switch (sheetEnum) {
+            case FX_RATE: {
+                FxRate fxRate = (FxRate) parsedRow.getEntity();
+                fxRate.setCreatedAt(batch.uploadedAt);
+                fxRate.setCreatedBy(batch.userId);
+                batch.fxRates.put(new FxRateKey(fxRate.getFromCurrency(), fxRate.getToCurrency(), fxRate.getRateDate()), fxRate);
+                log.debug("Buffered FX rate: {}/{} on {}", fxRate.getFromCurrency(), fxRate.getToCurrency(), fxRate.getRateDate());
+                break;
+            }
+            case BILLING_TIER: {
+                BillingTier billingTier = (BillingTier) parsedRow.getEntity();
+                batch.billingTiers.put(new BillingTierKey(billingTier.getTierId(),
+                        billingTier.getPortfolioAumMin(), billingTier.getPortfolioAumMax()), billingTier);
+                log.debug("Buffered billing tier: {}", billingTier.getTierId());
+                break;
+            }
+            case CLIENT_BILLING: {
+                Client client = (Client) parsedRow.getEntity();
+                client.setCreatedAt(batch.uploadedAt);
+                client.setCreatedBy(batch.userId);
+                batch.clients.put(client.getClientId(), client);
+                if (batch.clientIds().add(client.getClientId())) {
+                    batch.newClientCount++;
+                }
+                log.debug("Buffered client: {}", client.getClientId());
+                break;
+            }
+            case PORTFOLIO: {
+                Portfolio portfolio = (Portfolio) parsedRow.getEntity();
+                // validate client exists
+                if (!batch.clientIds().contains(portfolio.getClientId())) {
+                    log.warn("Client ID {} does not exist for portfolio {}", portfolio.getClientId(), portfolio.getPortfolioId());
+                    throw new InvalidDataException(String.format("Client missing in this position, row: %d", rowNum));
+                }
+
+                portfolio.setCreatedAt(batch.uploadedAt);
+                portfolio.setCreatedBy(batch.userId);
+                batch.portfolios.put(portfolio.getPortfolioId(), portfolio);
+                batch.portfolioIds().add(portfolio.getPortfolioId());
+                log.debug("Buffered portfolio: {}", portfolio.getPortfolioId());
+                break;
+            }
+            case ASSETS: {
+                Asset asset = (Asset) parsedRow.getEntity();
+                // validate portfolio exists
+                if (!batch.portfolioIds().contains(asset.getPortfolioId())) {
+                    log.error("Portfolio ID {} does not exist for asset {}", asset.getPortfolioId(), asset.getAssetId());
+                    throw new InvalidDataException(String.format("Portfolio ID does not exist for asset in row %d", rowNum));
+                }
+
+                asset.setCreatedAt(batch.uploadedAt);
+                asset.setCreatedBy(batch.userId);
+                batch.assets.put(new AssetKey(asset.getDate(), asset.getPortfolioId(), asset.getAssetId()), asset);
+                log.debug("Buffered asset: {} for portfolio: {} on date: {}",
+                        asset.getAssetId(), asset.getPortfolioId(), asset.getDate());
                 break;
+            }
         }
     }
 
-    private void processClientRow(Row row, Map<String, Integer> columnIndexMap) {
+    private Client parseClientRow(SheetRow row, Map<String, Integer> columnIndexMap) {
         String clientId = FileUtil.getCellValueAsString(row, columnIndexMap.get("client id"));
         if (clientId == null || clientId.isEmpty()) {
             log.error("Found row with empty client id");
             throw new InvalidDataException(String.format("Client missing in this position, row: %d", row.getRowNum()));
         }
 
-        // check if client already exists
-        Optional<Client> existingClient = clientRepository.findByClientId(clientId);
-
         String clientName = FileUtil.getCellValueAsString(row, columnIndexMap.get("client name"));
         if (clientName == null || clientName.isEmpty()) throw new InvalidDataException("Client Name is required");
 
@@ -314,37 +971,17 @@ public class FileUploadService {
         String billingTierId = FileUtil.getCellValueAsString(row, columnIndexMap.get("billing tier id"));
         if (billingTierId == null || billingTierId.isEmpty()) throw new InvalidDataException("Billing Tier ID is required");
 
-        Client client;
-        if (existingClient.isPresent()) {
-            // update existing client
-            client = existingClient.get();
-            client.setClientName(clientName);
-            client.setProvince(province);
-            client.setCountry(country);
-            client.setBillingTierId(billingTierId);
-            client.setUpdatedAt(LocalDateTime.now());
-            client.setUpdatedBy(String.valueOf(JwtUtil.getCurrentUserId()));
-            log.debug("Updating existing client: {}", clientId);
-        } else {
-            // create new client
-            client = Client.builder()
-                    .clientId(clientId)
-                    .clientName(clientName)
-                    .province(province)
-                    .country(country)
-                    .billingTierId(billingTierId)
-                    .createdAt(LocalDateTime.now())
-                    .createdBy(String.valueOf(JwtUtil.getCurrentUserId()))
-                    .build();
-            log.debug("Creating new client: {}", clientId);
-        }
-
-        clientRepository.save(client);
-        log.debug("Saved client: {}", clientId);
-    }
-
-    private void processPortfolioRow(Row row, Map<String, Integer> columnIndexMap) {
-        String portfolioId = FileUtil.getCellValueAsString(row, columnIndexMap.get("portfolio id"));
+        return Client.builder()
+                .clientId(clientId)
+                .clientName(clientName)
+                .province(province)
+                .country(country)
+                .billingTierId(billingTierId)
+                .build();
+    }
+
+    private Portfolio parsePortfolioRow(SheetRow row, Map<String, Integer> columnIndexMap) {
+        String portfolioId = Portfolio.canonicalId(FileUtil.getCellValueAsString(row, columnIndexMap.get("portfolio id")));
         if (portfolioId == null || portfolioId.isEmpty()) {
             log.error("Row with empty portfolio_id");
             throw new InvalidDataException(String.format("Portfolio missing in this position, row: %d", row.getRowNum()));
@@ -361,41 +998,14 @@ public class FileUploadService {
         log.debug("Processing row {} with clientId: {}, portfolioCurrency: {}",
                 row.getRowNum(), clientId, portfolioCurrency);
 
-        // validate client exists
-        if (clientRepository.findByClientId(clientId).isEmpty()) {
-            log.warn("Client ID {} does not exist for portfolio {}", clientId, portfolioId);
-            throw new InvalidDataException(String.format("Client missing in this position, row: %d", row.getRowNum()));
-        }
-
-        // check if portfolio already exists
-        Optional<Portfolio> existingPortfolio = portfolioRepository.findById(portfolioId);
-
-        Portfolio portfolio;
-        if (existingPortfolio.isPresent()) {
-            // update existing portfolio
-            portfolio = existingPortfolio.get();
-            portfolio.setClientId(clientId);
-            portfolio.setPortfolioCurrency(portfolioCurrency);
-            portfolio.setUpdatedAt(LocalDateTime.now());
-            portfolio.setUpdatedBy(String.valueOf(JwtUtil.getCurrentUserId()));
-            log.debug("Updating existing portfolio: {}", portfolioId);
-        } else {
-            // create new portfolio
-            portfolio = Portfolio.builder()
-                    .portfolioId(portfolioId)
-                    .clientId(clientId)
-                    .portfolioCurrency(portfolioCurrency)
-                    .createdAt(LocalDateTime.now())
-                    .createdBy(String.valueOf(JwtUtil.getCurrentUserId()))
-                    .build();
-            log.debug("Creating new portfolio: {}", portfolioId);
-        }
-
-        portfolioRepository.save(portfolio);
-        log.debug("Saved portfolio: {}", portfolioId);
+        return Portfolio.builder()
+                .portfolioId(portfolioId)
+                .clientId(clientId)
+                .portfolioCurrency(portfolioCurrency)
+                .build();
     }
 
-    private void processBillingTierRow(Row row, Map<String, Integer> columnIndexMap) {
+    private BillingTier parseBillingTierRow(SheetRow row, Map<String, Integer> columnIndexMap) {
         String tierId = FileUtil.getCellValueAsString(row, columnIndexMap.get("tier id"));
         if (tierId == null || tierId.isEmpty()) {
             log.error("Found row with empty tier_id in row {}", row.getRowNum());
@@ -429,38 +1039,18 @@ public class FileUploadService {
             throw new InvalidDataException(String.format("Invalid AUM range for tier %s: min(%s) > max(%s).", tierId, minAum, maxAum));
         }
 
-        // create the composite key
-        BillingTierKey billingTierKey = new BillingTierKey(tierId, minAum, maxAum);
-
-        // look for the tier using the complete composite key
-        Optional<BillingTier> existingTier = billingTierRepository.findById(billingTierKey);
-
-        BillingTier billingTier;
-        if (existingTier.isPresent()) {
-            // update existing tier
-            billingTier = existingTier.get();
-            billingTier.setPortfolioAumMin(minAum);
-            billingTier.setPortfolioAumMax(maxAum);
-            billingTier.setFeePercentage(feePercentage);
-            log.debug("Updating existing billing tier: {}", tierId);
-        } else {
-            // create new tier
-            billingTier = BillingTier.builder()
-                    .tierId(tierId)
-                    .portfolioAumMin(minAum)
-                    .portfolioAumMax(maxAum)
-                    .feePercentage(feePercentage)
-                    .build();
-            log.debug("Creating new billing tier: {}", tierId);
-        }
-
-        billingTierRepository.save(billingTier);
-        log.debug("Saved billing tier: {}", tierId);
+        // the composite key is kept at the column scale, so 1000 and 1000.00 are the same band
+        return BillingTier.builder()
+                .tierId(tierId)
+                .portfolioAumMin(minAum.setScale(2, RoundingMode.HALF_UP))
+                .portfolioAumMax(maxAum.setScale(2, RoundingMode.HALF_UP))
+                .feePercentage(feePercentage)
+                .build();
     }
 
-    private void processAssetRow(Row row, Map<String, Integer> columnIndexMap) {
+    private Asset parseAssetRow(SheetRow row, Map<String, Integer> columnIndexMap) {
         String assetId = FileUtil.getCellValueAsString(row, columnIndexMap.get("asset id"));
-        String portfolioId = FileUtil.getCellValueAsString(row, columnIndexMap.get("portfolio id"));
+        String portfolioId = Portfolio.canonicalId(FileUtil.getCellValueAsString(row, columnIndexMap.get("portfolio id")));
 
         if (assetId == null || assetId.isEmpty() ) {
             log.error("Found row with empty asset_id");
@@ -472,12 +1062,6 @@ public class FileUploadService {
             throw new InvalidDataException(String.format("Found row %d with empty portfolio_id", row.getRowNum()));
         }
 
-        // validate portfolio exists
-        if (portfolioRepository.findById(portfolioId).isEmpty()) {
-            log.error("Portfolio ID {} does not exist for asset {}", portfolioId, assetId);
-            throw new InvalidDataException(String.format("Portfolio ID does not exist for asset in row %d", row.getRowNum()));
-        }
-
 
         BigDecimal assetValue = FileUtil.getCellValueAsBigDecimal(row, columnIndexMap.get("asset value"));
         if (assetValue == null || assetValue.compareTo(BigDecimal.ZERO) < 0) throw new InvalidDataException("Asset Value must be a positive number");
@@ -497,37 +1081,43 @@ public class FileUploadService {
             throw new InvalidDataException(String.format("Found row %d with empty currency", row.getRowNum()));
         }
 
-        // get all assets for this portfolio
-        AssetKey assetKey = new AssetKey(date, portfolioId, assetId);
-
-        Optional<Asset> existingAsset = assetRepository.findById(assetKey);
-
-        Asset asset;
-        if (existingAsset.isPresent()) {
-            // update existing asset
-            asset = existingAsset.get();
-            asset.setAssetValue(assetValue);
-            asset.setCurrency(currency);
-            asset.setUpdatedAt(LocalDateTime.now());
-            asset.setUpdatedBy(String.valueOf(JwtUtil.getCurrentUserId()));
-            log.debug("Updating existing asset: {} for portfolio: {} on date: {}",
-                    assetId, portfolioId, date);
-        } else {
-            // create new asset
-            asset = Asset.builder()
-                    .assetId(assetId)
-                    .portfolioId(portfolioId)
-                    .date(date)
-                    .assetValue(assetValue)
-                    .currency(currency)
-                    .createdAt(LocalDateTime.now())
-                    .createdBy(String.valueOf(JwtUtil.getCurrentUserId()))
-                    .build();
-            log.debug("Creating new asset: {} for portfolio: {} on date: {}",
-                    assetId, portfolioId, date);
-        }
-
-        assetRepository.save(asset);
-        log.debug("Saved asset: {} for portfolio: {} on date: {}", assetId, portfolioId, date);
-    }
-}
\ No newline at end of file
+        return Asset.builder()
+                .assetId(assetId)
+                .portfolioId(portfolioId)
+                .date(date)
+                .assetValue(assetValue)
+                .currency(currency)
+                .build();
+    }
+
+    private FxRate parseFxRateRow(SheetRow row, Map<String, Integer> columnIndexMap) {
+        String fromCurrency = FileUtil.getCellValueAsString(row, columnIndexMap.get("from currency"));
+        String toCurrency = FileUtil.getCellValueAsString(row, columnIndexMap.get("to currency"));
+        if (fromCurrency == null || fromCurrency.length() != 3 || toCurrency == null || toCurrency.length() != 3) {
+            log.error("Found row {} with an invalid currency pair: {}/{}", row.getRowNum(), fromCurrency, toCurrency);
+            throw new InvalidDataException(String.format("Found row %d with an invalid currency code", row.getRowNum()));
+        }
+        fromCurrency = fromCurrency.toUpperCase(Locale.ROOT);
+        toCurrency = toCurrency.toUpperCase(Locale.ROOT);
+        if (fromCurrency.equals(toCurrency)) {
+            throw new InvalidDataException(String.format("Found row %d converting %s to itself", row.getRowNum(), fromCurrency));
+        }
+
+        LocalDate date = FileUtil.getCellValueAsDate(row, columnIndexMap.get("date"));
+        if (date == null) {
+            log.error("Found row with empty date for FX rate {}/{}", fromCurrency, toCurrency);
+            throw new InvalidDataException(String.format("Found row %d with empty date", row.getRowNum()));
+        }
+
+        BigDecimal rate = FileUtil.getCellValueAsBigDecimal(row, columnIndexMap.get("rate"));
+        if (rate == null || rate.compareTo(BigDecimal.ZERO) <= 0) throw new InvalidDataException("Rate must be a positive number");
+
+        // kept at the column scale, the scale the rate matrix works in
+        return FxRate.builder()
+                .fromCurrency(fromCurrency)
+                .toCurrency(toCurrency)
+                .rateDate(date)
+                .rate(rate.setScale(FxRateIndex.RATE_SCALE, RoundingMode.HALF_UP))
+                .build();
+    }
+}
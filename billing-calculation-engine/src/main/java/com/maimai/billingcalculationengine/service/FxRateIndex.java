@@ -0,0 +1,382 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.common.properties.CurrencyProperties;
+import com.maimai.billingcalculationengine.common.utils.Money;
+import com.maimai.billingcalculationengine.model.entity.FxRate;
+import com.maimai.billingcalculationengine.repository.FxRateRepository;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory conversion matrix over the fx_rates table.
+ * <p>
+ * Rates only change on upload, so they are loaded once into a matrix keyed by currency pair, each pair
+ * holding its rates sorted by date, and the rate in effect on a date is found with a binary search.
+ * Inverse rates and cross rates through CAD are derived while the matrix is built and every rate is kept
+ * at {@link #RATE_SCALE}, so a conversion is a single multiplication. The matrix is immutable and swapped
+ * atomically; an upload that writes rates invalidates it after its transaction commits.
+ */
+@Slf4j
+@Component
+public class FxRateIndex {
+    // AUM, fees and billing tier bands are all in CAD
+    public static final String BASE_CURRENCY = "CAD";
+    // scale of every rate in the matrix, the scale of the fx_rates.rate column
+    public static final int RATE_SCALE = Money.RATE_SCALE;
+
+    @Resource
+    private FxRateRepository fxRateRepository;
+
+    @Resource
+    private CurrencyProperties currencyProperties;
+
+    private final AtomicReference<Matrix> matrix = new AtomicReference<>();
+
+    // bumped on every invalidation so a load that raced with it is not installed
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Returns the current matrix, loading it from the database if it was invalidated.
+     *
+     * @return The immutable conversion matrix
+     */
+    public Matrix current() {
+        Matrix current = matrix.get();
+        if (current != null) return current;
+
+        long loadGeneration = generation.get();
+        Matrix loaded = load();
+        if (generation.get() == loadGeneration) {
+            matrix.compareAndSet(null, loaded);
+        }
+        log.info("Loaded FX rate index - pairs: {}, rates: {}", loaded.getPairCount(), loaded.getRateCount());
+        return loaded;
+    }
+
+    /**
+     * Builds a matrix from the rates currently visible in the database, without installing it.
+     * Used inside a transaction that wrote rates, which the cached matrix only sees after the commit.
+     *
+     * @return The conversion matrix
+     */
+    public Matrix load() {
+        return Matrix.of(fxRateRepository.findAll(), defaultRates());
+    }
+
+    // the configured CAD to USD rate covers every date before the first stored CAD/USD rate
+    private Map<String, BigDecimal> defaultRates() {
+        if (currencyProperties.getToUSD() <= 0) return Map.of();
+        return Map.of("USD", BigDecimal.valueOf(currencyProperties.getToUSD()));
+    }
+
+    /**
+     * Drops the loaded matrix; the next lookup reloads it.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        matrix.set(null);
+        log.info("FX rate index invalidated");
+    }
+
+    /**
+     * Invalidates the index once the current transaction commits.
+     * Registers at most one callback per transaction, so it can be called for every batch of rates written.
+     * Without an active transaction the index is invalidated immediately.
+     */
+    public void invalidateAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate();
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(this)) return;
+
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(FxRateIndex.this);
+                if (status == STATUS_COMMITTED) {
+                    invalidate();
+                }
+            }
+        });
+    }
+
+    /**
+     * Immutable conversion matrix: for every currency pair, the rates sorted by the date they take effect.
+     */
+    public static final class Matrix {
+        // effective date of a configured default rate, earlier than any stored rate
+        private static final long UNBOUNDED = Long.MIN_VALUE;
+
+        private final Map<String, Map<String, Rates>> ratesByPair;
+
+        private Matrix(Map<String, Map<String, Rates>> ratesByPair) {
+            this.ratesByPair = ratesByPair;
+        }
+
+        /**
+         * Builds the matrix from stored rates and default rates.
+         * <p>
+         * This method:
+         * 1. Takes every stored rate at {@link #RATE_SCALE}, keyed by pair and date
+         * 2. Adds the default rates from CAD, in effect before the first stored rate of their pair
+         * 3. Derives the inverse of every rate whose reverse pair has no rate on that date
+         * 4. Derives cross rates through CAD for the pairs without a rate of their own,
+         *    on every date either leg changes
+         *
+         * @param fxRates All fx rate rows
+         * @param defaultRatesFromBase Undated rates from CAD, keyed by target currency
+         * @return The matrix
+         */
+        public static Matrix of(Collection<FxRate> fxRates, Map<String, BigDecimal> defaultRatesFromBase) {
+            Map<String, Map<String, TreeMap<Long, BigDecimal>>> pairs = new HashMap<>();
+            for (FxRate fxRate : fxRates) {
+                String from = normalize(fxRate.getFromCurrency());
+                String to = normalize(fxRate.getToCurrency());
+                if (from.equals(to)) continue;
+                series(pairs, from, to).put(fxRate.getRateDate().toEpochDay(),
+                        fxRate.getRate().setScale(RATE_SCALE, RoundingMode.HALF_UP));
+            }
+            defaultRatesFromBase.forEach((currency, rate) -> series(pairs, BASE_CURRENCY, normalize(currency))
+                    .putIfAbsent(UNBOUNDED, rate.setScale(RATE_SCALE, RoundingMode.HALF_UP)));
+
+            // inverse rates, a stored rate of the reverse pair on the same date wins
+            List<String[]> storedPairs = new ArrayList<>();
+            pairs.forEach((from, byTo) -> byTo.keySet().forEach(to -> storedPairs.add(new String[]{from, to})));
+            Map<String, Map<String, TreeMap<Long, BigDecimal>>> inverses = new HashMap<>();
+            for (String[] pair : storedPairs) {
+                TreeMap<Long, BigDecimal> reverse = pairs.get(pair[1]) == null ? null : pairs.get(pair[1]).get(pair[0]);
+                pairs.get(pair[0]).get(pair[1]).forEach((day, rate) -> {
+                    if (reverse == null || !reverse.containsKey(day)) {
+                        series(inverses, pair[1], pair[0]).put(day, BigDecimal.ONE.divide(rate, RATE_SCALE, RoundingMode.HALF_UP));
+                    }
+                });
+            }
+            inverses.forEach((from, byTo) -> byTo.forEach((to, rates) -> series(pairs, from, to).putAll(rates)));
+
+            // cross rates through CAD for the pairs that have no rate of their own
+            Set<String> currencies = new TreeSet<>(pairs.keySet());
+            currencies.remove(BASE_CURRENCY);
+            Map<String, TreeMap<Long, BigDecimal>> toBase = new HashMap<>();
+            Map<String, TreeMap<Long, BigDecimal>> fromBase = pairs.getOrDefault(BASE_CURRENCY, Map.of());
+            for (String currency : currencies) {
+                TreeMap<Long, BigDecimal> rates = pairs.get(currency).get(BASE_CURRENCY);
+                if (rates != null) toBase.put(currency, rates);
+            }
+            for (String from : currencies) {
+                for (String to : currencies) {
+                    if (from.equals(to) || pairs.get(from).containsKey(to)) continue;
+                    TreeMap<Long, BigDecimal> firstLeg = toBase.get(from);
+                    TreeMap<Long, BigDecimal> secondLeg = fromBase.get(to);
+                    if (firstLeg == null || secondLeg == null) continue;
+
+                    TreeMap<Long, BigDecimal> cross = new TreeMap<>();
+                    Set<Long> days = new TreeSet<>(firstLeg.keySet());
+                    days.addAll(secondLeg.keySet());
+                    for (Long day : days) {
+                        Map.Entry<Long, BigDecimal> first = firstLeg.floorEntry(day);
+                        Map.Entry<Long, BigDecimal> second = secondLeg.floorEntry(day);
+                        if (first == null || second == null) continue;
+                        cross.put(day, first.getValue().multiply(second.getValue()).setScale(RATE_SCALE, RoundingMode.HALF_UP));
+                    }
+                    if (!cross.isEmpty()) pairs.get(from).put(to, cross);
+                }
+            }
+
+            Map<String, Map<String, Rates>> ratesByPair = new HashMap<>();
+            pairs.forEach((from, byTo) -> {
+                Map<String, Rates> frozen = new HashMap<>();
+                byTo.forEach((to, rates) -> frozen.put(to, Rates.of(rates)));
+                ratesByPair.put(from, Map.copyOf(frozen));
+            });
+            return new Matrix(Map.copyOf(ratesByPair));
+        }
+
+        private static TreeMap<Long, BigDecimal> series(Map<String, Map<String, TreeMap<Long, BigDecimal>>> pairs,
+                                                        String from, String to) {
+            return pairs.computeIfAbsent(from, key -> new HashMap<>()).computeIfAbsent(to, key -> new TreeMap<>());
+        }
+
+        // returns the same instance for codes already in upper case, so lookups do not allocate
+        private static String normalize(String currency) {
+            return currency.trim().toUpperCase(Locale.ROOT);
+        }
+
+        /**
+         * Finds the rate of a currency pair in effect on a date: the latest rate dated on or before it.
+         *
+         * @param from The currency converted from
+         * @param to The currency converted to
+         * @param date The date of the amount, or null for the latest rate
+         * @return The rate at {@link #RATE_SCALE}, or empty if the pair has no rate in effect on the date
+         */
+        public Optional<BigDecimal> findRate(String from, String to, LocalDate date) {
+            String fromCurrency = normalize(from);
+            String toCurrency = normalize(to);
+            if (fromCurrency.equals(toCurrency)) return Optional.of(BigDecimal.ONE);
+            return Optional.ofNullable(rate(fromCurrency, toCurrency, date));
+        }
+
+        /**
+         * Converts an amount between two currencies at the rate in effect on a date.
+         *
+         * @param amount The amount to convert
+         * @param from The currency of the amount
+         * @param to The currency to convert to
+         * @param date The date of the amount, or null for the latest rate
+         * @return The converted amount rounded to 2 decimal places, or the amount itself if both currencies are the same
+         * @throws RuntimeException if the pair has no rate in effect on the date
+         */
+        public BigDecimal convert(BigDecimal amount, String from, String to, LocalDate date) {
+            String fromCurrency = normalize(from);
+            String toCurrency = normalize(to);
+            if (fromCurrency.equals(toCurrency)) return amount;
+
+            BigDecimal rate = rate(fromCurrency, toCurrency, date);
+            if (rate == null) {
+                log.error("FX rate not found from {} to {} on {}", fromCurrency, toCurrency, date == null ? "latest" : date);
+                throw new RuntimeException("FX rate not found");
+            }
+            return amount.multiply(rate).setScale(2, RoundingMode.HALF_UP);
+        }
+
+        /**
+         * Converts an amount to CAD at the rate in effect on a date.
+         *
+         * @param amount The amount to convert
+         * @param currency The currency of the amount
+         * @param date The date of the amount, or null for the latest rate
+         * @return The amount in CAD, rounded to 2 decimal places
+         * @throws RuntimeException if the currency has no rate to CAD in effect on the date
+         */
+        public BigDecimal toBaseCurrency(BigDecimal amount, String currency, LocalDate date) {
+            return convert(amount, currency, BASE_CURRENCY, date);
+        }
+
+        /**
+         * Converts an amount in cents to CAD at the rate in effect on a date, rounding as {@link #toBaseCurrency}
+         * does, for the batch pass that sums amounts as {@link Money} cents.
+         *
+         * @param cents The amount in cents
+         * @param currency The currency of the amount
+         * @param date The date of the amount, or null for the latest rate
+         * @return The amount in CAD cents
+         * @throws RuntimeException if the currency has no rate to CAD in effect on the date
+         */
+        public long toBaseCurrencyCents(long cents, String currency, LocalDate date) {
+            return toBaseCurrencyCents(cents, currency, date == null ? Long.MAX_VALUE : date.toEpochDay());
+        }
+
+        /**
+         * Converts an amount in cents to CAD at the rate in effect on an epoch day, see {@link #toBaseCurrencyCents(long, String, LocalDate)}.
+         *
+         * @param cents The amount in cents
+         * @param currency The currency of the amount
+         * @param epochDay The date of the amount as an epoch day, {@link Long#MAX_VALUE} for the latest rate
+         * @return The amount in CAD cents
+         * @throws RuntimeException if the currency has no rate to CAD in effect on the date
+         */
+        public long toBaseCurrencyCents(long cents, String currency, long epochDay) {
+            String fromCurrency = normalize(currency);
+            if (fromCurrency.equals(BASE_CURRENCY)) return cents;
+
+            Map<String, Rates> byTo = ratesByPair.get(fromCurrency);
+            Rates rates = byTo == null ? null : byTo.get(BASE_CURRENCY);
+            int index = rates == null ? -1 : rates.indexOf(epochDay);
+            if (index < 0) {
+                log.error("FX rate not found from {} to {} on {}", fromCurrency, BASE_CURRENCY,
+                        epochDay == Long.MAX_VALUE ? "latest" : LocalDate.ofEpochDay(epochDay));
+                throw new RuntimeException("FX rate not found");
+            }
+            long scaledRate = rates.scaledRates[index];
+            if (scaledRate == Rates.NOT_SCALED) {
+                return Money.ofBigDecimal(Money.toBigDecimal(cents).multiply(rates.rates[index]));
+            }
+            return Money.multiply(cents, scaledRate);
+        }
+
+        private BigDecimal rate(String from, String to, LocalDate date) {
+            Map<String, Rates> byTo = ratesByPair.get(from);
+            Rates rates = byTo == null ? null : byTo.get(to);
+            if (rates == null) return null;
+            return rates.find(date == null ? Long.MAX_VALUE : date.toEpochDay());
+        }
+
+        public int getPairCount() {
+            return ratesByPair.values().stream().mapToInt(Map::size).sum();
+        }
+
+        public int getRateCount() {
+            return ratesByPair.values().stream()
+                    .flatMap(byTo -> byTo.values().stream())
+                    .mapToInt(rates -> rates.epochDays.length)
+                    .sum();
+        }
+    }
+
+    // one pair's rates, sorted by the epoch day they take effect
+    private static final class Rates {
+        // marks a rate too large for a long at RATE_SCALE, converted with BigDecimal instead
+        static final long NOT_SCALED = Long.MIN_VALUE;
+
+        private final long[] epochDays;
+        private final BigDecimal[] rates;
+        // the same rates as Money scaled longs
+        private final long[] scaledRates;
+
+        private Rates(long[] epochDays, BigDecimal[] rates) {
+            this.epochDays = epochDays;
+            this.rates = rates;
+            this.scaledRates = new long[rates.length];
+            for (int i = 0; i < rates.length; i++) {
+                scaledRates[i] = rates[i].unscaledValue().bitLength() < Long.SIZE
+                        ? rates[i].unscaledValue().longValue()
+                        : NOT_SCALED;
+            }
+        }
+
+        static Rates of(TreeMap<Long, BigDecimal> ratesByDay) {
+            long[] epochDays = new long[ratesByDay.size()];
+            BigDecimal[] rates = new BigDecimal[ratesByDay.size()];
+            int i = 0;
+            for (Map.Entry<Long, BigDecimal> entry : ratesByDay.entrySet()) {
+                epochDays[i] = entry.getKey();
+                rates[i++] = entry.getValue();
+            }
+            return new Rates(epochDays, rates);
+        }
+
+        BigDecimal find(long epochDay) {
+            int index = indexOf(epochDay);
+            return index < 0 ? null : rates[index];
+        }
+
+        // binary search for the last rate taking effect on or before the day, -1 if none
+        int indexOf(long epochDay) {
+            int low = 0;
+            int high = epochDays.length - 1;
+            int candidate = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (epochDays[mid] <= epochDay) {
+                    candidate = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return candidate;
+        }
+    }
+}
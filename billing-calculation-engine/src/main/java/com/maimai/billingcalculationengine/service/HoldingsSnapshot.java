@@ -0,0 +1,187 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.common.properties.HoldingsProperties;
+import com.maimai.billingcalculationengine.repository.FileUploadRepository;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Snapshot file of the holdings store, so a restart maps the holdings instead of reading every asset.
+ * <p>
+ * The file holds a header, the holdings columns and a CRC32C checksum of everything before it:
+ * <pre>
+ *   int magic, int format version, long upload id
+ *   holdings, see {@link HoldingsStore.Holdings#readFrom}
+ *   long checksum
+ * </pre>
+ * The upload id is the latest COMPLETED upload when the snapshot was taken. A snapshot is only read back while
+ * it is still the latest, any later upload makes it stale. Writing assets deletes the snapshot until the upload
+ * is COMPLETED and a new one is saved, so a restart in between reads the database. Changes that are not uploads,
+ * such as detached asset partitions, delete the snapshot too. Files are written next to the snapshot and moved over it, so a reader
+ * never sees a partial file.
+ */
+@Slf4j
+@Component
+public class HoldingsSnapshot {
+    static final int MAGIC = 0x484C4447; // "HLDG"
+    static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final long NO_UPLOAD = 0;
+
+    @Resource
+    private HoldingsProperties holdingsProperties;
+
+    @Resource
+    private FileUploadRepository fileUploadRepository;
+
+    /**
+     * Maps the snapshot and reads the holdings from it.
+     * This method:
+     * 1. Maps the snapshot file read-only
+     * 2. Checks the magic number, format version and checksum
+     * 3. Checks the snapshot was taken at the latest completed upload
+     * 4. Reads the holdings columns from the mapped file
+     *
+     * @return The holdings, or empty if there is no usable snapshot and the holdings have to be read from the database
+     */
+    public Optional<HoldingsStore.Holdings> read() {
+        if (!holdingsProperties.isSnapshotEnabled()) return Optional.empty();
+        Path path = path();
+        if (!Files.isRegularFile(path)) {
+            log.info("No holdings snapshot at {}", path);
+            return Optional.empty();
+        }
+
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + Long.BYTES || size > Integer.MAX_VALUE) {
+                log.warn("Ignoring holdings snapshot {}, unexpected size {}", path, size);
+                return Optional.empty();
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            int magic = buffer.getInt();
+            int formatVersion = buffer.getInt();
+            if (magic != MAGIC || formatVersion != FORMAT_VERSION) {
+                log.warn("Ignoring holdings snapshot {}, format {} is not {}", path, formatVersion, FORMAT_VERSION);
+                return Optional.empty();
+            }
+            CRC32C checksum = new CRC32C();
+            checksum.update(buffer.slice(0, (int) size - Long.BYTES));
+            if (checksum.getValue() != buffer.getLong((int) size - Long.BYTES)) {
+                log.warn("Ignoring holdings snapshot {}, checksum mismatch", path);
+                return Optional.empty();
+            }
+
+            long uploadId = buffer.getLong();
+            long latestUploadId = latestUploadId();
+            if (uploadId != latestUploadId) {
+                log.info("Ignoring stale holdings snapshot {}, taken at upload {} but the latest completed upload is {}",
+                        path, uploadId, latestUploadId);
+                return Optional.empty();
+            }
+
+            HoldingsStore.Holdings holdings = HoldingsStore.Holdings.readFrom(buffer);
+            if (buffer.remaining() != Long.BYTES) {
+                log.warn("Ignoring holdings snapshot {}, {} unexpected trailing bytes", path, buffer.remaining() - Long.BYTES);
+                return Optional.empty();
+            }
+            log.info("Read holdings snapshot {} of upload {} in {} ms - rows: {}, bytes: {}", path, uploadId,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), holdings.getRowCount(), size);
+            return Optional.of(holdings);
+        } catch (IOException | BufferUnderflowException | IllegalStateException | IllegalArgumentException e) {
+            log.warn("Could not read holdings snapshot {}: {}", path, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the holdings, tagged with the latest completed upload.
+     * The upload is looked up before the holdings are taken, so the snapshot holds at least that upload.
+     * A failure is logged and leaves the previous snapshot, which is stale by then, in place.
+     *
+     * @param holdings Supplies the holdings to write, null skips the snapshot
+     */
+    public synchronized void save(Supplier<HoldingsStore.Holdings> holdings) {
+        if (!holdingsProperties.isSnapshotEnabled()) return;
+        Path path = path();
+        try {
+            long uploadId = latestUploadId();
+            HoldingsStore.Holdings current = holdings.get();
+            if (current == null) return;
+            write(current, uploadId, path);
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not write holdings snapshot {}: {}", path, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Deletes the snapshot, for changes to the holdings that a later upload id would not reveal.
+     */
+    public synchronized void delete() {
+        if (!holdingsProperties.isSnapshotEnabled()) return;
+        Path path = path();
+        try {
+            if (Files.deleteIfExists(path)) {
+                log.info("Deleted holdings snapshot {}", path);
+            }
+        } catch (IOException e) {
+            log.error("Could not delete holdings snapshot {}: {}", path, e.getMessage(), e);
+        }
+    }
+
+    void write(HoldingsStore.Holdings holdings, long uploadId, Path path) throws IOException {
+        long start = System.nanoTime();
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tempFile = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            CRC32C checksum = new CRC32C();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Files.newOutputStream(tempFile), checksum), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(uploadId);
+                holdings.writeTo(out);
+                out.flush();
+                // flushed first, so the checksum covers every byte before it
+                out.writeLong(checksum.getValue());
+            }
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        log.info("Wrote holdings snapshot {} of upload {} in {} ms - rows: {}, bytes: {}", path, uploadId,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), holdings.getRowCount(), Files.size(path));
+    }
+
+    private long latestUploadId() {
+        return fileUploadRepository.findLatestUploadIdWhereStatusCompleted().orElse(NO_UPLOAD);
+    }
+
+    private Path path() {
+        return Path.of(holdingsProperties.getSnapshotFile());
+    }
+}
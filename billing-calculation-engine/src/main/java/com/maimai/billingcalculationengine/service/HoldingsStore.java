@@ -0,0 +1,668 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.common.utils.Money;
+import com.maimai.billingcalculationengine.model.entity.Asset;
+import com.maimai.billingcalculationengine.model.response.HoldingsMetricsResponse;
+import com.maimai.billingcalculationengine.repository.HoldingsRepository;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Columnar in-memory store of the current holdings, the latest valuation of every asset.
+ * <p>
+ * Whole-book recalculation scans it instead of summing the assets table. Every holding is one row across
+ * primitive columns: portfolio index, value in cents, currency code and valuation epoch day. Rows are sorted
+ * so the holdings of one portfolio, currency and date are adjacent, and a scan hands each such run to the
+ * caller summed, to be converted once, as the database sums are. Asset ids are kept only to patch the store.
+ * <p>
+ * The store is loaded at startup, patched with the assets of an upload once it commits, and reloaded from
+ * the database after an invalidation. Holdings are immutable and swapped atomically.
+ * <p>
+ * Loads from the database and completed uploads are saved to a {@link HoldingsSnapshot}, which the next
+ * startup maps instead of reading every asset, unless an upload completed since.
+ */
+@Slf4j
+@Component
+public class HoldingsStore {
+    @Resource
+    private HoldingsRepository holdingsRepository;
+
+    @Resource
+    private HoldingsSnapshot holdingsSnapshot;
+
+    static final String SOURCE_DATABASE = "DATABASE";
+    static final String SOURCE_SNAPSHOT = "SNAPSHOT";
+
+    private final AtomicReference<Holdings> holdings = new AtomicReference<>();
+
+    // bumped on every change so a load that raced with it is not installed
+    private final AtomicLong generation = new AtomicLong();
+
+    // load and scan statistics, see getMetrics
+    private volatile LocalDateTime loadedAt;
+    private volatile String loadSource;
+    private volatile long loadMillis;
+    private final AtomicLong patchCount = new AtomicLong();
+    private final AtomicLong scanCount = new AtomicLong();
+    private final AtomicLong scannedRows = new AtomicLong();
+    private final AtomicLong scanNanos = new AtomicLong();
+    private volatile long lastScanRows;
+    private volatile long lastScanNanos;
+
+    /**
+     * Loads the store at startup, so the first whole-book calculation does not wait for it.
+     * Maps the snapshot if it is current, otherwise reads the database and saves a new snapshot.
+     * A failure is logged and the store is loaded on first use instead.
+     * Runs ahead of the snapshot table and dashboard builds, so a rebuild at startup scans the mapped snapshot.
+     */
+    @Order(-1)
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        try {
+            long loadGeneration = generation.get();
+            long start = System.nanoTime();
+            Optional<Holdings> restored = holdingsSnapshot.read();
+            if (restored.isPresent()) {
+                install(restored.get(), loadGeneration, SOURCE_SNAPSHOT, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return;
+            }
+            current();
+        } catch (RuntimeException e) {
+            log.error("Could not load holdings store: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the current holdings, loading them from the database if they were invalidated.
+     * A transaction that changed the holdings reads them from the database until it commits.
+     *
+     * @return The immutable holdings
+     */
+    public Holdings current() {
+        if (TransactionSynchronizationManager.hasResource(this)) return load();
+
+        Holdings current = holdings.get();
+        if (current != null) return current;
+
+        long loadGeneration = generation.get();
+        long start = System.nanoTime();
+        Holdings loaded = load();
+        if (install(loaded, loadGeneration, SOURCE_DATABASE, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))) {
+            holdingsSnapshot.save(holdings::get);
+        }
+        return loaded;
+    }
+
+    // installs loaded holdings unless the store changed while they were loaded
+    private boolean install(Holdings loaded, long loadGeneration, String source, long millis) {
+        synchronized (this) {
+            if (generation.get() != loadGeneration || !holdings.compareAndSet(null, loaded)) return false;
+            loadedAt = LocalDateTime.now();
+            loadSource = source;
+            loadMillis = millis;
+            patchCount.set(0);
+        }
+        log.info("Loaded holdings store from {} in {} ms - rows: {}, portfolios: {}, currencies: {}, bytes: {}",
+                source.toLowerCase(), millis, loaded.getRowCount(), loaded.getPortfolioCount(), loaded.getCurrencyCount(),
+                loaded.getFootprintBytes());
+        return true;
+    }
+
+    private Holdings load() {
+        Holdings.Builder builder = new Holdings.Builder(1024);
+        holdingsRepository.forEachLatestValuation((portfolioId, assetId, assetValue, currency, date) ->
+                builder.add(portfolioId, assetId, Money.ofBigDecimal(assetValue), currency, Math.toIntExact(date.toEpochDay())));
+        return builder.build();
+    }
+
+    /**
+     * Scans the current holdings, one call per run of holdings sharing portfolio, currency and date,
+     * and records the scan throughput.
+     *
+     * @param consumer Receives the summed runs
+     */
+    public void scan(Holdings.RunConsumer consumer) {
+        Holdings scanned = current();
+        long start = System.nanoTime();
+        scanned.forEachRun(consumer);
+        long nanos = System.nanoTime() - start;
+
+        scanCount.incrementAndGet();
+        scannedRows.addAndGet(scanned.getRowCount());
+        scanNanos.addAndGet(nanos);
+        lastScanRows = scanned.getRowCount();
+        lastScanNanos = nanos;
+    }
+
+    /**
+     * Drops the loaded holdings and their snapshot; the next scan reloads them.
+     */
+    public void invalidate() {
+        synchronized (this) {
+            generation.incrementAndGet();
+            holdings.set(null);
+        }
+        holdingsSnapshot.delete();
+        log.info("Holdings store invalidated");
+    }
+
+    /**
+     * Invalidates the store once the current transaction commits, for changes that cannot be patched,
+     * such as detached asset partitions. Without an active transaction the store is invalidated immediately.
+     * The snapshot is deleted right away, a restart before the commit reads the database instead.
+     */
+    public void invalidateAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate();
+            return;
+        }
+        holdingsSnapshot.delete();
+        pendingChanges().invalidate = true;
+    }
+
+    /**
+     * Saves a snapshot of the loaded holdings. Called once an upload is recorded as COMPLETED,
+     * as a snapshot only stays current while it is tagged with the latest completed upload.
+     */
+    public void saveSnapshot() {
+        holdingsSnapshot.save(holdings::get);
+    }
+
+    /**
+     * Patches the store with written asset valuations once the current transaction commits.
+     * Can be called for every batch of assets written; the batches are applied together.
+     * Without an active transaction the store is patched immediately.
+     * <p>
+     * The snapshot is deleted right away and again once the store is patched, as it is still tagged with the
+     * previous completed upload. Until {@link #saveSnapshot} runs for this upload, a restart reads the database.
+     *
+     * @param assets The asset valuations written
+     */
+    public void applyAfterCommit(Collection<Asset> assets) {
+        if (assets.isEmpty()) return;
+        holdingsSnapshot.delete();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(List.copyOf(assets));
+            return;
+        }
+        pendingChanges().assets.addAll(assets);
+    }
+
+    // registers at most one callback per transaction
+    private PendingChanges pendingChanges() {
+        PendingChanges pending = (PendingChanges) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) return pending;
+
+        PendingChanges created = new PendingChanges();
+        TransactionSynchronizationManager.bindResource(this, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(HoldingsStore.this);
+                if (status != STATUS_COMMITTED) return;
+                if (created.invalidate) {
+                    invalidate();
+                } else {
+                    apply(created.assets);
+                    // a load that raced with the commit may have saved the holdings without these assets
+                    holdingsSnapshot.delete();
+                }
+            }
+        });
+        return created;
+    }
+
+    private void apply(List<Asset> assets) {
+        long start = System.nanoTime();
+        Holdings patched;
+        synchronized (this) {
+            generation.incrementAndGet();
+            Holdings current = holdings.get();
+            // not loaded, the next load reads the committed rows
+            if (current == null) return;
+            try {
+                patched = current.patch(assets);
+            } catch (RuntimeException e) {
+                log.error("Could not patch holdings store, reloading it on next use: {}", e.getMessage(), e);
+                holdings.set(null);
+                return;
+            }
+            holdings.set(patched);
+            patchCount.incrementAndGet();
+        }
+        log.info("Patched holdings store with {} valuations in {} ms - rows: {}",
+                assets.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), patched.getRowCount());
+    }
+
+    /**
+     * Reports the size of the loaded holdings and the throughput of the scans so far.
+     *
+     * @return The store metrics, without sizes if the store is not loaded
+     */
+    public HoldingsMetricsResponse getMetrics() {
+        Holdings current = holdings.get();
+        long scans = scanCount.get();
+        long lastNanos = lastScanNanos;
+        long totalNanos = scanNanos.get();
+        HoldingsMetricsResponse.HoldingsMetricsResponseBuilder metrics = HoldingsMetricsResponse.builder()
+                .loaded(current != null)
+                .scans(scans)
+                .lastScanRows(scans == 0 ? null : lastScanRows)
+                .lastScanMillis(scans == 0 ? null : TimeUnit.NANOSECONDS.toMillis(lastNanos))
+                .lastScanRowsPerSecond(scans == 0 ? null : rowsPerSecond(lastScanRows, lastNanos))
+                .averageScanRowsPerSecond(scans == 0 ? null : rowsPerSecond(scannedRows.get(), totalNanos));
+        if (current == null) return metrics.build();
+
+        return metrics
+                .rows(current.getRowCount())
+                .portfolios(current.getPortfolioCount())
+                .currencies(current.getCurrencyCount())
+                .columnBytes(current.getColumnBytes())
+                .idBytes(current.getIdBytes())
+                .footprintBytes(current.getFootprintBytes())
+                .loadedAt(loadedAt)
+                .loadSource(loadSource)
+                .loadMillis(loadMillis)
+                .patches(patchCount.get())
+                .build();
+    }
+
+    private static long rowsPerSecond(long rows, long nanos) {
+        return nanos == 0 ? 0 : rows * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    // the holdings changes of one transaction, applied after it commits
+    private static final class PendingChanges {
+        private final List<Asset> assets = new ArrayList<>();
+        private boolean invalidate;
+    }
+
+    /**
+     * Immutable columnar holdings, sorted by portfolio index, currency code and epoch day.
+     */
+    public static final class Holdings {
+        private static final Holdings EMPTY = new Builder(0).build();
+
+        // dictionaries, indexed by the portfolio index and currency code columns
+        private final String[] portfolioIds;
+        private final String[] currencies;
+
+        private final int[] portfolioIndexes;
+        private final long[] valueCents;
+        private final byte[] currencyCodes;
+        private final int[] epochDays;
+        private final String[] assetIds;
+
+        private final long columnBytes;
+        private final long idBytes;
+
+        private Holdings(String[] portfolioIds, String[] currencies, int[] portfolioIndexes, long[] valueCents,
+                         byte[] currencyCodes, int[] epochDays, String[] assetIds) {
+            this.portfolioIds = portfolioIds;
+            this.currencies = currencies;
+            this.portfolioIndexes = portfolioIndexes;
+            this.valueCents = valueCents;
+            this.currencyCodes = currencyCodes;
+            this.epochDays = epochDays;
+            this.assetIds = assetIds;
+            this.columnBytes = arrayBytes(portfolioIndexes.length, Integer.BYTES) + arrayBytes(valueCents.length, Long.BYTES)
+                    + arrayBytes(currencyCodes.length, Byte.BYTES) + arrayBytes(epochDays.length, Integer.BYTES);
+            this.idBytes = stringsBytes(assetIds) + stringsBytes(portfolioIds) + stringsBytes(currencies);
+        }
+
+        /**
+         * Builds holdings from asset valuations, keeping the latest valuation of every asset.
+         *
+         * @param assets The asset valuations
+         * @return The holdings
+         */
+        public static Holdings of(Collection<Asset> assets) {
+            return EMPTY.patch(assets);
+        }
+
+        /**
+         * Sums every run of holdings sharing portfolio, currency and valuation date, in row order.
+         *
+         * @param consumer Receives one call per run
+         * @throws ArithmeticException if a run's sum overflows
+         */
+        public void forEachRun(RunConsumer consumer) {
+            int row = 0;
+            while (row < portfolioIndexes.length) {
+                int portfolioIndex = portfolioIndexes[row];
+                byte currencyCode = currencyCodes[row];
+                int epochDay = epochDays[row];
+                long cents = 0;
+                do {
+                    cents = Money.add(cents, valueCents[row++]);
+                } while (row < portfolioIndexes.length && portfolioIndexes[row] == portfolioIndex
+                        && currencyCodes[row] == currencyCode && epochDays[row] == epochDay);
+                consumer.accept(portfolioIds[portfolioIndex], currencies[currencyCode & 0xFF], epochDay, cents);
+            }
+        }
+
+        /**
+         * Returns new holdings with the given valuations applied. A valuation replaces the holding of its asset
+         * unless the holding is more recent; assets not held yet are added.
+         *
+         * @param assets The written asset valuations
+         * @return The patched holdings
+         */
+        Holdings patch(Collection<Asset> assets) {
+            // the latest incoming valuation per portfolio and asset
+            Map<String, Map<String, Asset>> incoming = new LinkedHashMap<>();
+            for (Asset asset : assets) {
+                incoming.computeIfAbsent(asset.getPortfolioId(), id -> new LinkedHashMap<>())
+                        .merge(asset.getAssetId(), asset, (first, second) -> second.getDate().isBefore(first.getDate()) ? first : second);
+            }
+
+            Builder builder = new Builder(portfolioIndexes.length + assets.size());
+            for (int row = 0; row < portfolioIndexes.length; row++) {
+                String portfolioId = portfolioIds[portfolioIndexes[row]];
+                Map<String, Asset> byAssetId = incoming.get(portfolioId);
+                Asset replacement = byAssetId == null ? null : byAssetId.get(assetIds[row]);
+                if (replacement != null) {
+                    if (replacement.getDate().toEpochDay() >= epochDays[row]) continue;
+                    // an older valuation does not change the holding
+                    byAssetId.remove(assetIds[row]);
+                }
+                builder.add(portfolioId, assetIds[row], valueCents[row], currencies[currencyCodes[row] & 0xFF], epochDays[row]);
+            }
+            incoming.values().forEach(byAssetId -> byAssetId.values().forEach(asset -> builder.add(asset.getPortfolioId(),
+                    asset.getAssetId(), Money.ofBigDecimal(asset.getAssetValue()), asset.getCurrency(),
+                    Math.toIntExact(asset.getDate().toEpochDay()))));
+            return builder.build();
+        }
+
+        /**
+         * Writes the dictionaries and columns, see {@link #readFrom(ByteBuffer)}.
+         *
+         * @param out The stream to write to
+         * @throws IOException if writing fails
+         */
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(portfolioIds.length);
+            out.writeInt(currencies.length);
+            out.writeInt(portfolioIndexes.length);
+            writeStrings(out, portfolioIds);
+            writeStrings(out, currencies);
+            for (int portfolioIndex : portfolioIndexes) out.writeInt(portfolioIndex);
+            for (long cents : valueCents) out.writeLong(cents);
+            out.write(currencyCodes);
+            for (int epochDay : epochDays) out.writeInt(epochDay);
+            writeStrings(out, assetIds);
+        }
+
+        /**
+         * Reads holdings written by {@link #writeTo(DataOutputStream)}, typically from a mapped file.
+         * The columns are copied out of the buffer in bulk, already in row order.
+         *
+         * @param buffer The buffer, positioned at the holdings
+         * @return The holdings
+         * @throws IllegalStateException if the holdings are inconsistent
+         * @throws java.nio.BufferUnderflowException if the buffer ends early
+         */
+        static Holdings readFrom(ByteBuffer buffer) {
+            int portfolioCount = buffer.getInt();
+            int currencyCount = buffer.getInt();
+            int rowCount = buffer.getInt();
+            if (portfolioCount < 0 || currencyCount < 0 || currencyCount > 256 || rowCount < 0) {
+                throw new IllegalStateException("Invalid holdings sizes: " + portfolioCount + " portfolios, "
+                        + currencyCount + " currencies, " + rowCount + " rows");
+            }
+            String[] portfolioIds = readStrings(buffer, portfolioCount);
+            String[] currencies = readStrings(buffer, currencyCount);
+
+            int[] portfolioIndexes = new int[rowCount];
+            buffer.asIntBuffer().get(portfolioIndexes);
+            buffer.position(buffer.position() + rowCount * Integer.BYTES);
+            long[] valueCents = new long[rowCount];
+            buffer.asLongBuffer().get(valueCents);
+            buffer.position(buffer.position() + rowCount * Long.BYTES);
+            byte[] currencyCodes = new byte[rowCount];
+            buffer.get(currencyCodes);
+            int[] epochDays = new int[rowCount];
+            buffer.asIntBuffer().get(epochDays);
+            buffer.position(buffer.position() + rowCount * Integer.BYTES);
+            String[] assetIds = readStrings(buffer, rowCount);
+
+            for (int row = 0; row < rowCount; row++) {
+                if (portfolioIndexes[row] < 0 || portfolioIndexes[row] >= portfolioCount
+                        || (currencyCodes[row] & 0xFF) >= currencyCount) {
+                    throw new IllegalStateException("Holding " + row + " refers to a missing portfolio or currency");
+                }
+            }
+            return new Holdings(portfolioIds, currencies, portfolioIndexes, valueCents, currencyCodes, epochDays, assetIds);
+        }
+
+        private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        private static String[] readStrings(ByteBuffer buffer, int count) {
+            String[] strings = new String[count];
+            byte[] bytes = new byte[64];
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IllegalStateException("Invalid string length " + length);
+                }
+                if (length > bytes.length) bytes = new byte[Math.max(length, bytes.length * 2)];
+                buffer.get(bytes, 0, length);
+                strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+            return strings;
+        }
+
+        public int getRowCount() {
+            return portfolioIndexes.length;
+        }
+
+        public int getPortfolioCount() {
+            return portfolioIds.length;
+        }
+
+        public int getCurrencyCount() {
+            return currencies.length;
+        }
+
+        // the primitive columns
+        public long getColumnBytes() {
+            return columnBytes;
+        }
+
+        // the asset id column and the dictionaries, with their strings
+        public long getIdBytes() {
+            return idBytes;
+        }
+
+        public long getFootprintBytes() {
+            return columnBytes + idBytes;
+        }
+
+        // sizes as laid out by a 64-bit JVM with compressed references and compact strings
+        private static long arrayBytes(int length, int elementBytes) {
+            return align(16L + (long) length * elementBytes);
+        }
+
+        private static long stringsBytes(String[] strings) {
+            long bytes = arrayBytes(strings.length, Integer.BYTES);
+            for (String string : strings) {
+                bytes += 24 + arrayBytes(string.length(), Byte.BYTES);
+            }
+            return bytes;
+        }
+
+        private static long align(long bytes) {
+            return (bytes + 7) & ~7L;
+        }
+
+        @FunctionalInterface
+        public interface RunConsumer {
+            /**
+             * @param portfolioId The portfolio of the run
+             * @param currency The currency of the run, as stored
+             * @param epochDay The valuation date of the run as an epoch day
+             * @param cents The summed asset values of the run in cents
+             */
+            void accept(String portfolioId, String currency, int epochDay, long cents);
+        }
+
+        /**
+         * Collects holdings in any order and sorts them into columns.
+         * Holds at most one row per portfolio and asset.
+         */
+        static final class Builder {
+            // sort keys pack a row's position within its portfolio into the low bits
+            private static final int POSITION_BITS = 23;
+
+            private final Map<String, Integer> portfolioIndexById = new HashMap<>();
+            private final List<String> portfolioIds = new ArrayList<>();
+            private final Map<String, Integer> currencyIndexByCode = new HashMap<>();
+            private final List<String> currencies = new ArrayList<>();
+
+            private int[] portfolioIndexes;
+            private String[] assetIds;
+            private long[] valueCents;
+            private int[] currencyIndexes;
+            private int[] epochDays;
+            private int size;
+
+            Builder(int capacity) {
+                portfolioIndexes = new int[capacity];
+                assetIds = new String[capacity];
+                valueCents = new long[capacity];
+                currencyIndexes = new int[capacity];
+                epochDays = new int[capacity];
+            }
+
+            void add(String portfolioId, String assetId, long cents, String currency, int epochDay) {
+                if (size == portfolioIndexes.length) {
+                    int capacity = Math.max(16, size + (size >> 1));
+                    portfolioIndexes = Arrays.copyOf(portfolioIndexes, capacity);
+                    assetIds = Arrays.copyOf(assetIds, capacity);
+                    valueCents = Arrays.copyOf(valueCents, capacity);
+                    currencyIndexes = Arrays.copyOf(currencyIndexes, capacity);
+                    epochDays = Arrays.copyOf(epochDays, capacity);
+                }
+                portfolioIndexes[size] = portfolioIndexById.computeIfAbsent(portfolioId, id -> {
+                    portfolioIds.add(id);
+                    return portfolioIds.size() - 1;
+                });
+                currencyIndexes[size] = currencyIndexById(currency);
+                assetIds[size] = assetId;
+                valueCents[size] = cents;
+                epochDays[size] = epochDay;
+                size++;
+            }
+
+            private int currencyIndexById(String currency) {
+                Integer index = currencyIndexByCode.get(currency);
+                if (index != null) return index;
+                currencies.add(currency);
+                currencyIndexByCode.put(currency, currencies.size() - 1);
+                return currencies.size() - 1;
+            }
+
+            /**
+             * This method:
+             * 1. Numbers the currencies in sorted order, so currency codes sort as the currencies do
+             * 2. Orders the rows by portfolio index with a counting sort
+             * 3. Sorts the rows of every portfolio by currency code and epoch day
+             * 4. Copies the rows into columns in that order
+             */
+            Holdings build() {
+                String[] sortedCurrencies = currencies.stream().sorted().toArray(String[]::new);
+                if (sortedCurrencies.length > 256) {
+                    throw new IllegalStateException("Holdings support at most 256 currencies, found " + sortedCurrencies.length);
+                }
+                int[] codeOfIndex = new int[currencies.size()];
+                for (int code = 0; code < sortedCurrencies.length; code++) {
+                    codeOfIndex[currencyIndexByCode.get(sortedCurrencies[code])] = code;
+                }
+
+                int portfolioCount = portfolioIds.size();
+                int[] portfolioStart = new int[portfolioCount + 1];
+                for (int row = 0; row < size; row++) {
+                    portfolioStart[portfolioIndexes[row] + 1]++;
+                }
+                for (int portfolio = 0; portfolio < portfolioCount; portfolio++) {
+                    portfolioStart[portfolio + 1] += portfolioStart[portfolio];
+                }
+                int[] order = new int[size];
+                int[] next = Arrays.copyOf(portfolioStart, portfolioCount);
+                for (int row = 0; row < size; row++) {
+                    order[next[portfolioIndexes[row]]++] = row;
+                }
+                for (int portfolio = 0; portfolio < portfolioCount; portfolio++) {
+                    sortByCurrencyAndDate(order, portfolioStart[portfolio], portfolioStart[portfolio + 1], codeOfIndex);
+                }
+
+                int[] sortedPortfolioIndexes = new int[size];
+                String[] sortedAssetIds = new String[size];
+                long[] sortedValueCents = new long[size];
+                byte[] currencyCodes = new byte[size];
+                int[] sortedEpochDays = new int[size];
+                for (int i = 0; i < size; i++) {
+                    int row = order[i];
+                    sortedPortfolioIndexes[i] = portfolioIndexes[row];
+                    sortedAssetIds[i] = assetIds[row];
+                    sortedValueCents[i] = valueCents[row];
+                    currencyCodes[i] = (byte) codeOfIndex[currencyIndexes[row]];
+                    sortedEpochDays[i] = epochDays[row];
+                }
+                return new Holdings(portfolioIds.toArray(String[]::new), sortedCurrencies, sortedPortfolioIndexes,
+                        sortedValueCents, currencyCodes, sortedEpochDays, sortedAssetIds);
+            }
+
+            private void sortByCurrencyAndDate(int[] order, int from, int to, int[] codeOfIndex) {
+                int length = to - from;
+                if (length < 2) return;
+
+                if (length >= 1 << POSITION_BITS) {
+                    Integer[] rows = new Integer[length];
+                    for (int i = 0; i < length; i++) rows[i] = order[from + i];
+                    Arrays.sort(rows, Comparator.comparingLong(row -> sortKey(row, codeOfIndex)));
+                    for (int i = 0; i < length; i++) order[from + i] = rows[i];
+                    return;
+                }
+
+                long[] keys = new long[length];
+                for (int i = 0; i < length; i++) {
+                    keys[i] = sortKey(order[from + i], codeOfIndex) << POSITION_BITS | i;
+                }
+                Arrays.sort(keys);
+                int[] rows = new int[length];
+                for (int i = 0; i < length; i++) {
+                    rows[i] = order[from + (int) (keys[i] & ((1 << POSITION_BITS) - 1))];
+                }
+                System.arraycopy(rows, 0, order, from, length);
+            }
+
+            // currency code in bits 32 to 39, epoch day shifted to an unsigned int below
+            private long sortKey(int row, int[] codeOfIndex) {
+                return (long) codeOfIndex[currencyIndexes[row]] << 32 | ((long) epochDays[row] - Integer.MIN_VALUE);
+            }
+        }
+    }
+}
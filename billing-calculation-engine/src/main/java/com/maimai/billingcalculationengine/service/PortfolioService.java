@@ -2,15 +2,15 @@ package com.maimai.billingcalculationengine.service;
 
 import com.maimai.billingcalculationengine.common.annotations.TrackExecution;
 import com.maimai.billingcalculationengine.common.enums.Layer;
-import com.maimai.billingcalculationengine.common.properties.CurrencyProperties;
-import com.maimai.billingcalculationengine.model.entity.Portfolio;
+import com.maimai.billingcalculationengine.model.calculation.BatchCalculationResult;
+import com.maimai.billingcalculationengine.model.calculation.PortfolioCalculation;
 import com.maimai.billingcalculationengine.model.response.PortfolioResponse;
-import com.maimai.billingcalculationengine.repository.PortfolioRepository;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -22,11 +22,17 @@ import java.util.stream.Collectors;
 @Service
 public class PortfolioService {
     @Resource
-    private PortfolioRepository portfolioRepository;
+    private PortfolioSnapshotService portfolioSnapshotService;
 
     @Resource
     private CalculationService calculationService;
 
+    @Resource
+    private BatchCalculationService batchCalculationService;
+
+    @Resource
+    private ResponseCache responseCache;
+
     /**
      * Retrieves all portfolios with their calculated financial metrics.
      *
@@ -34,8 +40,23 @@ public class PortfolioService {
      */
     @TrackExecution(Layer.SERVICE)
     public List<PortfolioResponse> getAllPortfolios() {
-        List<Portfolio> portfolios = portfolioRepository.findAll();
-        List<PortfolioResponse> portfolioResponse = portfolios.stream()
+        return getAllPortfolios(null);
+    }
+
+    /**
+     * Retrieves all portfolios with their financial metrics as of a date.
+     * Without a date the metrics come from the portfolio snapshots, with one they are calculated from
+     * the latest valuation of each asset on or before the date.
+     *
+     * @param asOfDate The valuation date, or null for the current snapshots
+     * @return List of PortfolioResponse objects containing portfolio information and financial metrics
+     */
+    @TrackExecution(Layer.SERVICE)
+    public List<PortfolioResponse> getAllPortfolios(LocalDate asOfDate) {
+        BatchCalculationResult calculationResult = asOfDate == null
+                ? portfolioSnapshotService.findAll()
+                : batchCalculationService.calculateAllClients(asOfDate);
+        List<PortfolioResponse> portfolioResponse = calculationResult.getPortfolios().values().stream()
                 .map(this::convertToResponse)
                 .collect(Collectors.toList());
 
@@ -49,9 +70,31 @@ public class PortfolioService {
      * @return List of PortfolioResponse objects for the specified client
      */
     public List<PortfolioResponse> getPortfoliosByClientId(String clientId) {
-        log.info("Retrieving all portfolios for client ID: {}", clientId);
+        return getPortfoliosByClientId(clientId, null);
+    }
+
+    /**
+     * Retrieves all portfolios for a specific client with their financial metrics as of a date.
+     * Current metrics are served from the {@link ResponseCache} until an upload changes the client.
+     *
+     * @param clientId The client ID to retrieve portfolios for
+     * @param asOfDate The valuation date, or null for the current snapshots
+     * @return List of PortfolioResponse objects for the specified client, unmodifiable for current metrics
+     */
+    public List<PortfolioResponse> getPortfoliosByClientId(String clientId, LocalDate asOfDate) {
+        if (asOfDate == null) {
+            return responseCache.getPortfoliosOfClient(clientId, id -> loadPortfoliosOfClient(id, null));
+        }
+        return loadPortfoliosOfClient(clientId, asOfDate);
+    }
+
+    private List<PortfolioResponse> loadPortfoliosOfClient(String clientId, LocalDate asOfDate) {
+        log.info("Retrieving all portfolios for client ID: {}, as of: {}", clientId, asOfDate);
 
-        List<Portfolio> portfolios = portfolioRepository.findAllByClientId(clientId);
+        BatchCalculationResult calculationResult = asOfDate == null
+                ? portfolioSnapshotService.findByClientIds(List.of(clientId))
+                : batchCalculationService.calculateClients(List.of(clientId), asOfDate);
+        List<PortfolioCalculation> portfolios = calculationResult.getPortfoliosOfClient(clientId);
         log.info("Found {} portfolios for client ID: {}", portfolios.size(), clientId);
 
         List<PortfolioResponse> portfolioResponses = portfolios.stream()
@@ -62,24 +105,22 @@ public class PortfolioService {
     }
 
     /**
-     * Converts a Portfolio entity to a PortfolioResponse DTO with calculated financial metrics.
+     * Converts a portfolio calculation to a PortfolioResponse DTO.
      *
      * This method:
-     * 1. Calculates the portfolio's AUM in CAD
-     * 2. Calculates the portfolio's fee in CAD
-     * 3. Converts the AUM back to the portfolio's native currency if needed
+     * 1. Takes the portfolio's fee in CAD and its AUM in its native currency from its snapshot or as-of calculation,
+     *    both computed in the same pass as the client totals
+     * 2. Converts the AUM only if the pass found no rate for the currency, which fails as before
      *
-     * @param portfolio The Portfolio entity to convert
+     * @param portfolio The portfolio's snapshot or as-of calculation
      * @return A PortfolioResponse with calculated financial metrics
      */
-    private PortfolioResponse convertToResponse(Portfolio portfolio) {
-        // get converted to CAD in Aum (if asset is USD based), and fee
-        BigDecimal portfolioAum = calculationService.calculatePortfolioAum(portfolio);
-        BigDecimal portfolioFee = calculationService.calculatePortfolioFee(portfolioAum, portfolio);
-
+    private PortfolioResponse convertToResponse(PortfolioCalculation portfolio) {
         // converted to other currency if apply
-        portfolioAum = calculationService.convertFromCadToTargetCurrency(portfolioAum, portfolio.getPortfolioCurrency());
-
+        BigDecimal portfolioAum = portfolio.getAumInPortfolioCurrency() != null
+                ? portfolio.getAumInPortfolioCurrency()
+                : calculationService.convertFromCadToTargetCurrency(portfolio.getAum(), portfolio.getPortfolioCurrency());
+        BigDecimal portfolioFee = portfolio.getFee();
 
         return PortfolioResponse.builder()
                 .portfolioId(portfolio.getPortfolioId())
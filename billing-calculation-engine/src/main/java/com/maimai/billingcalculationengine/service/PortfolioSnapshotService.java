@@ -0,0 +1,258 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.common.annotations.TrackExecution;
+import com.maimai.billingcalculationengine.common.enums.Layer;
+import com.maimai.billingcalculationengine.common.properties.UploadProperties;
+import com.maimai.billingcalculationengine.model.calculation.BatchCalculationResult;
+import com.maimai.billingcalculationengine.model.calculation.ClientCalculation;
+import com.maimai.billingcalculationengine.model.calculation.PortfolioCalculation;
+import com.maimai.billingcalculationengine.model.calculation.SnapshotRefresh;
+import com.maimai.billingcalculationengine.model.entity.PortfolioSnapshot;
+import com.maimai.billingcalculationengine.repository.BillingTierRepository;
+import com.maimai.billingcalculationengine.repository.BulkUpsertRepository;
+import com.maimai.billingcalculationengine.repository.PortfolioRepository;
+import com.maimai.billingcalculationengine.repository.PortfolioSnapshotRepository;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Maintains the portfolio_snapshots table and answers AUM and fee reads from it.
+ * <p>
+ * Assets, portfolios, clients and tiers only change on upload, so each upload recalculates the
+ * portfolios it touched inside its own transaction, and reads cost one query over the
+ * snapshot rows instead of a pass over every asset.
+ */
+@Slf4j
+@Service
+public class PortfolioSnapshotService {
+    @Resource
+    private PortfolioSnapshotRepository portfolioSnapshotRepository;
+
+    @Resource
+    private PortfolioRepository portfolioRepository;
+
+    @Resource
+    private BillingTierRepository billingTierRepository;
+
+    @Resource
+    private BulkUpsertRepository bulkUpsertRepository;
+
+    @Resource
+    private FxRateIndex fxRateIndex;
+
+    @Resource
+    private BatchCalculationService batchCalculationService;
+
+    @Resource
+    private CalculationService calculationService;
+
+    @Resource
+    private UploadProperties uploadProperties;
+
+    @Resource
+    private ResponseCache responseCache;
+
+    @Autowired
+    private PortfolioSnapshotService self;
+
+    /**
+     * Builds the snapshot table on the first start after it was introduced.
+     * A failure is logged and leaves the table empty until the next upload or restart.
+     */
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (portfolioSnapshotRepository.count() > 0 || portfolioRepository.count() == 0) return;
+
+        log.info("Portfolio snapshot table is empty, building it from the current data");
+        try {
+            self.rebuildAll();
+        } catch (RuntimeException e) {
+            log.error("Could not build portfolio snapshots: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Recalculates the snapshots affected by an upload. Must run in the upload's transaction,
+     * after its rows are written, so the snapshots commit or roll back together with them.
+     * <p>
+     * This method:
+     * 1. Collects the written portfolios, the portfolios of the written clients and the
+     *    portfolios of every client on a written billing tier
+     * 2. Takes the snapshot lock, held until the transaction ends, so an overlapping upload waits here and then
+     *    reads the snapshots and data this one committed, instead of computing its delta from the same previous rows
+     * 3. Prices them with the tier bands and FX rates as written by this transaction
+     * 4. Upserts their snapshot rows and returns how much the book totals moved, for the caller to apply to the
+     *    dashboard aggregate while it still holds the lock
+     * 5. Invalidates the cached responses of the written clients and of every client that held or now holds
+     *    a refreshed portfolio, once the transaction commits
+     *
+     * @param billingTierIds The billing tier IDs written by the upload
+     * @param clientIds The client IDs written by the upload
+     * @param portfolioIds The portfolio IDs written by the upload, directly, through their assets or through the FX rates of their assets
+     * @return The number of snapshots refreshed and the AUM and fee deltas
+     * @throws RuntimeException if a portfolio's applicable fee percentage cannot be found
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public SnapshotRefresh refresh(Collection<String> billingTierIds, Collection<String> clientIds,
+                                   Collection<String> portfolioIds) {
+        Set<String> affectedClientIds = new HashSet<>(clientIds);
+        Set<String> affectedPortfolioIds = new LinkedHashSet<>(portfolioIds);
+        affectedPortfolioIds.addAll(BatchCalculationService.findInChunks(clientIds, portfolioRepository::findPortfolioIdsByClientIdIn));
+        affectedPortfolioIds.addAll(BatchCalculationService.findInChunks(billingTierIds, portfolioRepository::findPortfolioIdsByBillingTierIdIn));
+        if (affectedPortfolioIds.isEmpty()) {
+            responseCache.invalidateAfterCommit(affectedClientIds);
+            return SnapshotRefresh.empty();
+        }
+
+        // before pricing and reading the previous snapshots: under READ COMMITTED each statement after this
+        // sees what the refreshes before it committed
+        bulkUpsertRepository.lockPortfolioSnapshots();
+
+        // the cached indexes only see tiers and rates written by this transaction after it commits
+        BillingTierIndex.Snapshot billingTiers = BillingTierIndex.Snapshot.of(billingTierRepository.findAll());
+        BatchCalculationResult calculationResult = batchCalculationService.calculatePortfolios(affectedPortfolioIds,
+                billingTiers, fxRateIndex.load());
+
+        // the replaced values, so the running totals can move by the difference
+        BigDecimal previousAum = BigDecimal.ZERO;
+        BigDecimal previousFee = BigDecimal.ZERO;
+        for (PortfolioSnapshot previous : BatchCalculationService.findInChunks(affectedPortfolioIds, portfolioSnapshotRepository::findAllById)) {
+            previousAum = previousAum.add(previous.getAum());
+            previousFee = previousFee.add(previous.getFee());
+            // a portfolio moved to another client leaves the previous client's responses stale too
+            affectedClientIds.add(previous.getClientId());
+        }
+        calculationResult.getPortfolios().values().forEach(portfolio -> affectedClientIds.add(portfolio.getClientId()));
+        responseCache.invalidateAfterCommit(affectedClientIds);
+
+        int refreshed = save(calculationResult.getPortfolios().values());
+        log.info("Refreshed {} portfolio snapshots - tiers: {}, clients: {}, portfolios: {}",
+                refreshed, billingTierIds.size(), clientIds.size(), portfolioIds.size());
+        return SnapshotRefresh.builder()
+                .refreshedPortfolios(refreshed)
+                .aumDelta(calculationResult.getTotalAum().subtract(previousAum))
+                .feeDelta(calculationResult.getTotalFee().subtract(previousFee))
+                .build();
+    }
+
+    /**
+     * Recalculates every snapshot from the current data and removes the snapshots of deleted portfolios.
+     *
+     * @return The number of snapshots written
+     */
+    @Transactional(rollbackFor = Exception.class)
+    @TrackExecution(Layer.SERVICE)
+    public int rebuildAll() {
+        bulkUpsertRepository.lockPortfolioSnapshots();
+        BatchCalculationResult calculationResult = batchCalculationService.calculateAllClients();
+        int refreshed = save(calculationResult.getPortfolios().values());
+        int removed = portfolioSnapshotRepository.deleteOrphans();
+        responseCache.invalidateAllAfterCommit();
+        log.info("Rebuilt portfolio snapshots - written: {}, removed: {}", refreshed, removed);
+        return refreshed;
+    }
+
+    /**
+     * Reads every snapshot into a batch result, with client totals summed from their portfolios.
+     *
+     * @return The batch result keyed by client ID and portfolio ID
+     */
+    @TrackExecution(Layer.SERVICE)
+    public BatchCalculationResult findAll() {
+        return toResult(portfolioSnapshotRepository.findAllByOrderByPortfolioIdAsc());
+    }
+
+    /**
+     * Reads the snapshots of the given clients into a batch result.
+     * Clients without portfolios are not in the result, see {@link BatchCalculationResult#getClientOrEmpty}.
+     *
+     * @param clientIds The client IDs to read
+     * @return The batch result keyed by client ID and portfolio ID
+     */
+    public BatchCalculationResult findByClientIds(Collection<String> clientIds) {
+        return toResult(BatchCalculationService.findInChunks(clientIds,
+                portfolioSnapshotRepository::findAllByClientIdInOrderByPortfolioIdAsc));
+    }
+
+    public BigDecimal getTotalAum() {
+        return portfolioSnapshotRepository.sumAum();
+    }
+
+    public BigDecimal getTotalFee() {
+        return portfolioSnapshotRepository.sumFee();
+    }
+
+    private int save(Collection<PortfolioCalculation> portfolios) {
+        LocalDateTime refreshedAt = LocalDateTime.now();
+        List<PortfolioSnapshot> snapshots = portfolios.stream()
+                .map(portfolio -> PortfolioSnapshot.builder()
+                        .portfolioId(portfolio.getPortfolioId())
+                        .clientId(portfolio.getClientId())
+                        .portfolioCurrency(portfolio.getPortfolioCurrency())
+                        .asOfDate(portfolio.getAsOfDate())
+                        .aum(portfolio.getAum())
+                        .fee(portfolio.getFee())
+                        .effectiveFeeRate(calculationService.calculateEffectiveFeeRate(portfolio.getFee(), portfolio.getAum()))
+                        .refreshedAt(refreshedAt)
+                        .build())
+                .toList();
+        return bulkUpsertRepository.upsertPortfolioSnapshots(snapshots, uploadProperties.getBatchSize());
+    }
+
+    private BatchCalculationResult toResult(List<PortfolioSnapshot> snapshots) {
+        Map<String, PortfolioCalculation> portfolioCalculations = new LinkedHashMap<>();
+        Map<String, BigDecimal> aumByClientId = new LinkedHashMap<>();
+        Map<String, BigDecimal> feeByClientId = new HashMap<>();
+        // converted at read time, an FX upload does not refresh the snapshots of portfolios in its currencies
+        BatchCalculationService.PortfolioCurrencyConverter converter =
+                new BatchCalculationService.PortfolioCurrencyConverter(fxRateIndex.current());
+        for (PortfolioSnapshot snapshot : snapshots) {
+            portfolioCalculations.put(snapshot.getPortfolioId(), PortfolioCalculation.builder()
+                    .portfolioId(snapshot.getPortfolioId())
+                    .clientId(snapshot.getClientId())
+                    .portfolioCurrency(snapshot.getPortfolioCurrency())
+                    .asOfDate(snapshot.getAsOfDate())
+                    .aum(snapshot.getAum())
+                    .fee(snapshot.getFee())
+                    .aumInPortfolioCurrency(converter.convert(snapshot.getAum(), snapshot.getPortfolioCurrency()))
+                    .build());
+            aumByClientId.merge(snapshot.getClientId(), snapshot.getAum(), BigDecimal::add);
+            feeByClientId.merge(snapshot.getClientId(), snapshot.getFee(), BigDecimal::add);
+        }
+
+        Map<String, ClientCalculation> clientCalculations = new LinkedHashMap<>();
+        BigDecimal totalAum = BigDecimal.ZERO;
+        BigDecimal totalFee = BigDecimal.ZERO;
+        for (Map.Entry<String, BigDecimal> entry : aumByClientId.entrySet()) {
+            BigDecimal clientAum = entry.getValue();
+            BigDecimal clientFee = feeByClientId.get(entry.getKey());
+            clientCalculations.put(entry.getKey(), ClientCalculation.builder()
+                    .clientId(entry.getKey())
+                    .totalAum(clientAum)
+                    .totalFee(clientFee)
+                    .effectiveFeeRate(calculationService.calculateEffectiveFeeRate(clientFee, clientAum))
+                    .build());
+            totalAum = totalAum.add(clientAum);
+            totalFee = totalFee.add(clientFee);
+        }
+
+        return BatchCalculationResult.builder()
+                .clients(clientCalculations)
+                .portfolios(portfolioCalculations)
+                .totalAum(totalAum)
+                .totalFee(totalFee)
+                .build();
+    }
+}
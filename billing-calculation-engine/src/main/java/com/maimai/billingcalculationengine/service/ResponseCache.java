@@ -0,0 +1,132 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.common.properties.ResponseCacheProperties;
+import com.maimai.billingcalculationengine.common.utils.BoundedCache;
+import com.maimai.billingcalculationengine.model.response.CacheMetricsResponse;
+import com.maimai.billingcalculationengine.model.response.ClientResponse;
+import com.maimai.billingcalculationengine.model.response.PortfolioResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Caches the current client responses and portfolio lists of a client, keyed by client ID.
+ * <p>
+ * They only change when an upload or a snapshot rebuild commits, so each invalidates the clients it changed
+ * once it commits, or every client when it changed them all. Responses as of a date are not cached.
+ */
+@Slf4j
+@Component
+public class ResponseCache {
+    @Resource
+    private ResponseCacheProperties responseCacheProperties;
+
+    private BoundedCache<String, ClientResponse> clients;
+    private BoundedCache<String, List<PortfolioResponse>> portfoliosByClientId;
+
+    @PostConstruct
+    void initialize() {
+        int maximumSize = responseCacheProperties.isEnabled() ? responseCacheProperties.getMaximumSize() : 0;
+        long expireAfterWriteSeconds = responseCacheProperties.getExpireAfterWriteSeconds();
+        clients = new BoundedCache<>("clients", maximumSize, expireAfterWriteSeconds, TimeUnit.SECONDS);
+        portfoliosByClientId = new BoundedCache<>("portfoliosByClientId", maximumSize, expireAfterWriteSeconds, TimeUnit.SECONDS);
+        log.info("Initialized response cache - enabled: {}, maximum size: {}, expire after: {} s",
+                responseCacheProperties.isEnabled(), maximumSize, expireAfterWriteSeconds);
+    }
+
+    /**
+     * @param clientId The client ID
+     * @param loader Builds the client's current response if it is not cached
+     * @return The cached or loaded response, shared with other readers
+     */
+    public ClientResponse getClient(String clientId, Function<String, ClientResponse> loader) {
+        return clients.get(clientId, loader);
+    }
+
+    /**
+     * @param clientId The client ID
+     * @param loader Builds the client's current portfolio responses if they are not cached
+     * @return The cached or loaded responses, unmodifiable and shared with other readers
+     */
+    public List<PortfolioResponse> getPortfoliosOfClient(String clientId, Function<String, List<PortfolioResponse>> loader) {
+        return portfoliosByClientId.get(clientId, id -> List.copyOf(loader.apply(id)));
+    }
+
+    /**
+     * Invalidates the given clients once the current transaction commits, or immediately without one.
+     * Can be called several times per transaction; the clients are invalidated together.
+     *
+     * @param clientIds The clients whose responses changed
+     */
+    public void invalidateAfterCommit(Collection<String> clientIds) {
+        if (clientIds.isEmpty()) return;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(clientIds);
+            return;
+        }
+        pendingInvalidation().clientIds.addAll(clientIds);
+    }
+
+    /**
+     * Invalidates every client once the current transaction commits, or immediately without one,
+     * for changes such as FX rates or a snapshot rebuild that may touch any response.
+     */
+    public void invalidateAllAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidateAll();
+            return;
+        }
+        pendingInvalidation().all = true;
+    }
+
+    public List<CacheMetricsResponse> getMetrics() {
+        return List.of(clients.getMetrics(), portfoliosByClientId.getMetrics());
+    }
+
+    private void invalidate(Collection<String> clientIds) {
+        clients.invalidate(clientIds);
+        portfoliosByClientId.invalidate(clientIds);
+        log.debug("Invalidated cached responses of {} clients", clientIds.size());
+    }
+
+    private void invalidateAll() {
+        clients.invalidateAll();
+        portfoliosByClientId.invalidateAll();
+        log.debug("Invalidated all cached responses");
+    }
+
+    // registers at most one callback per transaction
+    private PendingInvalidation pendingInvalidation() {
+        PendingInvalidation pending = (PendingInvalidation) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) return pending;
+
+        PendingInvalidation created = new PendingInvalidation();
+        TransactionSynchronizationManager.bindResource(this, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(ResponseCache.this);
+                if (status != STATUS_COMMITTED) return;
+                if (created.all) {
+                    invalidateAll();
+                } else {
+                    invalidate(created.clientIds);
+                }
+            }
+        });
+        return created;
+    }
+
+    // the clients changed by one transaction, invalidated after it commits
+    private static final class PendingInvalidation {
+        private final Set<String> clientIds = new HashSet<>();
+        private boolean all;
+    }
+}
@@ -0,0 +1,232 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.common.enums.UploadPhase;
+import com.maimai.billingcalculationengine.common.utils.HeapUsage;
+import com.maimai.billingcalculationengine.model.entity.UploadProfile;
+import com.maimai.billingcalculationengine.model.response.UploadProgressResponse;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Live progress of the upload jobs running on this instance.
+ * A job is registered when it is accepted and removed once its final status is saved on the
+ * FileUploadRecord, so finished uploads are reported from the database instead.
+ */
+@Component
+public class UploadProgressRegistry {
+    private final Map<Long, UploadProgress> running = new ConcurrentHashMap<>();
+
+    public UploadProgress register(Long uploadId) {
+        UploadProgress progress = new UploadProgress(uploadId);
+        running.put(uploadId, progress);
+        return progress;
+    }
+
+    public Optional<UploadProgress> find(Long uploadId) {
+        return Optional.ofNullable(running.get(uploadId));
+    }
+
+    public void remove(Long uploadId) {
+        running.remove(uploadId);
+    }
+
+    /**
+     * Progress counters of one upload job, and the phase timings its profile is built from.
+     * Written by the worker thread and read by progress requests, so every field is safe to read concurrently.
+     */
+    public static final class UploadProgress {
+        private final Long uploadId;
+        private final long startNanos = System.nanoTime();
+        // in processing order, iteration must hold the map's lock
+        private final Map<String, SheetProgress> sheets = Collections.synchronizedMap(new LinkedHashMap<>());
+        private volatile String currentSheet;
+
+        // upload-level phases, see UploadPhase
+        private final AtomicLongArray phaseNanos = new AtomicLongArray(UploadPhase.values().length);
+        private volatile LocalDateTime processingStartedAt;
+        private volatile long processingStartNanos;
+        private volatile long heapUsedAtStart;
+        private volatile long commitStartNanos;
+
+        private UploadProgress(Long uploadId) {
+            this.uploadId = uploadId;
+        }
+
+        /**
+         * Progress that is not registered anywhere, for uploads processed synchronously.
+         */
+        public static UploadProgress untracked() {
+            return new UploadProgress(null);
+        }
+
+        /**
+         * Starts the profile's clock and heap baseline, when the worker picks the job up rather than when it was queued.
+         */
+        public void startProcessing() {
+            processingStartedAt = LocalDateTime.now();
+            heapUsedAtStart = HeapUsage.resetPeak();
+            processingStartNanos = System.nanoTime();
+        }
+
+        public void addPhase(UploadPhase phase, long nanos) {
+            phaseNanos.addAndGet(phase.ordinal(), nanos);
+        }
+
+        /**
+         * Marks the end of the transactional work, the rest of the time until {@link #finishCommit} is the commit.
+         */
+        public void startCommit() {
+            commitStartNanos = System.nanoTime();
+        }
+
+        public void finishCommit() {
+            long start = commitStartNanos;
+            if (start != 0) addPhase(UploadPhase.COMMIT, System.nanoTime() - start);
+        }
+
+        public SheetProgress startSheet(String sheetName) {
+            SheetProgress sheet = new SheetProgress();
+            sheets.put(sheetName, sheet);
+            return sheet;
+        }
+
+        public void setCurrentSheet(String sheetName) {
+            currentSheet = sheetName;
+        }
+
+        public UploadProgressResponse toResponse() {
+            long elapsedNanos = System.nanoTime() - startNanos;
+            Map<String, UploadProgressResponse.SheetProgress> sheetResponses = new LinkedHashMap<>();
+            long totalRows = 0;
+            synchronized (sheets) {
+                for (Map.Entry<String, SheetProgress> entry : sheets.entrySet()) {
+                    SheetProgress sheet = entry.getValue();
+                    long rows = sheet.rowsProcessed.get();
+                    totalRows += rows;
+                    sheetResponses.put(entry.getKey(), UploadProgressResponse.SheetProgress.builder()
+                            .rowsProcessed(rows)
+                            .rowsPerSecond(rowsPerSecond(rows, sheet.elapsedNanos()))
+                            .finished(sheet.endNanos != 0)
+                            .build());
+                }
+            }
+
+            return UploadProgressResponse.builder()
+                    .uploadId(uploadId)
+                    .status("PROCESSING")
+                    .currentSheet(currentSheet)
+                    .sheets(sheetResponses)
+                    .totalRowsProcessed(totalRows)
+                    .rowsPerSecond(rowsPerSecond(totalRows, elapsedNanos))
+                    .elapsedMillis(elapsedNanos / 1_000_000)
+                    .build();
+        }
+
+        /**
+         * Builds the profile of the finished job from the phase timings and row counts recorded so far.
+         *
+         * @param uploadId The upload record ID
+         * @param status The final status of the upload
+         * @param streaming Whether the workbook was streamed
+         * @return The profile, not saved yet
+         */
+        public UploadProfile toProfile(Long uploadId, String status, boolean streaming) {
+            long start = processingStartNanos != 0 ? processingStartNanos : startNanos;
+            long elapsedNanos = System.nanoTime() - start;
+            List<UploadProfile.SheetProfile> sheetProfiles = new ArrayList<>();
+            long totalRows = 0;
+            synchronized (sheets) {
+                for (Map.Entry<String, SheetProgress> entry : sheets.entrySet()) {
+                    SheetProgress sheet = entry.getValue();
+                    long rows = sheet.rowsProcessed.get();
+                    totalRows += rows;
+                    sheetProfiles.add(UploadProfile.SheetProfile.builder()
+                            .sheetName(entry.getKey())
+                            .rows(sheet.rowsRead)
+                            .processedRows(rows)
+                            .errorRows(sheet.errorRows)
+                            .parseMillis(millis(sheet.phaseNanos(UploadPhase.PARSE)))
+                            .validateMillis(millis(sheet.phaseNanos(UploadPhase.VALIDATE)))
+                            .lookupMillis(millis(sheet.phaseNanos(UploadPhase.LOOKUP)))
+                            .writeMillis(millis(sheet.phaseNanos(UploadPhase.WRITE)))
+                            .elapsedMillis(millis(sheet.elapsedNanos()))
+                            .rowsPerSecond(rowsPerSecond(rows, sheet.elapsedNanos()))
+                            .build());
+                }
+            }
+
+            return UploadProfile.builder()
+                    .uploadId(uploadId)
+                    .status(status)
+                    .streaming(streaming)
+                    .startedAt(processingStartedAt != null ? processingStartedAt : LocalDateTime.now())
+                    .elapsedMillis(millis(elapsedNanos))
+                    .openMillis(millis(phaseNanos.get(UploadPhase.OPEN.ordinal())))
+                    .refreshMillis(millis(phaseNanos.get(UploadPhase.REFRESH.ordinal())))
+                    .commitMillis(millis(phaseNanos.get(UploadPhase.COMMIT.ordinal())))
+                    .totalRows(totalRows)
+                    .rowsPerSecond(rowsPerSecond(totalRows, elapsedNanos))
+                    .peakHeapDeltaBytes(Math.max(0, HeapUsage.peak() - heapUsedAtStart))
+                    .sheets(sheetProfiles)
+                    .build();
+        }
+    }
+
+    public static final class SheetProgress {
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong rowsProcessed = new AtomicLong();
+        private volatile long endNanos;
+
+        // sheet-level phases and row counts for the profile, see UploadPhase
+        private final AtomicLongArray phaseNanos = new AtomicLongArray(UploadPhase.values().length);
+        private volatile long rowsRead;
+        private volatile long errorRows;
+
+        public void rowProcessed() {
+            rowsProcessed.incrementAndGet();
+        }
+
+        public void finish() {
+            endNanos = System.nanoTime();
+        }
+
+        public void addPhase(UploadPhase phase, long nanos) {
+            phaseNanos.addAndGet(phase.ordinal(), nanos);
+        }
+
+        public long phaseNanos(UploadPhase phase) {
+            return phaseNanos.get(phase.ordinal());
+        }
+
+        public void setRowsRead(long rowsRead) {
+            this.rowsRead = rowsRead;
+        }
+
+        public void setErrorRows(long errorRows) {
+            this.errorRows = errorRows;
+        }
+
+        public long getRowsProcessed() {
+            return rowsProcessed.get();
+        }
+
+        public long elapsedNanos() {
+            long end = endNanos;
+            return (end == 0 ? System.nanoTime() : end) - startNanos;
+        }
+    }
+
+    public static long rowsPerSecond(long rows, long elapsedNanos) {
+        return elapsedNanos <= 0 ? rows : Math.round(rows * 1_000_000_000d / elapsedNanos);
+    }
+
+    // milliseconds to the microsecond
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1_000d) / 1_000d;
+    }
+}
@@ -0,0 +1,48 @@
+-- Range-partitions the assets table by valuation month, one partition per month named assets_yYYYYmMM.
+-- A table created earlier by Hibernate is converted in place, its rows are moved into the monthly partitions.
+-- Later partitions are created by the upload (AssetPartitionService) before it writes a new month.
+
+DO $$
+BEGIN
+    IF to_regclass('assets') IS NOT NULL THEN
+        ALTER TABLE assets RENAME TO assets_unpartitioned;
+        -- index names are schema wide, free them for the partitioned table
+        ALTER INDEX IF EXISTS assets_pkey RENAME TO assets_unpartitioned_pkey;
+        DROP INDEX IF EXISTS idx_assets_portfolio_asset_date;
+    END IF;
+END $$;
+
+CREATE TABLE assets (
+    date         date           NOT NULL,
+    portfolio_id varchar(10)    NOT NULL,
+    asset_id     varchar(10)    NOT NULL,
+    asset_value  numeric(15, 2) NOT NULL,
+    currency     varchar(3)     NOT NULL,
+    created_at   timestamp(6)   NOT NULL,
+    updated_at   timestamp(6),
+    created_by   varchar(50),
+    updated_by   varchar(50),
+    PRIMARY KEY (date, portfolio_id, asset_id)
+) PARTITION BY RANGE (date);
+
+CREATE INDEX idx_assets_portfolio_asset_date ON assets (portfolio_id, asset_id, date DESC);
+
+DO $$
+DECLARE
+    month_start date;
+BEGIN
+    IF to_regclass('assets_unpartitioned') IS NOT NULL THEN
+        FOR month_start IN
+            SELECT DISTINCT date_trunc('month', date)::date FROM assets_unpartitioned
+        LOOP
+            EXECUTE format('CREATE TABLE %I PARTITION OF assets FOR VALUES FROM (%L) TO (%L)',
+                           to_char(month_start, '"assets_y"YYYY"m"MM'), month_start, (month_start + interval '1 month')::date);
+        END LOOP;
+
+        INSERT INTO assets (date, portfolio_id, asset_id, asset_value, currency, created_at, updated_at, created_by, updated_by)
+        SELECT date, portfolio_id, asset_id, asset_value, currency, created_at, updated_at, created_by, updated_by
+        FROM assets_unpartitioned;
+
+        DROP TABLE assets_unpartitioned;
+    END IF;
+END $$;
@@ -0,0 +1,47 @@
+-- Portfolio ids are stored upper case from now on (Portfolio.canonicalId), so lookups compare them
+-- as is and can use idx_assets_portfolio_asset_date instead of scanning with UPPER() on both sides.
+-- Rows whose ids only differ in case collapse into one; the row already upper case wins, otherwise the first id.
+-- If anything changed, the snapshots and the dashboard aggregate are dropped and rebuilt on the next start.
+
+DO $$
+DECLARE
+    changed bigint := 0;
+    affected bigint;
+BEGIN
+    IF to_regclass('portfolios') IS NOT NULL THEN
+        DELETE FROM portfolios p
+        USING (SELECT portfolio_id,
+                      row_number() OVER (PARTITION BY upper(portfolio_id)
+                                         ORDER BY portfolio_id = upper(portfolio_id) DESC, portfolio_id) AS rn
+               FROM portfolios
+               WHERE upper(portfolio_id) IN (SELECT upper(portfolio_id) FROM portfolios
+                                             WHERE portfolio_id <> upper(portfolio_id))) d
+        WHERE d.rn > 1 AND p.portfolio_id = d.portfolio_id;
+
+        UPDATE portfolios SET portfolio_id = upper(portfolio_id) WHERE portfolio_id <> upper(portfolio_id);
+        GET DIAGNOSTICS affected = ROW_COUNT;
+        changed := changed + affected;
+    END IF;
+
+    DELETE FROM assets a
+    USING (SELECT date, portfolio_id, asset_id,
+                  row_number() OVER (PARTITION BY date, upper(portfolio_id), asset_id
+                                     ORDER BY portfolio_id = upper(portfolio_id) DESC, portfolio_id) AS rn
+           FROM assets
+           WHERE upper(portfolio_id) IN (SELECT upper(portfolio_id) FROM assets
+                                         WHERE portfolio_id <> upper(portfolio_id))) d
+    WHERE d.rn > 1 AND a.date = d.date AND a.portfolio_id = d.portfolio_id AND a.asset_id = d.asset_id;
+
+    UPDATE assets SET portfolio_id = upper(portfolio_id) WHERE portfolio_id <> upper(portfolio_id);
+    GET DIAGNOSTICS affected = ROW_COUNT;
+    changed := changed + affected;
+
+    IF changed > 0 THEN
+        IF to_regclass('portfolio_snapshots') IS NOT NULL THEN
+            DELETE FROM portfolio_snapshots;
+        END IF;
+        IF to_regclass('dashboard_aggregates') IS NOT NULL THEN
+            DELETE FROM dashboard_aggregates;
+        END IF;
+    END IF;
+END $$;
@@ -0,0 +1,54 @@
+package com.maimai.billingcalculationengine.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BaseContextTest {
+
+    @AfterEach
+    void tearDown() {
+        BaseContext.removeCurrentId();
+    }
+
+    @Test
+    void testWrap_RunsAsSubmittingUserOnWorker() throws Exception {
+        // Arrange
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        BaseContext.setCurrentId(42L);
+
+        try {
+            // Act
+            Future<Long> seen = worker.submit(BaseContext.wrap(BaseContext::getCurrentId));
+            BaseContext.removeCurrentId();
+            Future<Long> afterTask = worker.submit(BaseContext::getCurrentId);
+            Future<Long> anonymous = worker.submit(BaseContext.wrap(BaseContext::getCurrentId));
+
+            // Assert
+            assertEquals(42L, seen.get());
+            assertNull(afterTask.get(), "The worker should not keep the user once the task is done");
+            assertNull(anonymous.get(), "A task submitted without a user should run without one");
+        } finally {
+            worker.shutdown();
+        }
+    }
+
+    @Test
+    void testWrap_RestoresBindingWhenRunOnCallerThread() {
+        // Arrange
+        BaseContext.setCurrentId(1L);
+        Runnable task = BaseContext.wrap(() -> assertEquals(1L, BaseContext.getCurrentId()));
+        BaseContext.setCurrentId(2L);
+
+        // Act
+        task.run();
+
+        // Assert
+        assertEquals(2L, BaseContext.getCurrentId(), "Running a task inline should not change the caller's user");
+    }
+}
@@ -0,0 +1,89 @@
+package com.maimai.billingcalculationengine.common.excel;
+
+import com.maimai.billingcalculationengine.common.utils.FileUtil;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingWorkbookReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private File writeWorkbook() throws IOException {
+        File file = tempDir.resolve("upload.xlsx").toFile();
+        try (Workbook workbook = new XSSFWorkbook(); FileOutputStream out = new FileOutputStream(file)) {
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd"));
+            CellStyle percentStyle = workbook.createCellStyle();
+            percentStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("0.00%"));
+
+            Sheet sheet = workbook.createSheet("Assets");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Asset ID");
+            header.createCell(1).setCellValue("Date");
+            header.createCell(2).setCellValue("Rate");
+
+            Row data = sheet.createRow(2);
+            data.createCell(0).setCellValue(" A001 ");
+            Cell date = data.createCell(1);
+            date.setCellValue(LocalDate.of(2024, 3, 31));
+            date.setCellStyle(dateStyle);
+            Cell rate = data.createCell(2);
+            rate.setCellValue(0.0125);
+            rate.setCellStyle(percentStyle);
+
+            workbook.write(out);
+        }
+        return file;
+    }
+
+    @Test
+    void testReadSheet_StreamsRowsWithCellValues() throws IOException {
+        // Arrange
+        File file = writeWorkbook();
+        List<SheetRow> rows = new ArrayList<>();
+
+        // Act
+        try (StreamingWorkbookReader reader = StreamingWorkbookReader.open(file)) {
+            assertTrue(reader.hasSheet("assets"), "Sheet names should match case-insensitively");
+            assertFalse(reader.hasSheet("portfolio"));
+            reader.readSheet("assets", rows::add);
+        }
+
+        // Assert
+        assertEquals(2, rows.size(), "Rows without content in the file should not be emitted");
+        Map<String, Integer> columns = FileUtil.validateHeaders(rows.get(0), List.of("Asset ID", "Date", "Rate"));
+        assertNotNull(columns);
+
+        SheetRow data = rows.get(1);
+        assertEquals(2, data.getRowNum(), "Row numbers should come from the sheet, not the emit order");
+        assertEquals("A001", FileUtil.getCellValueAsString(data, columns.get("asset id")));
+        assertEquals(LocalDate.of(2024, 3, 31), FileUtil.getCellValueAsDate(data, columns.get("date")));
+        assertEquals(0, new BigDecimal("1.25").compareTo(FileUtil.getCellValueAsBigDecimal(data, columns.get("rate"))));
+    }
+
+    @Test
+    void testOpen_RejectsNonWorkbook() throws IOException {
+        // Arrange
+        Path file = Files.writeString(tempDir.resolve("upload.xlsx"), "not a workbook");
+
+        // Act & Assert
+        IOException e = assertThrows(IOException.class, () -> StreamingWorkbookReader.open(file.toFile()));
+        assertEquals("Invalid Excel File Format", e.getMessage());
+    }
+}
@@ -0,0 +1,83 @@
+package com.maimai.billingcalculationengine.common.metrics;
+
+import com.maimai.billingcalculationengine.common.enums.Layer;
+import com.maimai.billingcalculationengine.common.properties.MetricsProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Method;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutionMetricsTest {
+
+    private MetricsProperties metricsProperties;
+    private ExecutionMetrics executionMetrics;
+    private Method method;
+
+    @BeforeEach
+    void setUp() throws NoSuchMethodException {
+        metricsProperties = new MetricsProperties();
+        executionMetrics = new ExecutionMetrics();
+        ReflectionTestUtils.setField(executionMetrics, "metricsProperties", metricsProperties);
+        method = ExecutionMetricsTest.class.getDeclaredMethod("setUp");
+    }
+
+    @Test
+    void testTimer_IsSharedPerMethod() {
+        // Act
+        ExecutionMetrics.MethodTimer timer = executionMetrics.timer(method, Layer.SERVICE);
+
+        // Assert
+        assertSame(timer, executionMetrics.timer(method, Layer.SERVICE));
+        assertEquals("ExecutionMetricsTest.setUp", timer.getMethod());
+    }
+
+    @Test
+    void testSample_FollowsSampleRate() {
+        // Arrange
+        int sampled = 0;
+        metricsProperties.setSampleRate(0.1);
+
+        // Act
+        for (int i = 0; i < 100_000; i++) {
+            if (executionMetrics.sample()) sampled++;
+        }
+
+        // Assert
+        assertTrue(sampled > 9_000 && sampled < 11_000, "about a tenth of the calls should be sampled but was " + sampled);
+        metricsProperties.setSampleRate(0);
+        assertFalse(executionMetrics.sample());
+        metricsProperties.setSampleRate(1);
+        assertTrue(executionMetrics.sample());
+        metricsProperties.setEnabled(false);
+        assertFalse(executionMetrics.sample());
+    }
+
+    @Test
+    void testScrape_WritesCountersHistogramAndQuantiles() {
+        // Arrange
+        ExecutionMetrics.MethodTimer timer = executionMetrics.timer(method, Layer.REPOSITORY);
+        timer.record(true, 2_000_000);
+        timer.record(true, -1);
+        timer.record(false, 20_000_000);
+
+        // Act
+        String text = executionMetrics.scrape();
+
+        // Assert
+        String labels = "layer=\"REPOSITORY\",method=\"ExecutionMetricsTest.setUp\"";
+        assertEquals(3, timer.getCalls(), "untimed calls should still be counted");
+        assertTrue(text.contains("# TYPE billing_execution_seconds histogram\n"));
+        assertTrue(text.contains("billing_execution_calls_total{" + labels + ",outcome=\"success\"} 2\n"));
+        assertTrue(text.contains("billing_execution_calls_total{" + labels + ",outcome=\"error\"} 1\n"));
+        assertTrue(text.contains("billing_execution_seconds_bucket{" + labels + ",le=\"0.001\"} 0\n"));
+        assertTrue(text.contains("billing_execution_seconds_bucket{" + labels + ",le=\"0.005\"} 1\n"));
+        assertTrue(text.contains("billing_execution_seconds_bucket{" + labels + ",le=\"+Inf\"} 2\n"));
+        assertTrue(text.contains("billing_execution_seconds_sum{" + labels + "} 0.022\n"));
+        assertTrue(text.contains("billing_execution_seconds_count{" + labels + "} 2\n"));
+        assertTrue(text.contains("billing_execution_quantile_seconds{" + labels + ",quantile=\"0.99\"} 0.02\n"));
+        assertTrue(text.contains("billing_execution_max_seconds{" + labels + "} 0.02\n"));
+    }
+}
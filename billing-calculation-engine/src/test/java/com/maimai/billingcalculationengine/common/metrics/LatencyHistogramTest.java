@@ -0,0 +1,68 @@
+package com.maimai.billingcalculationengine.common.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    void testBuckets_CoverEveryValueWithinOneSixteenth() {
+        // Arrange
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 1_000, 123_456_789, Long.MAX_VALUE};
+
+        // Act & Assert
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            long upperBound = LatencyHistogram.upperBoundOf(bucket);
+            assertTrue(upperBound >= value, "bucket of " + value + " should hold it");
+            assertTrue(bucket == 0 || LatencyHistogram.upperBoundOf(bucket - 1) < value, "bucket of " + value + " should be the first holding it");
+            assertTrue(upperBound - value <= value / 16, "bucket of " + value + " should be at most 1/16 wide");
+        }
+    }
+
+    @Test
+    void testPercentile_UniformLatencies() {
+        // Arrange
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long millis = 1; millis <= 1000; millis++) {
+            histogram.record(millis * 1_000_000);
+        }
+
+        // Act
+        long p50 = histogram.percentileNanos(0.5);
+        long p95 = histogram.percentileNanos(0.95);
+        long p99 = histogram.percentileNanos(0.99);
+        long p100 = histogram.percentileNanos(1);
+
+        // Assert
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500L * 1_000_000, histogram.getSumNanos());
+        assertWithin(500_000_000, p50);
+        assertWithin(950_000_000, p95);
+        assertWithin(990_000_000, p99);
+        assertEquals(1_000_000_000, p100, "the top percentile should not exceed the maximum");
+    }
+
+    @Test
+    void testCumulativeCounts() {
+        // Arrange
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(500_000);
+        histogram.record(2_000_000);
+        histogram.record(2_000_000);
+        histogram.record(-5);
+
+        // Act
+        long[] counts = histogram.cumulativeCounts(new long[]{1_000_000, 10_000_000, 100_000_000});
+
+        // Assert
+        assertArrayEquals(new long[]{2, 4, 4}, counts);
+        assertEquals(0, new LatencyHistogram().percentileNanos(0.5), "an empty histogram has no percentile");
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16,
+                "expected " + expected + " within 1/16 but was " + actual);
+    }
+}
@@ -0,0 +1,104 @@
+package com.maimai.billingcalculationengine.common.utils;
+
+import com.maimai.billingcalculationengine.model.response.CacheMetricsResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private String load(String key) {
+        loads.incrementAndGet();
+        return key + "-" + loads.get();
+    }
+
+    @Test
+    void testGet_EvictsLeastRecentlyReadEntry() {
+        // Arrange
+        BoundedCache<String, String> cache = new BoundedCache<>("test", 2, 60, TimeUnit.SECONDS, now::get);
+        cache.get("A", this::load);
+        cache.get("B", this::load);
+
+        // Act
+        cache.get("A", this::load);
+        cache.get("C", this::load);
+        String a = cache.get("A", this::load);
+        String b = cache.get("B", this::load);
+
+        // Assert
+        assertEquals("A-1", a, "A was read more recently than B and should be kept");
+        assertEquals("B-4", b, "B should have been evicted and reloaded");
+        CacheMetricsResponse metrics = cache.getMetrics();
+        assertEquals(2, metrics.getHits());
+        assertEquals(4, metrics.getMisses());
+        assertEquals(2, metrics.getEvictions());
+        assertEquals(2, metrics.getSize());
+    }
+
+    @Test
+    void testGet_ReloadsExpiredEntry() {
+        // Arrange
+        BoundedCache<String, String> cache = new BoundedCache<>("test", 10, 60, TimeUnit.SECONDS, now::get);
+        cache.get("A", this::load);
+
+        // Act
+        now.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        String fresh = cache.get("A", this::load);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        String expired = cache.get("A", this::load);
+
+        // Assert
+        assertEquals("A-1", fresh);
+        assertEquals("A-2", expired);
+        assertEquals(1, cache.getMetrics().getExpirations());
+    }
+
+    @Test
+    void testInvalidate_RemovesOnlyGivenKeysAndDiscardsLoadsStartedBefore() {
+        // Arrange
+        BoundedCache<String, String> cache = new BoundedCache<>("test", 10, 60, TimeUnit.SECONDS, now::get);
+        cache.get("A", this::load);
+        cache.get("B", this::load);
+
+        // Act
+        cache.invalidate(List.of("A", "X"));
+        // C is invalidated while it loads, so what it read may be stale
+        String c = cache.get("C", key -> {
+            cache.invalidate(List.of("C"));
+            return load(key);
+        });
+
+        // Assert
+        assertEquals("C-3", c, "The loaded value should still be returned");
+        assertEquals("A-4", cache.get("A", this::load));
+        assertEquals("B-2", cache.get("B", this::load));
+        assertEquals("C-5", cache.get("C", this::load), "A load started before an invalidation should not be cached");
+        assertEquals(1, cache.getMetrics().getInvalidations());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testGet_CachesNothingWithZeroSize() {
+        // Arrange
+        BoundedCache<String, String> cache = new BoundedCache<>("test", 0, 60, TimeUnit.SECONDS, now::get);
+
+        // Act
+        cache.get("A", this::load);
+        String reloaded = cache.get("A", this::load);
+
+        // Assert
+        assertEquals("A-2", reloaded);
+        assertEquals(0, cache.getMetrics().getHits());
+        assertEquals(0, cache.getMetrics().getEvictions());
+    }
+}
@@ -0,0 +1,51 @@
+package com.maimai.billingcalculationengine.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactKeySetTest {
+
+    @Test
+    void testAddAndContains_AcrossResizes() {
+        // Arrange
+        CompactKeySet keySet = new CompactKeySet();
+        Set<String> expected = new HashSet<>();
+
+        // Act
+        for (int i = 0; i < 50_000; i++) {
+            String key = "P" + i;
+            assertTrue(keySet.add(key), "First add should report a new key");
+            expected.add(key);
+        }
+
+        // Assert
+        assertEquals(expected.size(), keySet.size());
+        for (String key : expected) {
+            assertTrue(keySet.contains(key), "Missing key " + key);
+        }
+        assertFalse(keySet.add("P42"), "Duplicate add should be ignored");
+        assertFalse(keySet.contains("P50000"));
+        assertFalse(keySet.contains("P42 "), "Keys are compared byte for byte");
+        assertFalse(keySet.contains(null));
+    }
+
+    @Test
+    void testAdd_NonAsciiAndOversizedKeys() {
+        // Arrange
+        CompactKeySet keySet = new CompactKeySet(4);
+
+        // Act
+        keySet.add("Québec-01");
+        keySet.add("");
+
+        // Assert
+        assertTrue(keySet.contains("Québec-01"));
+        assertTrue(keySet.contains(""));
+        assertFalse(keySet.contains("Quebec-01"));
+        assertThrows(IllegalArgumentException.class, () -> keySet.add("x".repeat(256)));
+    }
+}
@@ -0,0 +1,103 @@
+package com.maimai.billingcalculationengine.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Property tests: every operation is checked against the BigDecimal expression it replaces
+ * on a large seeded sample of amounts and rates, biased towards rounding ties and the overflow edges.
+ */
+public class MoneyTest {
+    private static final int SAMPLES = 200_000;
+
+    private final Random random = new Random(20241018L);
+
+    // amounts from a cent up to the long limit, plus exact ties once multiplied by a rate ending in 5
+    private long nextCents() {
+        long cents = switch (random.nextInt(4)) {
+            case 0 -> random.nextInt(1_000);
+            case 1 -> random.nextLong(100_000_000_000L);
+            case 2 -> random.nextLong(Long.MAX_VALUE);
+            default -> random.nextInt(1_000) * 2L + 1;
+        };
+        return random.nextInt(8) == 0 ? -cents : cents;
+    }
+
+    // rates at scale 10: fee rates, FX rates, rates ending in 5 to make half-cent products
+    private long nextRate() {
+        return switch (random.nextInt(4)) {
+            case 0 -> random.nextLong(1_000_000_000L);
+            case 1 -> random.nextLong(100_000_000_000L);
+            case 2 -> random.nextLong(10_000L) * 1_000_000L + 5_000_000_000L;
+            default -> random.nextLong(Long.MAX_VALUE);
+        };
+    }
+
+    @Test
+    void testMultiply_MatchesBigDecimalHalfUp() {
+        for (int i = 0; i < SAMPLES; i++) {
+            // Arrange
+            long cents = nextCents();
+            long rate = nextRate();
+            BigDecimal expected = BigDecimal.valueOf(cents, 2).multiply(BigDecimal.valueOf(rate, 10))
+                    .setScale(2, RoundingMode.HALF_UP);
+
+            // Act & Assert
+            if (expected.unscaledValue().bitLength() < Long.SIZE) {
+                assertEquals(expected, Money.toBigDecimal(Money.multiply(cents, rate)), cents + " * " + rate);
+            } else {
+                assertThrows(ArithmeticException.class, () -> Money.multiply(cents, rate), cents + " * " + rate);
+            }
+        }
+    }
+
+    @Test
+    void testPercentage_MatchesBigDecimalHalfUp() {
+        for (int i = 0; i < SAMPLES; i++) {
+            // Arrange
+            long part = nextCents();
+            long whole = nextCents();
+            if (whole == 0) continue;
+            BigDecimal expected = BigDecimal.valueOf(part, 2).multiply(new BigDecimal("100"))
+                    .divide(BigDecimal.valueOf(whole, 2), 2, RoundingMode.HALF_UP);
+
+            // Act & Assert
+            if (expected.unscaledValue().bitLength() < Long.SIZE) {
+                assertEquals(expected, Money.toBigDecimal(Money.percentage(part, whole)), part + " / " + whole);
+            } else {
+                assertThrows(ArithmeticException.class, () -> Money.percentage(part, whole), part + " / " + whole);
+            }
+        }
+    }
+
+    @Test
+    void testOfBigDecimal_RoundsHalfUpToCents() {
+        for (int i = 0; i < SAMPLES; i++) {
+            // Arrange
+            BigDecimal amount = BigDecimal.valueOf(random.nextLong(1_000_000_000_000L) - 500_000_000_000L, random.nextInt(5));
+
+            // Act
+            long cents = Money.ofBigDecimal(amount);
+
+            // Assert
+            assertEquals(amount.setScale(2, RoundingMode.HALF_UP), Money.toBigDecimal(cents), amount.toPlainString());
+        }
+        assertEquals(1005L, Money.ofBigDecimal(new BigDecimal("10.045")));
+        assertEquals(-1005L, Money.ofBigDecimal(new BigDecimal("-10.045")));
+        assertEquals(12_500_000_000L, Money.ofRate(new BigDecimal("1.25")));
+    }
+
+    @Test
+    void testOverflow_Throws() {
+        // Assert
+        assertThrows(ArithmeticException.class, () -> Money.add(Long.MAX_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> Money.ofBigDecimal(new BigDecimal("1e17")));
+        assertThrows(ArithmeticException.class, () -> Money.percentage(1, 0));
+        assertEquals(Long.MAX_VALUE, Money.multiply(Long.MAX_VALUE, 10_000_000_000L), "A product past 64 bits falls back to BigDecimal");
+    }
+}
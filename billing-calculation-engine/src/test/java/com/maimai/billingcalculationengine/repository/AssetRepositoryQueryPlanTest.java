@@ -0,0 +1,96 @@
+package com.maimai.billingcalculationengine.repository;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Plans the portfolio lookups of {@link AssetRepository} on the migrated schema, so a predicate that
+ * stops being sargable, or an as-of query that stops pruning partitions, fails the build.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+public class AssetRepositoryQueryPlanTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private static SingleConnectionDataSource dataSource;
+    private static NamedParameterJdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void setUp() {
+        dataSource = new SingleConnectionDataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword(), true);
+        Flyway.configure().dataSource(dataSource).load().migrate();
+
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute(String.format("CREATE TABLE %s PARTITION OF assets FOR VALUES FROM ('2024-03-01') TO ('2024-04-01')",
+                AssetPartitionRepository.partitionName(YearMonth.of(2024, 3))));
+        jdbc.execute(String.format("CREATE TABLE %s PARTITION OF assets FOR VALUES FROM ('2024-04-01') TO ('2024-05-01')",
+                AssetPartitionRepository.partitionName(YearMonth.of(2024, 4))));
+        // 200 portfolios of 5 assets, valued daily for 40 days
+        jdbc.execute("INSERT INTO assets (date, portfolio_id, asset_id, asset_value, currency, created_at) "
+                + "SELECT date '2024-03-01' + d, 'P' || lpad(p::text, 4, '0'), 'A' || a, 1000, 'CAD', now() "
+                + "FROM generate_series(0, 199) p, generate_series(0, 4) a, generate_series(0, 39) d");
+        jdbc.execute("ANALYZE assets");
+        // a predicate no index can serve still plans a sequential scan
+        jdbc.execute("SET enable_seqscan = off");
+
+        jdbcTemplate = new NamedParameterJdbcTemplate(jdbc);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        dataSource.destroy();
+    }
+
+    private static String explain(String sql, Map<String, ?> params) {
+        List<String> plan = jdbcTemplate.queryForList("EXPLAIN " + sql, params, String.class);
+        return String.join("\n", plan);
+    }
+
+    @Test
+    void testFindAllByPortfolioId_UsesIndex() {
+        // Act
+        String plan = explain(AssetRepository.FIND_ALL_BY_PORTFOLIO_ID, Map.of("portfolioId", "P0042"));
+
+        // Assert
+        assertFalse(plan.contains("Seq Scan"), "Portfolio lookup should not scan the whole table:\n" + plan);
+        assertTrue(plan.contains("Index"), plan);
+    }
+
+    @Test
+    void testSumLatestAumByPortfolioIdInAsOf_UsesIndexAndPrunesLaterMonths() {
+        // Act
+        String plan = explain(AssetRepository.SUM_LATEST_AUM_BY_PORTFOLIO_ID_IN_AS_OF,
+                Map.of("portfolioIds", List.of("P0042"), "asOfDate", LocalDate.of(2024, 3, 15)));
+
+        // Assert
+        assertFalse(plan.contains("Seq Scan"), "As-of lookup should not scan the whole table:\n" + plan);
+        assertTrue(plan.contains("assets_y2024m03"), plan);
+        assertFalse(plan.contains("assets_y2024m04"), "Partitions after the as-of date should be pruned:\n" + plan);
+    }
+
+    @Test
+    void testFindLatestByPortfolioIdInAsOf_UsesIndex() {
+        // Act
+        String plan = explain(AssetRepository.FIND_LATEST_BY_PORTFOLIO_ID_IN_AS_OF,
+                Map.of("portfolioIds", List.of("P0001", "P0042", "P0107"), "asOfDate", LocalDate.of(2024, 4, 30)));
+
+        // Assert
+        assertFalse(plan.contains("Seq Scan"), "As-of lookup of several portfolios should not scan the whole table:\n" + plan);
+    }
+}
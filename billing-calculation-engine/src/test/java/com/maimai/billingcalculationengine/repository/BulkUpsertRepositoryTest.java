@@ -0,0 +1,57 @@
+package com.maimai.billingcalculationengine.repository;
+
+import com.maimai.billingcalculationengine.model.entity.Portfolio;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BulkUpsertRepositoryTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private BulkUpsertRepository bulkUpsertRepository;
+
+    @Test
+    void testUpsertPortfolios_ChunksRowsIntoMultiRowStatements() {
+        // Arrange
+        LocalDateTime now = LocalDateTime.now();
+        List<Portfolio> portfolios = IntStream.range(0, 5)
+                .mapToObj(i -> Portfolio.builder().portfolioId("P00" + i).clientId("C001")
+                        .portfolioCurrency("CAD").createdAt(now).createdBy("1").build())
+                .toList();
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            return sql.split("\\(\\?", -1).length - 1;
+        });
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+
+        // Act
+        int written = bulkUpsertRepository.upsertPortfolios(portfolios, 2);
+
+        // Assert
+        assertEquals(5, written);
+        verify(jdbcTemplate, times(3)).update(sql.capture(), args.capture());
+        assertTrue(sql.getAllValues().get(0).startsWith("INSERT INTO portfolios (portfolio_id, client_id, portfolio_currency, created_at, created_by) VALUES (?, ?, ?, ?, ?), (?, ?, ?, ?, ?)"));
+        assertTrue(sql.getAllValues().get(0).endsWith("ON CONFLICT (portfolio_id) DO UPDATE SET client_id = EXCLUDED.client_id, "
+                + "portfolio_currency = EXCLUDED.portfolio_currency, updated_at = EXCLUDED.created_at, updated_by = EXCLUDED.created_by"));
+        assertEquals(10, args.getAllValues().get(0).length);
+        assertEquals(5, args.getAllValues().get(2).length, "Last chunk should only carry the remaining row");
+        assertEquals("P004", args.getAllValues().get(2)[0]);
+    }
+}
@@ -0,0 +1,95 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.common.properties.AssetPartitionProperties;
+import com.maimai.billingcalculationengine.repository.AssetPartitionRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class AssetPartitionServiceTest {
+
+    @Mock
+    private AssetPartitionRepository assetPartitionRepository;
+
+    @Mock
+    private DashboardAggregateService dashboardAggregateService;
+
+    @Mock
+    private HoldingsStore holdingsStore;
+
+    @Spy
+    private AssetPartitionProperties assetPartitionProperties = new AssetPartitionProperties();
+
+    @InjectMocks
+    private AssetPartitionService assetPartitionService;
+
+    @Test
+    void testEnsureMonthlyPartitions_CreatesOnlyMissingMonths() {
+        // Arrange
+        when(assetPartitionRepository.findPartitionNames()).thenReturn(List.of("assets_y2024m02", "assets_y2024m03"));
+
+        // Act
+        assetPartitionService.ensureMonthlyPartitions(Set.of(YearMonth.of(2024, 3), YearMonth.of(2024, 4)));
+
+        // Assert
+        verify(assetPartitionRepository).lockPartitions();
+        verify(assetPartitionRepository).createMonthlyPartition(YearMonth.of(2024, 4));
+        verify(assetPartitionRepository, never()).createMonthlyPartition(YearMonth.of(2024, 3));
+    }
+
+    @Test
+    void testDetachExpiredPartitions_DetachesMonthsBeforeRetentionWindow() {
+        // Arrange
+        assetPartitionProperties.setRetentionMonths(3);
+        YearMonth current = YearMonth.now();
+        when(assetPartitionRepository.findPartitionNames()).thenReturn(List.of(
+                AssetPartitionRepository.partitionName(current.minusMonths(4)),
+                AssetPartitionRepository.partitionName(current.minusMonths(3)),
+                AssetPartitionRepository.partitionName(current.minusMonths(2)),
+                AssetPartitionRepository.partitionName(current)));
+        when(assetPartitionRepository.detachMonthlyPartition(any())).thenReturn("archived");
+
+        // Act
+        List<String> archived = assetPartitionService.detachExpiredPartitions();
+
+        // Assert
+        assertEquals(2, archived.size(), "Only the months before the three retained ones should be detached");
+        verify(assetPartitionRepository).detachMonthlyPartition(current.minusMonths(4));
+        verify(assetPartitionRepository).detachMonthlyPartition(current.minusMonths(3));
+        verify(assetPartitionRepository, never()).detachMonthlyPartition(current.minusMonths(2));
+        InOrder invalidateThenRebuild = inOrder(holdingsStore, dashboardAggregateService);
+        invalidateThenRebuild.verify(holdingsStore).invalidateAfterCommit();
+        invalidateThenRebuild.verify(dashboardAggregateService).rebuild();
+    }
+
+    @Test
+    void testDetachExpiredPartitions_DisabledByDefault() {
+        // Act
+        List<String> archived = assetPartitionService.detachExpiredPartitions();
+
+        // Assert
+        assertTrue(archived.isEmpty());
+        verifyNoInteractions(assetPartitionRepository, dashboardAggregateService, holdingsStore);
+    }
+
+    @Test
+    void testPartitionName_RoundTrips() {
+        assertEquals("assets_y2024m03", AssetPartitionRepository.partitionName(YearMonth.of(2024, 3)));
+        assertEquals(Optional.of(YearMonth.of(2024, 3)), AssetPartitionRepository.monthOf("assets_y2024m03"));
+        assertTrue(AssetPartitionRepository.monthOf("assets_archive_y2024m03").isEmpty());
+    }
+}
@@ -110,6 +110,19 @@ public class AssetServiceTest {
         verify(assetRepository).findAllByPortfolioId("P001");
     }
 
+    @Test
+    void testGetAssetsByPortfolioId_LooksUpCanonicalId() {
+        // Arrange
+        when(assetRepository.findAllByPortfolioId("P001")).thenReturn(portfolioAssets);
+
+        // Act
+        List<AssetResponse> result = assetService.getAssetsByPortfolioId("p001");
+
+        // Assert
+        assertEquals(portfolioAssets.size(), result.size(), "Lookup should not depend on the case of the portfolio ID");
+        verify(assetRepository).findAllByPortfolioId("P001");
+    }
+
     @Test
     void testGetAssetsByPortfolioId_NoAssets() {
         // Arrange
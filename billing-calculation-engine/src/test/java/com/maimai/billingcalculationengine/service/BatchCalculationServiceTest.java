@@ -0,0 +1,382 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.model.calculation.BatchCalculationResult;
+import com.maimai.billingcalculationengine.model.calculation.ClientCalculation;
+import com.maimai.billingcalculationengine.model.calculation.PortfolioCalculation;
+import com.maimai.billingcalculationengine.model.entity.Asset;
+import com.maimai.billingcalculationengine.model.entity.BillingTier;
+import com.maimai.billingcalculationengine.model.entity.Client;
+import com.maimai.billingcalculationengine.model.entity.FxRate;
+import com.maimai.billingcalculationengine.model.entity.Portfolio;
+import com.maimai.billingcalculationengine.model.projection.PortfolioAum;
+import com.maimai.billingcalculationengine.repository.AssetRepository;
+import com.maimai.billingcalculationengine.repository.ClientRepository;
+import com.maimai.billingcalculationengine.repository.PortfolioRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BatchCalculationServiceTest {
+
+    @Mock
+    private ClientRepository clientRepository;
+
+    @Mock
+    private PortfolioRepository portfolioRepository;
+
+    @Mock
+    private AssetRepository assetRepository;
+
+    @Mock
+    private BillingTierIndex billingTierIndex;
+
+    @Mock
+    private FxRateIndex fxRateIndex;
+
+    @Mock
+    private HoldingsStore holdingsStore;
+
+    @Spy
+    private CalculationService calculationService = new CalculationService();
+
+    @InjectMocks
+    private BatchCalculationService batchCalculationService;
+
+    private List<Client> clients;
+    private List<Portfolio> portfolios;
+    private List<Asset> assets;
+    private List<PortfolioAum> portfolioAums;
+    private BillingTierIndex.Snapshot billingTiers;
+    private FxRateIndex.Matrix fxRates;
+
+    @BeforeEach
+    void setUp() {
+        clients = Arrays.asList(
+                Client.builder().clientId("C001").clientName("Test Client 1").billingTierId("T001").build(),
+                Client.builder().clientId("C002").clientName("Test Client 2").billingTierId("T001").build(),
+                Client.builder().clientId("C003").clientName("Client Without Portfolios").billingTierId("T001").build()
+        );
+
+        portfolios = Arrays.asList(
+                Portfolio.builder().portfolioId("P001").clientId("C001").portfolioCurrency("CAD").build(),
+                Portfolio.builder().portfolioId("P002").clientId("C001").portfolioCurrency("USD").build(),
+                Portfolio.builder().portfolioId("P003").clientId("C002").portfolioCurrency("CAD").build()
+        );
+
+        LocalDate today = LocalDate.now();
+        assets = Arrays.asList(
+                Asset.builder().portfolioId("P001").assetId("A001").assetValue(new BigDecimal("10000.00")).currency("CAD").date(today).build(),
+                Asset.builder().portfolioId("P001").assetId("A002").assetValue(new BigDecimal("15000.00")).currency("CAD").date(today).build(),
+                Asset.builder().portfolioId("P002").assetId("A003").assetValue(new BigDecimal("2000000.00")).currency("CAD").date(today).build(),
+                Asset.builder().portfolioId("P003").assetId("A004").assetValue(new BigDecimal("40000.00")).currency("CAD").date(today).build()
+        );
+
+        // the same book summed by the database
+        portfolioAums = Arrays.asList(
+                PortfolioAum.of("P001", "CAD", new BigDecimal("25000.00"), today),
+                PortfolioAum.of("P002", "CAD", new BigDecimal("2000000.00"), today),
+                PortfolioAum.of("P003", "CAD", new BigDecimal("40000.00"), today)
+        );
+
+        billingTiers = BillingTierIndex.Snapshot.of(Arrays.asList(
+                BillingTier.builder().tierId("T001").portfolioAumMin(new BigDecimal("0.00"))
+                        .portfolioAumMax(new BigDecimal("1000000.00")).feePercentage(new BigDecimal("1.25")).build(),
+                BillingTier.builder().tierId("T001").portfolioAumMin(new BigDecimal("1000000.01"))
+                        .portfolioAumMax(new BigDecimal("99999999.00")).feePercentage(new BigDecimal("0.50")).build()
+        ));
+
+        fxRates = FxRateIndex.Matrix.of(Arrays.asList(
+                FxRate.builder().fromCurrency("USD").toCurrency("CAD").rateDate(LocalDate.of(2024, 1, 1)).rate(new BigDecimal("1.35")).build(),
+                FxRate.builder().fromCurrency("USD").toCurrency("CAD").rateDate(LocalDate.of(2024, 3, 1)).rate(new BigDecimal("1.40")).build()
+        ), Map.of());
+    }
+
+    @Test
+    void testCalculate_PortfolioAumAndFee() {
+        // Act
+        BatchCalculationResult result = batchCalculationService.calculate(clients, portfolios, assets, billingTiers, fxRates);
+
+        // Assert
+        PortfolioCalculation p001 = result.getPortfolio("P001");
+        assertEquals(0, new BigDecimal("25000.00").compareTo(p001.getAum()), "Portfolio AUM should be the sum of its assets");
+        assertEquals(0, new BigDecimal("312.50").compareTo(p001.getFee()), "Fee should use the tier covering the AUM");
+
+        PortfolioCalculation p002 = result.getPortfolio("P002");
+        assertEquals(0, new BigDecimal("10000.00").compareTo(p002.getFee()), "Fee should use the higher band for large portfolios");
+        assertEquals("USD", p002.getPortfolioCurrency());
+    }
+
+    @Test
+    void testCalculate_ConvertsAumToPortfolioCurrency() {
+        // Arrange
+        FxRateIndex.Matrix withDefaults = FxRateIndex.Matrix.of(List.of(), Map.of("USD", new BigDecimal("0.71")));
+        List<Portfolio> withEuroPortfolio = new ArrayList<>(portfolios);
+        withEuroPortfolio.add(Portfolio.builder().portfolioId("P004").clientId("C002").portfolioCurrency("EUR").build());
+
+        // Act
+        BatchCalculationResult result = batchCalculationService.calculate(clients, withEuroPortfolio, assets, billingTiers, withDefaults);
+
+        // Assert
+        assertEquals(new BigDecimal("25000.00"), result.getPortfolio("P001").getAumInPortfolioCurrency());
+        assertEquals(new BigDecimal("1420000.00"), result.getPortfolio("P002").getAumInPortfolioCurrency(),
+                "USD portfolio AUM should be converted at the latest CAD to USD rate");
+        assertNull(result.getPortfolio("P004").getAumInPortfolioCurrency(),
+                "A currency without a rate should not fail the whole result");
+    }
+
+    @Test
+    void testCalculate_ClientTotalsAndEffectiveRate() {
+        // Act
+        BatchCalculationResult result = batchCalculationService.calculate(clients, portfolios, assets, billingTiers, fxRates);
+
+        // Assert
+        ClientCalculation c001 = result.getClient("C001");
+        assertEquals(0, new BigDecimal("2025000.00").compareTo(c001.getTotalAum()));
+        assertEquals(0, new BigDecimal("10312.50").compareTo(c001.getTotalFee()));
+        assertEquals(0, new BigDecimal("0.51").compareTo(c001.getEffectiveFeeRate()));
+
+        ClientCalculation c003 = result.getClient("C003");
+        assertEquals(0, BigDecimal.ZERO.compareTo(c003.getTotalAum()), "Client without portfolios should have zero AUM");
+        assertEquals(0, BigDecimal.ZERO.compareTo(c003.getEffectiveFeeRate()));
+
+        assertEquals(0, new BigDecimal("2065000.00").compareTo(result.getTotalAum()));
+        assertEquals(0, new BigDecimal("10812.50").compareTo(result.getTotalFee()));
+        assertEquals(2, result.getPortfoliosOfClient("C001").size());
+    }
+
+    @Test
+    void testCalculate_MissingTierThrows() {
+        // Arrange
+        List<Client> clientsWithUnknownTier = List.of(
+                Client.builder().clientId("C001").billingTierId("T999").build());
+
+        // Act & Assert
+        assertThrows(RuntimeException.class,
+                () -> batchCalculationService.calculate(clientsWithUnknownTier, portfolios.subList(0, 1), assets, billingTiers, fxRates),
+                "Should fail when no tier covers the portfolio AUM");
+    }
+
+    @Test
+    void testCalculateAllClients_ScansHoldingsStore() {
+        // Arrange
+        HoldingsStore.Holdings holdings = HoldingsStore.Holdings.of(assets);
+        when(clientRepository.findAll()).thenReturn(clients);
+        when(portfolioRepository.findAll()).thenReturn(portfolios);
+        doAnswer(invocation -> {
+            holdings.forEachRun(invocation.getArgument(0));
+            return null;
+        }).when(holdingsStore).scan(any());
+        when(billingTierIndex.current()).thenReturn(billingTiers);
+        when(fxRateIndex.current()).thenReturn(fxRates);
+
+        // Act
+        BatchCalculationResult result = batchCalculationService.calculateAllClients();
+
+        // Assert
+        BatchCalculationResult fromAssets = batchCalculationService.calculate(clients, portfolios, assets, billingTiers, fxRates);
+        assertEquals(3, result.getClients().size());
+        assertEquals(fromAssets.getTotalAum(), result.getTotalAum());
+        assertEquals(fromAssets.getTotalFee(), result.getTotalFee());
+        assertEquals(fromAssets.getPortfolio("P001").getAsOfDate(), result.getPortfolio("P001").getAsOfDate());
+        verifyNoInteractions(assetRepository);
+        verify(portfolioRepository, never()).findAllByClientId(anyString());
+    }
+
+    @Test
+    void testCalculateAllClients_ConvertsEachHoldingsRunOnce() {
+        // Arrange
+        // two USD holdings valued on the same day are converted as one sum, as the database sums them
+        HoldingsStore.Holdings holdings = HoldingsStore.Holdings.of(List.of(
+                Asset.builder().portfolioId("P001").assetId("A001").assetValue(new BigDecimal("0.01")).currency("USD").date(LocalDate.of(2024, 3, 15)).build(),
+                Asset.builder().portfolioId("P001").assetId("A002").assetValue(new BigDecimal("0.01")).currency("USD").date(LocalDate.of(2024, 3, 15)).build()));
+        when(clientRepository.findAll()).thenReturn(clients.subList(0, 1));
+        when(portfolioRepository.findAll()).thenReturn(portfolios.subList(0, 1));
+        doAnswer(invocation -> {
+            holdings.forEachRun(invocation.getArgument(0));
+            return null;
+        }).when(holdingsStore).scan(any());
+        when(billingTierIndex.current()).thenReturn(billingTiers);
+        when(fxRateIndex.current()).thenReturn(fxRates);
+
+        // Act
+        BatchCalculationResult result = batchCalculationService.calculateAllClients();
+
+        // Assert
+        // 0.02 USD * 1.40, each 0.01 USD alone would round to 0.01 CAD
+        assertEquals(new BigDecimal("0.03"), result.getPortfolio("P001").getAum());
+    }
+
+    @Test
+    void testCalculateClients_LoadsOnlyRequestedClients() {
+        // Arrange
+        when(clientRepository.findAllByClientIdIn(anyCollection())).thenReturn(clients.subList(1, 2));
+        when(portfolioRepository.findAllByClientIdIn(anyCollection())).thenReturn(portfolios.subList(2, 3));
+        when(assetRepository.sumLatestAumByPortfolioIdInAsOf(anyCollection(), any())).thenReturn(portfolioAums.subList(2, 3));
+        when(billingTierIndex.current()).thenReturn(billingTiers);
+        when(fxRateIndex.current()).thenReturn(fxRates);
+
+        // Act
+        BatchCalculationResult result = batchCalculationService.calculateClients(List.of("C002"));
+
+        // Assert
+        assertEquals(1, result.getClients().size());
+        assertEquals(0, new BigDecimal("500.00").compareTo(result.getClient("C002").getTotalFee()));
+        verify(assetRepository).sumLatestAumByPortfolioIdInAsOf(List.of("P003"), BatchCalculationService.LATEST_AS_OF_DATE);
+    }
+
+    @Test
+    void testCalculateAllClients_AsOfDate() {
+        // Arrange
+        LocalDate asOfDate = LocalDate.of(2024, 3, 31);
+        when(clientRepository.findAll()).thenReturn(clients);
+        when(portfolioRepository.findAll()).thenReturn(portfolios);
+        when(assetRepository.sumAllLatestAumAsOf(asOfDate)).thenReturn(portfolioAums.subList(0, 1));
+        when(billingTierIndex.current()).thenReturn(billingTiers);
+        when(fxRateIndex.current()).thenReturn(fxRates);
+
+        // Act
+        BatchCalculationResult result = batchCalculationService.calculateAllClients(asOfDate);
+
+        // Assert
+        assertEquals(0, new BigDecimal("25000.00").compareTo(result.getTotalAum()), "Only valuations as of the date should count");
+        assertEquals(0, BigDecimal.ZERO.compareTo(result.getPortfolio("P003").getAum()));
+        verify(assetRepository, never()).findAll();
+    }
+
+    @Test
+    void testCalculateFromAum_MatchesAssetSums() {
+        // Act
+        BatchCalculationResult fromAssets = batchCalculationService.calculate(clients, portfolios, assets, billingTiers, fxRates);
+        BatchCalculationResult fromAum = batchCalculationService.calculateFromAum(clients, portfolios, portfolioAums, billingTiers, fxRates);
+
+        // Assert
+        assertEquals(0, fromAssets.getTotalAum().compareTo(fromAum.getTotalAum()));
+        assertEquals(0, fromAssets.getTotalFee().compareTo(fromAum.getTotalFee()));
+        assertEquals(fromAssets.getPortfolio("P001").getAsOfDate(), fromAum.getPortfolio("P001").getAsOfDate());
+    }
+
+    @Test
+    void testCalculateFromAum_ConvertsEachCurrencyAtItsValuationDate() {
+        // Arrange
+        List<PortfolioAum> mixedCurrencyAums = Arrays.asList(
+                PortfolioAum.of("P001", "CAD", new BigDecimal("25000.00"), LocalDate.of(2024, 3, 31)),
+                PortfolioAum.of("P001", "USD", new BigDecimal("1000.00"), LocalDate.of(2024, 2, 15)),
+                PortfolioAum.of("P001", "usd", new BigDecimal("2000.00"), LocalDate.of(2024, 3, 15))
+        );
+
+        // Act
+        BatchCalculationResult result = batchCalculationService.calculateFromAum(clients.subList(0, 1), portfolios.subList(0, 1),
+                mixedCurrencyAums, billingTiers, fxRates);
+
+        // Assert
+        // 25000 CAD + 1000 USD at the January rate 1.35 + 2000 USD at the March rate 1.40
+        assertEquals(0, new BigDecimal("29150.00").compareTo(result.getPortfolio("P001").getAum()));
+        assertEquals(LocalDate.of(2024, 3, 31), result.getPortfolio("P001").getAsOfDate(), "As-of date should be the newest valuation");
+    }
+
+    @Test
+    void testCalculate_MissingFxRateThrows() {
+        // Arrange
+        List<Asset> eurAssets = List.of(Asset.builder().portfolioId("P001").assetId("A001")
+                .assetValue(new BigDecimal("100.00")).currency("EUR").date(LocalDate.of(2024, 3, 31)).build());
+
+        // Act & Assert
+        assertThrows(RuntimeException.class,
+                () -> batchCalculationService.calculate(clients, portfolios.subList(0, 1), eurAssets, billingTiers, fxRates),
+                "Should fail when no rate converts the asset currency to CAD");
+    }
+
+    @Test
+    void testCalculate_MatchesBigDecimalArithmeticOnRandomBooks() {
+        Random random = new Random(20241018L);
+        for (int book = 0; book < 200; book++) {
+            // Arrange
+            // contiguous bands with fee percentages at scale 2
+            List<BillingTier> bands = new ArrayList<>();
+            long minCents = 0;
+            int bandCount = 1 + random.nextInt(4);
+            for (int band = 0; band < bandCount; band++) {
+                long maxCents = minCents + random.nextLong(500_000_000L);
+                bands.add(BillingTier.builder().tierId("T001").portfolioAumMin(BigDecimal.valueOf(minCents, 2))
+                        .portfolioAumMax(BigDecimal.valueOf(maxCents, 2))
+                        .feePercentage(BigDecimal.valueOf(random.nextInt(300), 2)).build());
+                minCents = maxCents + 1;
+            }
+            bands.get(bands.size() - 1).setPortfolioAumMax(new BigDecimal("999999999999999.99"));
+            BillingTierIndex.Snapshot randomTiers = BillingTierIndex.Snapshot.of(bands);
+
+            // USD and EUR rates at scale 10 on random dates in 2024
+            List<FxRate> rates = new ArrayList<>();
+            for (String currency : List.of("USD", "EUR")) {
+                rates.add(FxRate.builder().fromCurrency(currency).toCurrency("CAD").rateDate(LocalDate.of(2024, 1, 1))
+                        .rate(BigDecimal.valueOf(5_000_000_000L + random.nextLong(15_000_000_000L), 10)).build());
+                rates.add(FxRate.builder().fromCurrency("CAD").toCurrency(currency).rateDate(LocalDate.of(2024, 1, 1).plusDays(random.nextInt(366)))
+                        .rate(BigDecimal.valueOf(5_000_000_000L + random.nextLong(15_000_000_000L), 10)).build());
+            }
+            FxRateIndex.Matrix randomRates = FxRateIndex.Matrix.of(rates, Map.of());
+
+            List<Asset> randomAssets = new ArrayList<>();
+            int assetCount = random.nextInt(60);
+            for (int asset = 0; asset < assetCount; asset++) {
+                randomAssets.add(Asset.builder().portfolioId(portfolios.get(random.nextInt(portfolios.size())).getPortfolioId())
+                        .assetId("A" + asset).assetValue(BigDecimal.valueOf(random.nextLong(100_000_000_000L), 2))
+                        .currency(List.of("CAD", "USD", "EUR").get(random.nextInt(3)))
+                        .date(LocalDate.of(2024, 1, 1).plusDays(random.nextInt(366))).build());
+            }
+
+            // the same book priced with the BigDecimal arithmetic of CalculationService
+            Map<String, BigDecimal> expectedAum = new HashMap<>();
+            for (Asset asset : randomAssets) {
+                expectedAum.merge(asset.getPortfolioId(),
+                        randomRates.toBaseCurrency(asset.getAssetValue(), asset.getCurrency(), asset.getDate()), BigDecimal::add);
+            }
+            Map<String, BigDecimal> expectedClientAum = new HashMap<>();
+            Map<String, BigDecimal> expectedClientFee = new HashMap<>();
+            Map<String, BigDecimal> expectedFee = new HashMap<>();
+            for (Portfolio portfolio : portfolios) {
+                BigDecimal aum = expectedAum.getOrDefault(portfolio.getPortfolioId(), BigDecimal.ZERO);
+                BigDecimal fee = calculationService.calculateFee(aum, randomTiers.find("T001", aum).orElseThrow().getFeePercentage());
+                expectedFee.put(portfolio.getPortfolioId(), fee);
+                expectedClientAum.merge(portfolio.getClientId(), aum, BigDecimal::add);
+                expectedClientFee.merge(portfolio.getClientId(), fee, BigDecimal::add);
+            }
+
+            // Act
+            BatchCalculationResult result = batchCalculationService.calculate(clients, portfolios, randomAssets, randomTiers, randomRates);
+
+            // Assert
+            for (Portfolio portfolio : portfolios) {
+                PortfolioCalculation calculation = result.getPortfolio(portfolio.getPortfolioId());
+                assertEquals(0, expectedAum.getOrDefault(portfolio.getPortfolioId(), BigDecimal.ZERO).compareTo(calculation.getAum()));
+                assertEquals(expectedFee.get(portfolio.getPortfolioId()), calculation.getFee(), "Book " + book);
+            }
+            for (Client client : clients) {
+                BigDecimal aum = expectedClientAum.getOrDefault(client.getClientId(), BigDecimal.ZERO);
+                BigDecimal fee = expectedClientFee.getOrDefault(client.getClientId(), BigDecimal.ZERO);
+                ClientCalculation calculation = result.getClient(client.getClientId());
+                assertEquals(0, aum.compareTo(calculation.getTotalAum()), "Book " + book);
+                assertEquals(0, fee.compareTo(calculation.getTotalFee()), "Book " + book);
+                assertEquals(calculationService.calculateEffectiveFeeRate(fee, aum), calculation.getEffectiveFeeRate(), "Book " + book);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.model.entity.BillingTier;
+import com.maimai.billingcalculationengine.repository.BillingTierRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BillingTierIndexTest {
+
+    @Mock
+    private BillingTierRepository billingTierRepository;
+
+    @InjectMocks
+    private BillingTierIndex billingTierIndex;
+
+    private static BillingTier band(String tierId, String min, String max, String feePercentage) {
+        return BillingTier.builder()
+                .tierId(tierId)
+                .portfolioAumMin(new BigDecimal(min))
+                .portfolioAumMax(new BigDecimal(max))
+                .feePercentage(new BigDecimal(feePercentage))
+                .build();
+    }
+
+    private final List<BillingTier> tiers = Arrays.asList(
+            band("T001", "1000000.01", "5000000.00", "0.75"),
+            band("T001", "0.00", "1000000.00", "1.25"),
+            band("T001", "5000000.01", "99999999.00", "0.50"),
+            band("T002", "0.00", "99999999.00", "1.00")
+    );
+
+    @Test
+    void testFind_BinarySearchAcrossUnsortedBands() {
+        // Act
+        BillingTierIndex.Snapshot snapshot = BillingTierIndex.Snapshot.of(tiers);
+
+        // Assert
+        assertEquals(0, new BigDecimal("1.25").compareTo(snapshot.find("T001", new BigDecimal("0.00")).get().getFeePercentage()));
+        assertEquals(0, new BigDecimal("1.25").compareTo(snapshot.find("T001", new BigDecimal("1000000.00")).get().getFeePercentage()));
+        assertEquals(0, new BigDecimal("0.75").compareTo(snapshot.find("T001", new BigDecimal("1000000.01")).get().getFeePercentage()));
+        assertEquals(0, new BigDecimal("0.50").compareTo(snapshot.find("T001", new BigDecimal("7500000.00")).get().getFeePercentage()));
+        assertEquals(0, new BigDecimal("1.00").compareTo(snapshot.find("T002", new BigDecimal("42.00")).get().getFeePercentage()));
+        assertTrue(snapshot.getIssues().isEmpty(), "Contiguous bands should not report issues");
+    }
+
+    @Test
+    void testFind_OutsideCoverage() {
+        // Act
+        BillingTierIndex.Snapshot snapshot = BillingTierIndex.Snapshot.of(tiers);
+
+        // Assert
+        assertTrue(snapshot.find("T001", new BigDecimal("100000000.00")).isEmpty(), "Balance above the last band is not covered");
+        assertTrue(snapshot.find("T999", BigDecimal.ONE).isEmpty(), "Unknown tier has no bands");
+    }
+
+    @Test
+    void testOf_DetectsOverlapsAndGaps() {
+        // Arrange
+        List<BillingTier> brokenTiers = Arrays.asList(
+                band("T001", "0.00", "1000.00", "1.25"),
+                band("T001", "900.00", "2000.00", "1.00"),
+                band("T001", "5000.00", "9000.00", "0.75"),
+                band("T002", "100.00", "9000.00", "0.75")
+        );
+
+        // Act
+        BillingTierIndex.Snapshot snapshot = BillingTierIndex.Snapshot.of(brokenTiers);
+
+        // Assert
+        assertEquals(3, snapshot.getIssues().size());
+        assertTrue(snapshot.getIssues().stream().anyMatch(issue -> issue.contains("overlapping")));
+        assertTrue(snapshot.getIssues().stream().anyMatch(issue -> issue.contains("gap")));
+        assertTrue(snapshot.getIssues().stream().anyMatch(issue -> issue.contains("below")));
+        assertTrue(snapshot.find("T001", new BigDecimal("3000.00")).isEmpty(), "Balance inside a gap is not covered");
+    }
+
+    @Test
+    void testIndex_LoadsOnceUntilInvalidated() {
+        // Arrange
+        when(billingTierRepository.findAll()).thenReturn(tiers);
+
+        // Act
+        Optional<BillingTier> first = billingTierIndex.findApplicableTier("T001", new BigDecimal("50000.00"));
+        billingTierIndex.findApplicableTier("T002", new BigDecimal("50000.00"));
+        billingTierIndex.invalidate();
+        billingTierIndex.findApplicableTier("T001", new BigDecimal("50000.00"));
+
+        // Assert
+        assertTrue(first.isPresent());
+        verify(billingTierRepository, times(2)).findAll();
+    }
+}
@@ -1,12 +1,15 @@
 package com.maimai.billingcalculationengine.service;
 
-import com.maimai.billingcalculationengine.common.properties.CurrencyProperties;
+import com.maimai.billingcalculationengine.common.exception.CalculationTimeoutException;
+import com.maimai.billingcalculationengine.common.properties.CalculationProperties;
+import com.maimai.billingcalculationengine.model.calculation.ClientCalculation;
 import com.maimai.billingcalculationengine.model.entity.Asset;
 import com.maimai.billingcalculationengine.model.entity.BillingTier;
 import com.maimai.billingcalculationengine.model.entity.Client;
+import com.maimai.billingcalculationengine.model.entity.FxRate;
 import com.maimai.billingcalculationengine.model.entity.Portfolio;
+import com.maimai.billingcalculationengine.model.projection.PortfolioAum;
 import com.maimai.billingcalculationengine.repository.AssetRepository;
-import com.maimai.billingcalculationengine.repository.BillingTierRepository;
 import com.maimai.billingcalculationengine.repository.ClientRepository;
 import com.maimai.billingcalculationengine.repository.PortfolioRepository;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,15 +17,31 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -35,10 +54,16 @@ public class CalculationServiceTest {
     private ClientRepository clientRepository;
 
     @Mock
-    private BillingTierRepository billingTierRepository;
+    private BillingTierIndex billingTierIndex;
 
     @Mock
-    private CurrencyProperties currencyProperties;
+    private FxRateIndex fxRateIndex;
+
+    @Mock
+    private PortfolioRepository portfolioRepository;
+
+    @Spy
+    private CalculationProperties calculationProperties = new CalculationProperties();
 
     @InjectMocks
     private CalculationService calculationService;
@@ -48,6 +73,7 @@ public class CalculationServiceTest {
     private Client client;
     private BillingTier billingTier;
     private List<Asset> assets;
+    private FxRateIndex.Matrix fxRates;
 
     @BeforeEach
     void setUp() {
@@ -94,12 +120,18 @@ public class CalculationServiceTest {
                         .build()
         );
 
+        // one stored USD rate plus the configured CAD to USD default for earlier dates
+        fxRates = FxRateIndex.Matrix.of(List.of(
+                FxRate.builder().fromCurrency("USD").toCurrency("CAD").rateDate(LocalDate.of(2024, 3, 1)).rate(new BigDecimal("1.40")).build()
+        ), Map.of("USD", new BigDecimal("0.71")));
     }
 
     @Test
     void testCalculatePortfolioAum_CADPortfolio() {
         // Arrange
-        when(assetRepository.findAllByPortfolioId("P001")).thenReturn(assets);
+        when(fxRateIndex.current()).thenReturn(fxRates);
+        when(assetRepository.sumLatestAumByPortfolioIdInAsOf(List.of("P001"), LocalDate.of(9999, 12, 31)))
+                .thenReturn(List.of(PortfolioAum.of("P001", "CAD", new BigDecimal("25000.00"), LocalDate.now())));
 
         // Act
         BigDecimal result = calculationService.calculatePortfolioAum(cadPortfolio);
@@ -109,12 +141,45 @@ public class CalculationServiceTest {
         assertEquals(0, expected.compareTo(result), "Portfolio AUM should be the sum of all asset values for CAD portfolio");
     }
 
+    @Test
+    void testCalculatePortfolioAum_AsOfDate() {
+        // Arrange
+        LocalDate asOfDate = LocalDate.of(2024, 3, 31);
+        when(fxRateIndex.current()).thenReturn(fxRates);
+        when(assetRepository.sumLatestAumByPortfolioIdInAsOf(List.of("P001"), asOfDate))
+                .thenReturn(List.of(PortfolioAum.of("P001", "CAD", new BigDecimal("10000.00"), asOfDate)));
+
+        // Act
+        BigDecimal result = calculationService.calculatePortfolioAum(cadPortfolio, asOfDate);
+
+        // Assert
+        assertEquals(0, new BigDecimal("10000.00").compareTo(result), "Portfolio AUM should only count the valuations as of the date");
+    }
+
+    @Test
+    void testCalculatePortfolioAum_ConvertsForeignAssetsToCad() {
+        // Arrange
+        when(fxRateIndex.current()).thenReturn(fxRates);
+        when(assetRepository.sumLatestAumByPortfolioIdInAsOf(List.of("P001"), LocalDate.of(9999, 12, 31))).thenReturn(List.of(
+                PortfolioAum.of("P001", "CAD", new BigDecimal("10000.00"), LocalDate.of(2024, 3, 31)),
+                // before the stored rate, so the inverse of the configured 0.71 applies
+                PortfolioAum.of("P001", "USD", new BigDecimal("710.00"), LocalDate.of(2024, 2, 29)),
+                PortfolioAum.of("P001", "USD", new BigDecimal("1000.00"), LocalDate.of(2024, 3, 31))));
+
+        // Act
+        BigDecimal result = calculationService.calculatePortfolioAum(cadPortfolio);
+
+        // Assert
+        // 10000 CAD + 710 USD / 0.71 + 1000 USD * 1.40
+        assertEquals(0, new BigDecimal("12400.00").compareTo(result), "USD assets should convert at the rate of their valuation date");
+    }
+
    @Test
     void testCalculatePortfolioFee() {
         // Arrange
         BigDecimal portfolioAum = new BigDecimal("50000.00");
         when(clientRepository.findByClientId("C001")).thenReturn(Optional.of(client));
-        when(billingTierRepository.findByTierIdAndBalance("T001", portfolioAum)).thenReturn(Optional.of(billingTier));
+        when(billingTierIndex.findApplicableTier("T001", portfolioAum)).thenReturn(Optional.of(billingTier));
 
         // Act
         BigDecimal result = calculationService.calculatePortfolioFee(portfolioAum, cadPortfolio);
@@ -124,6 +189,145 @@ public class CalculationServiceTest {
         assertEquals(0, expected.compareTo(result), "Portfolio fee should be calculated based on AUM and fee percentage");
     }
 
+    @Test
+    void testCalculateClientTotalFee_SumsAumInOneQuery() {
+        // Arrange
+        when(portfolioRepository.findAllByClientId("C001")).thenReturn(List.of(cadPortfolio, usdPortfolio));
+        // P002 has no assets, so the database returns no row for it
+        when(fxRateIndex.current()).thenReturn(fxRates);
+        when(assetRepository.sumLatestAumByPortfolioIdInAsOf(List.of("P001", "P002"), LocalDate.of(9999, 12, 31)))
+                .thenReturn(List.of(PortfolioAum.of("P001", "CAD", new BigDecimal("50000.00"), LocalDate.of(2024, 3, 31))));
+        when(clientRepository.findByClientId("C001")).thenReturn(Optional.of(client));
+        when(billingTierIndex.findApplicableTier(eq("T001"), any())).thenReturn(Optional.of(billingTier));
+
+        // Act
+        BigDecimal result = calculationService.calculateClientTotalFee("C001");
+
+        // Assert
+        assertEquals(0, new BigDecimal("625.00").compareTo(result), "Only P001 carries AUM and a fee");
+        verify(assetRepository, never()).findAllByPortfolioId(anyString());
+    }
+
+    @Test
+    void testCalculateClientTotals_SumsAumAndFeeInOnePass() {
+        // Arrange
+        when(portfolioRepository.findAllByClientId("C001")).thenReturn(List.of(cadPortfolio, usdPortfolio));
+        when(fxRateIndex.current()).thenReturn(fxRates);
+        when(assetRepository.sumLatestAumByPortfolioIdInAsOf(List.of("P001", "P002"), LocalDate.of(9999, 12, 31)))
+                .thenReturn(List.of(
+                        PortfolioAum.of("P001", "CAD", new BigDecimal("50000.00"), LocalDate.of(2024, 3, 31)),
+                        PortfolioAum.of("P002", "USD", new BigDecimal("10000.00"), LocalDate.of(2024, 3, 31))));
+        when(clientRepository.findByClientId("C001")).thenReturn(Optional.of(client));
+        when(billingTierIndex.findApplicableTier(eq("T001"), any())).thenReturn(Optional.of(billingTier));
+
+        // Act
+        ClientCalculation result = calculationService.calculateClientTotals("C001");
+
+        // Assert
+        assertEquals(0, new BigDecimal("64000.00").compareTo(result.getTotalAum()), "50000 CAD + 10000 USD at 1.40");
+        assertEquals(0, new BigDecimal("800.00").compareTo(result.getTotalFee()), "625 + 175");
+        assertEquals(0, new BigDecimal("1.25").compareTo(result.getEffectiveFeeRate()));
+        verify(assetRepository, times(1)).sumLatestAumByPortfolioIdInAsOf(any(), any());
+    }
+
+    @Test
+    void testCalculateClientTotalAum_RoundsEachPortfolioAsCalculateClientTotals() {
+        // Arrange
+        Portfolio secondUsdPortfolio = Portfolio.builder().portfolioId("P003").clientId("C001").portfolioCurrency("USD").build();
+        when(portfolioRepository.findAllByClientId("C001")).thenReturn(List.of(cadPortfolio, usdPortfolio, secondUsdPortfolio));
+        when(fxRateIndex.current()).thenReturn(fxRates);
+        // 100.01 USD at 1.40 is 140.014 CAD, rounded to 140.01 per portfolio but 280.03 over both
+        when(assetRepository.sumLatestAumByPortfolioIdInAsOf(List.of("P001", "P002", "P003"), LocalDate.of(9999, 12, 31)))
+                .thenReturn(List.of(
+                        PortfolioAum.of("P001", "CAD", new BigDecimal("1000.00"), LocalDate.of(2024, 3, 31)),
+                        PortfolioAum.of("P002", "USD", new BigDecimal("100.01"), LocalDate.of(2024, 3, 31)),
+                        PortfolioAum.of("P003", "USD", new BigDecimal("100.01"), LocalDate.of(2024, 3, 31))));
+        when(clientRepository.findByClientId("C001")).thenReturn(Optional.of(client));
+        when(billingTierIndex.findApplicableTier(eq("T001"), any())).thenReturn(Optional.of(billingTier));
+
+        // Act
+        BigDecimal totalAum = calculationService.calculateClientTotalAum("C001");
+        ClientCalculation totals = calculationService.calculateClientTotals("C001");
+
+        // Assert
+        assertEquals(0, new BigDecimal("1280.02").compareTo(totalAum), "1000 CAD + 140.01 + 140.01");
+        assertEquals(totals.getTotalAum(), totalAum, "Both should convert and round each portfolio on its own");
+    }
+
+    @Test
+    void testCalculateClientTotalFee_ParallelModeMatchesSequential() {
+        // Arrange
+        List<Portfolio> portfolios = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            portfolios.add(Portfolio.builder().portfolioId("P00" + i).clientId("C001").portfolioCurrency("CAD").build());
+        }
+        when(portfolioRepository.findAllByClientId("C001")).thenReturn(portfolios);
+        when(fxRateIndex.current()).thenReturn(fxRates);
+        // odd cents in USD, so every portfolio fee is rounded
+        when(assetRepository.sumLatestAumByPortfolioIdInAsOf(any(), eq(LocalDate.of(9999, 12, 31)))).thenAnswer(invocation -> {
+            Collection<String> portfolioIds = invocation.getArgument(0);
+            return portfolioIds.stream()
+                    .map(id -> PortfolioAum.of(id, "USD", new BigDecimal("12345.67").add(new BigDecimal(id.substring(1))),
+                            LocalDate.of(2024, 3, 31)))
+                    .toList();
+        });
+        when(clientRepository.findByClientId("C001")).thenReturn(Optional.of(client));
+        when(billingTierIndex.findApplicableTier(eq("T001"), any())).thenReturn(Optional.of(billingTier));
+        ThreadPoolTaskExecutor executor = executor();
+        ReflectionTestUtils.setField(calculationService, "calculationExecutor", executor);
+
+        // Act
+        BigDecimal sequential = calculationService.calculateClientTotalFee("C001");
+        calculationProperties.setParallelEnabled(true);
+        calculationProperties.setPortfoliosPerTask(2);
+        calculationProperties.setPerRequestConcurrency(2);
+        BigDecimal parallel = calculationService.calculateClientTotalFee("C001");
+        executor.shutdown();
+
+        // Assert
+        assertEquals(sequential, parallel, "Chunked AUM sums should give the same fee to the cent");
+        verify(assetRepository).sumLatestAumByPortfolioIdInAsOf(List.of("P001", "P002", "P003", "P004", "P005"), LocalDate.of(9999, 12, 31));
+        verify(assetRepository).sumLatestAumByPortfolioIdInAsOf(List.of("P005"), LocalDate.of(9999, 12, 31));
+        verify(assetRepository, times(4)).sumLatestAumByPortfolioIdInAsOf(any(), any());
+        verify(clientRepository, times(2)).findByClientId("C001");
+    }
+
+    @Test
+    void testCalculateClientTotalFee_TimesOutAndCancelsSlowChunk() throws InterruptedException {
+        // Arrange
+        calculationProperties.setParallelEnabled(true);
+        calculationProperties.setPortfoliosPerTask(1);
+        calculationProperties.setTimeoutMillis(100);
+        when(portfolioRepository.findAllByClientId("C001")).thenReturn(List.of(cadPortfolio, usdPortfolio));
+        when(fxRateIndex.current()).thenReturn(fxRates);
+        when(clientRepository.findByClientId("C001")).thenReturn(Optional.of(client));
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(assetRepository.sumLatestAumByPortfolioIdInAsOf(any(), any())).thenAnswer(invocation -> {
+            if (invocation.getArgument(0, Collection.class).contains("P002")) {
+                try {
+                    TimeUnit.MINUTES.sleep(1);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+            return List.of();
+        });
+        ThreadPoolTaskExecutor executor = executor();
+        ReflectionTestUtils.setField(calculationService, "calculationExecutor", executor);
+
+        // Act & Assert
+        assertThrows(CalculationTimeoutException.class, () -> calculationService.calculateClientTotalFee("C001"));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "The slow chunk should be cancelled once the request gave up");
+        executor.shutdown();
+    }
+
+    private static ThreadPoolTaskExecutor executor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.initialize();
+        return executor;
+    }
+
     @Test
     void testConvertFromCadToTargetCurrency_CAD() {
         // Arrange
@@ -140,6 +344,7 @@ public class CalculationServiceTest {
     void testConvertFromCadToTargetCurrency_USD() {
         // Arrange
         BigDecimal amount = new BigDecimal("1000.00");
+        when(fxRateIndex.current()).thenReturn(FxRateIndex.Matrix.of(List.of(), Map.of("USD", new BigDecimal("0.71"))));
 
         // Act
         BigDecimal result = calculationService.convertFromCadToTargetCurrency(amount, "USD");
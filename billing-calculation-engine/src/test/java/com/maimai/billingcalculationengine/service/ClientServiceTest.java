@@ -1,23 +1,37 @@
 package com.maimai.billingcalculationengine.service;
 
+import com.maimai.billingcalculationengine.common.enums.ClientSortField;
+import com.maimai.billingcalculationengine.common.exception.InvalidDataException;
 import com.maimai.billingcalculationengine.common.exception.ResourceNotFoundException;
+import com.maimai.billingcalculationengine.common.properties.ResponseCacheProperties;
+import com.maimai.billingcalculationengine.model.calculation.BatchCalculationResult;
+import com.maimai.billingcalculationengine.model.calculation.ClientCalculation;
 import com.maimai.billingcalculationengine.model.entity.Client;
+import com.maimai.billingcalculationengine.model.response.ClientPageResponse;
 import com.maimai.billingcalculationengine.model.response.ClientResponse;
+import com.maimai.billingcalculationengine.repository.ClientPageRepository;
 import com.maimai.billingcalculationengine.repository.ClientRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -27,7 +41,16 @@ public class ClientServiceTest {
     private ClientRepository clientRepository;
 
     @Mock
-    private CalculationService calculationService;
+    private PortfolioSnapshotService portfolioSnapshotService;
+
+    @Mock
+    private BatchCalculationService batchCalculationService;
+
+    @Mock
+    private ClientPageRepository clientPageRepository;
+
+    @Spy
+    private ResponseCache responseCache = new ResponseCache();
 
     @InjectMocks
     private ClientService clientService;
@@ -35,9 +58,13 @@ public class ClientServiceTest {
     private Client client1;
     private Client client2;
     private List<Client> clientList;
+    private BatchCalculationResult calculationResult;
 
     @BeforeEach
     void setUp() {
+        ReflectionTestUtils.setField(responseCache, "responseCacheProperties", new ResponseCacheProperties());
+        responseCache.initialize();
+
         // Setup test data
         client1 = Client.builder()
                 .clientId("C001")
@@ -56,17 +83,36 @@ public class ClientServiceTest {
                 .build();
 
         clientList = Arrays.asList(client1, client2);
+
+        Map<String, ClientCalculation> clientCalculations = new LinkedHashMap<>();
+        clientCalculations.put("C001", ClientCalculation.builder()
+                .clientId("C001")
+                .totalAum(new BigDecimal("100000.00"))
+                .totalFee(new BigDecimal("1250.00"))
+                .effectiveFeeRate(new BigDecimal("1.25"))
+                .build());
+        clientCalculations.put("C002", ClientCalculation.builder()
+                .clientId("C002")
+                .totalAum(new BigDecimal("200000.00"))
+                .totalFee(new BigDecimal("2000.00"))
+                .effectiveFeeRate(new BigDecimal("1.00"))
+                .build());
+
+        calculationResult = BatchCalculationResult.builder()
+                .clients(clientCalculations)
+                .portfolios(new LinkedHashMap<>())
+                .totalAum(new BigDecimal("300000.00"))
+                .totalFee(new BigDecimal("3250.00"))
+                .build();
     }
 
     @Test
     void testGetAllClients() {
         // Arrange
-        when(clientRepository.findAll()).thenReturn(clientList);
+        when(clientRepository.findAllByOrderByClientIdAsc()).thenReturn(clientList);
 
-        // Setup calculation service mocks
-        when(calculationService.calculateClientTotalAum(anyString())).thenReturn(new BigDecimal("100000.00"));
-        when(calculationService.calculateClientTotalFee(anyString())).thenReturn(new BigDecimal("1250.00"));
-        when(calculationService.calculateEffectiveFeeRate(any(), any())).thenReturn(new BigDecimal("1.25"));
+        // Setup snapshot read mock
+        when(portfolioSnapshotService.findAll()).thenReturn(calculationResult);
 
         // Act
         List<ClientResponse> result = clientService.getAllClients();
@@ -78,19 +124,33 @@ public class ClientServiceTest {
         assertEquals(new BigDecimal("100000.00"), result.get(0).getTotalAum(), "Total AUM should be calculated");
         assertEquals(new BigDecimal("1250.00"), result.get(0).getTotalFee(), "Total fee should be calculated");
         assertEquals(new BigDecimal("1.25"), result.get(0).getEffectiveFeeRate(), "Effective fee rate should be calculated");
+        assertEquals(new BigDecimal("200000.00"), result.get(1).getTotalAum(), "Second client AUM should come from the snapshots");
 
-        verify(calculationService, times(2)).calculateClientTotalAum(anyString());
-        verify(calculationService, times(2)).calculateClientTotalFee(anyString());
-        verify(calculationService, times(2)).calculateEffectiveFeeRate(any(), any());
+        // the whole book is read from the snapshot table in one query
+        verify(portfolioSnapshotService, times(1)).findAll();
+    }
+
+    @Test
+    void testGetAllClients_AsOfDate() {
+        // Arrange
+        LocalDate asOfDate = LocalDate.of(2024, 3, 31);
+        when(clientRepository.findAllByOrderByClientIdAsc()).thenReturn(clientList);
+        when(batchCalculationService.calculateAllClients(asOfDate)).thenReturn(calculationResult);
+
+        // Act
+        List<ClientResponse> result = clientService.getAllClients(asOfDate);
+
+        // Assert
+        assertEquals(new BigDecimal("100000.00"), result.get(0).getTotalAum(), "Total AUM should come from the as-of calculation");
+        // snapshots only hold the latest valuations, so an as-of read calculates instead
+        verify(portfolioSnapshotService, never()).findAll();
     }
 
     @Test
     void testGetClientById_ExistingClient() {
         // Arrange
         when(clientRepository.findByClientId("C001")).thenReturn(Optional.of(client1));
-        when(calculationService.calculateClientTotalAum("C001")).thenReturn(new BigDecimal("100000.00"));
-        when(calculationService.calculateClientTotalFee("C001")).thenReturn(new BigDecimal("1250.00"));
-        when(calculationService.calculateEffectiveFeeRate(any(), any())).thenReturn(new BigDecimal("1.25"));
+        when(portfolioSnapshotService.findByClientIds(List.of("C001"))).thenReturn(calculationResult);
 
         // Act
         ClientResponse result = clientService.getClientById("C001");
@@ -104,6 +164,30 @@ public class ClientServiceTest {
         assertEquals(new BigDecimal("1.25"), result.getEffectiveFeeRate(), "Effective fee rate should be calculated");
     }
 
+    @Test
+    void testGetClientById_CachesCurrentMetricsUntilInvalidated() {
+        // Arrange
+        LocalDate asOfDate = LocalDate.of(2024, 3, 31);
+        when(clientRepository.findByClientId("C001")).thenReturn(Optional.of(client1));
+        when(portfolioSnapshotService.findByClientIds(List.of("C001"))).thenReturn(calculationResult);
+        when(batchCalculationService.calculateClients(List.of("C001"), asOfDate)).thenReturn(calculationResult);
+
+        // Act
+        ClientResponse first = clientService.getClientById("C001");
+        ClientResponse cached = clientService.getClientById("C001");
+        clientService.getClientById("C001", asOfDate);
+        clientService.getClientById("C001", asOfDate);
+        responseCache.invalidateAfterCommit(List.of("C001"));
+        ClientResponse reloaded = clientService.getClientById("C001");
+
+        // Assert
+        assertSame(first, cached, "Current metrics should be served from the cache");
+        assertNotSame(first, reloaded, "An invalidated client should be reloaded");
+        verify(portfolioSnapshotService, times(2)).findByClientIds(List.of("C001"));
+        verify(batchCalculationService, times(2)).calculateClients(List.of("C001"), asOfDate);
+        assertEquals(1, responseCache.getMetrics().get(0).getHits());
+    }
+
     @Test
     void testGetClientById_NonExistingClient() {
         // Arrange
@@ -115,6 +199,75 @@ public class ClientServiceTest {
         }, "Should throw ResourceNotFoundException for non-existing client");
     }
 
+    @Test
+    void testGetClientPage_ContinuesAfterCursor() {
+        // Arrange
+        when(clientPageRepository.findPage(ClientSortField.CLIENT_NAME, Sort.Direction.DESC, null, null, 2))
+                .thenReturn(List.of(client2, client1));
+        when(clientPageRepository.findPage(ClientSortField.CLIENT_NAME, Sort.Direction.DESC, "Test Client 2", "C002", 2))
+                .thenReturn(List.of(client1));
+        when(portfolioSnapshotService.findByClientIds(anyList())).thenReturn(calculationResult);
+
+        // Act
+        ClientPageResponse first = clientService.getClientPage(null, 1, ClientSortField.CLIENT_NAME, Sort.Direction.DESC, null);
+        ClientPageResponse last = clientService.getClientPage(first.getNextCursor(), 1, ClientSortField.CLIENT_NAME,
+                Sort.Direction.DESC, null);
+
+        // Assert
+        assertEquals(List.of("C002"), first.getClients().stream().map(ClientResponse::getClientId).toList());
+        assertEquals(new BigDecimal("200000.00"), first.getClients().get(0).getTotalAum());
+        assertNotNull(first.getNextCursor(), "A full page should have a next cursor");
+        assertEquals(List.of("C001"), last.getClients().stream().map(ClientResponse::getClientId).toList());
+        assertNull(last.getNextCursor(), "The last page should not have a next cursor");
+        assertEquals("clientName", last.getSort());
+        assertEquals("desc", last.getDirection());
+        // metrics are read for the page only
+        verify(portfolioSnapshotService).findByClientIds(List.of("C002"));
+        verify(portfolioSnapshotService).findByClientIds(List.of("C001"));
+    }
+
+    @Test
+    void testGetClientPage_RejectsCursorOfAnotherSortAndOversizedPages() {
+        // Arrange
+        when(clientPageRepository.findPage(ClientSortField.CLIENT_NAME, Sort.Direction.ASC, null, null, 2))
+                .thenReturn(List.of(client1, client2));
+        when(portfolioSnapshotService.findByClientIds(anyList())).thenReturn(calculationResult);
+        String nameCursor = clientService.getClientPage(null, 1, ClientSortField.CLIENT_NAME, Sort.Direction.ASC, null).getNextCursor();
+
+        // Act & Assert
+        assertThrows(InvalidDataException.class, () ->
+                clientService.getClientPage(nameCursor, 1, ClientSortField.CLIENT_ID, Sort.Direction.ASC, null));
+        assertThrows(InvalidDataException.class, () ->
+                clientService.getClientPage("not a cursor!", 1, ClientSortField.CLIENT_ID, Sort.Direction.ASC, null));
+        assertThrows(InvalidDataException.class, () ->
+                clientService.getClientPage(null, ClientService.MAX_PAGE_SIZE + 1, ClientSortField.CLIENT_ID, Sort.Direction.ASC, null));
+    }
+
+    @Test
+    void testStreamClients_ReadsPageByPageUntilAShortPage() throws Exception {
+        // Arrange
+        List<Client> fullPage = new ArrayList<>();
+        for (int i = 0; i < ClientService.STREAM_PAGE_SIZE; i++) {
+            fullPage.add(Client.builder().clientId(String.format("C%04d", i)).clientName("Client " + i).build());
+        }
+        LocalDate asOfDate = LocalDate.of(2024, 3, 31);
+        when(clientPageRepository.findPage(ClientSortField.CLIENT_ID, Sort.Direction.ASC, null, null, ClientService.STREAM_PAGE_SIZE))
+                .thenReturn(fullPage);
+        String lastId = fullPage.get(fullPage.size() - 1).getClientId();
+        when(clientPageRepository.findPage(ClientSortField.CLIENT_ID, Sort.Direction.ASC, lastId, lastId, ClientService.STREAM_PAGE_SIZE))
+                .thenReturn(List.of(client1));
+        when(batchCalculationService.calculateClients(anyList(), eq(asOfDate))).thenReturn(calculationResult);
+        List<Integer> pageSizes = new ArrayList<>();
+
+        // Act
+        clientService.streamClients(ClientSortField.CLIENT_ID, Sort.Direction.ASC, asOfDate, page -> pageSizes.add(page.size()));
+
+        // Assert
+        assertEquals(List.of(ClientService.STREAM_PAGE_SIZE, 1), pageSizes);
+        verify(clientPageRepository, times(2)).findPage(any(), any(), any(), any(), anyInt());
+        verify(batchCalculationService, times(2)).calculateClients(anyList(), eq(asOfDate));
+    }
+
     @Test
     void testGetTotalNumberOfClients() {
         // Arrange
@@ -130,9 +283,7 @@ public class ClientServiceTest {
     @Test
     void testGetTotalAumOfClient() {
         // Arrange
-        when(clientRepository.findAll()).thenReturn(clientList);
-        when(calculationService.calculateClientTotalAum("C001")).thenReturn(new BigDecimal("100000.00"));
-        when(calculationService.calculateClientTotalAum("C002")).thenReturn(new BigDecimal("200000.00"));
+        when(portfolioSnapshotService.getTotalAum()).thenReturn(new BigDecimal("300000.00"));
 
         // Act
         BigDecimal result = clientService.getTotalAumOfClient();
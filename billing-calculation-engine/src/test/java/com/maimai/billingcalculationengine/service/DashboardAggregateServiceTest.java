@@ -0,0 +1,99 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.model.entity.DashboardAggregate;
+import com.maimai.billingcalculationengine.repository.ClientRepository;
+import com.maimai.billingcalculationengine.repository.DashboardAggregateRepository;
+import com.maimai.billingcalculationengine.repository.FileUploadRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class DashboardAggregateServiceTest {
+
+    @Mock
+    private DashboardAggregateRepository dashboardAggregateRepository;
+
+    @Mock
+    private PortfolioSnapshotService portfolioSnapshotService;
+
+    @Mock
+    private ClientRepository clientRepository;
+
+    @Mock
+    private FileUploadRepository fileUploadRepository;
+
+    @InjectMocks
+    private DashboardAggregateService dashboardAggregateService;
+
+    @Test
+    void testApplyUpload_AddsDeltasInPlace() {
+        // Arrange
+        LocalDate uploadDate = LocalDate.of(2024, 4, 1);
+        when(dashboardAggregateRepository.addDelta(eq(DashboardAggregate.SINGLETON_ID), any(), any(), anyLong(),
+                any(), any())).thenReturn(1);
+
+        // Act
+        dashboardAggregateService.applyUpload(new BigDecimal("2500.00"), new BigDecimal("31.25"), 1, uploadDate);
+
+        // Assert
+        verify(dashboardAggregateRepository).addDelta(eq(DashboardAggregate.SINGLETON_ID), eq(new BigDecimal("2500.00")),
+                eq(new BigDecimal("31.25")), eq(1L), eq(uploadDate), any(LocalDateTime.class));
+        verify(dashboardAggregateRepository, never()).save(any());
+        verifyNoInteractions(portfolioSnapshotService, clientRepository);
+    }
+
+    @Test
+    void testApplyUpload_MissingRowIsComputedFromSnapshots() {
+        // Arrange
+        LocalDate uploadDate = LocalDate.of(2024, 4, 1);
+        when(dashboardAggregateRepository.addDelta(anyInt(), any(), any(), anyLong(), any(), any())).thenReturn(0);
+        when(portfolioSnapshotService.getTotalAum()).thenReturn(new BigDecimal("100000.00"));
+        when(portfolioSnapshotService.getTotalFee()).thenReturn(new BigDecimal("1250.00"));
+        when(clientRepository.count()).thenReturn(3L);
+        when(fileUploadRepository.findLatestUploadDateWhereStatusCompleted()).thenReturn(Optional.empty());
+        ArgumentCaptor<DashboardAggregate> saved = ArgumentCaptor.forClass(DashboardAggregate.class);
+
+        // Act
+        dashboardAggregateService.applyUpload(new BigDecimal("2500.00"), new BigDecimal("31.25"), 1, uploadDate);
+
+        // Assert
+        verify(dashboardAggregateRepository).save(saved.capture());
+        assertEquals(new BigDecimal("100000.00"), saved.getValue().getTotalAum(), "Snapshots already hold the upload");
+        assertEquals(3L, saved.getValue().getClientCount());
+        assertEquals(uploadDate, saved.getValue().getLastUploadDate());
+    }
+
+    @Test
+    void testRebuild_RecomputesFromSourceTables() {
+        // Arrange
+        when(portfolioSnapshotService.getTotalAum()).thenReturn(new BigDecimal("100000.00"));
+        when(portfolioSnapshotService.getTotalFee()).thenReturn(new BigDecimal("1250.00"));
+        when(clientRepository.count()).thenReturn(2L);
+        when(fileUploadRepository.findLatestUploadDateWhereStatusCompleted())
+                .thenReturn(Optional.of(LocalDateTime.of(2024, 3, 31, 10, 0)));
+        when(dashboardAggregateRepository.save(any(DashboardAggregate.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        DashboardAggregate aggregate = dashboardAggregateService.rebuild();
+
+        // Assert
+        verify(portfolioSnapshotService).rebuildAll();
+        assertEquals(DashboardAggregate.SINGLETON_ID, aggregate.getId());
+        assertEquals(new BigDecimal("1250.00"), aggregate.getTotalFee());
+        assertEquals(2L, aggregate.getClientCount());
+        assertEquals(LocalDate.of(2024, 3, 31), aggregate.getLastUploadDate());
+    }
+}
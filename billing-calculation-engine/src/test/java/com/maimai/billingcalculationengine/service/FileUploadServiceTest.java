@@ -0,0 +1,451 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.common.exception.InvalidDataException;
+import com.maimai.billingcalculationengine.common.properties.UploadProperties;
+import com.maimai.billingcalculationengine.model.calculation.SnapshotRefresh;
+import com.maimai.billingcalculationengine.model.entity.Asset;
+import com.maimai.billingcalculationengine.model.entity.Client;
+import com.maimai.billingcalculationengine.model.entity.FileUploadRecord;
+import com.maimai.billingcalculationengine.model.entity.FxRate;
+import com.maimai.billingcalculationengine.model.entity.Portfolio;
+import com.maimai.billingcalculationengine.model.entity.UploadProfile;
+import com.maimai.billingcalculationengine.model.response.UploadProgressResponse;
+import com.maimai.billingcalculationengine.repository.AssetRepository;
+import com.maimai.billingcalculationengine.repository.BulkUpsertRepository;
+import com.maimai.billingcalculationengine.repository.ClientRepository;
+import com.maimai.billingcalculationengine.repository.FileUploadRepository;
+import com.maimai.billingcalculationengine.repository.PortfolioRepository;
+import com.maimai.billingcalculationengine.repository.UploadProfileRepository;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class FileUploadServiceTest {
+
+    @Mock
+    private ClientRepository clientRepository;
+
+    @Mock
+    private PortfolioRepository portfolioRepository;
+
+    @Mock
+    private BulkUpsertRepository bulkUpsertRepository;
+
+    @Mock
+    private BillingTierIndex billingTierIndex;
+
+    @Mock
+    private FxRateIndex fxRateIndex;
+
+    @Mock
+    private AssetRepository assetRepository;
+
+    @Mock
+    private FileUploadRepository fileUploadRepository;
+
+    @Mock
+    private PortfolioSnapshotService portfolioSnapshotService;
+
+    @Mock
+    private DashboardAggregateService dashboardAggregateService;
+
+    @Mock
+    private AssetPartitionService assetPartitionService;
+
+    @Mock
+    private HoldingsStore holdingsStore;
+
+    @Mock
+    private ResponseCache responseCache;
+
+    @Mock
+    private UploadProfileRepository uploadProfileRepository;
+
+    @Mock
+    private TaskExecutor uploadExecutor;
+
+    @Spy
+    private UploadProperties uploadProperties = new UploadProperties();
+
+    @Spy
+    private UploadProgressRegistry uploadProgressRegistry = new UploadProgressRegistry();
+
+    @InjectMocks
+    private FileUploadService fileUploadService;
+
+    private static void addRow(Sheet sheet, Object... values) {
+        Row row = sheet.createRow(sheet.getPhysicalNumberOfRows());
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof Number number) {
+                row.createCell(i).setCellValue(number.doubleValue());
+            } else {
+                row.createCell(i).setCellValue((String) values[i]);
+            }
+        }
+    }
+
+    @TempDir
+    Path tempDir;
+
+    private final ForkJoinPool uploadParsePool = new ForkJoinPool(4);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(fileUploadService, "uploadParsePool", uploadParsePool);
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploadParsePool.shutdown();
+    }
+
+    private Path uploadFile(String assetPortfolioId) throws IOException {
+        Path file = tempDir.resolve("upload.xlsx");
+        Files.write(file, upload(assetPortfolioId).getBytes());
+        return file;
+    }
+
+    private static MockMultipartFile upload(String assetPortfolioId) throws IOException {
+        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            Sheet tiers = workbook.createSheet("billing_tier");
+            addRow(tiers, "Tier ID", "Portfolio AUM Min ($)", "Portfolio AUM Max ($)", "Fee Percentage (%)");
+            addRow(tiers, "T001", 0, 1000000, 1.25);
+
+            Sheet clients = workbook.createSheet("client_billing");
+            addRow(clients, "Client ID", "Client Name", "Province", "Country", "Billing Tier ID");
+            addRow(clients, "C001", "First Name", "ON", "Canada", "T001");
+            addRow(clients, "C001", "Renamed Client", "ON", "Canada", "T001");
+
+            Sheet portfolios = workbook.createSheet("portfolio");
+            addRow(portfolios, "Client ID", "Portfolio ID", "Portfolio Currency");
+            addRow(portfolios, "C001", "P001", "CAD");
+            addRow(portfolios, "C002", "P002", "USD");
+
+            Sheet assets = workbook.createSheet("assets");
+            addRow(assets, "Asset ID", "Portfolio ID", "Asset Value", "Currency", "Date");
+            addRow(assets, "A001", assetPortfolioId, 2500, "CAD", "2024-03-31");
+
+            workbook.write(out);
+            return new MockMultipartFile("file", "upload.xlsx",
+                    "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", out.toByteArray());
+        }
+    }
+
+    @Test
+    void testUploadTransactional_BuffersRowsAndUpsertsPerSheet() throws Exception {
+        // Arrange
+        when(clientRepository.streamAllClientIds()).thenReturn(Stream.of("C002"));
+        when(portfolioRepository.streamAllPortfolioIds()).thenReturn(Stream.of("P100"));
+        when(portfolioSnapshotService.refresh(anyCollection(), anyCollection(), anyCollection()))
+                .thenReturn(new SnapshotRefresh(2, new BigDecimal("2500.00"), new BigDecimal("31.25")));
+        ArgumentCaptor<Collection<Client>> clients = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<Collection<Portfolio>> portfolios = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<Collection<Asset>> assets = ArgumentCaptor.forClass(Collection.class);
+
+        // Act
+        String summary = fileUploadService.uploadTransactional(uploadFile("P001"),
+                FileUploadRecord.builder().fileName("upload.xlsx").build(), UploadProgressRegistry.UploadProgress.untracked());
+
+        // Assert
+        verify(bulkUpsertRepository).upsertBillingTiers(anyCollection(), eq(500));
+        verify(bulkUpsertRepository).upsertClients(clients.capture(), eq(500));
+        verify(bulkUpsertRepository).upsertPortfolios(portfolios.capture(), eq(500));
+        verify(bulkUpsertRepository).upsertAssets(assets.capture(), eq(500));
+        // the month's partition is ensured before its rows are written
+        InOrder partitionThenAssets = inOrder(assetPartitionService, bulkUpsertRepository);
+        partitionThenAssets.verify(assetPartitionService).ensureMonthlyPartitions(Set.of(YearMonth.of(2024, 3)));
+        partitionThenAssets.verify(bulkUpsertRepository).upsertAssets(anyCollection(), eq(500));
+        verify(holdingsStore).applyAfterCommit(anyCollection());
+        verify(billingTierIndex).invalidateAfterCommit();
+        verify(portfolioSnapshotService).refresh(Set.of("T001"), Set.of("C001"), Set.of("P001", "P002"));
+        // C001 is the only client that did not exist before, its repeated row counts once
+        verify(dashboardAggregateService).applyUpload(eq(new BigDecimal("2500.00")), eq(new BigDecimal("31.25")),
+                eq(1L), any(LocalDate.class));
+
+        List<Client> savedClients = new ArrayList<>(clients.getValue());
+        assertEquals(1, savedClients.size(), "Repeated client IDs should collapse to one row");
+        assertEquals("Renamed Client", savedClients.get(0).getClientName(), "The last row for a key should win");
+        assertEquals(2, portfolios.getValue().size());
+        assertEquals(1, assets.getValue().size());
+
+        // existing parent ids are loaded once, not looked up per row
+        verify(clientRepository, times(1)).streamAllClientIds();
+        verify(clientRepository, never()).findByClientId(anyString());
+        verify(portfolioRepository, never()).findById(anyString());
+        assertTrue(summary.contains("rows/sec"), "Summary should report throughput");
+        assertFalse(summary.contains("fx_rate"), "The optional FX rate sheet should not be reported as missing");
+        verifyNoInteractions(fxRateIndex);
+    }
+
+    @Test
+    void testUploadTransactional_FxRatesRefreshPortfoliosHoldingTheCurrencies() throws Exception {
+        // Arrange
+        Path file = tempDir.resolve("rates.xlsx");
+        try (Workbook workbook = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(file)) {
+            Sheet rates = workbook.createSheet("fx_rate");
+            addRow(rates, "From Currency", "To Currency", "Date", "Rate");
+            addRow(rates, "USD", "CAD", "2024-03-01", 1.4);
+            addRow(rates, "cad", "eur", "2024-03-01", 0.68);
+            workbook.write(out);
+        }
+        when(assetRepository.findPortfolioIdsByCurrencyIn(Set.of("USD", "EUR"))).thenReturn(List.of("P100"));
+        when(portfolioSnapshotService.refresh(anyCollection(), anyCollection(), anyCollection()))
+                .thenReturn(SnapshotRefresh.empty());
+        ArgumentCaptor<Collection<FxRate>> fxRates = ArgumentCaptor.forClass(Collection.class);
+
+        // Act
+        fileUploadService.uploadTransactional(file, FileUploadRecord.builder().fileName("rates.xlsx").build(),
+                UploadProgressRegistry.UploadProgress.untracked());
+
+        // Assert
+        verify(bulkUpsertRepository).upsertFxRates(fxRates.capture(), eq(500));
+        List<FxRate> savedRates = new ArrayList<>(fxRates.getValue());
+        assertEquals(2, savedRates.size());
+        assertEquals("CAD", savedRates.get(1).getFromCurrency(), "Currency codes should be stored upper case");
+        assertEquals("EUR", savedRates.get(1).getToCurrency());
+        assertEquals(new BigDecimal("1.4000000000"), savedRates.get(0).getRate(), "Rates should be kept at the matrix scale");
+        verify(fxRateIndex).invalidateAfterCommit();
+        verify(responseCache).invalidateAllAfterCommit();
+        verify(portfolioSnapshotService).refresh(Set.of(), Set.of(), Set.of("P100"));
+    }
+
+    @Test
+    void testUploadTransactional_StoresCanonicalPortfolioIds() throws Exception {
+        // Arrange
+        when(clientRepository.streamAllClientIds()).thenReturn(Stream.of("C002"));
+        when(portfolioRepository.streamAllPortfolioIds()).thenReturn(Stream.of("P100"));
+        when(portfolioSnapshotService.refresh(anyCollection(), anyCollection(), anyCollection()))
+                .thenReturn(SnapshotRefresh.empty());
+        ArgumentCaptor<Collection<Asset>> assets = ArgumentCaptor.forClass(Collection.class);
+
+        // Act
+        fileUploadService.uploadTransactional(uploadFile("p001"),
+                FileUploadRecord.builder().fileName("upload.xlsx").build(), UploadProgressRegistry.UploadProgress.untracked());
+
+        // Assert
+        verify(bulkUpsertRepository).upsertAssets(assets.capture(), eq(500));
+        assertEquals("P001", assets.getValue().iterator().next().getPortfolioId(),
+                "A lower case asset portfolio ID should match portfolio P001 and be stored upper case");
+    }
+
+    @Test
+    void testUploadTransactional_ValidationErrorSkipsWrites() throws Exception {
+        // Arrange
+        when(clientRepository.streamAllClientIds()).thenReturn(Stream.of("C002"));
+        when(portfolioRepository.streamAllPortfolioIds()).thenReturn(Stream.of("P100"));
+
+        // Act & Assert
+        assertThrows(InvalidDataException.class,
+                () -> fileUploadService.uploadTransactional(uploadFile("P999"),
+                        FileUploadRecord.builder().fileName("upload.xlsx").build(), UploadProgressRegistry.UploadProgress.untracked()),
+                "Unknown portfolio should fail the upload");
+        verify(bulkUpsertRepository, never()).upsertAssets(anyCollection(), anyInt());
+        verifyNoInteractions(portfolioSnapshotService, dashboardAggregateService, assetPartitionService, holdingsStore);
+    }
+
+    @Test
+    void testUploadTransactional_ParallelRangesKeepRowOrder() throws Exception {
+        // Arrange
+        uploadProperties.setParseChunkSize(1);
+        when(clientRepository.streamAllClientIds()).thenReturn(Stream.of("C002"));
+        when(portfolioRepository.streamAllPortfolioIds()).thenReturn(Stream.of());
+        Path file = tempDir.resolve("ranges.xlsx");
+        try (Workbook workbook = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(file)) {
+            Sheet portfolios = workbook.createSheet("portfolio");
+            addRow(portfolios, "Client ID", "Portfolio ID", "Portfolio Currency");
+            for (int i = 1; i <= 40; i++) {
+                // every third row has no currency, every fifth row references an unknown client
+                addRow(portfolios, i % 5 == 0 ? "C999" : "C002", "P" + i, i % 3 == 0 ? "" : "CAD");
+            }
+            workbook.write(out);
+        }
+
+        // Act
+        InvalidDataException e = assertThrows(InvalidDataException.class, () -> fileUploadService.uploadTransactional(file,
+                FileUploadRecord.builder().fileName("ranges.xlsx").build(), UploadProgressRegistry.UploadProgress.untracked()));
+
+        // Assert
+        List<Integer> reportedRows = Arrays.stream(e.getMessage().split("\n"))
+                .filter(line -> line.startsWith("Sheet: portfolio"))
+                .map(line -> Integer.parseInt(line.replaceAll(".*Row: (\\d+),.*", "$1")))
+                .toList();
+        assertEquals(19, reportedRows.size(), "13 missing currencies and 6 unknown clients should be reported");
+        assertEquals(reportedRows.stream().sorted().toList(), reportedRows, "Errors should be reported in row order");
+        verify(bulkUpsertRepository, never()).upsertPortfolios(anyCollection(), anyInt());
+    }
+
+    @Test
+    void testUpload_SavesHoldingsSnapshotOnceRecordIsCompleted() throws Exception {
+        // Arrange
+        FileUploadService transactional = mock(FileUploadService.class);
+        ReflectionTestUtils.setField(fileUploadService, "self", transactional);
+        when(transactional.uploadTransactional(any(), any(), any())).thenReturn("processed");
+        List<String> savedStatuses = new ArrayList<>();
+        when(fileUploadRepository.save(any(FileUploadRecord.class))).thenAnswer(invocation -> {
+            FileUploadRecord uploadRecord = invocation.getArgument(0);
+            uploadRecord.setUploadId(9L);
+            savedStatuses.add(uploadRecord.getStatus());
+            return uploadRecord;
+        });
+
+        // Act
+        FileUploadRecord uploadRecord = fileUploadService.upload(upload("P001"));
+
+        // Assert
+        assertEquals("COMPLETED", uploadRecord.getStatus());
+        InOrder completedThenSnapshot = inOrder(fileUploadRepository, holdingsStore);
+        completedThenSnapshot.verify(fileUploadRepository, times(2)).save(any(FileUploadRecord.class));
+        completedThenSnapshot.verify(holdingsStore).saveSnapshot();
+        assertEquals(List.of("PROCESSING", "COMPLETED"), savedStatuses);
+    }
+
+    @Test
+    void testUpload_SavesProfileWithSheetPhases() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(fileUploadService, "self", fileUploadService);
+        when(clientRepository.streamAllClientIds()).thenReturn(Stream.of("C002"));
+        when(portfolioRepository.streamAllPortfolioIds()).thenReturn(Stream.of("P100"));
+        when(portfolioSnapshotService.refresh(anyCollection(), anyCollection(), anyCollection()))
+                .thenReturn(new SnapshotRefresh(2, new BigDecimal("2500.00"), new BigDecimal("31.25")));
+        when(fileUploadRepository.save(any(FileUploadRecord.class))).thenAnswer(invocation -> {
+            FileUploadRecord uploadRecord = invocation.getArgument(0);
+            uploadRecord.setUploadId(11L);
+            return uploadRecord;
+        });
+        ArgumentCaptor<UploadProfile> profileCaptor = ArgumentCaptor.forClass(UploadProfile.class);
+
+        // Act
+        FileUploadRecord uploadRecord = fileUploadService.upload(upload("P001"));
+
+        // Assert
+        assertEquals("COMPLETED", uploadRecord.getStatus());
+        verify(uploadProfileRepository).save(profileCaptor.capture());
+        UploadProfile profile = profileCaptor.getValue();
+        assertEquals(11L, profile.getUploadId());
+        assertEquals("COMPLETED", profile.getStatus());
+        assertEquals(6L, profile.getTotalRows());
+        assertTrue(profile.getElapsedMillis() > 0);
+        assertTrue(profile.getOpenMillis() > 0, "Opening the workbook should be timed");
+        assertTrue(profile.getPeakHeapDeltaBytes() >= 0);
+        assertEquals(List.of("billing_tier", "client_billing", "portfolio", "assets"),
+                profile.getSheets().stream().map(UploadProfile.SheetProfile::getSheetName).toList(),
+                "Sheets should be profiled in processing order");
+        UploadProfile.SheetProfile clients = profile.getSheets().get(1);
+        assertEquals(2L, clients.getRows());
+        assertEquals(2L, clients.getProcessedRows());
+        assertEquals(0L, clients.getErrorRows());
+        assertTrue(clients.getValidateMillis() > 0);
+        assertTrue(clients.getLookupMillis() > 0, "Loading the existing client ids should be timed as a lookup");
+        assertTrue(clients.getWriteMillis() > 0);
+    }
+
+    @Test
+    void testUpload_SavesProfileOfFailedUpload() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(fileUploadService, "self", fileUploadService);
+        when(clientRepository.streamAllClientIds()).thenReturn(Stream.of("C002"));
+        when(portfolioRepository.streamAllPortfolioIds()).thenReturn(Stream.of("P100"));
+        when(fileUploadRepository.save(any(FileUploadRecord.class))).thenAnswer(invocation -> {
+            FileUploadRecord uploadRecord = invocation.getArgument(0);
+            uploadRecord.setUploadId(12L);
+            return uploadRecord;
+        });
+        ArgumentCaptor<UploadProfile> profileCaptor = ArgumentCaptor.forClass(UploadProfile.class);
+
+        // Act
+        FileUploadRecord uploadRecord = fileUploadService.upload(upload("P999"));
+
+        // Assert
+        assertEquals("FAILED", uploadRecord.getStatus());
+        verify(uploadProfileRepository).save(profileCaptor.capture());
+        UploadProfile profile = profileCaptor.getValue();
+        assertEquals("FAILED", profile.getStatus());
+        assertEquals(0.0, profile.getCommitMillis(), "A rolled back upload has no commit time");
+        UploadProfile.SheetProfile assets = profile.getSheets().get(3);
+        assertEquals(1L, assets.getRows());
+        assertEquals(0L, assets.getProcessedRows());
+        assertEquals(1L, assets.getErrorRows());
+    }
+
+    @Test
+    void testSubmit_QueuesUploadAndReportsProgress() throws Exception {
+        // Arrange
+        when(fileUploadRepository.save(any(FileUploadRecord.class))).thenAnswer(invocation -> {
+            FileUploadRecord uploadRecord = invocation.getArgument(0);
+            uploadRecord.setUploadId(7L);
+            return uploadRecord;
+        });
+
+        // Act
+        FileUploadRecord uploadRecord = fileUploadService.submit(upload("P001"));
+        Optional<UploadProgressResponse> progress = fileUploadService.getProgress(7L);
+
+        // Assert
+        assertEquals("PROCESSING", uploadRecord.getStatus(), "Submit should return before the file is processed");
+        verify(uploadExecutor).execute(any(Runnable.class));
+        assertTrue(progress.isPresent());
+        assertEquals("PROCESSING", progress.get().getStatus());
+        assertEquals(0L, progress.get().getTotalRowsProcessed());
+        verify(fileUploadRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void testSubmit_RejectedWhenQueueIsFull() throws Exception {
+        // Arrange
+        when(fileUploadRepository.save(any(FileUploadRecord.class))).thenAnswer(invocation -> {
+            FileUploadRecord uploadRecord = invocation.getArgument(0);
+            uploadRecord.setUploadId(8L);
+            return uploadRecord;
+        });
+        doThrow(new TaskRejectedException("queue full")).when(uploadExecutor).execute(any(Runnable.class));
+        when(fileUploadRepository.findById(8L)).thenAnswer(invocation ->
+                Optional.of(FileUploadRecord.builder().uploadId(8L).status("FAILED").processingResult("Error: busy").build()));
+
+        // Act
+        FileUploadRecord uploadRecord = fileUploadService.submit(upload("P001"));
+        Optional<UploadProgressResponse> progress = fileUploadService.getProgress(8L);
+
+        // Assert
+        assertEquals("FAILED", uploadRecord.getStatus());
+        assertTrue(uploadRecord.getProcessingResult().contains("Too many uploads"));
+        assertEquals("FAILED", progress.get().getStatus(), "Finished uploads should be reported from their record");
+    }
+}
@@ -0,0 +1,107 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.common.properties.CurrencyProperties;
+import com.maimai.billingcalculationengine.model.entity.FxRate;
+import com.maimai.billingcalculationengine.repository.FxRateRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class FxRateIndexTest {
+
+    @Mock
+    private FxRateRepository fxRateRepository;
+
+    @Mock
+    private CurrencyProperties currencyProperties;
+
+    @InjectMocks
+    private FxRateIndex fxRateIndex;
+
+    private static FxRate rate(String from, String to, LocalDate date, String rate) {
+        return FxRate.builder()
+                .fromCurrency(from)
+                .toCurrency(to)
+                .rateDate(date)
+                .rate(new BigDecimal(rate))
+                .build();
+    }
+
+    private final List<FxRate> rates = Arrays.asList(
+            rate("CAD", "USD", LocalDate.of(2024, 3, 1), "0.7400000000"),
+            rate("CAD", "USD", LocalDate.of(2024, 1, 1), "0.7500000000"),
+            rate("EUR", "CAD", LocalDate.of(2024, 2, 1), "1.4600000000")
+    );
+
+    @Test
+    void testFindRate_LatestRateOnOrBeforeTheDate() {
+        // Act
+        FxRateIndex.Matrix matrix = FxRateIndex.Matrix.of(rates, Map.of());
+
+        // Assert
+        assertEquals(new BigDecimal("0.7500000000"), matrix.findRate("CAD", "USD", LocalDate.of(2024, 2, 29)).get());
+        assertEquals(new BigDecimal("0.7400000000"), matrix.findRate("CAD", "USD", LocalDate.of(2024, 3, 1)).get());
+        assertEquals(new BigDecimal("0.7400000000"), matrix.findRate("cad", "usd", null).get(), "No date should use the latest rate");
+        assertTrue(matrix.findRate("CAD", "USD", LocalDate.of(2023, 12, 31)).isEmpty(), "No rate is in effect before the first one");
+        assertEquals(BigDecimal.ONE, matrix.findRate("CAD", "CAD", null).get());
+    }
+
+    @Test
+    void testOf_DerivesInverseAndCrossRatesAtFixedScale() {
+        // Act
+        FxRateIndex.Matrix matrix = FxRateIndex.Matrix.of(rates, Map.of());
+
+        // Assert
+        assertEquals(new BigDecimal("1.3513513514"), matrix.findRate("USD", "CAD", LocalDate.of(2024, 3, 1)).get(), "1 / 0.74");
+        assertEquals(new BigDecimal("0.6849315068"), matrix.findRate("CAD", "EUR", LocalDate.of(2024, 3, 1)).get(), "1 / 1.46");
+        // EUR to CAD from February, CAD to USD changes in March
+        assertEquals(new BigDecimal("1.0950000000"), matrix.findRate("EUR", "USD", LocalDate.of(2024, 2, 15)).get(), "1.46 * 0.75");
+        assertEquals(new BigDecimal("1.0804000000"), matrix.findRate("EUR", "USD", LocalDate.of(2024, 3, 15)).get(), "1.46 * 0.74");
+        assertTrue(matrix.findRate("EUR", "USD", LocalDate.of(2024, 1, 15)).isEmpty(), "Both legs need a rate in effect");
+    }
+
+    @Test
+    void testConvert_DefaultRateCoversDatesBeforeStoredRates() {
+        // Act
+        FxRateIndex.Matrix matrix = FxRateIndex.Matrix.of(rates, Map.of("USD", new BigDecimal("0.71")));
+
+        // Assert
+        assertEquals(new BigDecimal("710.00"), matrix.convert(new BigDecimal("1000.00"), "CAD", "USD", LocalDate.of(2023, 6, 30)));
+        assertEquals(new BigDecimal("750.00"), matrix.convert(new BigDecimal("1000.00"), "CAD", "USD", LocalDate.of(2024, 1, 31)));
+        assertEquals(new BigDecimal("1460.00"), matrix.toBaseCurrency(new BigDecimal("1000.00"), "EUR", LocalDate.of(2024, 2, 1)));
+        BigDecimal cad = new BigDecimal("1000.00");
+        assertSame(cad, matrix.convert(cad, "CAD", "CAD", null), "Same currency should not convert");
+        assertThrows(RuntimeException.class, () -> matrix.toBaseCurrency(BigDecimal.ONE, "GBP", null),
+                "A currency without rates cannot be converted");
+    }
+
+    @Test
+    void testCurrent_ReloadsOnlyAfterInvalidate() {
+        // Arrange
+        when(fxRateRepository.findAll()).thenReturn(rates);
+        when(currencyProperties.getToUSD()).thenReturn(0.71);
+
+        // Act
+        FxRateIndex.Matrix first = fxRateIndex.current();
+        FxRateIndex.Matrix cached = fxRateIndex.current();
+        fxRateIndex.invalidateAfterCommit();
+        FxRateIndex.Matrix reloaded = fxRateIndex.current();
+
+        // Assert
+        assertSame(first, cached, "The matrix should be loaded once");
+        assertNotSame(first, reloaded, "Without a transaction the matrix should be invalidated immediately");
+        verify(fxRateRepository, times(2)).findAll();
+    }
+}
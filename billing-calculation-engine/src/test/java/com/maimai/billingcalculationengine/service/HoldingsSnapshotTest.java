@@ -0,0 +1,136 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.common.properties.HoldingsProperties;
+import com.maimai.billingcalculationengine.model.entity.Asset;
+import com.maimai.billingcalculationengine.repository.FileUploadRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class HoldingsSnapshotTest {
+
+    @Mock
+    private FileUploadRepository fileUploadRepository;
+
+    @Spy
+    private HoldingsProperties holdingsProperties = new HoldingsProperties();
+
+    @InjectMocks
+    private HoldingsSnapshot holdingsSnapshot;
+
+    @TempDir
+    private Path directory;
+
+    private Path snapshotFile;
+
+    private final HoldingsStore.Holdings holdings = HoldingsStore.Holdings.of(List.of(
+            asset("P001", "A001", "10.00", "CAD", LocalDate.of(2024, 3, 31)),
+            asset("P001", "A002", "20.50", "USD", LocalDate.of(2024, 3, 31)),
+            asset("P002", "Fonds é", "-3.25", "EUR", LocalDate.of(2024, 2, 29))));
+
+    @BeforeEach
+    void setUp() {
+        snapshotFile = directory.resolve("snapshots").resolve("holdings.snapshot");
+        holdingsProperties.setSnapshotFile(snapshotFile.toString());
+    }
+
+    private static Asset asset(String portfolioId, String assetId, String value, String currency, LocalDate date) {
+        return Asset.builder()
+                .portfolioId(portfolioId)
+                .assetId(assetId)
+                .assetValue(new BigDecimal(value))
+                .currency(currency)
+                .date(date)
+                .build();
+    }
+
+    private static List<String> runs(HoldingsStore.Holdings holdings) {
+        List<String> runs = new ArrayList<>();
+        holdings.forEachRun((portfolioId, currency, epochDay, cents) ->
+                runs.add(portfolioId + " " + currency + " " + LocalDate.ofEpochDay(epochDay) + " " + cents));
+        return runs;
+    }
+
+    @Test
+    void testSaveAndRead_RestoresHoldingsOfTheLatestUpload() {
+        // Arrange
+        when(fileUploadRepository.findLatestUploadIdWhereStatusCompleted()).thenReturn(Optional.of(7L));
+
+        // Act
+        holdingsSnapshot.save(() -> holdings);
+        Optional<HoldingsStore.Holdings> restored = holdingsSnapshot.read();
+
+        // Assert
+        assertTrue(restored.isPresent());
+        assertEquals(runs(holdings), runs(restored.get()));
+        assertEquals(holdings.getFootprintBytes(), restored.get().getFootprintBytes(), "Asset ids should be restored too");
+        // restored holdings can still be patched by asset id
+        HoldingsStore.Holdings patched = restored.get().patch(List.of(asset("P002", "Fonds é", "1.00", "EUR", LocalDate.of(2024, 3, 31))));
+        assertEquals(List.of("P001 CAD 2024-03-31 1000", "P001 USD 2024-03-31 2050", "P002 EUR 2024-03-31 100"), runs(patched));
+    }
+
+    @Test
+    void testRead_IgnoresSnapshotOfAnEarlierUpload() {
+        // Arrange
+        when(fileUploadRepository.findLatestUploadIdWhereStatusCompleted()).thenReturn(Optional.of(7L), Optional.of(8L));
+        holdingsSnapshot.save(() -> holdings);
+
+        // Act
+        Optional<HoldingsStore.Holdings> restored = holdingsSnapshot.read();
+
+        // Assert
+        assertTrue(restored.isEmpty(), "A snapshot taken before the latest upload is stale");
+    }
+
+    @Test
+    void testRead_IgnoresCorruptedAndMissingSnapshots() throws Exception {
+        // Arrange
+        when(fileUploadRepository.findLatestUploadIdWhereStatusCompleted()).thenReturn(Optional.empty());
+        holdingsSnapshot.save(() -> holdings);
+        byte[] bytes = Files.readAllBytes(snapshotFile);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(snapshotFile, bytes);
+
+        // Act
+        Optional<HoldingsStore.Holdings> corrupted = holdingsSnapshot.read();
+        holdingsSnapshot.delete();
+        Optional<HoldingsStore.Holdings> missing = holdingsSnapshot.read();
+
+        // Assert
+        assertTrue(corrupted.isEmpty(), "A snapshot failing its checksum should not be read");
+        assertTrue(missing.isEmpty());
+        assertFalse(Files.exists(snapshotFile));
+        verify(fileUploadRepository, times(1)).findLatestUploadIdWhereStatusCompleted();
+    }
+
+    @Test
+    void testSave_DoesNothingWhenDisabled() {
+        // Arrange
+        holdingsProperties.setSnapshotEnabled(false);
+
+        // Act
+        holdingsSnapshot.save(() -> holdings);
+
+        // Assert
+        assertFalse(Files.exists(snapshotFile));
+        assertTrue(holdingsSnapshot.read().isEmpty());
+        verifyNoInteractions(fileUploadRepository);
+    }
+}
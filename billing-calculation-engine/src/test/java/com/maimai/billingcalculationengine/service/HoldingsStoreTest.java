@@ -0,0 +1,221 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.model.entity.Asset;
+import com.maimai.billingcalculationengine.model.response.HoldingsMetricsResponse;
+import com.maimai.billingcalculationengine.repository.HoldingsRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class HoldingsStoreTest {
+
+    @Mock
+    private HoldingsRepository holdingsRepository;
+
+    @Mock
+    private HoldingsSnapshot holdingsSnapshot;
+
+    @InjectMocks
+    private HoldingsStore holdingsStore;
+
+    private static Asset asset(String portfolioId, String assetId, String value, String currency, LocalDate date) {
+        return Asset.builder()
+                .portfolioId(portfolioId)
+                .assetId(assetId)
+                .assetValue(new BigDecimal(value))
+                .currency(currency)
+                .date(date)
+                .build();
+    }
+
+    private static List<String> runs(HoldingsStore.Holdings holdings) {
+        List<String> runs = new ArrayList<>();
+        holdings.forEachRun((portfolioId, currency, epochDay, cents) ->
+                runs.add(portfolioId + " " + currency + " " + LocalDate.ofEpochDay(epochDay) + " " + cents));
+        return runs;
+    }
+
+    private final LocalDate march = LocalDate.of(2024, 3, 31);
+    private final LocalDate february = LocalDate.of(2024, 2, 29);
+
+    @Test
+    void testForEachRun_SumsHoldingsOfOnePortfolioCurrencyAndDate() {
+        // Act
+        HoldingsStore.Holdings holdings = HoldingsStore.Holdings.of(List.of(
+                asset("P002", "A001", "100.00", "USD", march),
+                asset("P001", "A001", "10.00", "USD", march),
+                asset("P001", "A002", "20.00", "CAD", march),
+                asset("P001", "A003", "30.00", "USD", february),
+                asset("P001", "A004", "40.00", "USD", march),
+                // an earlier valuation of A004 is not a holding
+                asset("P001", "A004", "99.00", "USD", february)));
+
+        // Assert
+        assertEquals(List.of(
+                "P002 USD 2024-03-31 10000",
+                "P001 CAD 2024-03-31 2000",
+                "P001 USD 2024-02-29 3000",
+                "P001 USD 2024-03-31 5000"), runs(holdings));
+        assertEquals(5, holdings.getRowCount());
+        assertEquals(2, holdings.getPortfolioCount());
+        assertEquals(2, holdings.getCurrencyCount());
+        assertTrue(holdings.getColumnBytes() >= 5 * (4 + 8 + 1 + 4), "Every row takes at least its primitive columns");
+    }
+
+    @Test
+    void testPatch_ReplacesOlderHoldingsOnly() {
+        // Arrange
+        HoldingsStore.Holdings holdings = HoldingsStore.Holdings.of(List.of(
+                asset("P001", "A001", "10.00", "CAD", march),
+                asset("P001", "A002", "20.00", "CAD", february)));
+
+        // Act
+        HoldingsStore.Holdings patched = holdings.patch(List.of(
+                // older than the held valuation of A001
+                asset("P001", "A001", "11.00", "CAD", february),
+                asset("P001", "A002", "25.00", "CAD", february),
+                asset("P001", "A003", "5.00", "AUD", march),
+                asset("P003", "A001", "1.00", "CAD", march)));
+
+        // Assert
+        assertEquals(List.of(
+                "P001 AUD 2024-03-31 500",
+                "P001 CAD 2024-02-29 2500",
+                "P001 CAD 2024-03-31 1000",
+                "P003 CAD 2024-03-31 100"), runs(patched));
+        assertEquals(List.of("P001 CAD 2024-02-29 2000", "P001 CAD 2024-03-31 1000"), runs(holdings), "Holdings are immutable");
+    }
+
+    @Test
+    void testCurrent_LoadsOnceAndAppliesUploadsWithoutReloading() {
+        // Arrange
+        doAnswer(invocation -> {
+            HoldingsRepository.ValuationHandler handler = invocation.getArgument(0);
+            handler.accept("P001", "A001", new BigDecimal("10.00"), "CAD", march);
+            return null;
+        }).when(holdingsRepository).forEachLatestValuation(any());
+
+        // Act
+        HoldingsStore.Holdings loaded = holdingsStore.current();
+        holdingsStore.applyAfterCommit(List.of(asset("P001", "A002", "5.00", "CAD", march)));
+        HoldingsStore.Holdings patched = holdingsStore.current();
+        HoldingsStore.Holdings cached = holdingsStore.current();
+        holdingsStore.invalidateAfterCommit();
+        HoldingsStore.Holdings reloaded = holdingsStore.current();
+
+        // Assert
+        assertEquals(List.of("P001 CAD 2024-03-31 1000"), runs(loaded));
+        assertEquals(List.of("P001 CAD 2024-03-31 1500"), runs(patched), "Without a transaction the upload should apply immediately");
+        assertSame(patched, cached, "Patched holdings should be kept");
+        assertEquals(List.of("P001 CAD 2024-03-31 1000"), runs(reloaded));
+        verify(holdingsRepository, times(2)).forEachLatestValuation(any());
+        verify(holdingsSnapshot, times(2)).save(any());
+        verify(holdingsSnapshot, times(2)).delete();
+    }
+
+    @Test
+    void testApplyAfterCommit_DeletesSnapshotBeforeAndAfterTheCommit() {
+        // Arrange
+        doAnswer(invocation -> {
+            HoldingsRepository.ValuationHandler handler = invocation.getArgument(0);
+            handler.accept("P001", "A001", new BigDecimal("10.00"), "CAD", march);
+            return null;
+        }).when(holdingsRepository).forEachLatestValuation(any());
+        holdingsStore.current();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Act
+            holdingsStore.applyAfterCommit(List.of(asset("P001", "A002", "5.00", "CAD", march)));
+
+            // Assert
+            verify(holdingsSnapshot).delete();
+
+            // Act
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Assert
+        assertEquals(List.of("P001 CAD 2024-03-31 1500"), runs(holdingsStore.current()));
+        verify(holdingsSnapshot, times(2)).delete();
+        // saved on load only, the upload saves its snapshot once it is COMPLETED
+        verify(holdingsSnapshot, times(1)).save(any());
+    }
+
+    @Test
+    void testInitialize_MapsCurrentSnapshotInsteadOfReadingTheDatabase() {
+        // Arrange
+        HoldingsStore.Holdings snapshot = HoldingsStore.Holdings.of(List.of(asset("P001", "A001", "10.00", "CAD", march)));
+        when(holdingsSnapshot.read()).thenReturn(Optional.of(snapshot));
+
+        // Act
+        holdingsStore.initialize();
+
+        // Assert
+        assertSame(snapshot, holdingsStore.current());
+        assertEquals(HoldingsStore.SOURCE_SNAPSHOT, holdingsStore.getMetrics().getLoadSource());
+        verifyNoInteractions(holdingsRepository);
+        verify(holdingsSnapshot, never()).save(any());
+    }
+
+    @Test
+    void testInitialize_ReadsTheDatabaseAndSavesSnapshotWhenSnapshotIsStale() {
+        // Arrange
+        when(holdingsSnapshot.read()).thenReturn(Optional.empty());
+        doAnswer(invocation -> {
+            HoldingsRepository.ValuationHandler handler = invocation.getArgument(0);
+            handler.accept("P001", "A001", new BigDecimal("10.00"), "CAD", march);
+            return null;
+        }).when(holdingsRepository).forEachLatestValuation(any());
+
+        // Act
+        holdingsStore.initialize();
+
+        // Assert
+        assertEquals(List.of("P001 CAD 2024-03-31 1000"), runs(holdingsStore.current()));
+        assertEquals(HoldingsStore.SOURCE_DATABASE, holdingsStore.getMetrics().getLoadSource());
+        verify(holdingsRepository, times(1)).forEachLatestValuation(any());
+        verify(holdingsSnapshot).save(any());
+    }
+
+    @Test
+    void testGetMetrics_ReportsSizeAndScans() {
+        // Arrange
+        doAnswer(invocation -> {
+            HoldingsRepository.ValuationHandler handler = invocation.getArgument(0);
+            handler.accept("P001", "A001", new BigDecimal("10.00"), "CAD", march);
+            handler.accept("P001", "A002", new BigDecimal("20.00"), "CAD", march);
+            return null;
+        }).when(holdingsRepository).forEachLatestValuation(any());
+        assertFalse(holdingsStore.getMetrics().getLoaded());
+
+        // Act
+        holdingsStore.scan((portfolioId, currency, epochDay, cents) -> { });
+        HoldingsMetricsResponse metrics = holdingsStore.getMetrics();
+
+        // Assert
+        assertTrue(metrics.getLoaded());
+        assertEquals(2, metrics.getRows());
+        assertEquals(1, metrics.getScans());
+        assertEquals(2, metrics.getLastScanRows());
+        assertEquals(metrics.getColumnBytes() + metrics.getIdBytes(), metrics.getFootprintBytes());
+        assertNotNull(metrics.getLoadedAt());
+    }
+}
@@ -1,20 +1,25 @@
 package com.maimai.billingcalculationengine.service;
 
-import com.maimai.billingcalculationengine.model.entity.Portfolio;
+import com.maimai.billingcalculationengine.common.properties.ResponseCacheProperties;
+import com.maimai.billingcalculationengine.model.calculation.BatchCalculationResult;
+import com.maimai.billingcalculationengine.model.calculation.PortfolioCalculation;
 import com.maimai.billingcalculationengine.model.response.PortfolioResponse;
-import com.maimai.billingcalculationengine.repository.PortfolioRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
@@ -22,54 +27,64 @@ import static org.mockito.Mockito.*;
 public class PortfolioServiceTest {
 
     @Mock
-    private PortfolioRepository portfolioRepository;
+    private PortfolioSnapshotService portfolioSnapshotService;
 
     @Mock
     private CalculationService calculationService;
 
+    @Spy
+    private ResponseCache responseCache = new ResponseCache();
+
     @InjectMocks
     private PortfolioService portfolioService;
 
-    private Portfolio portfolio1;
-    private Portfolio portfolio2;
-    private List<Portfolio> portfolioList;
-    private List<Portfolio> clientPortfolioList;
+    private PortfolioCalculation portfolio1;
+    private PortfolioCalculation portfolio2;
+    private List<PortfolioCalculation> portfolioList;
 
     @BeforeEach
     void setUp() {
+        ReflectionTestUtils.setField(responseCache, "responseCacheProperties", new ResponseCacheProperties());
+        responseCache.initialize();
+
         // Setup test data
-        portfolio1 = Portfolio.builder()
+        portfolio1 = PortfolioCalculation.builder()
                 .portfolioId("P001")
                 .clientId("C001")
                 .portfolioCurrency("CAD")
+                .aum(new BigDecimal("50000.00"))
+                .fee(new BigDecimal("625.00"))
                 .build();
 
-        portfolio2 = Portfolio.builder()
+        portfolio2 = PortfolioCalculation.builder()
                 .portfolioId("P002")
                 .clientId("C001")
                 .portfolioCurrency("USD")
+                .aum(new BigDecimal("50000.00"))
+                .fee(new BigDecimal("625.00"))
                 .build();
 
-        Portfolio portfolio3 = Portfolio.builder()
+        PortfolioCalculation portfolio3 = PortfolioCalculation.builder()
                 .portfolioId("P003")
                 .clientId("C002")
                 .portfolioCurrency("CAD")
+                .aum(new BigDecimal("50000.00"))
+                .fee(new BigDecimal("625.00"))
                 .build();
 
         portfolioList = Arrays.asList(portfolio1, portfolio2, portfolio3);
-        clientPortfolioList = Arrays.asList(portfolio1, portfolio2);
     }
 
-    @Test
-    void testGetAllPortfolios() {
-        // Arrange
-        when(portfolioRepository.findAll()).thenReturn(portfolioList);
+    private BatchCalculationResult resultOf(List<PortfolioCalculation> portfolios) {
+        Map<String, PortfolioCalculation> portfolioCalculations = new LinkedHashMap<>();
+        portfolios.forEach(portfolio -> portfolioCalculations.put(portfolio.getPortfolioId(), portfolio));
+        return BatchCalculationResult.builder()
+                .clients(new LinkedHashMap<>())
+                .portfolios(portfolioCalculations)
+                .build();
+    }
 
-        // Setup calculation service behavior
-        when(calculationService.calculatePortfolioAum(any(Portfolio.class)))
-                .thenReturn(new BigDecimal("50000.00"));
-        when(calculationService.calculatePortfolioFee(any(BigDecimal.class), any(Portfolio.class)))
-                .thenReturn(new BigDecimal("625.00"));
+    private void stubUsdConversion() {
         when(calculationService.convertFromCadToTargetCurrency(any(BigDecimal.class), anyString()))
                 .thenAnswer(invocation -> {
                     BigDecimal amount = invocation.getArgument(0);
@@ -79,14 +94,20 @@ public class PortfolioServiceTest {
                     }
                     return amount;
                 });
+    }
+
+    @Test
+    void testGetAllPortfolios() {
+        // Arrange
+        when(portfolioSnapshotService.findAll()).thenReturn(resultOf(portfolioList));
+        stubUsdConversion();
 
         // Act
         List<PortfolioResponse> result = portfolioService.getAllPortfolios();
 
         // Assert
         assertEquals(3, result.size(), "Should return all portfolios");
-        verify(calculationService, times(3)).calculatePortfolioAum(any(Portfolio.class));
-        verify(calculationService, times(3)).calculatePortfolioFee(any(BigDecimal.class), any(Portfolio.class));
+        verify(portfolioSnapshotService, times(1)).findAll();
 
         // Check first portfolio (CAD)
         assertEquals("P001", result.get(0).getPortfolioId());
@@ -102,21 +123,9 @@ public class PortfolioServiceTest {
     @Test
     void testGetPortfoliosByClientId() {
         // Arrange
-        when(portfolioRepository.findAllByClientId("C001")).thenReturn(clientPortfolioList);
-
-        when(calculationService.calculatePortfolioAum(any(Portfolio.class)))
-                .thenReturn(new BigDecimal("50000.00"));
-        when(calculationService.calculatePortfolioFee(any(BigDecimal.class), any(Portfolio.class)))
-                .thenReturn(new BigDecimal("625.00"));
-        when(calculationService.convertFromCadToTargetCurrency(any(BigDecimal.class), anyString()))
-                .thenAnswer(invocation -> {
-                    BigDecimal amount = invocation.getArgument(0);
-                    String currency = invocation.getArgument(1);
-                    if (currency.equals("USD")) {
-                        return amount.multiply(new BigDecimal("0.71"));
-                    }
-                    return amount;
-                });
+        when(portfolioSnapshotService.findByClientIds(List.of("C001")))
+                .thenReturn(resultOf(Arrays.asList(portfolio1, portfolio2)));
+        stubUsdConversion();
 
         // Act
         List<PortfolioResponse> result = portfolioService.getPortfoliosByClientId("C001");
@@ -128,9 +137,32 @@ public class PortfolioServiceTest {
         assertEquals("C001", result.get(0).getClientId());
         assertEquals("C001", result.get(1).getClientId());
 
-        verify(portfolioRepository).findAllByClientId("C001");
-        verify(calculationService, times(2)).calculatePortfolioAum(any(Portfolio.class));
-        verify(calculationService, times(2)).calculatePortfolioFee(any(BigDecimal.class), any(Portfolio.class));
+        verify(portfolioSnapshotService).findByClientIds(List.of("C001"));
+    }
+
+    @Test
+    void testGetPortfoliosByClientId_CachesUntilClientIsInvalidated() {
+        // Arrange
+        when(portfolioSnapshotService.findByClientIds(anyList())).thenAnswer(invocation ->
+                resultOf(portfolioList.stream().filter(portfolio -> portfolio.getClientId().equals(
+                        ((List<String>) invocation.getArgument(0)).get(0))).toList()));
+        stubUsdConversion();
+
+        // Act
+        List<PortfolioResponse> first = portfolioService.getPortfoliosByClientId("C001");
+        List<PortfolioResponse> cached = portfolioService.getPortfoliosByClientId("C001");
+        portfolioService.getPortfoliosByClientId("C002");
+        // an upload that changed C002 only
+        responseCache.invalidateAfterCommit(List.of("C002"));
+        List<PortfolioResponse> stillCached = portfolioService.getPortfoliosByClientId("C001");
+        portfolioService.getPortfoliosByClientId("C002");
+
+        // Assert
+        assertSame(first, cached);
+        assertSame(first, stillCached, "Clients an upload did not touch should stay cached");
+        assertThrows(UnsupportedOperationException.class, () -> cached.clear(), "Cached lists are shared");
+        verify(portfolioSnapshotService, times(1)).findByClientIds(List.of("C001"));
+        verify(portfolioSnapshotService, times(2)).findByClientIds(List.of("C002"));
     }
 
     @Test
@@ -138,9 +170,7 @@ public class PortfolioServiceTest {
         // This test verifies the private convertToResponse method indirectly
 
         // Arrange
-        when(portfolioRepository.findAll()).thenReturn(Arrays.asList(portfolio1));
-        when(calculationService.calculatePortfolioAum(portfolio1)).thenReturn(new BigDecimal("50000.00"));
-        when(calculationService.calculatePortfolioFee(new BigDecimal("50000.00"), portfolio1)).thenReturn(new BigDecimal("625.00"));
+        when(portfolioSnapshotService.findAll()).thenReturn(resultOf(List.of(portfolio1)));
         when(calculationService.convertFromCadToTargetCurrency(new BigDecimal("50000.00"), "CAD")).thenReturn(new BigDecimal("50000.00"));
 
         // Act
@@ -156,12 +186,24 @@ public class PortfolioServiceTest {
         assertEquals(0, new BigDecimal("625.00").compareTo(response.getPortfolioFee()));
     }
 
+    @Test
+    void testConvertToResponse_UsesAumConvertedByTheCalculation() {
+        // Arrange
+        portfolio2.setAumInPortfolioCurrency(new BigDecimal("35500.00"));
+        when(portfolioSnapshotService.findAll()).thenReturn(resultOf(List.of(portfolio2)));
+
+        // Act
+        List<PortfolioResponse> result = portfolioService.getAllPortfolios();
+
+        // Assert
+        assertEquals(0, new BigDecimal("35500.00").compareTo(result.get(0).getPortfolioAum()));
+        verifyNoInteractions(calculationService);
+    }
+
     @Test
     void testConvertToResponse_UsdPortfolio() {
         // Arrange
-        when(portfolioRepository.findAll()).thenReturn(Arrays.asList(portfolio2));
-        when(calculationService.calculatePortfolioAum(portfolio2)).thenReturn(new BigDecimal("50000.00"));
-        when(calculationService.calculatePortfolioFee(new BigDecimal("50000.00"), portfolio2)).thenReturn(new BigDecimal("625.00"));
+        when(portfolioSnapshotService.findAll()).thenReturn(resultOf(List.of(portfolio2)));
         when(calculationService.convertFromCadToTargetCurrency(new BigDecimal("50000.00"), "USD")).thenReturn(new BigDecimal("35500.00"));
 
         // Act
@@ -175,4 +217,4 @@ public class PortfolioServiceTest {
         assertEquals(0, new BigDecimal("35500.00").compareTo(response.getPortfolioAum()));
         assertEquals(0, new BigDecimal("625.00").compareTo(response.getPortfolioFee()));
     }
-}
\ No newline at end of file
+}
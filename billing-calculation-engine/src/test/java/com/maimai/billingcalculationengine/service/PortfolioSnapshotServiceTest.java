@@ -0,0 +1,230 @@
+package com.maimai.billingcalculationengine.service;
+
+import com.maimai.billingcalculationengine.common.properties.UploadProperties;
+import com.maimai.billingcalculationengine.model.calculation.BatchCalculationResult;
+import com.maimai.billingcalculationengine.model.calculation.PortfolioCalculation;
+import com.maimai.billingcalculationengine.model.calculation.SnapshotRefresh;
+import com.maimai.billingcalculationengine.model.entity.BillingTier;
+import com.maimai.billingcalculationengine.model.entity.PortfolioSnapshot;
+import com.maimai.billingcalculationengine.repository.BillingTierRepository;
+import com.maimai.billingcalculationengine.repository.BulkUpsertRepository;
+import com.maimai.billingcalculationengine.repository.PortfolioRepository;
+import com.maimai.billingcalculationengine.repository.PortfolioSnapshotRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PortfolioSnapshotServiceTest {
+
+    @Mock
+    private PortfolioSnapshotRepository portfolioSnapshotRepository;
+
+    @Mock
+    private PortfolioRepository portfolioRepository;
+
+    @Mock
+    private BillingTierRepository billingTierRepository;
+
+    @Mock
+    private BulkUpsertRepository bulkUpsertRepository;
+
+    @Mock
+    private BatchCalculationService batchCalculationService;
+
+    @Mock
+    private FxRateIndex fxRateIndex;
+
+    @Spy
+    private CalculationService calculationService = new CalculationService();
+
+    @Spy
+    private UploadProperties uploadProperties = new UploadProperties();
+
+    @Mock
+    private ResponseCache responseCache;
+
+    @InjectMocks
+    private PortfolioSnapshotService portfolioSnapshotService;
+
+    private static PortfolioSnapshot snapshot(String portfolioId, String clientId, String aum, String fee) {
+        return PortfolioSnapshot.builder()
+                .portfolioId(portfolioId)
+                .clientId(clientId)
+                .portfolioCurrency("CAD")
+                .aum(new BigDecimal(aum))
+                .fee(new BigDecimal(fee))
+                .build();
+    }
+
+    @Test
+    void testRefresh_RecalculatesOnlyAffectedPortfolios() {
+        // Arrange
+        when(portfolioRepository.findPortfolioIdsByClientIdIn(anyCollection())).thenReturn(List.of("P002", "P003"));
+        when(portfolioRepository.findPortfolioIdsByBillingTierIdIn(anyCollection())).thenReturn(List.of());
+        when(billingTierRepository.findAll()).thenReturn(List.of(BillingTier.builder().tierId("T001")
+                .portfolioAumMin(BigDecimal.ZERO).portfolioAumMax(new BigDecimal("1000000.00"))
+                .feePercentage(new BigDecimal("1.25")).build()));
+
+        Map<String, PortfolioCalculation> portfolios = new LinkedHashMap<>();
+        portfolios.put("P001", PortfolioCalculation.builder().portfolioId("P001").clientId("C001")
+                .portfolioCurrency("CAD").asOfDate(LocalDate.of(2024, 3, 31))
+                .aum(new BigDecimal("10000.00")).fee(new BigDecimal("125.00")).build());
+        when(batchCalculationService.calculatePortfolios(anyCollection(), any(BillingTierIndex.Snapshot.class), any()))
+                .thenReturn(BatchCalculationResult.builder().clients(new LinkedHashMap<>()).portfolios(portfolios)
+                        .totalAum(new BigDecimal("10000.00")).totalFee(new BigDecimal("125.00")).build());
+        when(portfolioSnapshotRepository.findAllById(anyCollection()))
+                // P001 moved from C009 to C001
+                .thenReturn(List.of(snapshot("P001", "C009", "8000.00", "100.00")));
+        when(bulkUpsertRepository.upsertPortfolioSnapshots(anyCollection(), anyInt()))
+                .thenAnswer(invocation -> ((Collection<?>) invocation.getArgument(0)).size());
+        ArgumentCaptor<Collection<String>> portfolioIds = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<Collection<PortfolioSnapshot>> snapshots = ArgumentCaptor.forClass(Collection.class);
+
+        // Act
+        SnapshotRefresh refresh = portfolioSnapshotService.refresh(Set.of("T001"), Set.of("C002"), List.of("P001", "P002"));
+
+        // Assert
+        assertEquals(1, refresh.getRefreshedPortfolios());
+        assertEquals(new BigDecimal("2000.00"), refresh.getAumDelta(), "AUM delta should be new minus replaced snapshot values");
+        assertEquals(new BigDecimal("25.00"), refresh.getFeeDelta());
+        verify(batchCalculationService).calculatePortfolios(portfolioIds.capture(), any(BillingTierIndex.Snapshot.class), any());
+        assertEquals(List.of("P001", "P002", "P003"), new ArrayList<>(portfolioIds.getValue()),
+                "Written portfolios and the portfolios of written clients should be refreshed once each");
+        verify(batchCalculationService, never()).calculateAllClients();
+
+        verify(bulkUpsertRepository).upsertPortfolioSnapshots(snapshots.capture(), eq(500));
+        PortfolioSnapshot saved = snapshots.getValue().iterator().next();
+        assertEquals(LocalDate.of(2024, 3, 31), saved.getAsOfDate());
+        assertEquals(new BigDecimal("1.25"), saved.getEffectiveFeeRate());
+        assertNotNull(saved.getRefreshedAt());
+        verify(responseCache).invalidateAfterCommit(Set.of("C001", "C002", "C009"));
+    }
+
+    @Test
+    void testRefresh_OverlappingUploadsApplyDeltasOneAfterTheOther() throws Exception {
+        // Arrange
+        // the committed snapshot rows, and the advisory lock, released when a refreshing upload commits
+        Map<String, PortfolioSnapshot> committed = new ConcurrentHashMap<>();
+        committed.put("P001", snapshot("P001", "C001", "1000.00", "12.50"));
+        Semaphore snapshotLock = new Semaphore(1);
+        AtomicInteger lockCalls = new AtomicInteger();
+        CountDownLatch firstInside = new CountDownLatch(1);
+        CountDownLatch secondWaiting = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            if (lockCalls.incrementAndGet() == 2) secondWaiting.countDown();
+            snapshotLock.acquire();
+            return null;
+        }).when(bulkUpsertRepository).lockPortfolioSnapshots();
+        when(portfolioRepository.findPortfolioIdsByClientIdIn(anyCollection())).thenReturn(List.of("P001"));
+        when(billingTierRepository.findAll()).thenReturn(List.of());
+        when(portfolioSnapshotRepository.findAllById(anyCollection())).thenAnswer(invocation ->
+                ((Collection<String>) invocation.getArgument(0)).stream().map(committed::get).filter(Objects::nonNull).toList());
+        when(bulkUpsertRepository.upsertPortfolioSnapshots(anyCollection(), anyInt())).thenAnswer(invocation -> {
+            Collection<PortfolioSnapshot> snapshots = invocation.getArgument(0);
+            snapshots.forEach(snapshot -> committed.put(snapshot.getPortfolioId(), snapshot));
+            return snapshots.size();
+        });
+        // the assets upload raises P001 to 1500, the client-only upload prices P001 from the committed assets
+        when(batchCalculationService.calculatePortfolios(anyCollection(), any(BillingTierIndex.Snapshot.class), any()))
+                .thenAnswer(invocation -> {
+                    boolean assetsUpload = Thread.currentThread().getName().equals("assets-upload");
+                    if (assetsUpload) {
+                        firstInside.countDown();
+                        secondWaiting.await(5, TimeUnit.SECONDS);
+                    }
+                    BigDecimal aum = assetsUpload ? new BigDecimal("1500.00") : committed.get("P001").getAum();
+                    BigDecimal fee = aum.multiply(new BigDecimal("0.0125")).setScale(2);
+                    Map<String, PortfolioCalculation> portfolios = new LinkedHashMap<>();
+                    portfolios.put("P001", PortfolioCalculation.builder().portfolioId("P001").clientId("C001")
+                            .portfolioCurrency("CAD").aum(aum).fee(fee).build());
+                    return BatchCalculationResult.builder().clients(new LinkedHashMap<>()).portfolios(portfolios)
+                            .totalAum(aum).totalFee(fee).build();
+                });
+        Map<String, SnapshotRefresh> refreshes = new ConcurrentHashMap<>();
+
+        // Act
+        Thread assetsUpload = upload("assets-upload", snapshotLock, refreshes,
+                () -> portfolioSnapshotService.refresh(Set.of(), Set.of(), List.of("P001")));
+        assetsUpload.start();
+        assertTrue(firstInside.await(5, TimeUnit.SECONDS));
+        Thread clientUpload = upload("client-upload", snapshotLock, refreshes,
+                () -> portfolioSnapshotService.refresh(Set.of(), Set.of("C001"), List.of()));
+        clientUpload.start();
+        assetsUpload.join(5000);
+        clientUpload.join(5000);
+
+        // Assert
+        assertEquals(new BigDecimal("500.00"), refreshes.get("assets-upload").getAumDelta());
+        assertEquals(new BigDecimal("0.00"), refreshes.get("client-upload").getAumDelta(),
+                "The second upload should price P001 from, and compare it to, what the first one committed");
+        assertEquals(new BigDecimal("1500.00"), committed.get("P001").getAum());
+        BigDecimal aumDeltas = refreshes.values().stream().map(SnapshotRefresh::getAumDelta).reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(new BigDecimal("500.00"), aumDeltas, "The dashboard should move by what the snapshots moved");
+    }
+
+    // runs one upload's refresh as its own transaction, which releases the snapshot lock when it commits
+    private static Thread upload(String name, Semaphore snapshotLock, Map<String, SnapshotRefresh> refreshes,
+                                 Supplier<SnapshotRefresh> refresh) {
+        return new Thread(() -> {
+            try {
+                refreshes.put(name, refresh.get());
+            } finally {
+                snapshotLock.release();
+            }
+        }, name);
+    }
+
+    @Test
+    void testRefresh_NothingWritten() {
+        // Act
+        SnapshotRefresh refresh = portfolioSnapshotService.refresh(Set.of(), Set.of(), Set.of());
+
+        // Assert
+        assertEquals(0, refresh.getRefreshedPortfolios());
+        verifyNoInteractions(batchCalculationService, bulkUpsertRepository);
+        verify(responseCache).invalidateAfterCommit(Set.of());
+    }
+
+    @Test
+    void testFindAll_SumsClientTotalsFromSnapshots() {
+        // Arrange
+        when(portfolioSnapshotRepository.findAllByOrderByPortfolioIdAsc()).thenReturn(List.of(
+                snapshot("P001", "C001", "10000.00", "125.00"),
+                snapshot("P002", "C001", "30000.00", "375.00"),
+                snapshot("P003", "C002", "20000.00", "200.00")));
+        when(fxRateIndex.current()).thenReturn(FxRateIndex.Matrix.of(List.of(), Map.of()));
+
+        // Act
+        BatchCalculationResult result = portfolioSnapshotService.findAll();
+
+        // Assert
+        assertEquals(3, result.getPortfolios().size());
+        assertEquals(new BigDecimal("10000.00"), result.getPortfolio("P001").getAumInPortfolioCurrency());
+        assertEquals(new BigDecimal("40000.00"), result.getClient("C001").getTotalAum());
+        assertEquals(new BigDecimal("500.00"), result.getClient("C001").getTotalFee());
+        assertEquals(new BigDecimal("1.25"), result.getClient("C001").getEffectiveFeeRate());
+        assertEquals(new BigDecimal("60000.00"), result.getTotalAum());
+        assertEquals(BigDecimal.ZERO, result.getClientOrEmpty("C003").getTotalAum(),
+                "A client without portfolios should read as zero");
+        verifyNoInteractions(batchCalculationService);
+    }
+}